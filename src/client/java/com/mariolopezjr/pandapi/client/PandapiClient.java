@@ -0,0 +1,672 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.client;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mariolopezjr.pandapi.exception.BadRequestException;
+import com.mariolopezjr.pandapi.metrics.LatencyHistogram;
+import com.mariolopezjr.pandapi.web.codec.ServerFormat;
+import com.mariolopezjr.pandapi.web.codec.ServerJsonReader;
+import com.mariolopezjr.pandapi.web.codec.ServerJsonWriter;
+import com.mariolopezjr.pandapi.web.document.ErrorMessageDoc;
+import com.mariolopezjr.pandapi.web.document.server.ServerDoc;
+import com.mariolopezjr.pandapi.web.document.server.ServerPostRequest;
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Java client of the servers API.  Every call is asynchronous and returns a {@link ListenableFuture}, which fails
+ * with a {@link PandapiClientException} when the API turns the request down.  The documents, and how they're written
+ * and read in each {@link ServerFormat}, are the same classes the server uses.<br/>
+ *
+ * What it does to keep the calls fast and reliable:
+ * <ul>
+ *     <li>the connections are kept alive and reused, there's one per request in flight</li>
+ *     <li>a get of a server that's already being fetched waits for that response instead of sending another request,
+ *     so it can be as old as that request</li>
+ *     <li>a get that takes longer than most (see {@link PandapiClientSettings#getHedgePercentile()}) is sent a second
+ *     time, and whichever response comes back first is used, so one slow request doesn't hold up the caller</li>
+ *     <li>a request that doesn't get through, or gets a 503, is sent again after a growing delay, a create with the
+ *     same "Idempotency-Key" every time so the server only creates the server once</li>
+ * </ul>
+ * The API has no batch requests, so every server is created and fetched with a request of its own.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class PandapiClient implements Closeable {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(PandapiClient.class);
+
+    // a create is only done once for each key, see IdempotencyKeys on the server
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private static final String SERVERS_PATH = "/v1/servers";
+
+    // a replica sends writes on to the primary, HttpURLConnection doesn't follow these for them
+    private static final int HTTP_TEMPORARY_REDIRECT = 307;
+    private static final int HTTP_PERMANENT_REDIRECT = 308;
+    private static final int MAX_REDIRECTS = 5;
+
+    // the errors are always JSON, whatever format the request asked for
+    private static final ObjectMapper ERROR_READER = new ObjectMapper();
+
+    private final PandapiClientSettings settings;
+    private final String serversUrl;
+    private final ServerFormat format;
+
+    // sends the requests, each one holds its thread (and its connection) until the whole response has been read
+    private final ListeningExecutorService requestExecutor;
+
+    // sends the hedges and the retries when they're due, and works out the hedge delay
+    private final ScheduledExecutorService scheduler;
+
+    // the gets in flight by server id, so concurrent gets of the same server share a request
+    private final ConcurrentMap<UUID, ListenableFuture<ServerDoc>> pendingGets = new ConcurrentHashMap<>();
+
+    // latencies of the gets since the hedge delay was last worked out
+    private final AtomicReference<LatencyHistogram> getLatencies = new AtomicReference<>(new LatencyHistogram());
+
+    // how long a get runs before it's sent again, never until there were enough gets to tell
+    private volatile long hedgeDelayNanos = Long.MAX_VALUE;
+
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    /**
+     * Constructor, with the default settings.
+     * @param baseUrl {@link String} where the API is, e.g. "http://localhost:8080"
+     */
+    public PandapiClient(final String baseUrl) {
+        this(settingsFor(baseUrl));
+    }
+
+    /**
+     * Constructor.
+     * @param settings {@link PandapiClientSettings}
+     */
+    public PandapiClient(final PandapiClientSettings settings) {
+        this.settings = settings;
+        this.serversUrl = settings.getBaseUrl().replaceAll("/+$", "") + SERVERS_PATH;
+        this.format = settings.getFormat();
+
+        // the JDK only keeps 5 idle connections per host by default, the rest would be reconnected every time (it only
+        // reads this before the first connection of the JVM, and it's up to the application if it was already set)
+        if (null == System.getProperty("http.maxConnections")) {
+            System.setProperty("http.maxConnections", Integer.toString(settings.getMaxConnections()));
+        }
+
+        this.requestExecutor = MoreExecutors.listeningDecorator(
+                Executors.newFixedThreadPool(settings.getMaxConnections(), daemonThreads("pandapi-client-%d")));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("pandapi-client-scheduler-%d"));
+
+        if (settings.getHedgePercentile() > 0) {
+            scheduler.scheduleAtFixedRate(this::updateHedgeDelay, settings.getHedgeWindowMillis(),
+                    settings.getHedgeWindowMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the default settings with the specified base URL.
+     * @param baseUrl {@link String}
+     * @return {@link PandapiClientSettings}
+     */
+    private static PandapiClientSettings settingsFor(final String baseUrl) {
+        PandapiClientSettings settings = new PandapiClientSettings();
+        settings.setBaseUrl(baseUrl);
+        return settings;
+    }
+
+    /**
+     * Returns a factory of daemon threads, so an application doesn't have to close the client to exit.
+     * @param nameFormat {@link String}
+     * @return {@link ThreadFactory}
+     */
+    private static ThreadFactory daemonThreads(final String nameFormat) {
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+    }
+
+    /**
+     * Creates a server.
+     * @param server {@link ServerDoc} with the name, cpus, ram, and disk space
+     * @return {@link ListenableFuture}<{@link ServerDoc}> the new server, with its id and state
+     */
+    public ListenableFuture<ServerDoc> createServer(final ServerDoc server) {
+        ServerPostRequest request = new ServerPostRequest();
+        request.setServer(server);
+
+        byte[] body;
+        try {
+            body = write(request);
+        } catch (IOException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+
+        // the same key for every retry, so a create that did go through (but whose response didn't) isn't done twice
+        Call call = new Call("POST", serversUrl, body, UUID.randomUUID().toString(),
+                settings.getReadTimeoutMillis(), false);
+
+        return Futures.transform(send(call), (Function<Response, ServerDoc>) response ->
+                read(response, ServerJsonReader::readServerGetResponse, HttpURLConnection.HTTP_CREATED,
+                        HttpURLConnection.HTTP_ACCEPTED).getServer());
+    }
+
+    /**
+     * Returns a server.  Shares the response with the other gets of the same server that are in flight.
+     * @param serverId {@link UUID}
+     * @return {@link ListenableFuture}<{@link ServerDoc}> fails with a 404 if there's no such server
+     */
+    public ListenableFuture<ServerDoc> getServer(final UUID serverId) {
+        ListenableFuture<ServerDoc> pending = pendingGets.get(serverId);
+
+        if (null == pending) {
+            SettableFuture<ServerDoc> get = SettableFuture.create();
+            pending = pendingGets.putIfAbsent(serverId, get);
+
+            if (null == pending) {
+                pending = get;
+                get.addListener(() -> pendingGets.remove(serverId, get), MoreExecutors.directExecutor());
+
+                Call call = new Call("GET", serversUrl + "/" + serverId, null, null,
+                        settings.getReadTimeoutMillis(), true);
+                forward(Futures.transform(sendHedged(call), (Function<Response, ServerDoc>) response ->
+                        read(response, ServerJsonReader::readServerGetResponse, HttpURLConnection.HTTP_OK)
+                                .getServer()), get);
+            }
+        }
+
+        // one caller cancelling its get mustn't cancel it for everyone else
+        return Futures.nonCancellationPropagating(pending);
+    }
+
+    /**
+     * Waits for a server to get to a state, e.g. for a new server to be running, with a long-poll.
+     * @param serverId {@link UUID}
+     * @param state {@link ServerStateDoc} to wait for
+     * @param timeoutMillis long to wait at most, the server may limit it further
+     * @return {@link ListenableFuture}<{@link ServerDoc}> the server once it's in the state, or as it is when the
+     * timeout runs out
+     */
+    public ListenableFuture<ServerDoc> waitForServer(final UUID serverId, final ServerStateDoc state,
+                                                     final long timeoutMillis) {
+        Call call = new Call("GET", serversUrl + "/" + serverId + "?waitFor=" + state + "&timeout=" + timeoutMillis
+                + "ms", null, null, (int) Math.min(Integer.MAX_VALUE, timeoutMillis + settings.getReadTimeoutMillis()),
+                false);
+
+        return Futures.transform(send(call), (Function<Response, ServerDoc>) response ->
+                read(response, ServerJsonReader::readServerGetResponse, HttpURLConnection.HTTP_OK).getServer());
+    }
+
+    /**
+     * Returns every server.
+     * @return {@link ListenableFuture}<{@link List}<{@link ServerDoc}>>
+     */
+    public ListenableFuture<List<ServerDoc>> getServers() {
+        Call call = new Call("GET", serversUrl, null, null, settings.getReadTimeoutMillis(), false);
+
+        return Futures.transform(send(call), (Function<Response, List<ServerDoc>>) response ->
+                read(response, ServerJsonReader::readServerGetListResponse, HttpURLConnection.HTTP_OK).getServers());
+    }
+
+    /**
+     * Deletes a server, which is destroyed in the background.
+     * @param serverId {@link UUID}
+     * @return {@link ListenableFuture}<{@link Void}> fails with a 404 if there's no such server
+     */
+    public ListenableFuture<Void> deleteServer(final UUID serverId) {
+        Call call = new Call("DELETE", serversUrl + "/" + serverId, null, null, settings.getReadTimeoutMillis(),
+                false);
+
+        return Futures.transform(send(call), (Function<Response, Void>) response -> {
+            if (response.status != HttpURLConnection.HTTP_NO_CONTENT) {
+                throw toException(response);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Returns the number of gets that were sent a second time.
+     * @return long
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * Returns the number of requests that were sent again after they failed.
+     * @return long
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * Stops taking requests.  The ones in flight are finished, but the retries and hedges that are due after this fail.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        requestExecutor.shutdown();
+    }
+
+    /**
+     * Works out how long a get runs before it's sent again, from the latencies of the gets since the last time.
+     */
+    private void updateHedgeDelay() {
+        LatencyHistogram latencies = getLatencies.getAndSet(new LatencyHistogram());
+
+        // otherwise the last delay stays, too few gets to tell
+        if (latencies.getCount() >= settings.getHedgeMinSamples()) {
+            hedgeDelayNanos = Math.max(latencies.getValueAtPercentile(settings.getHedgePercentile()),
+                    TimeUnit.MILLISECONDS.toNanos(settings.getMinHedgeDelayMillis()));
+        }
+    }
+
+    /**
+     * Sends a get, and once it's taken longer than the hedge delay, sends it again.  The first response wins.  A
+     * failure only counts once both requests have failed (each after its own retries).
+     * @param call {@link Call}
+     * @return {@link ListenableFuture}<{@link Response}>
+     */
+    private ListenableFuture<Response> sendHedged(final Call call) {
+        long delayNanos = hedgeDelayNanos;
+        ListenableFuture<Response> first = send(call);
+
+        if (Long.MAX_VALUE == delayNanos) {
+            return first;
+        }
+
+        SettableFuture<Response> result = SettableFuture.create();
+        AtomicReference<ListenableFuture<Response>> second = new AtomicReference<>();
+
+        FutureCallback<Response> callback = new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response response) {
+                result.set(response);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                ListenableFuture<Response> hedge = second.get();
+                if (first.isDone() && (null == hedge || hedge.isDone())) {
+                    result.setException(t);
+                }
+            }
+        };
+        Futures.addCallback(first, callback);
+
+        ScheduledFuture<?> timer;
+        try {
+            timer = scheduler.schedule(() -> {
+                if (!result.isDone()) {
+                    hedges.increment();
+                    second.set(send(call));
+                    Futures.addCallback(second.get(), callback);
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // closed, the first request is all there is
+            return first;
+        }
+
+        // the request that lost (and its retries) isn't needed anymore
+        result.addListener(() -> {
+            timer.cancel(false);
+            first.cancel(false);
+            ListenableFuture<Response> hedge = second.get();
+            if (null != hedge) {
+                hedge.cancel(false);
+            }
+        }, MoreExecutors.directExecutor());
+
+        return result;
+    }
+
+    /**
+     * Sends a request, and again if it fails to get through or gets a 503, as many times as the settings allow.
+     * @param call {@link Call}
+     * @return {@link ListenableFuture}<{@link Response}> the last response, or the last {@link IOException}
+     */
+    private ListenableFuture<Response> send(final Call call) {
+        SettableFuture<Response> result = SettableFuture.create();
+        attempt(call, 0, result);
+        return result;
+    }
+
+    /**
+     * Sends a request once, and schedules the next attempt if it needs one.
+     * @param call {@link Call}
+     * @param attempt int how many times it was already sent
+     * @param result {@link SettableFuture}<{@link Response}> completed once there are no more attempts
+     */
+    private void attempt(final Call call, final int attempt, final SettableFuture<Response> result) {
+        ListenableFuture<Response> response;
+        try {
+            response = requestExecutor.submit(() -> exchange(call));
+        } catch (RejectedExecutionException e) {
+            result.setException(e);
+            return;
+        }
+
+        Futures.addCallback(response, new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response response) {
+                if (response.status == HttpURLConnection.HTTP_UNAVAILABLE && attempt < settings.getMaxRetries()) {
+                    retry(call, attempt, result, response.retryAfterMillis);
+                } else {
+                    result.set(response);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (t instanceof IOException && attempt < settings.getMaxRetries()) {
+                    retry(call, attempt, result, 0);
+                } else {
+                    result.setException(t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Schedules the next attempt of a request.  The delay doubles with every attempt, with some jitter so the clients
+     * that failed together don't all come back at the same time.
+     * @param call {@link Call}
+     * @param attempt int how many times it was already sent
+     * @param result {@link SettableFuture}<{@link Response}>
+     * @param minDelayMillis long the server asked for, 0 if it didn't
+     */
+    private void retry(final Call call, final int attempt, final SettableFuture<Response> result,
+                       final long minDelayMillis) {
+        // e.g. the hedge that lost
+        if (result.isDone()) {
+            return;
+        }
+
+        long backoff = settings.getRetryBackoffMillis() << attempt;
+        long jitter = ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        long delayMillis = Math.max(minDelayMillis, backoff / 2 + jitter);
+
+        LOG.debug("Sending {} {} again in {}ms", call.method, call.url, delayMillis);
+        retries.increment();
+
+        try {
+            scheduler.schedule(() -> attempt(call, attempt + 1, result), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            result.setException(e);
+        }
+    }
+
+    /**
+     * Sends a request and reads the whole response, following the temporary and permanent redirects (e.g. of a write
+     * sent to a replica).
+     * @param call {@link Call}
+     * @return {@link Response}
+     * @throws IOException if the server couldn't be reached or the connection broke
+     */
+    private Response exchange(final Call call) throws IOException {
+        long start = System.nanoTime();
+        URL url = new URL(call.url);
+
+        for (int redirects = 0; ; redirects++) {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod(call.method);
+            connection.setInstanceFollowRedirects(false);
+            connection.setConnectTimeout(settings.getConnectTimeoutMillis());
+            connection.setReadTimeout(call.readTimeoutMillis);
+            connection.setRequestProperty("Accept", format.getMediaType().toString());
+
+            if (null != call.idempotencyKey) {
+                connection.setRequestProperty(IDEMPOTENCY_KEY_HEADER, call.idempotencyKey);
+            }
+
+            if (null != call.body) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", format.getMediaType().toString());
+                connection.setFixedLengthStreamingMode(call.body.length);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(call.body);
+                }
+            }
+
+            int status = connection.getResponseCode();
+
+            // error responses have their body in the error stream (and 204s have none at all), either way it has to
+            // be read to the end for the connection to be reused
+            InputStream in = status < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getInputStream()
+                    : connection.getErrorStream();
+            byte[] body = null == in ? new byte[0] : readFully(in);
+
+            String location = connection.getHeaderField("Location");
+            if ((status == HTTP_TEMPORARY_REDIRECT || status == HTTP_PERMANENT_REDIRECT) && null != location
+                    && redirects < MAX_REDIRECTS) {
+                url = new URL(url, location);
+                continue;
+            }
+
+            if (call.hedged && status < HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                getLatencies.get().recordSince(start);
+            }
+
+            return new Response(status, body, parseRetryAfter(connection.getHeaderField("Retry-After")));
+        }
+    }
+
+    /**
+     * Parses a "Retry-After" header with a number of seconds in it.
+     * @param retryAfter {@link String} may be null
+     * @return long milliseconds, 0 if there's none (or it's a date)
+     */
+    private static long parseRetryAfter(final String retryAfter) {
+        if (null == retryAfter) {
+            return 0;
+        }
+
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads and closes the stream.
+     * @param in {@link InputStream}
+     * @return byte[]
+     * @throws IOException
+     */
+    private static byte[] readFully(final InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Writes a request in the client's format.
+     * @param request {@link ServerPostRequest}
+     * @return byte[]
+     * @throws IOException
+     */
+    private byte[] write(final ServerPostRequest request) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        try (JsonGenerator generator = format.createGenerator(out)) {
+            ServerJsonWriter.writeServerPostRequest(generator, request);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads the document in a response, if the response has one of the expected statuses.
+     * @param response {@link Response}
+     * @param reader {@link DocumentReader} of the document
+     * @param expectedStatuses int... of a successful response
+     * @param <T> type of the document
+     * @return T
+     * @throws PandapiClientException if the status isn't one of the expected ones, or the document can't be read
+     */
+    private <T> T read(final Response response, final DocumentReader<T> reader, final int... expectedStatuses) {
+        for (int expected : expectedStatuses) {
+            if (response.status == expected) {
+                try (JsonParser parser = format.createParser(new ByteArrayInputStream(response.body))) {
+                    return reader.read(parser);
+                } catch (BadRequestException e) {
+                    throw new PandapiClientException(response.status, "Unreadable response: " + e.getMessage());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        throw toException(response);
+    }
+
+    /**
+     * Turns an unexpected response into an exception, with the error the API sent.
+     * @param response {@link Response}
+     * @return {@link PandapiClientException}
+     */
+    private static PandapiClientException toException(final Response response) {
+        String message;
+        try {
+            message = ERROR_READER.readValue(response.body, ErrorMessageDoc.class).getError();
+        } catch (IOException e) {
+            // not one of ours, e.g. from Jetty itself
+            message = new String(response.body, StandardCharsets.UTF_8);
+        }
+
+        return new PandapiClientException(response.status, message);
+    }
+
+    /**
+     * Completes a future with the outcome of another.
+     * @param from {@link ListenableFuture}<T>
+     * @param to {@link SettableFuture}<T>
+     * @param <T> type of the result
+     */
+    private static <T> void forward(final ListenableFuture<T> from, final SettableFuture<T> to) {
+        Futures.addCallback(from, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                to.set(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                to.setException(t);
+            }
+        });
+    }
+
+    /**
+     * Reads a document from a parser, i.e. one of the {@link ServerJsonReader} methods.
+     * @param <T> type of the document
+     */
+    @FunctionalInterface
+    private interface DocumentReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * A request to send, as many times as it takes.
+     */
+    private static class Call {
+
+        private final String method;
+        private final String url;
+        private final byte[] body;
+        private final String idempotencyKey;
+        private final int readTimeoutMillis;
+
+        // whether it's a get whose latency counts towards the hedge delay
+        private final boolean hedged;
+
+        Call(final String method, final String url, final byte[] body, final String idempotencyKey,
+             final int readTimeoutMillis, final boolean hedged) {
+            this.method = method;
+            this.url = url;
+            this.body = body;
+            this.idempotencyKey = idempotencyKey;
+            this.readTimeoutMillis = readTimeoutMillis;
+            this.hedged = hedged;
+        }
+    }
+
+    /**
+     * Status and body of a response.
+     */
+    private static class Response {
+
+        private final int status;
+        private final byte[] body;
+
+        // how long the server asked to wait before trying again, 0 if it didn't
+        private final long retryAfterMillis;
+
+        Response(final int status, final byte[] body, final long retryAfterMillis) {
+            this.status = status;
+            this.body = body;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+}
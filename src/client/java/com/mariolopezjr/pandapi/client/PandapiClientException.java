@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.client;
+
+/**
+ * Thrown (as the cause of a failed future) when the API turned a request down, e.g. a 404 for a server that doesn't
+ * exist, a 400 for an invalid one, or a 503 that was still there after the retries.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class PandapiClientException extends RuntimeException {
+
+    private final int status;
+
+    /**
+     * Constructor.
+     * @param status int HTTP status of the response
+     * @param message {@link String} the error from the response
+     */
+    public PandapiClientException(final int status, final String message) {
+        super(status + ": " + message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
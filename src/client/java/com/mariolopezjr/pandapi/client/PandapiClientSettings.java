@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.client;
+
+import com.mariolopezjr.pandapi.web.codec.ServerFormat;
+
+/**
+ * Settings for a {@link PandapiClient}.  Every setting has a default, so only the ones that matter need to be set.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class PandapiClientSettings {
+
+    // where the API is, without the "/v1/servers"
+    private String baseUrl = "http://localhost:8080";
+
+    // what the documents are sent and received as, the server only has JSON already rendered though
+    private ServerFormat format = ServerFormat.JSON;
+
+    // requests in flight at most (each one holds a connection until its response is read), the rest wait their turn
+    private int maxConnections = 16;
+
+    private int connectTimeoutMillis = 1000;
+    private int readTimeoutMillis = 5000;
+
+    // requests that don't get through, or get a 503, are sent again this many times at most, after a delay that
+    // starts here and doubles every time (or whatever the "Retry-After" header says, if that's longer)
+    private int maxRetries = 3;
+    private long retryBackoffMillis = 50;
+
+    // a get that takes longer than this percentile of the recent gets is sent again, and the first response wins,
+    // 0 turns it off
+    private double hedgePercentile = 95.0;
+
+    // the percentile is worked out again every window, as long as there were enough gets in it to tell
+    private long hedgeWindowMillis = 10_000;
+    private int hedgeMinSamples = 100;
+
+    // gets are never sent again sooner than this
+    private long minHedgeDelayMillis = 1;
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public ServerFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(ServerFormat format) {
+        this.format = format;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public void setReadTimeoutMillis(int readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public void setHedgePercentile(double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    public long getHedgeWindowMillis() {
+        return hedgeWindowMillis;
+    }
+
+    public void setHedgeWindowMillis(long hedgeWindowMillis) {
+        this.hedgeWindowMillis = hedgeWindowMillis;
+    }
+
+    public int getHedgeMinSamples() {
+        return hedgeMinSamples;
+    }
+
+    public void setHedgeMinSamples(int hedgeMinSamples) {
+        this.hedgeMinSamples = hedgeMinSamples;
+    }
+
+    public long getMinHedgeDelayMillis() {
+        return minHedgeDelayMillis;
+    }
+
+    public void setMinHedgeDelayMillis(long minHedgeDelayMillis) {
+        this.minHedgeDelayMillis = minHedgeDelayMillis;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.integrationtests.client
+
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import com.mariolopezjr.pandapi.client.PandapiClient
+import com.mariolopezjr.pandapi.client.PandapiClientException
+import com.mariolopezjr.pandapi.client.PandapiClientSettings
+import com.mariolopezjr.pandapi.web.codec.ServerFormat
+import com.mariolopezjr.pandapi.web.document.server.ServerDoc
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Timeout
+import spock.lang.Unroll
+
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests the {@link PandapiClient} against the running server.
+ *
+ * These include:
+ * - Verifying servers can be created and retrieved in every format
+ * - Verifying the errors of the API come back as {@link PandapiClientException}s
+ * - Verifying the gets are hedged once the client knows how long they take
+ * - Verifying retried creates only create the server once
+ *
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class PandapiClientSpec extends Specification {
+
+    // REST server details
+    static private final String SERVER_BASE_URL = 'http://localhost:8080'
+
+    // nothing should be listening here
+    static private final String UNREACHABLE_BASE_URL = 'http://localhost:1'
+
+    @Shared
+    private PandapiClient client = new PandapiClient(SERVER_BASE_URL)
+
+    def cleanupSpec() {
+        client.close()
+    }
+
+    @Unroll
+    @Timeout(5)
+    def "create and retrieve a server as #format"() {
+        given: "a client for the format"
+        PandapiClient formatClient = new PandapiClient(new PandapiClientSettings(baseUrl: SERVER_BASE_URL,
+                format: format))
+
+        when: "a server is created"
+        ServerDoc created = formatClient.createServer(newServer('client')).get()
+
+        then: "it's building, with the values it was created with"
+        created.id
+        created.name == 'client'
+        created.cpus == 1
+        created.state == ServerStateDoc.Building
+
+        when: "it's retrieved, on its own and in the list"
+        ServerDoc retrieved = formatClient.getServer(created.id).get()
+        List<ServerDoc> servers = formatClient.getServers().get()
+
+        then: "it's the same server"
+        retrieved.id == created.id
+        retrieved.name == 'client'
+        servers*.id.contains(created.id)
+
+        cleanup:
+        formatClient.close()
+
+        where:
+        format << ServerFormat.values()
+    }
+
+    @Timeout(5)
+    def "wait for a server that takes longer than the timeout"() {
+        given: "a server that was just created"
+        ServerDoc created = client.createServer(newServer('waiting')).get()
+
+        when: "the client waits a moment for it to be running"
+        ServerDoc server = client.waitForServer(created.id, ServerStateDoc.Running, 200).get()
+
+        then: "it's still building"
+        server.id == created.id
+        server.state == ServerStateDoc.Building
+    }
+
+    def "create an invalid server"() {
+        when: "a server without a name is created"
+        client.createServer(new ServerDoc(cpus: 1, ram: 1, diskSpace: 1)).get()
+
+        then: "it's a bad request"
+        ExecutionException e = thrown()
+        e.cause instanceof PandapiClientException
+        (e.cause as PandapiClientException).status == 400
+        e.cause.message == '400: name must be specified'
+    }
+
+    @Timeout(5)
+    def "delete a server that's still building"() {
+        given: "a server that was just created"
+        ServerDoc created = client.createServer(newServer('building')).get()
+
+        when: "it's deleted"
+        client.deleteServer(created.id).get()
+
+        then: "it's a bad request, it has to be running first"
+        ExecutionException e = thrown()
+        e.cause.message == '400: Only servers in the running state can be destroyed'
+    }
+
+    def "retrieve a server that doesn't exist"() {
+        when: "an id nobody has is retrieved"
+        client.getServer(UUID.randomUUID()).get()
+
+        then: "it's not found"
+        ExecutionException e = thrown()
+        (e.cause as PandapiClientException).status == 404
+    }
+
+    @Timeout(10)
+    def "concurrent gets of the same server all get it"() {
+        given: "a server"
+        ServerDoc created = client.createServer(newServer('popular')).get()
+
+        when: "it's retrieved many times at once"
+        List<ListenableFuture<ServerDoc>> gets = (1..200).collect { client.getServer(created.id) }
+        List<ServerDoc> servers = Futures.allAsList(gets).get()
+
+        then: "every get has it"
+        servers.every { it.id == created.id }
+    }
+
+    @Timeout(30)
+    def "gets are hedged once the client knows how long they take"() {
+        given: "a client that sends every get that takes longer than the median again, after 20 gets"
+        PandapiClient hedgingClient = new PandapiClient(new PandapiClientSettings(baseUrl: SERVER_BASE_URL,
+                hedgePercentile: 50, hedgeWindowMillis: 100, hedgeMinSamples: 20, minHedgeDelayMillis: 0))
+
+        and: "a server to get"
+        ServerDoc created = hedgingClient.createServer(newServer('hedged')).get()
+
+        when: "it's retrieved one at a time for a while"
+        List<ServerDoc> servers = []
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2)
+        while (System.nanoTime() < end) {
+            servers << hedgingClient.getServer(created.id).get()
+        }
+
+        then: "some of them were sent again, and every one got the server"
+        hedgingClient.hedgeCount > 0
+        servers.every { it.id == created.id }
+
+        cleanup:
+        hedgingClient.close()
+    }
+
+    @Timeout(10)
+    def "requests that don't get through are retried"() {
+        given: "a client for a server that isn't there"
+        PandapiClient unreachableClient = new PandapiClient(new PandapiClientSettings(
+                baseUrl: UNREACHABLE_BASE_URL, maxRetries: 2, retryBackoffMillis: 10))
+
+        when: "a server is created"
+        unreachableClient.createServer(newServer('unreachable')).get()
+
+        then: "it failed to connect after every retry"
+        ExecutionException e = thrown()
+        e.cause instanceof ConnectException
+        unreachableClient.retryCount == 2
+
+        cleanup:
+        unreachableClient.close()
+    }
+
+    @Timeout(5)
+    def "a create sent again with the same idempotency key gets the same server"() {
+        given: "a request with a key"
+        String key = UUID.randomUUID().toString()
+        String body = '{"server":{"name":"once","cpus":1,"ram":1,"diskSpace":1}}'
+
+        when: "it's sent twice, as a client would retry it"
+        String first = post(body, key)
+        String second = post(body, key)
+
+        then: "both responses are for the one server"
+        first == second
+        first.contains('"name":"once"')
+    }
+
+    /**
+     * Returns a server to create.
+     * @param name {@link String}
+     * @return {@link ServerDoc}
+     */
+    private static ServerDoc newServer(final String name) {
+        return new ServerDoc(name: name, cpus: 1, ram: 1, diskSpace: 1)
+    }
+
+    /**
+     * Sends a create with an idempotency key.
+     * @param body {@link String} the request
+     * @param key {@link String}
+     * @return {@link String} the response
+     */
+    private static String post(final String body, final String key) {
+        HttpURLConnection connection = new URL("${SERVER_BASE_URL}/v1/servers").openConnection() as HttpURLConnection
+        connection.requestMethod = 'POST'
+        connection.doOutput = true
+        connection.setRequestProperty('Content-Type', 'application/json')
+        connection.setRequestProperty('Idempotency-Key', key)
+        connection.outputStream.withStream { it << body }
+
+        assert connection.responseCode == 202
+        return connection.inputStream.text
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.benchmark;
+
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.data.server.ServerState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Servers for the benchmarks to work with.  Always the same ones for the same count, so runs are comparable.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public final class SampleServers {
+
+    private SampleServers() {
+        // static methods only
+    }
+
+    /**
+     * Creates the specified number of servers, with ids, in every state.
+     * @param count int
+     * @return {@link List}<{@link Server}> in no particular order
+     */
+    public static List<Server> create(final int count) {
+        Random random = new Random(count);
+        List<Server> servers = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            Server server = createWithoutId(i);
+            server.setId(new UUID(random.nextLong(), random.nextLong()));
+            servers.add(server);
+        }
+
+        return servers;
+    }
+
+    /**
+     * Creates a server without an id, i.e. what a create request turns into.
+     * @param index int used to vary the properties
+     * @return {@link Server}
+     */
+    public static Server createWithoutId(final int index) {
+        Server server = new Server();
+        server.setName("server-" + index);
+        server.setCpus(1 + index % 16);
+        server.setRam(2 + index % 64);
+        server.setDiskSpace(20 + index % 500);
+        server.setState(ServerState.values()[index % ServerState.values().length]);
+        server.setVersion(index + 1);
+
+        return server;
+    }
+}
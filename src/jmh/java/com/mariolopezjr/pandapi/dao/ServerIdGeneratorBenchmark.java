@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each {@link ServerIdGenerator}, at several thread counts, to show what sharing the random number generator costs
+ * once more than one thread creates servers.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class ServerIdGeneratorBenchmark {
+
+    @Param({"RANDOM", "TIME_ORDERED"})
+    private ServerIdGenerator generator;
+
+    @Benchmark
+    public UUID nextId() {
+        return generator.nextId();
+    }
+
+    @Threads(1)
+    public static class OneThread extends ServerIdGeneratorBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends ServerIdGeneratorBenchmark {
+    }
+
+    @Threads(16)
+    public static class SixteenThreads extends ServerIdGeneratorBenchmark {
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.impl;
+
+import com.mariolopezjr.pandapi.benchmark.SampleServers;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes of the {@link ServerInMemoryDao}.  The benchmarks are defined once and run at several thread counts
+ * by the subclasses, to show how they hold up under contention.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class ServerInMemoryDaoBenchmark {
+
+    // servers in the data store
+    @Param({"1000"})
+    private int serverCount;
+
+    private ServerInMemoryDao dao;
+
+    // what's in the data store, to pick from
+    private Server[] servers;
+
+    /**
+     * Fills the data store.
+     */
+    @Setup
+    public void setUp() {
+        dao = new ServerInMemoryDao(new BaseConfiguration(), new MetricsRegistry());
+
+        List<Server> created = SampleServers.create(serverCount);
+        servers = new Server[serverCount];
+
+        for (int i = 0; i < serverCount; i++) {
+            Server server = created.get(i);
+            server.setId(null);
+            servers[i] = dao.createServer(server);
+        }
+    }
+
+    @Benchmark
+    public Server getServerById() {
+        return dao.getServerById(randomServer().getId());
+    }
+
+    @Benchmark
+    public List<Server> getAllServers() {
+        return dao.getAllServers();
+    }
+
+    @Benchmark
+    public void iterateServers(final Blackhole blackhole) {
+        Iterator<Server> iterator = dao.iterateServers();
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    public boolean updateServer() {
+        return dao.updateServer(randomServer());
+    }
+
+    @Benchmark
+    public boolean createAndDeleteServer() {
+        // deleted right away so the data store doesn't grow from one iteration to the next
+        return dao.deleteServer(dao.createServer(SampleServers.createWithoutId(0)).getId());
+    }
+
+    /**
+     * Picks one of the servers in the data store.
+     * @return {@link Server}
+     */
+    private Server randomServer() {
+        return servers[ThreadLocalRandom.current().nextInt(servers.length)];
+    }
+
+    @Threads(1)
+    public static class OneThread extends ServerInMemoryDaoBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends ServerInMemoryDaoBenchmark {
+    }
+
+    @Threads(16)
+    public static class SixteenThreads extends ServerInMemoryDaoBenchmark {
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.data.server;
+
+import com.mariolopezjr.pandapi.benchmark.SampleServers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Server#clone()}, which the DAO does on every read and write, and {@link Server#compareTo(Server)}.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerBenchmark {
+
+    private Server server;
+
+    // same as the server except for the id
+    private Server otherId;
+
+    // same as the server except for the state, the last property compared
+    private Server otherState;
+
+    /**
+     * Creates the servers.
+     */
+    @Setup
+    public void setUp() {
+        server = SampleServers.create(1).get(0);
+
+        otherId = server.clone();
+        otherId.setId(SampleServers.create(2).get(1).getId());
+
+        otherState = server.clone();
+        otherState.setState(ServerState.DESTROYED == server.getState() ? ServerState.RUNNING : ServerState.DESTROYED);
+    }
+
+    @Benchmark
+    public Server cloneServer() {
+        return server.clone();
+    }
+
+    @Benchmark
+    public int compareToDifferentId() {
+        return server.compareTo(otherId);
+    }
+
+    @Benchmark
+    public int compareToDifferentState() {
+        return server.compareTo(otherState);
+    }
+}
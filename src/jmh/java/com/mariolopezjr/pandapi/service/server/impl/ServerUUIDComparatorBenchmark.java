@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.service.server.impl;
+
+import com.mariolopezjr.pandapi.benchmark.SampleServers;
+import com.mariolopezjr.pandapi.data.server.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting servers with the {@link ServerUUIDComparator}, i.e. what getAllServersSortedById() does on top of the DAO.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerUUIDComparatorBenchmark {
+
+    @Param({"100", "10000"})
+    private int serverCount;
+
+    private final ServerUUIDComparator comparator = new ServerUUIDComparator();
+
+    // in no particular order, like the DAO returns them
+    private List<Server> servers;
+
+    /**
+     * Creates the servers.
+     */
+    @Setup
+    public void setUp() {
+        servers = SampleServers.create(serverCount);
+    }
+
+    @Benchmark
+    public List<Server> sort() {
+        // the sort is in place, so always start from the unsorted list
+        List<Server> sorted = new ArrayList<>(servers);
+        Collections.sort(sorted, comparator);
+
+        return sorted;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UuidParser} against {@link UUID#fromString(String)}, for a valid id and for a malformed one (where
+ * fromString throws).  Run with "-prof gc" to see the allocations too.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UuidParserBenchmark {
+
+    private String valid = "ada94535-a3a9-4b2c-a383-f36b0bbaab44";
+
+    private String malformed = "ada94535-a3a9-4b2c-a383-f36b0bbaab4z";
+
+    @Benchmark
+    public UUID parseValid() {
+        return UuidParser.parse(valid);
+    }
+
+    @Benchmark
+    public UUID fromStringValid() {
+        return UUID.fromString(valid);
+    }
+
+    @Benchmark
+    public UUID parseMalformed() {
+        return UuidParser.parse(malformed);
+    }
+
+    @Benchmark
+    public UUID fromStringMalformed() {
+        try {
+            return UUID.fromString(malformed);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mariolopezjr.pandapi.benchmark.SampleServers;
+import com.mariolopezjr.pandapi.dao.ServerDao;
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
+import com.mariolopezjr.pandapi.web.document.server.ServerGetResponse;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The work behind a single server GET: from the cached JSON bytes, and the way it was done before the cache (parse the
+ * id with {@link UUID#fromString(String)}, read a clone from the DAO, map it to documents, and serialize them with
+ * Jackson's data binding).  Run with "-prof gc" to see the allocations per request, which is the point of the cache.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerJsonCacheBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private ServerDao dao;
+
+    private ServerJsonCache cache;
+
+    // as it would come from the request path
+    private String serverId;
+
+    // stands in for the response, reused so only the work for the request is measured
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1_024);
+
+    /**
+     * Fills the DAO, which fills the cache.
+     */
+    @Setup
+    public void setUp() {
+        dao = new ServerInMemoryDao(new BaseConfiguration(), new MetricsRegistry());
+        cache = new ServerJsonCache(dao);
+
+        List<Server> servers = SampleServers.create(1_000);
+        for (Server server : servers) {
+            server.setId(null);
+            Server created = dao.createServer(server);
+            if (null == serverId) {
+                serverId = created.getId().toString();
+            }
+        }
+    }
+
+    @Benchmark
+    public int getFromCache() throws IOException {
+        out.reset();
+        out.write(cache.get(serverId).getJson());
+
+        return out.size();
+    }
+
+    @Benchmark
+    public int getWithDataBinding() throws IOException {
+        out.reset();
+        Server server = dao.getServerById(UUID.fromString(serverId));
+        MAPPER.writeValue(out, ServerGetResponse.fromDomainObject(server));
+
+        return out.size();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mariolopezjr.pandapi.benchmark.SampleServers;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.web.document.server.ServerGetListResponse;
+import com.mariolopezjr.pandapi.web.document.server.ServerGetResponse;
+import com.mariolopezjr.pandapi.web.document.server.ServerPostRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding the server documents in every {@link ServerFormat}, with the streaming codec
+ * ({@link ServerJsonWriter} and {@link ServerJsonReader}) and, for comparison, with Jackson's data binding (what the
+ * APIs used before the codec).  Run with "-prof gc" to see the allocations too.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerCodecBenchmark {
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    private ServerFormat format;
+
+    // data binding for the same format, with a factory of its own so the shared one isn't reconfigured
+    private ObjectMapper mapper;
+
+    private Server server;
+    private List<Server> servers;
+    private ServerGetResponse getResponse;
+    private ServerGetListResponse listResponse;
+
+    // an encoded create request
+    private byte[] postRequest;
+
+    // reused, so only the encoding itself is measured
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(256 * 1024);
+
+    /**
+     * Creates the documents and the encoded request.
+     * @throws IOException
+     */
+    @Setup
+    public void setUp() throws IOException {
+        mapper = new ObjectMapper(format.getFactory().copy());
+
+        servers = SampleServers.create(1_000);
+        server = servers.get(0);
+        getResponse = ServerGetResponse.fromDomainObject(server);
+        listResponse = ServerGetListResponse.fromDomainObject(servers);
+
+        ServerPostRequest request = new ServerPostRequest();
+        request.setServer(getResponse.getServer());
+        postRequest = mapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public int writeServerWithCodec() throws IOException {
+        out.reset();
+        try (JsonGenerator generator = format.createGenerator(out)) {
+            ServerJsonWriter.writeServerGetResponse(generator, getResponse);
+        }
+
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeServerWithDataBinding() throws IOException {
+        out.reset();
+        mapper.writeValue(out, getResponse);
+
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeServerListWithCodec() throws IOException {
+        out.reset();
+        try (JsonGenerator generator = format.createGenerator(out)) {
+            // straight from the domain objects, the way the list API streams them
+            ServerJsonWriter.writeServerList(generator, servers.iterator(), ServerField.ALL);
+        }
+
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeServerListWithDataBinding() throws IOException {
+        out.reset();
+        mapper.writeValue(out, listResponse);
+
+        return out.size();
+    }
+
+    @Benchmark
+    public ServerPostRequest readPostRequestWithCodec() throws IOException {
+        try (JsonParser parser = format.getFactory().createParser(postRequest)) {
+            return ServerJsonReader.readServerPostRequest(parser);
+        }
+    }
+
+    @Benchmark
+    public ServerPostRequest readPostRequestWithDataBinding() throws IOException {
+        return mapper.readValue(postRequest, ServerPostRequest.class);
+    }
+}
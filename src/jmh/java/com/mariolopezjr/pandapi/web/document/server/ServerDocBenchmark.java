@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.document.server;
+
+import com.mariolopezjr.pandapi.benchmark.SampleServers;
+import com.mariolopezjr.pandapi.data.server.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping domain objects to the documents the APIs return.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerDocBenchmark {
+
+    private Server server;
+
+    private ServerDoc doc;
+
+    private List<Server> servers;
+
+    /**
+     * Creates the servers.
+     */
+    @Setup
+    public void setUp() {
+        servers = SampleServers.create(1_000);
+        server = servers.get(0);
+        doc = ServerDoc.fromDomainObject(server);
+    }
+
+    @Benchmark
+    public ServerDoc fromDomainObject() {
+        return ServerDoc.fromDomainObject(server);
+    }
+
+    @Benchmark
+    public ServerGetListResponse listFromDomainObjects() {
+        return ServerGetListResponse.fromDomainObject(servers);
+    }
+
+    @Benchmark
+    public Server toDomainObject() {
+        return doc.toDomainObject();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.providers;
+
+import com.mariolopezjr.pandapi.benchmark.SampleServers;
+import com.mariolopezjr.pandapi.dao.ServerDao;
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.exception.BadRequestException;
+import com.mariolopezjr.pandapi.exception.ResourceNotFoundException;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
+import com.mariolopezjr.pandapi.service.server.ServerService;
+import com.mariolopezjr.pandapi.service.server.impl.ServerServiceImpl;
+import com.mariolopezjr.pandapi.web.cache.ServerJsonCache;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Throughput of a server GET that is found (200), not found (404) and has a malformed id (400), from the service call
+ * to the bytes of the response body.  The errors go through their exception mappers, and are also measured with a
+ * stack trace, the way they used to be.  The requests run the given number of frames deep, since a stack trace costs
+ * more the deeper it's thrown, and Jetty and Jersey put about a hundred frames under every resource method.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorResponseBenchmark {
+
+    // frames under the resource method
+    @Param({"10", "100"})
+    private int depth;
+
+    private ServerService service;
+
+    private ServerJsonCache cache;
+
+    private final ResourceNotFoundExceptionMapper notFoundMapper = new ResourceNotFoundExceptionMapper();
+    private final BadRequestExceptionMapper badRequestMapper = new BadRequestExceptionMapper();
+
+    // as they would come from the request path
+    private String knownId;
+    private final String unknownId = UUID.randomUUID().toString();
+    private final String malformedId = "not-a-server-id";
+
+    // stands in for the response, reused so only the work for the request is measured
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1_024);
+
+    /**
+     * Fills the DAO, which fills the cache.
+     */
+    @Setup
+    public void setUp() {
+        ServerDao dao = new ServerInMemoryDao(new BaseConfiguration(), new MetricsRegistry());
+        cache = new ServerJsonCache(dao);
+        service = new ServerServiceImpl(dao, new BaseConfiguration(), new MetricsRegistry());
+
+        for (Server server : SampleServers.create(1_000)) {
+            server.setId(null);
+            Server created = dao.createServer(server);
+            if (null == knownId) {
+                knownId = created.getId().toString();
+            }
+        }
+    }
+
+    @Benchmark
+    public int found() {
+        return atDepth(depth, () -> {
+            Server server = service.getServerById(knownId);
+            return cache.get(server.getId(), server.getVersion()).getJson();
+        });
+    }
+
+    @Benchmark
+    public int notFound() {
+        return atDepth(depth, () -> {
+            try {
+                service.getServerById(unknownId);
+                throw new IllegalStateException("The server shouldn't exist");
+            } catch (ResourceNotFoundException e) {
+                return (byte[]) notFoundMapper.toResponse(e).getEntity();
+            }
+        });
+    }
+
+    @Benchmark
+    public int malformedId() {
+        return atDepth(depth, () -> {
+            try {
+                service.getServerById(malformedId);
+                throw new IllegalStateException("The server id should be malformed");
+            } catch (BadRequestException e) {
+                return (byte[]) badRequestMapper.toResponse(e).getEntity();
+            }
+        });
+    }
+
+    @Benchmark
+    public int notFoundWithStackTrace() {
+        return atDepth(depth, () -> {
+            try {
+                try {
+                    service.getServerById(unknownId);
+                    throw new IllegalStateException("The server shouldn't exist");
+                } catch (ResourceNotFoundException e) {
+                    // what every 404 cost before
+                    throw new RuntimeException(e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                Response response = Response.status(Response.Status.NOT_FOUND)
+                        .entity(ErrorResponses.render(e.getMessage()))
+                        .build();
+                return (byte[]) response.getEntity();
+            }
+        });
+    }
+
+    /**
+     * Handles the request the specified number of frames down, and writes the response body.
+     * @param frames int
+     * @param request {@link Supplier} of the response body
+     * @return int the size of the response body
+     */
+    private int atDepth(final int frames, final Supplier<byte[]> request) {
+        if (frames > 0) {
+            return atDepth(frames - 1, request);
+        }
+
+        out.reset();
+        try {
+            out.write(request.get());
+        } catch (IOException e) {
+            // not possible with a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+
+        return out.size();
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import com.mariolopezjr.pandapi.metrics.LatencyHistogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a cluster of pandapi JARs as local processes, measures the write throughput, kills the leader, measures how
+ * long it takes until writes are accepted again, and checks that none of the acknowledged writes were lost.  Every
+ * node gets its own directory (with a copy of the config, rewritten for its ports) under the work directory.<br/>
+ *
+ * Settings are read from "clusterTest.*" properties, the Gradle task passes its project properties along as those.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ClusterTest {
+
+    private static final String PREFIX = "clusterTest.";
+
+    private static final byte[] CREATE_BODY =
+            "{\"server\":{\"name\":\"clusterTest\",\"cpus\":1,\"ram\":1,\"diskSpace\":1}}"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private static final Pattern LEADER = Pattern.compile("(?m)^pandapi_cluster_leader\\s+1(\\.0)?\\s*$");
+
+    private final int nodes;
+    private final int writes;
+    private final int concurrency;
+    private final File jar;
+    private final File configDir;
+    private final File workDir;
+    private final int httpBasePort;
+    private final int clusterBasePort;
+    private final int shutdownBasePort;
+    private final int timeoutMillis;
+    private final int startTimeoutSeconds;
+
+    // identifiers of the servers the cluster acknowledged creating
+    private final Set<String> acknowledged = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor.
+     * @param properties {@link Properties} anything that isn't set gets its default
+     */
+    public ClusterTest(final Properties properties) {
+        // 3 or 5, the cluster survives losing fewer than half of them
+        nodes = getInt(properties, "nodes", 3);
+        writes = getInt(properties, "writes", 5000);
+        concurrency = getInt(properties, "concurrency", 16);
+
+        jar = new File(properties.getProperty(PREFIX + "jar", "build/libs/pandapi.jar"));
+        configDir = new File(properties.getProperty(PREFIX + "configDir", "src/main/resources/config"));
+        workDir = new File(properties.getProperty(PREFIX + "workDir", "build/clustertest"));
+
+        // node i listens on base port + i for each of these
+        httpBasePort = getInt(properties, "httpBasePort", 18080);
+        clusterBasePort = getInt(properties, "clusterBasePort", 19080);
+        shutdownBasePort = getInt(properties, "shutdownBasePort", 18180);
+
+        timeoutMillis = getInt(properties, "timeoutMillis", 15_000);
+        startTimeoutSeconds = getInt(properties, "startTimeoutSeconds", 60);
+    }
+
+    /**
+     * Runs the cluster test with the settings from the system properties.
+     * @param args ignored
+     * @throws Exception if the test couldn't be run
+     */
+    public static void main(final String[] args) throws Exception {
+        boolean passed = new ClusterTest(System.getProperties()).run();
+
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Starts the cluster, runs the test, and stops the cluster again.
+     * @return boolean true if the cluster failed over without losing any acknowledged writes
+     * @throws Exception if the cluster couldn't be started
+     */
+    public boolean run() throws Exception {
+        try (LocalNodes cluster = new LocalNodes(jar, configDir, workDir, httpBasePort, shutdownBasePort,
+                timeoutMillis, concurrency * 2)) {
+            startCluster(cluster);
+
+            System.out.printf("Creating %d servers, %d at a time, spread over the nodes%n", writes, concurrency);
+            measureWrites(cluster);
+
+            return failOver(cluster) && checkWrites(cluster);
+        }
+    }
+
+    /**
+     * Starts every node with the cluster turned on, and waits until they're all ready.
+     * @param cluster {@link LocalNodes}
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void startCluster(final LocalNodes cluster) throws IOException, InterruptedException {
+        StringBuilder members = new StringBuilder();
+        for (int i = 1; i <= nodes; i++) {
+            members.append(i == 1 ? "" : ", ").append(i).append("=localhost:").append(clusterBasePort + i);
+        }
+
+        for (int i = 1; i <= nodes; i++) {
+            String nodeId = Integer.toString(i);
+            cluster.start(i, xml -> LocalNodes.replace(LocalNodes.replace(LocalNodes.enable(xml, "cluster"),
+                    "nodeId", nodeId), "members", members.toString()));
+        }
+
+        System.out.printf("Started %d nodes in %s, waiting for them to be ready%n", nodes, workDir);
+        cluster.awaitReady(startTimeoutSeconds);
+    }
+
+    /**
+     * Creates the servers from a number of threads at once, round robin over the nodes (so most of the writes are
+     * forwarded to the leader), and reports the throughput and the latencies.
+     * @param cluster {@link LocalNodes}
+     * @throws InterruptedException
+     * @throws ExecutionException if a thread failed
+     */
+    private void measureWrites(final LocalNodes cluster) throws InterruptedException, ExecutionException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LongAdder rejected = new LongAdder();
+        AtomicInteger next = new AtomicInteger();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < concurrency; t++) {
+                futures.add(workers.submit(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < writes) {
+                        long sent = System.nanoTime();
+                        LoadTestClient.Response response = tryCreate(cluster.client(i % nodes + 1));
+                        histogram.recordSince(sent);
+
+                        if (!recordCreated(response)) {
+                            // turned away by the concurrency limit (or broken off), doesn't count as a write
+                            rejected.increment();
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        double nanosPerMilli = TimeUnit.MILLISECONDS.toNanos(1);
+        System.out.printf("Write throughput: %.1f writes/s (%d acknowledged, %d rejected in %.1fs)%n",
+                acknowledged.size() / seconds, acknowledged.size(), rejected.sum(), seconds);
+        System.out.printf("Write latency: p50=%.3fms p99=%.3fms p999=%.3fms%n",
+                histogram.getValueAtPercentile(50) / nanosPerMilli,
+                histogram.getValueAtPercentile(99) / nanosPerMilli,
+                histogram.getValueAtPercentile(99.9) / nanosPerMilli);
+    }
+
+    /**
+     * Kills the leader and keeps trying to create a server on the other nodes until one is accepted.
+     * @param cluster {@link LocalNodes}
+     * @return boolean true if the cluster accepted writes again within the start timeout
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private boolean failOver(final LocalNodes cluster) throws IOException, InterruptedException {
+        int leader = findLeader(cluster);
+        if (leader < 0) {
+            System.out.println("FAILED: none of the nodes says it's the leader");
+            return false;
+        }
+
+        System.out.printf("Killing the leader, node %d%n", leader);
+        long killed = System.nanoTime();
+        cluster.kill(leader);
+
+        long deadline = killed + TimeUnit.SECONDS.toNanos(startTimeoutSeconds);
+        while (System.nanoTime() < deadline) {
+            for (int nodeId : cluster.nodeIds()) {
+                if (recordCreated(tryCreate(cluster.client(nodeId)))) {
+                    System.out.printf("Failover time: %dms until a write was accepted again%n",
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - killed));
+                    return true;
+                }
+            }
+            Thread.sleep(10);
+        }
+
+        System.out.println("FAILED: the remaining nodes didn't accept a write within " + startTimeoutSeconds + "s");
+        return false;
+    }
+
+    /**
+     * Checks that every acknowledged server is on every remaining node.
+     * @param cluster {@link LocalNodes}
+     * @return boolean true if none were lost
+     */
+    private boolean checkWrites(final LocalNodes cluster) {
+        boolean passed = true;
+
+        for (int nodeId : cluster.nodeIds()) {
+            try {
+                Set<String> ids = cluster.listServerIds(nodeId);
+
+                long lost = acknowledged.stream().filter(id -> !ids.contains(id)).count();
+                if (lost > 0) {
+                    System.out.printf("FAILED: node %d is missing %d of the %d acknowledged writes%n",
+                            nodeId, lost, acknowledged.size());
+                    passed = false;
+                } else {
+                    System.out.printf("Node %d has all %d acknowledged writes%n", nodeId, acknowledged.size());
+                }
+            } catch (IOException e) {
+                System.out.printf("FAILED: unable to list the servers on node %d: %s%n", nodeId, e.getMessage());
+                passed = false;
+            }
+        }
+
+        return passed;
+    }
+
+    /**
+     * Finds the leader through the "pandapi_cluster_leader" gauge.
+     * @param cluster {@link LocalNodes}
+     * @return int node identifier of the leader, -1 if there is none
+     * @throws IOException
+     */
+    private static int findLeader(final LocalNodes cluster) throws IOException {
+        for (int nodeId : cluster.nodeIds()) {
+            if (LEADER.matcher(cluster.client(nodeId).send("GET", "/metrics", null).getBody()).find()) {
+                return nodeId;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Tries to create a server.
+     * @param client {@link LoadTestClient}
+     * @return {@link LoadTestClient.Response} or null if the node couldn't be reached (or the connection broke)
+     */
+    private static LoadTestClient.Response tryCreate(final LoadTestClient client) {
+        try {
+            return client.send("POST", "/v1/servers", CREATE_BODY);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Remembers the server if the create was acknowledged.
+     * @param response {@link LoadTestClient.Response} or null
+     * @return boolean true if it was
+     */
+    private boolean recordCreated(final LoadTestClient.Response response) {
+        if (null == response || response.getStatus() != HttpURLConnection.HTTP_ACCEPTED) {
+            return false;
+        }
+
+        acknowledged.add(LocalNodes.serverId(response));
+        return true;
+    }
+
+    /**
+     * Reads an int setting.
+     * @param properties {@link Properties}
+     * @param name {@link String} without the prefix
+     * @param defaultValue int
+     * @return int
+     */
+    private static int getInt(final Properties properties, final String name, final int defaultValue) {
+        String value = properties.getProperty(PREFIX + name);
+
+        try {
+            return null == value ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a whole number for " + PREFIX + name + " but got: " + value);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Checks that the calls a number of threads made on one server resource at the same time are linearizable: that
+ * there is an order of the calls, which keeps every call that returned before another one was made ahead of it, in
+ * which each call gets the result it would have gotten from a data store that handles one call at a time.<br/>
+ *
+ * The resource is modelled as a register that holds a server's name (every write uses a new one) or nothing.  The
+ * orders are tried depth first, as in Wing and Gong's checker, and the dead ends are remembered (Lowe's improvement)
+ * so the search doesn't go down them again.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class LinearizabilityChecker {
+
+    /**
+     * What a call did to the server resource.
+     */
+    public enum Kind {
+        // read the name, or nothing if the server wasn't there
+        READ,
+        // replaced the name, succeeds only if the server was there
+        UPDATE,
+        // stored the name whether or not the server was there, succeeds (i.e. created it) only if it wasn't
+        PUT,
+        // removed the server, succeeds only if it was there
+        DELETE
+    }
+
+    /**
+     * One call on the server resource, with when it was made and when it returned.
+     */
+    public static class Call {
+
+        private final Kind kind;
+
+        // the name read or written, null for a delete or for a read of a server that wasn't there
+        private final String name;
+
+        private final boolean succeeded;
+
+        // System.nanoTime() before the call was made and after it returned
+        private final long invoked;
+        private final long returned;
+
+        /**
+         * Constructor.
+         * @param kind {@link Kind}
+         * @param name {@link String}
+         * @param succeeded boolean what the call returned (ignored for reads)
+         * @param invoked long
+         * @param returned long
+         */
+        public Call(final Kind kind, final String name, final boolean succeeded, final long invoked,
+                    final long returned) {
+            this.kind = kind;
+            this.name = name;
+            this.succeeded = succeeded;
+            this.invoked = invoked;
+            this.returned = returned;
+        }
+
+        /**
+         * Returns whether the call could have gotten its result from the server resource in the specified state.
+         * @param current {@link String} name, or null if the server isn't there
+         * @return boolean
+         */
+        private boolean allowedIn(final String current) {
+            switch (kind) {
+                case READ:
+                    return Objects.equals(current, name);
+                case PUT:
+                    return succeeded == (null == current);
+                default:
+                    return succeeded == (current != null);
+            }
+        }
+
+        /**
+         * Returns the state of the server resource after the call.
+         * @param current {@link String} name, or null if the server isn't there
+         * @return {@link String} name, or null if the server isn't there
+         */
+        private String apply(final String current) {
+            switch (kind) {
+                case READ:
+                    return current;
+                case UPDATE:
+                    return succeeded ? name : current;
+                case PUT:
+                    return name;
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return kind + "(" + name + ")" + (kind == Kind.READ ? "" : " -> " + succeeded)
+                    + " [" + invoked + ", " + returned + "]";
+        }
+    }
+
+    /**
+     * The calls that were put in order so far, and the state of the server resource after them.
+     */
+    private static class SearchState {
+
+        private final BitSet ordered;
+        private final String current;
+
+        /**
+         * Constructor.
+         * @param ordered {@link BitSet} not copied, so don't change it afterwards
+         * @param current {@link String}
+         */
+        private SearchState(final BitSet ordered, final String current) {
+            this.ordered = ordered;
+            this.current = current;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            SearchState that = (SearchState) o;
+
+            return ordered.equals(that.ordered) && Objects.equals(current, that.current);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * ordered.hashCode() + Objects.hashCode(current);
+        }
+    }
+
+    // in the order they were made
+    private final Call[] calls;
+
+    // the state of the server resource before the first call
+    private final String initial;
+
+    // where the search has been already, which were all dead ends (it stops at the first order that works)
+    private final Set<SearchState> visited = new HashSet<>();
+
+    /**
+     * Constructor.
+     * @param initial {@link String} name of the server before the first call, or null if it wasn't there
+     * @param calls {@link List}<{@link Call}> made by all of the threads, in any order
+     */
+    public LinearizabilityChecker(final String initial, final List<Call> calls) {
+        List<Call> sorted = new ArrayList<>(calls);
+        sorted.sort(Comparator.comparingLong(call -> call.invoked));
+
+        this.initial = initial;
+        this.calls = sorted.toArray(new Call[sorted.size()]);
+    }
+
+    /**
+     * Returns whether the calls are linearizable.
+     * @return boolean
+     */
+    public boolean check() {
+        visited.clear();
+        return search(new BitSet(calls.length), 0, initial);
+    }
+
+    /**
+     * Tries every call that can go next (one that was made before any of the remaining calls returned), and the rest
+     * of the order after it.
+     * @param ordered {@link BitSet} of the calls put in order so far, restored before returning
+     * @param count int number of calls put in order so far
+     * @param current {@link String} state of the server resource after them
+     * @return boolean true if the rest of the calls can be put in order
+     */
+    private boolean search(final BitSet ordered, final int count, final String current) {
+        if (count == calls.length) {
+            return true;
+        }
+
+        // no call that was made after this can go next, it would have to go after the call that returned then
+        long firstReturn = Long.MAX_VALUE;
+        for (int i = ordered.nextClearBit(0); i < calls.length; i = ordered.nextClearBit(i + 1)) {
+            firstReturn = Math.min(firstReturn, calls[i].returned);
+        }
+
+        for (int i = ordered.nextClearBit(0); i < calls.length && calls[i].invoked <= firstReturn;
+             i = ordered.nextClearBit(i + 1)) {
+            Call call = calls[i];
+
+            if (call.allowedIn(current)) {
+                String next = call.apply(current);
+
+                ordered.set(i);
+                if (visited.add(new SearchState((BitSet) ordered.clone(), next))
+                        && search(ordered, count + 1, next)) {
+                    ordered.clear(i);
+                    return true;
+                }
+                ordered.clear(i);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Describes the calls, for a report of a history that isn't linearizable.
+     * @return {@link String} one call per line, in the order they were made
+     */
+    public String describe() {
+        StringBuilder description = new StringBuilder("initially ").append(initial);
+        for (Call call : calls) {
+            description.append(System.lineSeparator()).append("    ").append(call);
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load test for the server APIs, run by "gradle loadTest" against the JAR the same way the integration tests are.
+ * <br/>
+ *
+ * Requests are sent at a fixed rate (an open model): each one is due at a fixed time, and its latency is measured
+ * from then, not from when a thread got around to sending it.  A server that stalls therefore shows up in the
+ * percentiles as the stall it is, instead of just slowing down the test (i.e. no coordinated omission).
+ * <br/>
+ *
+ * Exits with 1 if the results regressed compared to the baseline, which fails the build.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class LoadTest {
+
+    // in the create response
+    private static final Pattern ID = Pattern.compile("\"id\":\"([0-9a-fA-F-]{36})\"");
+    private static final String RUNNING = "\"state\":\"Running\"";
+
+    // servers take about 35 seconds to build
+    private static final int SEED_TIMEOUT_SECONDS = 60;
+
+    // creates in progress at once while seeding
+    private static final int SEED_CONCURRENCY = 4;
+
+    // seed requests that are turned away are tried again this many times, this far apart
+    private static final int SEED_RETRIES = 50;
+    private static final long SEED_RETRY_MILLIS = 100;
+
+    // the mix is repeated in the same shuffled order every run, so runs are comparable
+    private static final long MIX_SEED = 42;
+
+    private final LoadTestSettings settings;
+    private final LoadTestClient client;
+
+    /**
+     * Constructor.
+     * @param settings {@link LoadTestSettings}
+     */
+    public LoadTest(final LoadTestSettings settings) {
+        this.settings = settings;
+        this.client = new LoadTestClient(settings.getBaseUrl(), settings.getTimeoutMillis(), settings.getWorkers());
+    }
+
+    /**
+     * Runs the load test with the settings from the system properties.
+     * @param args ignored
+     * @throws Exception if the test couldn't be run
+     */
+    public static void main(final String[] args) throws Exception {
+        boolean passed = new LoadTest(new LoadTestSettings(System.getProperties())).run();
+
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Seeds the servers, warms up, runs the measured part of the test, and compares the results to the baseline (or
+     * records them as the new baseline).
+     * @return boolean true if nothing regressed
+     * @throws IOException if the results or the baseline couldn't be read or written
+     * @throws InterruptedException
+     * @throws ExecutionException if seeding the servers failed
+     */
+    public boolean run() throws IOException, InterruptedException, ExecutionException {
+        ExecutorService workers = Executors.newFixedThreadPool(settings.getWorkers());
+
+        try {
+            System.out.printf("Seeding %d servers%n", settings.getSeedServers());
+            ServerPool servers = seed(workers);
+
+            if (settings.getWarmupSeconds() > 0) {
+                System.out.printf("Warming up for %ds at %d requests/s%n", settings.getWarmupSeconds(),
+                        settings.getRate());
+                drive(workers, servers, settings.getWarmupSeconds(), null);
+            }
+
+            System.out.printf("Measuring for %ds at %d requests/s (%s)%n", settings.getDurationSeconds(),
+                    settings.getRate(), settings.getMix());
+            LoadTestResults results = new LoadTestResults(settings);
+            drive(workers, servers, settings.getDurationSeconds(), results);
+
+            results.print(System.out);
+            store(results.toProperties(), settings.getResultsFile());
+            System.out.println("Results written to " + settings.getResultsFile());
+
+            return checkBaseline(results);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Compares the results to the baseline, or makes them the new baseline.
+     * @param results {@link LoadTestResults}
+     * @return boolean true if nothing regressed
+     * @throws IOException
+     */
+    private boolean checkBaseline(final LoadTestResults results) throws IOException {
+        File baselineFile = settings.getBaselineFile();
+
+        if (settings.isUpdateBaseline()) {
+            store(results.toProperties(), baselineFile);
+            System.out.println("Baseline updated: " + baselineFile);
+            return true;
+        }
+
+        if (!baselineFile.isFile()) {
+            System.out.println("No baseline to compare to at " + baselineFile
+                    + ", run with -PloadTest.updateBaseline=true to record one");
+            return true;
+        }
+
+        Properties baseline = new Properties();
+        try (InputStream in = new FileInputStream(baselineFile)) {
+            baseline.load(in);
+        }
+
+        List<String> regressions = results.compareTo(baseline);
+        if (regressions.isEmpty()) {
+            System.out.println("No regressions compared to the baseline");
+            return true;
+        }
+
+        System.out.println("Regressions compared to the baseline (" + baselineFile + "):");
+        for (String regression : regressions) {
+            System.out.println("  " + regression);
+        }
+
+        return false;
+    }
+
+    /**
+     * Creates the seed servers and waits for them to be running, so there is something to get and delete.
+     * @param workers {@link ExecutorService}
+     * @return {@link ServerPool}
+     * @throws InterruptedException
+     * @throws ExecutionException if a server couldn't be created
+     */
+    private ServerPool seed(final ExecutorService workers) throws InterruptedException, ExecutionException {
+        // waiting for the servers to build takes much longer than the usual request
+        final LoadTestClient seedClient = new LoadTestClient(settings.getBaseUrl(),
+                (int) TimeUnit.SECONDS.toMillis(SEED_TIMEOUT_SECONDS + 30), settings.getWorkers());
+
+        // create them all first, so they're all building at the same time, but only a few at once so the
+        // concurrency limit doesn't turn most of them away
+        List<String> ids = new ArrayList<>();
+        ExecutorService creators = Executors.newFixedThreadPool(Math.min(SEED_CONCURRENCY, settings.getWorkers()));
+        try {
+            List<Future<String>> created = new ArrayList<>();
+            for (int i = 0; i < settings.getSeedServers(); i++) {
+                created.add(creators.submit(() -> createServer(seedClient)));
+            }
+
+            for (Future<String> future : created) {
+                ids.add(future.get());
+            }
+        } finally {
+            creators.shutdownNow();
+        }
+
+        List<Future<Boolean>> running = new ArrayList<>();
+        for (String id : ids) {
+            running.add(workers.submit(() -> waitUntilRunning(seedClient, id)));
+        }
+
+        List<String> runningIds = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (running.get(i).get()) {
+                runningIds.add(ids.get(i));
+            }
+        }
+
+        System.out.printf("%d of %d seeded servers are running%n", runningIds.size(), ids.size());
+        return new ServerPool(ids, runningIds);
+    }
+
+    /**
+     * Creates a server.
+     * @param seedClient {@link LoadTestClient}
+     * @return {@link String} id of the new server
+     * @throws IOException if the server couldn't be created
+     * @throws InterruptedException
+     */
+    private static String createServer(final LoadTestClient seedClient) throws IOException, InterruptedException {
+        LoadTestClient.Response created =
+                sendSeedRequest(seedClient, "POST", Operation.BASE_PATH, Operation.newServerRequest());
+        Matcher matcher = ID.matcher(created.getBody());
+
+        if (!matcher.find()) {
+            throw new IOException("Unable to create a server, got " + created.getStatus() + ": " + created.getBody());
+        }
+
+        return matcher.group(1);
+    }
+
+    /**
+     * Long-polls until the server is running.
+     * @param seedClient {@link LoadTestClient}
+     * @param id {@link String} of the server
+     * @return boolean true if it's running, false if it still isn't after the seed timeout
+     * @throws IOException if the server couldn't be retrieved
+     * @throws InterruptedException
+     */
+    private static boolean waitUntilRunning(final LoadTestClient seedClient, final String id)
+            throws IOException, InterruptedException {
+        LoadTestClient.Response server = sendSeedRequest(seedClient, "GET",
+                Operation.BASE_PATH + '/' + id + "?waitFor=Running&timeout=" + SEED_TIMEOUT_SECONDS + "s", null);
+
+        return server.getBody().contains(RUNNING);
+    }
+
+    /**
+     * Sends a request while seeding.  A burst of requests is exactly what the concurrency limit turns away, so a
+     * request that is turned away is tried again after a moment.
+     * @param seedClient {@link LoadTestClient}
+     * @param method {@link String}
+     * @param path {@link String}
+     * @param json byte[] may be null
+     * @return {@link LoadTestClient.Response} the last response
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private static LoadTestClient.Response sendSeedRequest(
+            final LoadTestClient seedClient,
+            final String method,
+            final String path,
+            final byte[] json) throws IOException, InterruptedException {
+        LoadTestClient.Response response = seedClient.send(method, path, json);
+
+        int retries = 0;
+        while (response.getStatus() == HttpURLConnection.HTTP_UNAVAILABLE && retries++ < SEED_RETRIES) {
+            Thread.sleep(SEED_RETRY_MILLIS);
+            response = seedClient.send(method, path, json);
+        }
+
+        return response;
+    }
+
+    /**
+     * Sends requests at the configured rate for the specified time, then waits for all of them to finish.
+     * @param workers {@link ExecutorService} that sends the requests
+     * @param servers {@link ServerPool}
+     * @param seconds int how long to send requests for
+     * @param results {@link LoadTestResults} to record to, null to not record anything (i.e. the warm-up)
+     * @throws InterruptedException
+     */
+    private void drive(
+            final ExecutorService workers,
+            final ServerPool servers,
+            final int seconds,
+            final LoadTestResults results) throws InterruptedException {
+        Operation[] mix = createMix(settings.getWeights());
+        int total = settings.getRate() * seconds;
+        final CountDownLatch finished = new CountDownLatch(total);
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < total; i++) {
+            // computed from the start every time so rounding doesn't add up
+            final long due = start + i * TimeUnit.SECONDS.toNanos(1) / settings.getRate();
+            final Operation operation = mix[i % mix.length];
+
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            // if every worker is busy the request waits in the queue, and that counts toward its latency
+            workers.execute(() -> {
+                try {
+                    send(operation, due, servers, results);
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        // every request times out eventually, but a backlog of them could take a long time to get through
+        long drainSeconds = seconds + TimeUnit.MILLISECONDS.toSeconds(settings.getTimeoutMillis()) + 30;
+        if (!finished.await(drainSeconds, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(finished.getCount() + " requests were still waiting to be sent "
+                    + drainSeconds + "s after the first one was due, the rate is too high for the server");
+        }
+
+        if (null != results) {
+            results.setElapsedNanos(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sends one request and records how it went.
+     * @param operation {@link Operation}
+     * @param due long {@link System#nanoTime()} the request was scheduled for
+     * @param servers {@link ServerPool}
+     * @param results {@link LoadTestResults} may be null
+     */
+    private void send(
+            final Operation operation,
+            final long due,
+            final ServerPool servers,
+            final LoadTestResults results) {
+        try {
+            int status = operation.send(client, servers);
+            if (null != results) {
+                results.record(operation, System.nanoTime() - due, status);
+            }
+        } catch (IOException e) {
+            if (null != results) {
+                results.recordFailure(operation, System.nanoTime() - due);
+            }
+        }
+    }
+
+    /**
+     * Lays the weighted operations out in a fixed random order, which the requests then cycle through.
+     * @param weights {@link Map}<{@link Operation}, {@link Integer}>
+     * @return {@link Operation}[]
+     */
+    private static Operation[] createMix(final Map<Operation, Integer> weights) {
+        List<Operation> mix = new ArrayList<>();
+
+        for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                mix.add(entry.getKey());
+            }
+        }
+
+        Collections.shuffle(mix, new Random(MIX_SEED));
+        return mix.toArray(new Operation[mix.size()]);
+    }
+
+    /**
+     * Writes the properties, sorted by name so the file diffs well.
+     * @param properties {@link Properties}
+     * @param file {@link File}
+     * @throws IOException
+     */
+    private static void store(final Properties properties, final File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+
+        List<String> names = new ArrayList<>(properties.stringPropertyNames());
+        Collections.sort(names);
+
+        StringBuilder contents = new StringBuilder("# load test results, see LoadTest and \"gradle loadTest\"\n");
+        for (String name : names) {
+            contents.append(name).append('=').append(properties.getProperty(name)).append('\n');
+        }
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(contents.toString().getBytes("ISO-8859-1"));
+        }
+    }
+}
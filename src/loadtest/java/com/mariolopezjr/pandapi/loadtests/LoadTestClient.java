@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP client for the load test, built on {@link HttpURLConnection} so the connections are kept alive and
+ * reused across requests.  Every response body is read to the end, otherwise the connection can't be reused.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class LoadTestClient {
+
+    private final String baseUrl;
+    private final int timeoutMillis;
+
+    /**
+     * Constructor.
+     * @param baseUrl {@link String} e.g. "http://localhost:8080"
+     * @param timeoutMillis int connect and read timeout
+     * @param maxConnections int connections to keep alive, should be at least the number of threads sending requests
+     */
+    public LoadTestClient(final String baseUrl, final int timeoutMillis, final int maxConnections) {
+        this.baseUrl = baseUrl;
+        this.timeoutMillis = timeoutMillis;
+
+        // the JDK only keeps 5 idle connections per host by default, the rest would be reconnected every time
+        System.setProperty("http.maxConnections", Integer.toString(maxConnections));
+    }
+
+    /**
+     * Sends a request and reads the whole response.
+     * @param method {@link String} e.g. "GET"
+     * @param path {@link String} including the query, if any
+     * @param json byte[] request body or null for none
+     * @return {@link Response}
+     * @throws IOException if the server couldn't be reached or the connection broke
+     */
+    public Response send(final String method, final String path, final byte[] json) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        connection.setRequestProperty("Accept", "application/json");
+
+        if (null != json) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setFixedLengthStreamingMode(json.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(json);
+            }
+        }
+
+        int status = connection.getResponseCode();
+
+        // error responses have their body in the error stream (and 204s and 304s have none at all)
+        InputStream in = status < HttpURLConnection.HTTP_BAD_REQUEST
+                ? connection.getInputStream()
+                : connection.getErrorStream();
+
+        return new Response(status, null == in ? new byte[0] : readFully(in));
+    }
+
+    /**
+     * Reads and closes the stream.
+     * @param in {@link InputStream}
+     * @return byte[]
+     * @throws IOException
+     */
+    private static byte[] readFully(final InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Status and body of a response.
+     */
+    public static class Response {
+
+        private final int status;
+        private final byte[] body;
+
+        Response(final int status, final byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getBody() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import com.mariolopezjr.pandapi.metrics.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes of the measured requests, per operation and overall, and how they compare to a baseline.
+ * Latencies are from when a request was due to be sent, not when it actually was.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class LoadTestResults {
+
+    // what the percentile properties are called, and which percentile they are
+    private static final String[] PERCENTILE_NAMES = {"p50", "p99", "p999"};
+    private static final double[] PERCENTILES = {50.0, 99.0, 99.9};
+
+    private static final String ALL = "all";
+    private static final String THROUGHPUT = "throughput";
+    private static final String ERROR_RATE = "errorRate";
+    private static final String WORKLOAD = "workload.";
+
+    private final LoadTestSettings settings;
+    private final Stats all = new Stats();
+    private final Map<Operation, Stats> operations = new EnumMap<>(Operation.class);
+
+    private volatile long elapsedNanos;
+
+    /**
+     * Constructor.
+     * @param settings {@link LoadTestSettings} of the run
+     */
+    public LoadTestResults(final LoadTestSettings settings) {
+        this.settings = settings;
+
+        for (Operation operation : settings.getWeights().keySet()) {
+            operations.put(operation, new Stats());
+        }
+    }
+
+    /**
+     * Records a response.  Every 5xx (including the 503 when the server sheds load) counts as an error, everything
+     * else is an answer the client can act on.
+     * @param operation {@link Operation}
+     * @param latencyNanos long
+     * @param status int HTTP status
+     */
+    public void record(final Operation operation, final long latencyNanos, final int status) {
+        boolean error = status >= 500;
+
+        all.record(latencyNanos, error);
+        operations.get(operation).record(latencyNanos, error);
+    }
+
+    /**
+     * Records a request that didn't get a response (e.g. connection refused or timed out).
+     * @param operation {@link Operation}
+     * @param latencyNanos long
+     */
+    public void recordFailure(final Operation operation, final long latencyNanos) {
+        all.record(latencyNanos, true);
+        operations.get(operation).record(latencyNanos, true);
+    }
+
+    /**
+     * Sets how long the measured part of the run took, from the first request being due until the last response.
+     * @param elapsedNanos long
+     */
+    public void setElapsedNanos(final long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the results (and the workload that produced them) in the same form as the baseline file.
+     * @return {@link Properties}
+     */
+    public Properties toProperties() {
+        Properties properties = new Properties();
+
+        properties.setProperty(WORKLOAD + "rate", Integer.toString(settings.getRate()));
+        properties.setProperty(WORKLOAD + "durationSeconds", Integer.toString(settings.getDurationSeconds()));
+        properties.setProperty(WORKLOAD + "mix", settings.getMix());
+
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        properties.setProperty(THROUGHPUT, format(seconds > 0 ? all.requests.sum() / seconds : 0));
+        properties.setProperty(ERROR_RATE, format(all.getErrorRate()));
+
+        all.addTo(properties, ALL);
+        for (Map.Entry<Operation, Stats> entry : operations.entrySet()) {
+            entry.getValue().addTo(properties, entry.getKey().getKey());
+        }
+
+        return properties;
+    }
+
+    /**
+     * Prints a summary of the results.
+     * @param out {@link PrintStream}
+     */
+    public void print(final PrintStream out) {
+        Properties properties = toProperties();
+
+        out.printf("%nThroughput: %s requests/s (%d scheduled), error rate: %s%n",
+                properties.getProperty(THROUGHPUT), settings.getRate(), properties.getProperty(ERROR_RATE));
+        out.printf("%-10s %10s %8s %10s %10s %10s%n", "operation", "requests", "errors", "p50 ms", "p99 ms", "p999 ms");
+
+        List<String> names = new ArrayList<>();
+        names.add(ALL);
+        for (Operation operation : operations.keySet()) {
+            names.add(operation.getKey());
+        }
+
+        for (String name : names) {
+            out.printf("%-10s %10s %8s %10s %10s %10s%n", name,
+                    properties.getProperty(name + ".requests"), properties.getProperty(name + ".errors"),
+                    properties.getProperty(name + ".p50"), properties.getProperty(name + ".p99"),
+                    properties.getProperty(name + ".p999"));
+        }
+    }
+
+    /**
+     * Compares the results to a baseline.  Percentiles may be higher by the tolerance plus the slack, throughput lower
+     * by the tolerance, and the error rate higher by the error rate slack; anything worse is a regression.  Only runs
+     * of the same workload can be compared.
+     * @param baseline {@link Properties} from an earlier {@link #toProperties()}
+     * @return {@link List}<{@link String}> describing each regression, empty if there weren't any
+     */
+    public List<String> compareTo(final Properties baseline) {
+        Properties actual = toProperties();
+        List<String> regressions = new ArrayList<>();
+
+        for (String name : baseline.stringPropertyNames()) {
+            String expected = baseline.getProperty(name);
+            String value = actual.getProperty(name);
+
+            if (name.startsWith(WORKLOAD)) {
+                if (!expected.equals(value)) {
+                    regressions.add("The baseline was recorded with " + name + "=" + expected + " but this run used "
+                            + value + ", record a new baseline for this workload");
+                }
+            } else if (null == value) {
+                // e.g. an operation that isn't in the mix anymore, the workload check already covers it
+                continue;
+            } else if (THROUGHPUT.equals(name)) {
+                double limit = Double.parseDouble(expected) * (1 - settings.getTolerance());
+                check(regressions, name, Double.parseDouble(value) >= limit, value, "at least", limit);
+            } else if (ERROR_RATE.equals(name)) {
+                double limit = Double.parseDouble(expected) + settings.getErrorRateSlack();
+                check(regressions, name, Double.parseDouble(value) <= limit, value, "at most", limit);
+            } else if (isPercentile(name)) {
+                double limit = Double.parseDouble(expected) * (1 + settings.getTolerance()) + settings.getSlackMillis();
+                check(regressions, name, Double.parseDouble(value) <= limit, value, "at most", limit);
+            }
+        }
+
+        return regressions;
+    }
+
+    /**
+     * Adds a regression to the list if the check didn't pass.
+     * @param regressions {@link List}<{@link String}>
+     * @param name {@link String} of the property
+     * @param passed boolean
+     * @param value {@link String} actual value
+     * @param comparison {@link String} e.g. "at most"
+     * @param limit double
+     */
+    private static void check(
+            final List<String> regressions,
+            final String name,
+            final boolean passed,
+            final String value,
+            final String comparison,
+            final double limit) {
+        if (!passed) {
+            regressions.add(name + " was " + value + ", expected " + comparison + " " + format(limit));
+        }
+    }
+
+    /**
+     * Returns whether the property is one of the percentiles (e.g. "get.p99").
+     * @param name {@link String}
+     * @return boolean
+     */
+    private static boolean isPercentile(final String name) {
+        for (String percentile : PERCENTILE_NAMES) {
+            if (name.endsWith('.' + percentile)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Formats a number for the properties, always the same way regardless of the default locale.
+     * @param value double
+     * @return {@link String}
+     */
+    private static String format(final double value) {
+        return String.format(Locale.ENGLISH, "%.3f", value);
+    }
+
+    /**
+     * The latencies and outcomes of one kind of request.
+     */
+    private static class Stats {
+
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        void record(final long latencyNanos, final boolean error) {
+            histogram.record(latencyNanos);
+            requests.increment();
+            if (error) {
+                errors.increment();
+            }
+        }
+
+        double getErrorRate() {
+            long count = requests.sum();
+            return count == 0 ? 0 : errors.sum() / (double) count;
+        }
+
+        void addTo(final Properties properties, final String name) {
+            properties.setProperty(name + ".requests", Long.toString(requests.sum()));
+            properties.setProperty(name + ".errors", Long.toString(errors.sum()));
+
+            double nanosPerMilli = TimeUnit.MILLISECONDS.toNanos(1);
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                double millis = histogram.getValueAtPercentile(PERCENTILES[i]) / nanosPerMilli;
+                properties.setProperty(name + '.' + PERCENTILE_NAMES[i], format(millis));
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Settings for a load test run, read from "loadTest.*" properties (the Gradle task passes its project properties
+ * along as those).
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class LoadTestSettings {
+
+    private static final String PREFIX = "loadTest.";
+
+    private final String baseUrl;
+    private final int rate;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final String mix;
+    private final Map<Operation, Integer> weights;
+    private final int workers;
+    private final int seedServers;
+    private final int timeoutMillis;
+    private final File baselineFile;
+    private final File resultsFile;
+    private final boolean updateBaseline;
+    private final double tolerance;
+    private final double slackMillis;
+    private final double errorRateSlack;
+
+    /**
+     * Constructor.
+     * @param properties {@link Properties} anything that isn't set gets its default
+     */
+    public LoadTestSettings(final Properties properties) {
+        baseUrl = properties.getProperty(PREFIX + "baseUrl", "http://localhost:8080");
+
+        // requests per second, sent on schedule no matter how long the earlier ones take
+        rate = getInt(properties, "rate", 200);
+
+        // at the same rate but not measured, gives the JIT and the caches a chance to settle
+        warmupSeconds = getInt(properties, "warmupSeconds", 10);
+        durationSeconds = getInt(properties, "durationSeconds", 60);
+
+        mix = properties.getProperty(PREFIX + "mix", "list=20,get=60,create=10,delete=10");
+        weights = Operation.parseMix(mix);
+
+        // threads sending requests, requests that are due while they're all busy wait (and that wait is measured)
+        workers = getInt(properties, "workers", 64);
+
+        // servers created (and waited on until they're running) before the test, for the gets and the deletes, by
+        // default enough that every delete has a running server to delete
+        seedServers = getInt(properties, "seedServers", 100 + countDeletes());
+        timeoutMillis = getInt(properties, "timeoutMillis", 10_000);
+
+        baselineFile = new File(properties.getProperty(PREFIX + "baselineFile", "src/loadtest/baseline.properties"));
+        resultsFile = new File(properties.getProperty(PREFIX + "resultsFile",
+                "build/reports/loadtest/results.properties"));
+
+        // record this run as the new baseline instead of comparing it to the old one
+        updateBaseline = Boolean.parseBoolean(properties.getProperty(PREFIX + "updateBaseline", "false"));
+
+        // how much worse than the baseline is still a pass: percentiles can be this much (25%) higher plus the slack,
+        // throughput this much lower, and the error rate can be up by the error rate slack (1 percentage point)
+        tolerance = getDouble(properties, "tolerance", 0.25);
+        slackMillis = getDouble(properties, "slackMillis", 1.0);
+        errorRateSlack = getDouble(properties, "errorRateSlack", 0.01);
+
+        if (rate < 1 || durationSeconds < 1 || warmupSeconds < 0 || workers < 1 || seedServers < 1) {
+            throw new IllegalArgumentException("The rate, duration, workers, and seed servers have to be positive");
+        }
+    }
+
+    /**
+     * Returns how many deletes the mix will send over the whole run (warm-up included).
+     * @return int
+     */
+    private int countDeletes() {
+        int total = 0;
+        for (int weight : weights.values()) {
+            total += weight;
+        }
+
+        Integer deletes = weights.get(Operation.DELETE);
+        long requests = (long) rate * (warmupSeconds + durationSeconds);
+
+        return null == deletes ? 0 : (int) ((requests * deletes + total - 1) / total);
+    }
+
+    /**
+     * Reads an int setting.
+     * @param properties {@link Properties}
+     * @param name {@link String} without the prefix
+     * @param defaultValue int
+     * @return int
+     */
+    private static int getInt(final Properties properties, final String name, final int defaultValue) {
+        String value = properties.getProperty(PREFIX + name);
+
+        try {
+            return null == value ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a whole number for " + PREFIX + name + " but got: " + value);
+        }
+    }
+
+    /**
+     * Reads a double setting.
+     * @param properties {@link Properties}
+     * @param name {@link String} without the prefix
+     * @param defaultValue double
+     * @return double
+     */
+    private static double getDouble(final Properties properties, final String name, final double defaultValue) {
+        String value = properties.getProperty(PREFIX + name);
+
+        try {
+            return null == value ? defaultValue : Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number for " + PREFIX + name + " but got: " + value);
+        }
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public String getMix() {
+        return mix;
+    }
+
+    public Map<Operation, Integer> getWeights() {
+        return weights;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getSeedServers() {
+        return seedServers;
+    }
+
+    public int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public File getBaselineFile() {
+        return baselineFile;
+    }
+
+    public File getResultsFile() {
+        return resultsFile;
+    }
+
+    public boolean isUpdateBaseline() {
+        return updateBaseline;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public double getSlackMillis() {
+        return slackMillis;
+    }
+
+    public double getErrorRateSlack() {
+        return errorRateSlack;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Runs pandapi JARs as local processes, for the tests that need more than one node.  Every node gets its own
+ * directory (with a copy of the config, rewritten for its ports) under the work directory, and node i listens on the
+ * base ports + i.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class LocalNodes implements AutoCloseable {
+
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*\"([0-9a-f-]{36})\"");
+
+    private final File jar;
+    private final File configDir;
+    private final File workDir;
+    private final int httpBasePort;
+    private final int shutdownBasePort;
+    private final int timeoutMillis;
+    private final int maxConnections;
+
+    // the nodes that are running, by node identifier
+    private final Map<Integer, Process> processes = new TreeMap<>();
+    private final Map<Integer, LoadTestClient> clients = new TreeMap<>();
+
+    /**
+     * Constructor, deletes whatever an earlier run left in the work directory.
+     * @param jar {@link File} the pandapi JAR
+     * @param configDir {@link File} with the config files to copy
+     * @param workDir {@link File} for the nodes' directories
+     * @param httpBasePort int
+     * @param shutdownBasePort int
+     * @param timeoutMillis int for the requests to the nodes
+     * @param maxConnections int the clients keep open to each node
+     * @throws IOException if the work directory couldn't be cleared
+     */
+    LocalNodes(final File jar, final File configDir, final File workDir, final int httpBasePort,
+               final int shutdownBasePort, final int timeoutMillis, final int maxConnections) throws IOException {
+        this.jar = jar;
+        this.configDir = configDir;
+        this.workDir = workDir;
+        this.httpBasePort = httpBasePort;
+        this.shutdownBasePort = shutdownBasePort;
+        this.timeoutMillis = timeoutMillis;
+        this.maxConnections = maxConnections;
+
+        deleteRecursively(workDir.toPath());
+    }
+
+    /**
+     * Prepares a directory for a node and starts it.
+     * @param nodeId int
+     * @param dataStoreConfig {@link UnaryOperator} that rewrites the node's dataStore.xml
+     * @throws IOException
+     */
+    void start(final int nodeId, final UnaryOperator<String> dataStoreConfig) throws IOException {
+        File nodeDir = new File(workDir, "node-" + nodeId);
+        writeConfig(new File(nodeDir, "config"), nodeId, dataStoreConfig);
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        processes.put(nodeId, new ProcessBuilder(java, "-jar", jar.getAbsolutePath())
+                .directory(nodeDir)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(nodeDir, "stdout.log"))
+                .start());
+        clients.put(nodeId, new LoadTestClient("http://localhost:" + (httpBasePort + nodeId), timeoutMillis,
+                maxConnections));
+    }
+
+    /**
+     * Waits until every node that's running is ready.
+     * @param timeoutSeconds int
+     * @throws InterruptedException
+     * @throws IllegalStateException if a node exited or wasn't ready in time
+     */
+    void awaitReady(final int timeoutSeconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+
+        for (int nodeId : processes.keySet()) {
+            while (!isReady(nodeId)) {
+                if (!processes.get(nodeId).isAlive()) {
+                    throw new IllegalStateException("Node " + nodeId + " exited during startup, see its stdout.log");
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("The nodes weren't ready within " + timeoutSeconds + "s");
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    /**
+     * Kills a node, without giving it a chance to shut down.
+     * @param nodeId int
+     */
+    void kill(final int nodeId) {
+        clients.remove(nodeId);
+        processes.remove(nodeId).destroyForcibly();
+    }
+
+    /**
+     * Shuts a node down (the shutdown hooks run) and waits until it exited.
+     * @param nodeId int
+     * @param timeoutSeconds int to wait before it's killed
+     * @return boolean true if it shut down in time
+     * @throws InterruptedException
+     */
+    boolean stop(final int nodeId, final int timeoutSeconds) throws InterruptedException {
+        clients.remove(nodeId);
+        Process process = processes.remove(nodeId);
+        process.destroy();
+
+        if (process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+            return true;
+        }
+
+        process.destroyForcibly();
+        return false;
+    }
+
+    /**
+     * Returns the client for a node.
+     * @param nodeId int
+     * @return {@link LoadTestClient} or null if the node isn't running
+     */
+    LoadTestClient client(final int nodeId) {
+        return clients.get(nodeId);
+    }
+
+    /**
+     * Returns the nodes that are running.
+     * @return {@link Set}<{@link Integer}> node identifiers
+     */
+    Set<Integer> nodeIds() {
+        return clients.keySet();
+    }
+
+    /**
+     * Kills every node that's still running.
+     */
+    @Override
+    public void close() {
+        processes.values().forEach(Process::destroyForcibly);
+        processes.clear();
+        clients.clear();
+    }
+
+    /**
+     * Copies the config files for a node, with its own ports and the warm-up turned off (it only makes startup slower
+     * here).
+     * @param nodeConfigDir {@link File}
+     * @param nodeId int
+     * @param dataStoreConfig {@link UnaryOperator} for dataStore.xml
+     * @throws IOException
+     */
+    private void writeConfig(final File nodeConfigDir, final int nodeId, final UnaryOperator<String> dataStoreConfig)
+            throws IOException {
+        Files.createDirectories(nodeConfigDir.toPath());
+
+        File[] files = configDir.listFiles((dir, name) -> name.endsWith(".xml"));
+        if (null == files || files.length == 0) {
+            throw new IOException("No config files in " + configDir);
+        }
+
+        for (File file : files) {
+            String xml = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+
+            switch (file.getName()) {
+                case "webServer.xml":
+                    xml = replace(xml, "port", Integer.toString(httpBasePort + nodeId));
+                    break;
+                case "application.xml":
+                    xml = replace(xml, "shutdownPort", Integer.toString(shutdownBasePort + nodeId));
+                    xml = xml.replaceFirst("(<warmUp>\\s*(?:<!--(?s:.*?)-->\\s*)?<enabled>)true", "$1false");
+                    break;
+                case "dataStore.xml":
+                    xml = dataStoreConfig.apply(xml);
+                    break;
+                default:
+                    break;
+            }
+
+            Files.write(new File(nodeConfigDir, file.getName()).toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Replaces the value of the first element with the given name.
+     * @param xml {@link String}
+     * @param element {@link String}
+     * @param value {@link String}
+     * @return {@link String}
+     */
+    static String replace(final String xml, final String element, final String value) {
+        return xml.replaceFirst("<" + element + ">[^<]*</" + element + ">",
+                Matcher.quoteReplacement("<" + element + ">" + value + "</" + element + ">"));
+    }
+
+    /**
+     * Turns on the first "enabled" element after an opening tag.
+     * @param xml {@link String}
+     * @param element {@link String} that contains it
+     * @return {@link String}
+     */
+    static String enable(final String xml, final String element) {
+        return xml.replaceFirst("(<" + element + ">\\s*<enabled>)false", "$1true");
+    }
+
+    /**
+     * Returns the identifier of the server in a response, e.g. to a create.
+     * @param response {@link LoadTestClient.Response}
+     * @return {@link String}
+     * @throws IllegalStateException if there is none
+     */
+    static String serverId(final LoadTestClient.Response response) {
+        Matcher matcher = ID.matcher(response.getBody());
+        if (!matcher.find()) {
+            throw new IllegalStateException("No server identifier in the response: " + response.getBody());
+        }
+
+        return matcher.group(1);
+    }
+
+    /**
+     * Lists the identifiers of every server a node returns.
+     * @param nodeId int
+     * @return {@link Set}<{@link String}>
+     * @throws IOException if the node couldn't be reached or didn't return a 200
+     */
+    Set<String> listServerIds(final int nodeId) throws IOException {
+        LoadTestClient.Response response = clients.get(nodeId).send("GET", "/v1/servers?fields=id", null);
+        if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Node " + nodeId + " returned " + response.getStatus() + " for the list");
+        }
+
+        Set<String> ids = new HashSet<>();
+        Matcher matcher = ID.matcher(response.getBody());
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+
+        return ids;
+    }
+
+    /**
+     * Returns whether a node answers GET /health/ready with a 200.
+     * @param nodeId int
+     * @return boolean
+     */
+    private boolean isReady(final int nodeId) {
+        try {
+            return clients.get(nodeId).send("GET", "/health/ready", null).getStatus() == HttpURLConnection.HTTP_OK;
+        } catch (IOException e) {
+            // not listening yet
+            return false;
+        }
+    }
+
+    /**
+     * Deletes a directory and everything in it, if it exists.
+     * @param dir {@link Path}
+     * @throws IOException
+     */
+    private static void deleteRecursively(final Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
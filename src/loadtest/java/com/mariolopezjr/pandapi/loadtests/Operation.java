@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The requests the load test sends, each one the way a client of that API would.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public enum Operation {
+    LIST {
+        @Override
+        int send(final LoadTestClient client, final ServerPool servers) throws IOException {
+            return client.send("GET", BASE_PATH, null).getStatus();
+        }
+    },
+    GET {
+        @Override
+        int send(final LoadTestClient client, final ServerPool servers) throws IOException {
+            return client.send("GET", BASE_PATH + '/' + servers.any(), null).getStatus();
+        }
+    },
+    CREATE {
+        @Override
+        int send(final LoadTestClient client, final ServerPool servers) throws IOException {
+            return client.send("POST", BASE_PATH, newServerRequest()).getStatus();
+        }
+    },
+    // only running servers can be destroyed, once the seeded ones are used up this measures the 400s
+    DELETE {
+        @Override
+        int send(final LoadTestClient client, final ServerPool servers) throws IOException {
+            return client.send("DELETE", BASE_PATH + '/' + servers.takeRunning(), null).getStatus();
+        }
+    };
+
+    static final String BASE_PATH = "/v1/servers";
+
+    /**
+     * Sends one request of this kind.
+     * @param client {@link LoadTestClient}
+     * @param servers {@link ServerPool} the servers to pick from
+     * @return int HTTP status of the response
+     * @throws IOException if the server couldn't be reached
+     */
+    abstract int send(LoadTestClient client, ServerPool servers) throws IOException;
+
+    /**
+     * Returns the name used for this operation in the settings and the results, e.g. "list".
+     * @return {@link String}
+     */
+    public String getKey() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Creates the body of a valid create request with a random name.
+     * @return byte[] JSON
+     */
+    static byte[] newServerRequest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String json = "{\"server\":{\"name\":\"load-" + UUID.randomUUID()
+                + "\",\"cpus\":" + (1 + random.nextInt(8))
+                + ",\"ram\":" + (1 + random.nextInt(64))
+                + ",\"diskSpace\":" + (10 + random.nextInt(500)) + "}}";
+
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a mix of operations, e.g. "list=20,get=60,create=10,delete=10".  The weights are relative to each other
+     * and operations that aren't listed aren't sent.
+     * @param mix {@link String}
+     * @return {@link Map}<{@link Operation}, {@link Integer}> weights in declaration order
+     * @throws IllegalArgumentException if the mix is malformed or all of the weights are 0
+     */
+    public static Map<Operation, Integer> parseMix(final String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        int total = 0;
+
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight in the mix but got: " + entry);
+            }
+
+            Operation operation = forKey(pair[0].trim());
+            int weight;
+            try {
+                weight = Integer.parseInt(pair[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid weight in the mix: " + entry);
+            }
+
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weights can't be negative: " + entry);
+            }
+
+            weights.put(operation, weight);
+            total += weight;
+        }
+
+        if (total == 0) {
+            throw new IllegalArgumentException("At least one operation needs a weight: " + mix);
+        }
+
+        return weights;
+    }
+
+    /**
+     * Returns the operation with the specified key.
+     * @param key {@link String} e.g. "list"
+     * @return {@link Operation}
+     * @throws IllegalArgumentException if there isn't one
+     */
+    private static Operation forKey(final String key) {
+        for (Operation operation : values()) {
+            if (operation.getKey().equalsIgnoreCase(key)) {
+                return operation;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown operation in the mix: " + key);
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import com.mariolopezjr.pandapi.metrics.LatencyHistogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs partitioned pandapi JARs as local processes: measures the write throughput with the writes spread over the
+ * nodes, starts one more node and checks that it only took servers over from the others, shuts it down again, and
+ * checks after each step that every node still returns every acknowledged server.<br/>
+ *
+ * Settings are read from "partitionTest.*" properties, the Gradle task passes its project properties along as those.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class PartitionTest {
+
+    private static final String PREFIX = "partitionTest.";
+
+    private static final byte[] CREATE_BODY =
+            "{\"server\":{\"name\":\"partitionTest\",\"cpus\":1,\"ram\":1,\"diskSpace\":1}}"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private static final Pattern LOCAL_SERVERS = Pattern.compile("(?m)^pandapi_servers\\s+([0-9]+)(\\.0)?\\s*$");
+
+    private final int nodes;
+    private final int writes;
+    private final int concurrency;
+    private final File jar;
+    private final File configDir;
+    private final File workDir;
+    private final int httpBasePort;
+    private final int partitionBasePort;
+    private final int shutdownBasePort;
+    private final int timeoutMillis;
+    private final int startTimeoutSeconds;
+
+    // identifiers of the servers the nodes acknowledged creating
+    private final Set<String> acknowledged = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor.
+     * @param properties {@link Properties} anything that isn't set gets its default
+     */
+    public PartitionTest(final Properties properties) {
+        // one more is started (and stopped) during the test
+        nodes = getInt(properties, "nodes", 3);
+        writes = getInt(properties, "writes", 20_000);
+        concurrency = getInt(properties, "concurrency", 16);
+
+        jar = new File(properties.getProperty(PREFIX + "jar", "build/libs/pandapi.jar"));
+        configDir = new File(properties.getProperty(PREFIX + "configDir", "src/main/resources/config"));
+        workDir = new File(properties.getProperty(PREFIX + "workDir", "build/partitiontest"));
+
+        // node i listens on base port + i for each of these
+        httpBasePort = getInt(properties, "httpBasePort", 18080);
+        partitionBasePort = getInt(properties, "partitionBasePort", 19180);
+        shutdownBasePort = getInt(properties, "shutdownBasePort", 18180);
+
+        timeoutMillis = getInt(properties, "timeoutMillis", 15_000);
+        startTimeoutSeconds = getInt(properties, "startTimeoutSeconds", 60);
+    }
+
+    /**
+     * Runs the partition test with the settings from the system properties.
+     * @param args ignored
+     * @throws Exception if the test couldn't be run
+     */
+    public static void main(final String[] args) throws Exception {
+        boolean passed = new PartitionTest(System.getProperties()).run();
+
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Starts the nodes, runs the test, and stops them again.
+     * @return boolean true if only the affected servers moved and none of the acknowledged writes were lost
+     * @throws Exception if the nodes couldn't be started
+     */
+    public boolean run() throws Exception {
+        try (LocalNodes partitions = new LocalNodes(jar, configDir, workDir, httpBasePort, shutdownBasePort,
+                timeoutMillis, concurrency * 2)) {
+            for (int i = 1; i <= nodes; i++) {
+                start(partitions, i, nodes);
+            }
+            System.out.printf("Started %d nodes in %s, waiting for them to be ready%n", nodes, workDir);
+            partitions.awaitReady(startTimeoutSeconds);
+
+            System.out.printf("Creating %d servers, %d at a time, spread over the nodes%n", writes, concurrency);
+            measureWrites(partitions);
+            Map<Integer, Integer> before = countLocalServers(partitions);
+            boolean passed = checkWrites(partitions);
+
+            int joiner = nodes + 1;
+            System.out.printf("Starting node %d%n", joiner);
+            long started = System.nanoTime();
+            start(partitions, joiner, joiner);
+            partitions.awaitReady(startTimeoutSeconds);
+            System.out.printf("Node %d joined in %dms%n", joiner,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            passed &= checkOnlyTakenOver(before, countLocalServers(partitions), joiner) & checkWrites(partitions);
+
+            System.out.printf("Shutting node %d down%n", joiner);
+            started = System.nanoTime();
+            if (!partitions.stop(joiner, startTimeoutSeconds)) {
+                System.out.printf("FAILED: node %d didn't shut down within %ds%n", joiner, startTimeoutSeconds);
+                return false;
+            }
+            System.out.printf("Node %d left in %dms%n", joiner,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            countLocalServers(partitions);
+
+            return passed & checkWrites(partitions);
+        }
+    }
+
+    /**
+     * Starts a node with partitioning turned on, knowing of the nodes up to the specified one.
+     * @param partitions {@link LocalNodes}
+     * @param nodeId int
+     * @param knownNodes int
+     * @throws IOException
+     */
+    private void start(final LocalNodes partitions, final int nodeId, final int knownNodes) throws IOException {
+        StringBuilder members = new StringBuilder();
+        for (int i = 1; i <= knownNodes; i++) {
+            members.append(i == 1 ? "" : ", ").append(i).append("=localhost:").append(partitionBasePort + i);
+        }
+
+        // the cluster's nodeId and members come first in the file
+        partitions.start(nodeId, xml -> {
+            int partitioning = xml.indexOf("<partitioning>");
+            String section = LocalNodes.enable(xml.substring(partitioning), "partitioning");
+            section = LocalNodes.replace(section, "nodeId", Integer.toString(nodeId));
+            return xml.substring(0, partitioning) + LocalNodes.replace(section, "members", members.toString());
+        });
+    }
+
+    /**
+     * Creates the servers from a number of threads at once, round robin over the nodes (so most of them are
+     * forwarded to the node that owns them), and reports the throughput and the latencies.
+     * @param partitions {@link LocalNodes}
+     * @throws InterruptedException
+     * @throws ExecutionException if a thread failed
+     */
+    private void measureWrites(final LocalNodes partitions) throws InterruptedException, ExecutionException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LongAdder rejected = new LongAdder();
+        AtomicInteger next = new AtomicInteger();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < concurrency; t++) {
+                futures.add(workers.submit(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < writes) {
+                        long sent = System.nanoTime();
+                        LoadTestClient.Response response = tryCreate(partitions.client(i % nodes + 1));
+                        histogram.recordSince(sent);
+
+                        if (null == response || response.getStatus() != HttpURLConnection.HTTP_ACCEPTED) {
+                            // turned away by the concurrency limit (or broken off), doesn't count as a write
+                            rejected.increment();
+                        } else {
+                            acknowledged.add(LocalNodes.serverId(response));
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        double nanosPerMilli = TimeUnit.MILLISECONDS.toNanos(1);
+        System.out.printf("Write throughput: %.1f writes/s (%d acknowledged, %d rejected in %.1fs)%n",
+                acknowledged.size() / seconds, acknowledged.size(), rejected.sum(), seconds);
+        System.out.printf("Write latency: p50=%.3fms p99=%.3fms p999=%.3fms%n",
+                histogram.getValueAtPercentile(50) / nanosPerMilli,
+                histogram.getValueAtPercentile(99) / nanosPerMilli,
+                histogram.getValueAtPercentile(99.9) / nanosPerMilli);
+    }
+
+    /**
+     * Checks that the node that joined only took servers over from the others, and that they didn't exchange any.
+     * @param before {@link Map}<{@link Integer}, {@link Integer}> servers per node before it joined
+     * @param after {@link Map}<{@link Integer}, {@link Integer}> servers per node after it joined
+     * @param joiner int
+     * @return boolean true if the other nodes all have fewer servers, as many fewer as the new one has
+     */
+    private static boolean checkOnlyTakenOver(final Map<Integer, Integer> before, final Map<Integer, Integer> after,
+                                              final int joiner) {
+        int lost = 0;
+        for (Map.Entry<Integer, Integer> node : before.entrySet()) {
+            lost += node.getValue() - after.get(node.getKey());
+        }
+
+        int taken = after.get(joiner);
+        if (lost != taken) {
+            System.out.printf("FAILED: node %d took over %d servers, but the others have %d fewer%n", joiner, taken,
+                    lost);
+            return false;
+        }
+
+        System.out.printf("Node %d took over %d servers (%.1f%%), none moved between the others%n", joiner, taken,
+                100.0 * taken / total(before));
+        return true;
+    }
+
+    /**
+     * Adds up the servers of every node.
+     * @param counts {@link Map}<{@link Integer}, {@link Integer}>
+     * @return int
+     */
+    private static int total(final Map<Integer, Integer> counts) {
+        return counts.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Reports how many servers each node keeps, through its "pandapi_servers" gauge.
+     * @param partitions {@link LocalNodes}
+     * @return {@link Map}<{@link Integer}, {@link Integer}> by node
+     * @throws IOException
+     */
+    private static Map<Integer, Integer> countLocalServers(final LocalNodes partitions) throws IOException {
+        Map<Integer, Integer> counts = new TreeMap<>();
+        for (int nodeId : partitions.nodeIds()) {
+            Matcher matcher = LOCAL_SERVERS.matcher(partitions.client(nodeId).send("GET", "/metrics", null).getBody());
+            counts.put(nodeId, matcher.find() ? Integer.parseInt(matcher.group(1)) : 0);
+        }
+
+        System.out.printf("Servers per node: %s%n", counts);
+        return counts;
+    }
+
+    /**
+     * Checks that every node returns every acknowledged server, in the list and one by one.
+     * @param partitions {@link LocalNodes}
+     * @return boolean true if none were lost
+     */
+    private boolean checkWrites(final LocalNodes partitions) {
+        boolean passed = true;
+
+        for (int nodeId : partitions.nodeIds()) {
+            try {
+                Set<String> ids = partitions.listServerIds(nodeId);
+                long lost = acknowledged.stream().filter(id -> !ids.contains(id)).count();
+
+                // the list is put together from every node, so also ask for a few of them on their own
+                long notFound = 0;
+                for (String id : acknowledged.stream().limit(100).toArray(String[]::new)) {
+                    if (partitions.client(nodeId).send("GET", "/v1/servers/" + id, null).getStatus()
+                            != HttpURLConnection.HTTP_OK) {
+                        notFound++;
+                    }
+                }
+
+                if (lost > 0 || notFound > 0) {
+                    System.out.printf("FAILED: node %d is missing %d of the %d acknowledged writes in the list, and "
+                            + "%d of the first 100 one by one%n", nodeId, lost, acknowledged.size(), notFound);
+                    passed = false;
+                } else {
+                    System.out.printf("Node %d returns all %d acknowledged writes%n", nodeId, acknowledged.size());
+                }
+            } catch (IOException e) {
+                System.out.printf("FAILED: unable to read the servers from node %d: %s%n", nodeId, e.getMessage());
+                passed = false;
+            }
+        }
+
+        return passed;
+    }
+
+    /**
+     * Tries to create a server.
+     * @param client {@link LoadTestClient}
+     * @return {@link LoadTestClient.Response} or null if the node couldn't be reached (or the connection broke)
+     */
+    private static LoadTestClient.Response tryCreate(final LoadTestClient client) {
+        try {
+            return client.send("POST", "/v1/servers", CREATE_BODY);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads an int setting.
+     * @param properties {@link Properties}
+     * @param name {@link String} without the prefix
+     * @param defaultValue int
+     * @return int
+     */
+    private static int getInt(final Properties properties, final String name, final int defaultValue) {
+        String value = properties.getProperty(PREFIX + name);
+
+        try {
+            return null == value ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a whole number for " + PREFIX + name + " but got: " + value);
+        }
+    }
+}
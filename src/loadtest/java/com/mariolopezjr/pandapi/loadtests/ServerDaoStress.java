@@ -0,0 +1,391 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import com.mariolopezjr.pandapi.dao.ServerChangeListener;
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.data.server.ServerState;
+import com.mariolopezjr.pandapi.loadtests.LinearizabilityChecker.Call;
+import com.mariolopezjr.pandapi.loadtests.LinearizabilityChecker.Kind;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
+import org.apache.commons.configuration.BaseConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * One round of the stress test of the {@link ServerInMemoryDao}: a few threads are let go at the same moment and make
+ * random calls on a handful of servers in a fresh data store.  Afterwards the history of each server has to be
+ * linearizable, and the changes the listeners were told about have to match the calls that changed something.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ServerDaoStress {
+
+    private final int threads;
+    private final int servers;
+    private final int callsPerThread;
+
+    /**
+     * What one thread did and saw.
+     */
+    private static class ThreadHistory {
+
+        // the calls on each of the servers the round started with
+        private final Map<UUID, List<Call>> calls = new HashMap<>();
+
+        // names that were stored, by an update or put that succeeded or by a create
+        private final List<String> written = new ArrayList<>();
+
+        // servers that were deleted by a call that succeeded
+        private final List<UUID> deleted = new ArrayList<>();
+
+        // servers that were created during the round
+        private final List<UUID> created = new ArrayList<>();
+
+        private final List<String> violations = new ArrayList<>();
+
+        /**
+         * Records a call on one of the servers the round started with.
+         * @param id {@link UUID}
+         * @param call {@link Call}
+         */
+        private void add(final UUID id, final Call call) {
+            calls.computeIfAbsent(id, key -> new ArrayList<>()).add(call);
+        }
+    }
+
+    /**
+     * Records the changes the data store tells its listeners about, from any thread.
+     */
+    private static class RecordingListener implements ServerChangeListener {
+
+        private final Queue<Server> created = new ConcurrentLinkedQueue<>();
+        private final Queue<Server[]> updated = new ConcurrentLinkedQueue<>();
+        private final Queue<Server> deleted = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void serverCreated(Server server) {
+            created.add(server);
+        }
+
+        @Override
+        public void serverUpdated(Server previous, Server current) {
+            updated.add(new Server[] {previous, current});
+        }
+
+        @Override
+        public void serverDeleted(Server server) {
+            deleted.add(server);
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param threads int number of threads making calls at the same time
+     * @param servers int number of servers they make their calls on
+     * @param callsPerThread int
+     */
+    public ServerDaoStress(final int threads, final int servers, final int callsPerThread) {
+        this.threads = threads;
+        this.servers = servers;
+        this.callsPerThread = callsPerThread;
+    }
+
+    /**
+     * Runs one round.
+     * @param seed long for the random calls, so a round that failed can be run again
+     * @return {@link List}<{@link String}> of the violations found, empty if there were none
+     * @throws InterruptedException
+     */
+    public List<String> run(final long seed) throws InterruptedException {
+        ServerInMemoryDao dao = new ServerInMemoryDao(new BaseConfiguration(), new MetricsRegistry());
+        RecordingListener listener = new RecordingListener();
+        dao.addChangeListener(listener);
+
+        // the servers the calls are made on, and their names before the round
+        Map<UUID, String> initial = new LinkedHashMap<>();
+        for (int i = 0; i < servers; i++) {
+            String name = "initial-" + i;
+            initial.put(dao.createServer(server(null, name)).getId(), name);
+        }
+        UUID[] ids = initial.keySet().toArray(new UUID[servers]);
+
+        ThreadHistory[] histories = new ThreadHistory[threads];
+        Thread[] workers = new Thread[threads];
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        for (int t = 0; t < threads; t++) {
+            ThreadHistory history = new ThreadHistory();
+            Random random = new Random(seed * 31 + t);
+            String namePrefix = "t" + t + "-";
+
+            histories[t] = history;
+            workers[t] = new Thread(() -> {
+                try {
+                    barrier.await();
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    history.violations.add("Thread never started: " + e);
+                    return;
+                }
+
+                for (int i = 0; i < callsPerThread; i++) {
+                    call(dao, ids, random, namePrefix + i, history);
+                }
+            }, "dao-stress-" + t);
+            workers[t].start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // a last look at each server, after everything else
+        ThreadHistory last = new ThreadHistory();
+        for (UUID id : ids) {
+            long invoked = System.nanoTime();
+            Server server = dao.getServerById(id);
+            last.add(id, new Call(Kind.READ, null == server ? null : server.getName(), true, invoked,
+                    System.nanoTime()));
+        }
+
+        List<ThreadHistory> all = new ArrayList<>();
+        Collections.addAll(all, histories);
+        all.add(last);
+
+        List<String> violations = new ArrayList<>();
+        for (ThreadHistory history : all) {
+            violations.addAll(history.violations);
+        }
+        checkLinearizable(initial, all, violations);
+        checkCreatedIds(initial, all, violations);
+        checkNotifications(initial, all, listener, violations);
+
+        return violations;
+    }
+
+    /**
+     * Makes a random call and records it.
+     * @param dao {@link ServerInMemoryDao}
+     * @param ids {@link UUID}[] of the servers the round started with
+     * @param random {@link Random}
+     * @param name {@link String} to store, if it's a call that stores something
+     * @param history {@link ThreadHistory} of the calling thread
+     */
+    private static void call(final ServerInMemoryDao dao, final UUID[] ids, final Random random, final String name,
+                             final ThreadHistory history) {
+        UUID id = ids[random.nextInt(ids.length)];
+        int pick = random.nextInt(100);
+
+        // nothing can make the inventory version go down, so this thread should never see it do that
+        long inventoryVersion = dao.getInventoryVersion();
+        long invoked = System.nanoTime();
+
+        if (pick < 30) {
+            Server server = dao.getServerById(id);
+            history.add(id, new Call(Kind.READ, null == server ? null : server.getName(), true, invoked,
+                    System.nanoTime()));
+        } else if (pick < 50) {
+            boolean updated = dao.updateServer(server(id, name));
+            history.add(id, new Call(Kind.UPDATE, name, updated, invoked, System.nanoTime()));
+            if (updated) {
+                history.written.add(name);
+            }
+        } else if (pick < 65) {
+            boolean created = dao.putServers(Collections.singletonList(server(id, name))) == 1;
+            history.add(id, new Call(Kind.PUT, name, created, invoked, System.nanoTime()));
+            history.written.add(name);
+        } else if (pick < 80) {
+            boolean deleted = dao.deleteServer(id);
+            history.add(id, new Call(Kind.DELETE, null, deleted, invoked, System.nanoTime()));
+            if (deleted) {
+                history.deleted.add(id);
+            }
+        } else if (pick < 92) {
+            // not a snapshot, but each server in it was read at some point during the call
+            Map<UUID, String> names = new HashMap<>();
+            for (Server server : dao.getAllServers()) {
+                names.put(server.getId(), server.getName());
+            }
+
+            long returned = System.nanoTime();
+            for (UUID each : ids) {
+                history.add(each, new Call(Kind.READ, names.get(each), true, invoked, returned));
+            }
+        } else {
+            history.created.add(dao.createServer(server(null, name)).getId());
+            history.written.add(name);
+        }
+
+        if (dao.getInventoryVersion() < inventoryVersion) {
+            history.violations.add("The inventory version went down from " + inventoryVersion + " to "
+                    + dao.getInventoryVersion());
+        }
+    }
+
+    /**
+     * Checks that the calls on each of the servers the round started with are linearizable.
+     * @param initial {@link Map}<{@link UUID}, {@link String}> names of the servers before the round
+     * @param histories {@link List}<{@link ThreadHistory}>
+     * @param violations {@link List}<{@link String}> to add to
+     */
+    private static void checkLinearizable(final Map<UUID, String> initial, final List<ThreadHistory> histories,
+                                          final List<String> violations) {
+        for (Map.Entry<UUID, String> server : initial.entrySet()) {
+            List<Call> calls = new ArrayList<>();
+            for (ThreadHistory history : histories) {
+                calls.addAll(history.calls.getOrDefault(server.getKey(), Collections.emptyList()));
+            }
+
+            LinearizabilityChecker checker = new LinearizabilityChecker(server.getValue(), calls);
+            if (!checker.check()) {
+                violations.add("The calls on server " + server.getKey() + " aren't linearizable: "
+                        + checker.describe());
+            }
+        }
+    }
+
+    /**
+     * Checks that every server created during the round got an identifier of its own.
+     * @param initial {@link Map}<{@link UUID}, {@link String}> names of the servers before the round
+     * @param histories {@link List}<{@link ThreadHistory}>
+     * @param violations {@link List}<{@link String}> to add to
+     */
+    private static void checkCreatedIds(final Map<UUID, String> initial, final List<ThreadHistory> histories,
+                                        final List<String> violations) {
+        Set<UUID> ids = new HashSet<>(initial.keySet());
+
+        for (ThreadHistory history : histories) {
+            for (UUID id : history.created) {
+                if (!ids.add(id)) {
+                    violations.add("Two servers were created with the identifier " + id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the listeners were told about every change exactly once, and about nothing else: every name that
+     * was stored, every delete that succeeded, and that no stored server was replaced or deleted more than once (which
+     * would mean a change got lost).
+     * @param initial {@link Map}<{@link UUID}, {@link String}> names of the servers before the round
+     * @param histories {@link List}<{@link ThreadHistory}>
+     * @param listener {@link RecordingListener}
+     * @param violations {@link List}<{@link String}> to add to
+     */
+    private static void checkNotifications(final Map<UUID, String> initial, final List<ThreadHistory> histories,
+                                           final RecordingListener listener, final List<String> violations) {
+        Map<String, Integer> expectedStored = new HashMap<>();
+        Map<UUID, Integer> expectedDeletes = new HashMap<>();
+        for (String name : initial.values()) {
+            expectedStored.merge(name, 1, Integer::sum);
+        }
+        for (ThreadHistory history : histories) {
+            for (String name : history.written) {
+                expectedStored.merge(name, 1, Integer::sum);
+            }
+            for (UUID id : history.deleted) {
+                expectedDeletes.merge(id, 1, Integer::sum);
+            }
+        }
+
+        Map<String, Integer> stored = new HashMap<>();
+        Map<String, Integer> replaced = new HashMap<>();
+        Map<UUID, Integer> deletes = new HashMap<>();
+        for (Server server : listener.created) {
+            stored.merge(server.getName(), 1, Integer::sum);
+        }
+        for (Server[] update : listener.updated) {
+            stored.merge(update[1].getName(), 1, Integer::sum);
+            replaced.merge(update[0].getName(), 1, Integer::sum);
+
+            if (update[1].getVersion() <= update[0].getVersion()) {
+                violations.add("Server " + update[1].getId() + " went from version " + update[0].getVersion()
+                        + " to " + update[1].getVersion());
+            }
+        }
+        for (Server server : listener.deleted) {
+            deletes.merge(server.getId(), 1, Integer::sum);
+            replaced.merge(server.getName(), 1, Integer::sum);
+        }
+
+        Set<String> names = new HashSet<>(expectedStored.keySet());
+        names.addAll(stored.keySet());
+        int mismatched = 0;
+        String example = null;
+        for (String name : names) {
+            int told = stored.getOrDefault(name, 0);
+            int expected = expectedStored.getOrDefault(name, 0);
+
+            if (told != expected) {
+                mismatched++;
+                example = null == example ? name + " " + told + " times instead of " + expected : example;
+            }
+        }
+        if (mismatched > 0) {
+            violations.add("The listeners were told about " + mismatched + " of the stored names the wrong number "
+                    + "of times, e.g. " + example);
+        }
+        if (!deletes.equals(expectedDeletes)) {
+            violations.add("The listeners were told about " + sum(deletes) + " deletes instead of "
+                    + sum(expectedDeletes) + " (" + deletes + " instead of " + expectedDeletes + ")");
+        }
+        replaced.forEach((name, times) -> {
+            if (times > 1) {
+                violations.add("The server named " + name + " was replaced or deleted " + times + " times");
+            }
+        });
+    }
+
+    /**
+     * Adds up the counts.
+     * @param counts {@link Map}<?, {@link Integer}>
+     * @return int
+     */
+    private static int sum(final Map<?, Integer> counts) {
+        return counts.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Creates a server resource.
+     * @param id {@link UUID} or null for a new server
+     * @param name {@link String}
+     * @return {@link Server}
+     */
+    private static Server server(final UUID id, final String name) {
+        Server server = new Server();
+        server.setId(id);
+        server.setName(name);
+        server.setCpus(1);
+        server.setRam(1);
+        server.setDiskSpace(1);
+        server.setState(ServerState.RUNNING);
+        return server;
+    }
+}
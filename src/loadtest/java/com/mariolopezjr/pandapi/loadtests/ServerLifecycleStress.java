@@ -0,0 +1,331 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import com.mariolopezjr.pandapi.dao.ServerChangeListener;
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.data.server.ServerState;
+import com.mariolopezjr.pandapi.exception.BadRequestException;
+import com.mariolopezjr.pandapi.exception.ResourceNotFoundException;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
+import com.mariolopezjr.pandapi.service.server.impl.ServerServiceImpl;
+import org.apache.commons.configuration.BaseConfiguration;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One round of the stress test of the {@link ServerServiceImpl}: a few threads are let go at the same moment and
+ * create, delete, and read servers at random, with the simulated builds and destroys shortened to a few milliseconds
+ * so the servers go through their whole lifecycle during the round.  Every change of a server has to be a legal
+ * transition of its state, each server can be destroyed only once, and once the builds and destroys are done every
+ * server has to be either running or purged.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ServerLifecycleStress {
+
+    // the only state each state may change to (purging a destroyed server isn't a state change)
+    private static final Map<ServerState, ServerState> NEXT_STATE = new EnumMap<>(ServerState.class);
+
+    static {
+        NEXT_STATE.put(ServerState.BUILDING, ServerState.RUNNING);
+        NEXT_STATE.put(ServerState.RUNNING, ServerState.TERMINATING);
+        NEXT_STATE.put(ServerState.TERMINATING, ServerState.DESTROYED);
+    }
+
+    private final int threads;
+    private final int callsPerThread;
+    private final long buildTime;
+    private final long destroyTime;
+    private final long purgeDelay;
+
+    /**
+     * Checks every change of a server as the data store tells its listeners about it, from any thread.
+     */
+    private static class LifecycleListener implements ServerChangeListener {
+
+        private final Queue<String> violations = new ConcurrentLinkedQueue<>();
+
+        // servers that started running, were marked as terminating, and were purged, with how many times
+        private final Map<UUID, AtomicInteger> running = new ConcurrentHashMap<>();
+        private final Map<UUID, AtomicInteger> terminating = new ConcurrentHashMap<>();
+        private final Map<UUID, AtomicInteger> purged = new ConcurrentHashMap<>();
+
+        @Override
+        public void serverCreated(Server server) {
+            if (server.getState() != ServerState.BUILDING) {
+                violations.add("Server " + server.getId() + " was created in the " + server.getState() + " state");
+            }
+        }
+
+        @Override
+        public void serverUpdated(Server previous, Server current) {
+            if (NEXT_STATE.get(previous.getState()) != current.getState()) {
+                violations.add("Server " + current.getId() + " went from " + previous.getState() + " to "
+                        + current.getState());
+            }
+            if (current.getVersion() <= previous.getVersion()) {
+                violations.add("Server " + current.getId() + " went from version " + previous.getVersion() + " to "
+                        + current.getVersion());
+            }
+
+            if (current.getState() == ServerState.RUNNING) {
+                count(running, current.getId());
+            } else if (current.getState() == ServerState.TERMINATING) {
+                count(terminating, current.getId());
+            }
+        }
+
+        @Override
+        public void serverDeleted(Server server) {
+            if (server.getState() != ServerState.DESTROYED) {
+                violations.add("Server " + server.getId() + " was purged in the " + server.getState() + " state");
+            }
+
+            count(purged, server.getId());
+        }
+
+        /**
+         * Counts one more of something for a server.
+         * @param counts {@link Map}<{@link UUID}, {@link AtomicInteger}>
+         * @param id {@link UUID}
+         */
+        private static void count(final Map<UUID, AtomicInteger> counts, final UUID id) {
+            counts.computeIfAbsent(id, key -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param threads int number of threads making calls at the same time
+     * @param callsPerThread int
+     * @param buildTime long how long a build takes in milliseconds
+     * @param destroyTime long how long a destroy takes in milliseconds
+     * @param purgeDelay long how long a destroyed server is kept in milliseconds
+     */
+    public ServerLifecycleStress(final int threads, final int callsPerThread, final long buildTime,
+                                 final long destroyTime, final long purgeDelay) {
+        this.threads = threads;
+        this.callsPerThread = callsPerThread;
+        this.buildTime = buildTime;
+        this.destroyTime = destroyTime;
+        this.purgeDelay = purgeDelay;
+    }
+
+    /**
+     * Runs one round.
+     * @param seed long for the random calls, so a round that failed can be run again
+     * @return {@link List}<{@link String}> of the violations found, empty if there were none
+     * @throws InterruptedException
+     */
+    public List<String> run(final long seed) throws InterruptedException {
+        BaseConfiguration config = new BaseConfiguration();
+        config.setProperty("application/lifecycle/buildTime", buildTime);
+        config.setProperty("application/lifecycle/destroyTime", destroyTime);
+        config.setProperty("application/lifecycle/purgeDelay", purgeDelay);
+
+        MetricsRegistry metrics = new MetricsRegistry();
+        ServerInMemoryDao dao = new ServerInMemoryDao(config, metrics);
+        LifecycleListener listener = new LifecycleListener();
+        dao.addChangeListener(listener);
+        ServerServiceImpl service = new ServerServiceImpl(dao, config, metrics);
+
+        // every server created during the round, and the deletes that were accepted
+        List<UUID> created = new CopyOnWriteArrayList<>();
+        Map<UUID, AtomicInteger> deleted = new ConcurrentHashMap<>();
+        Queue<String> violations = new ConcurrentLinkedQueue<>();
+
+        Thread[] workers = new Thread[threads];
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed * 31 + t);
+            String namePrefix = "t" + t + "-";
+
+            workers[t] = new Thread(() -> {
+                try {
+                    barrier.await();
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    violations.add("Thread never started: " + e);
+                    return;
+                }
+
+                for (int i = 0; i < callsPerThread; i++) {
+                    call(service, created, deleted, random, namePrefix + i, violations);
+                }
+            }, "lifecycle-stress-" + t);
+            workers[t].start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        if (!awaitSettled(dao, listener, deleted.keySet())) {
+            violations.add("The servers were still being built or destroyed after "
+                    + TimeUnit.NANOSECONDS.toSeconds(settleTimeout()) + "s");
+        }
+
+        List<String> found = new ArrayList<>(violations);
+        found.addAll(listener.violations);
+        checkLifecycles(dao, listener, created, deleted, found);
+
+        return found;
+    }
+
+    /**
+     * Makes a random call.
+     * @param service {@link ServerServiceImpl}
+     * @param created {@link List}<{@link UUID}> of the servers created so far, to add to
+     * @param deleted {@link Map}<{@link UUID}, {@link AtomicInteger}> the accepted deletes so far, to add to
+     * @param random {@link Random}
+     * @param name {@link String} for a new server
+     * @param violations {@link Queue}<{@link String}> to add to
+     */
+    private static void call(final ServerServiceImpl service, final List<UUID> created,
+                             final Map<UUID, AtomicInteger> deleted, final Random random, final String name,
+                             final Queue<String> violations) {
+        int pick = random.nextInt(100);
+
+        if (pick < 20 || created.isEmpty()) {
+            Server server = new Server();
+            server.setName(name);
+            server.setCpus(1);
+            server.setRam(1);
+            server.setDiskSpace(1);
+            created.add(service.createServer(server).getId());
+        } else {
+            // the recent servers are the ones most likely to be in the middle of something
+            int newest = created.size();
+            UUID id = created.get(Math.max(0, newest - 1 - random.nextInt(Math.min(newest, 8))));
+
+            try {
+                if (pick < 70) {
+                    service.deleteServer(id.toString());
+                    deleted.computeIfAbsent(id, key -> new AtomicInteger()).incrementAndGet();
+                } else if (pick < 90) {
+                    if (service.getServerById(id.toString()).getState() == null) {
+                        violations.add("Server " + id + " has no state");
+                    }
+                } else {
+                    service.getAllServers();
+                }
+            } catch (BadRequestException | ResourceNotFoundException e) {
+                // not running (yet or anymore), or purged already
+            }
+        }
+
+        // give the builds and destroys a chance to move the servers along
+        LockSupport.parkNanos(random.nextInt(100_000));
+    }
+
+    /**
+     * Waits until every server is either running or purged, i.e. until all of the builds and destroys are done.
+     * @param dao {@link ServerInMemoryDao}
+     * @param listener {@link LifecycleListener}
+     * @param deleted {@link Set}<{@link UUID}> of the servers that were accepted for deletion
+     * @return boolean true if they got there in time
+     * @throws InterruptedException
+     */
+    private boolean awaitSettled(final ServerInMemoryDao dao, final LifecycleListener listener,
+                                 final Set<UUID> deleted) throws InterruptedException {
+        long deadline = System.nanoTime() + settleTimeout();
+
+        while (System.nanoTime() < deadline) {
+            if (listener.purged.keySet().containsAll(deleted)
+                    && dao.getAllServers().stream().allMatch(server -> server.getState() == ServerState.RUNNING)) {
+                return true;
+            }
+
+            Thread.sleep(10);
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns how long to wait for the builds and destroys to be done.
+     * @return long nanoseconds
+     */
+    private long settleTimeout() {
+        return TimeUnit.MILLISECONDS.toNanos(buildTime + destroyTime + purgeDelay) + TimeUnit.SECONDS.toNanos(10);
+    }
+
+    /**
+     * Checks that every server went through its lifecycle once: it started running once, and if a delete was
+     * accepted, it was the only one, the server was marked as terminating once, and it was purged once.
+     * @param dao {@link ServerInMemoryDao}
+     * @param listener {@link LifecycleListener}
+     * @param created {@link List}<{@link UUID}>
+     * @param deleted {@link Map}<{@link UUID}, {@link AtomicInteger}>
+     * @param violations {@link List}<{@link String}> to add to
+     */
+    private static void checkLifecycles(final ServerInMemoryDao dao, final LifecycleListener listener,
+                                        final List<UUID> created, final Map<UUID, AtomicInteger> deleted,
+                                        final List<String> violations) {
+        for (UUID id : created) {
+            int accepted = times(deleted, id);
+            int running = times(listener.running, id);
+            int terminating = times(listener.terminating, id);
+            int purged = times(listener.purged, id);
+
+            if (running != 1) {
+                violations.add("Server " + id + " started running " + running + " times");
+            }
+            if (accepted > 1) {
+                violations.add("Server " + id + " was destroyed by " + accepted + " deletes");
+            }
+            if (terminating != accepted || purged != accepted) {
+                violations.add("Server " + id + " was marked as terminating " + terminating + " times and purged "
+                        + purged + " times after " + accepted + " deletes");
+            }
+
+            Server server = dao.getServerById(id);
+            if (accepted == 0 && (null == server || server.getState() != ServerState.RUNNING)) {
+                violations.add("Server " + id + " should be running but is " + server);
+            } else if (accepted > 0 && server != null) {
+                violations.add("Server " + id + " should be purged but is " + server);
+            }
+        }
+    }
+
+    /**
+     * Returns how many times something happened to a server.
+     * @param counts {@link Map}<{@link UUID}, {@link AtomicInteger}>
+     * @param id {@link UUID}
+     * @return int
+     */
+    private static int times(final Map<UUID, AtomicInteger> counts, final UUID id) {
+        AtomicInteger count = counts.get(id);
+        return null == count ? 0 : count.get();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The servers seeded before the load test, for the requests that need an existing server.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ServerPool {
+
+    // never changes, so any thread can pick from it
+    private final String[] ids;
+
+    // seeded servers that reached the running state and haven't been deleted yet
+    private final Queue<String> running = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructor.
+     * @param ids {@link List}<{@link String}> of all of the seeded servers
+     * @param runningIds {@link List}<{@link String}> of the ones that are running
+     */
+    public ServerPool(final List<String> ids, final List<String> runningIds) {
+        if (ids.isEmpty()) {
+            throw new IllegalArgumentException("At least one server has to be seeded");
+        }
+
+        this.ids = ids.toArray(new String[ids.size()]);
+        running.addAll(runningIds);
+    }
+
+    /**
+     * Returns the id of a random seeded server.
+     * @return {@link String}
+     */
+    public String any() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    /**
+     * Returns the id of a running server, which won't be returned again.  Once they're all taken, returns a random
+     * seeded server instead (which can't be deleted anymore).
+     * @return {@link String}
+     */
+    public String takeRunning() {
+        String id = running.poll();
+        return null == id ? any() : id;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.loadtests;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hammers the in-memory data store and the server service from a number of threads with random calls, in many short
+ * rounds (the way jcstress does, a race that only happens one time in a thousand still shows up), and checks
+ * every round's history: see {@link ServerDaoStress} and {@link ServerLifecycleStress}.  Each round's random calls
+ * come from the seed and the round number, so a round that failed can be run again with the same calls (the threads
+ * still interleave differently every time, though).<br/>
+ *
+ * Settings are read from "stressTest.*" properties, the Gradle task passes its project properties along as those.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class StressTest {
+
+    private static final String PREFIX = "stressTest.";
+
+    // stop reporting after this many violations, one race tends to break a lot of rounds
+    private static final int MAX_REPORTED = 10;
+
+    private final long seed;
+
+    private final int daoRounds;
+    private final int daoThreads;
+    private final int daoServers;
+    private final int daoCalls;
+
+    private final int lifecycleRounds;
+    private final int lifecycleThreads;
+    private final int lifecycleCalls;
+    private final int buildTime;
+    private final int destroyTime;
+    private final int purgeDelay;
+
+    /**
+     * Constructor.
+     * @param properties {@link Properties} anything that isn't set gets its default
+     */
+    public StressTest(final Properties properties) {
+        String seedValue = properties.getProperty(PREFIX + "seed");
+        try {
+            seed = null == seedValue ? System.nanoTime() : Long.parseLong(seedValue.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a whole number for " + PREFIX + "seed but got: " + seedValue);
+        }
+
+        // few servers and short rounds, so the threads keep running into each other
+        daoRounds = getInt(properties, "daoRounds", 5_000);
+        daoThreads = getInt(properties, "daoThreads", 4);
+        daoServers = getInt(properties, "daoServers", 3);
+        daoCalls = getInt(properties, "daoCalls", 50);
+
+        lifecycleRounds = getInt(properties, "lifecycleRounds", 50);
+        lifecycleThreads = getInt(properties, "lifecycleThreads", 8);
+        lifecycleCalls = getInt(properties, "lifecycleCalls", 200);
+
+        // in milliseconds, short enough for the servers to go through their whole lifecycle during a round
+        buildTime = getInt(properties, "buildTime", 1);
+        destroyTime = getInt(properties, "destroyTime", 1);
+        purgeDelay = getInt(properties, "purgeDelay", 1);
+    }
+
+    /**
+     * Runs the stress test with the settings from the system properties.
+     * @param args ignored
+     * @throws Exception if the test couldn't be run
+     */
+    public static void main(final String[] args) throws Exception {
+        boolean passed = new StressTest(System.getProperties()).run();
+
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Runs the rounds against the data store, then the ones against the service.
+     * @return boolean true if no round found a violation
+     * @throws InterruptedException
+     */
+    public boolean run() throws InterruptedException {
+        System.out.printf("Stress testing with seed %d (pass -PstressTest.seed=%d to make the same calls again)%n",
+                seed, seed);
+
+        System.out.printf("Data store: %d rounds of %d threads making %d calls each on %d servers%n", daoRounds,
+                daoThreads, daoCalls, daoServers);
+        ServerDaoStress daoStress = new ServerDaoStress(daoThreads, daoServers, daoCalls);
+        int failedDaoRounds = 0;
+        int reported = 0;
+        long started = System.nanoTime();
+        for (int round = 0; round < daoRounds; round++) {
+            List<String> violations = daoStress.run(seed + round);
+
+            if (!violations.isEmpty()) {
+                failedDaoRounds++;
+                reported = report("data store", round, violations, reported);
+            }
+        }
+        System.out.printf("Data store: %d of %d rounds failed in %dms%n", failedDaoRounds, daoRounds,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+        System.out.printf("Service: %d rounds of %d threads making %d calls each, builds take %dms, destroys %dms, "
+                + "purges %dms%n", lifecycleRounds, lifecycleThreads, lifecycleCalls, buildTime, destroyTime,
+                purgeDelay);
+        ServerLifecycleStress lifecycleStress = new ServerLifecycleStress(lifecycleThreads, lifecycleCalls,
+                buildTime, destroyTime, purgeDelay);
+        int failedLifecycleRounds = 0;
+        started = System.nanoTime();
+        for (int round = 0; round < lifecycleRounds; round++) {
+            List<String> violations = lifecycleStress.run(seed + round);
+
+            if (!violations.isEmpty()) {
+                failedLifecycleRounds++;
+                reported = report("service", round, violations, reported);
+            }
+        }
+        System.out.printf("Service: %d of %d rounds failed in %dms%n", failedLifecycleRounds, lifecycleRounds,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+        return failedDaoRounds == 0 && failedLifecycleRounds == 0;
+    }
+
+    /**
+     * Prints the violations of a round that failed, as long as not too many were printed already.
+     * @param what {@link String} that was tested
+     * @param round int
+     * @param violations {@link List}<{@link String}>
+     * @param reported int number of violations printed so far
+     * @return int number of violations printed now
+     */
+    private static int report(final String what, final int round, final List<String> violations, int reported) {
+        for (String violation : violations) {
+            if (reported++ < MAX_REPORTED) {
+                System.out.printf("FAILED: %s round %d: %s%n", what, round, violation);
+            }
+        }
+
+        return reported;
+    }
+
+    /**
+     * Reads an int setting.
+     * @param properties {@link Properties}
+     * @param name {@link String} without the prefix
+     * @param defaultValue int
+     * @return int
+     */
+    private static int getInt(final Properties properties, final String name, final int defaultValue) {
+        String value = properties.getProperty(PREFIX + name);
+
+        try {
+            return null == value ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a whole number for " + PREFIX + name + " but got: " + value);
+        }
+    }
+}
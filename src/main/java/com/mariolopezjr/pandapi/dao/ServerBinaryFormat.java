@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao;
+
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.data.server.ServerState;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Compact binary form of a server resource, for the data stores that send them between nodes or write them to disk.
+ * Every property is written, including the version.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public final class ServerBinaryFormat {
+
+    private ServerBinaryFormat() {
+        // static methods only
+    }
+
+    /**
+     * Writes every property of a server, including the version.
+     * @param out {@link DataOutput}
+     * @param server {@link Server}
+     * @throws IOException
+     */
+    public static void writeServer(final DataOutput out, final Server server) throws IOException {
+        writeUuid(out, server.getId());
+        out.writeBoolean(server.getName() != null);
+        if (server.getName() != null) {
+            out.writeUTF(server.getName());
+        }
+        out.writeInt(server.getCpus());
+        out.writeInt(server.getRam());
+        out.writeInt(server.getDiskSpace());
+        out.writeByte(null == server.getState() ? -1 : server.getState().ordinal());
+        out.writeLong(server.getVersion());
+    }
+
+    /**
+     * Reads a server written by {@link #writeServer(DataOutput, Server)}.
+     * @param in {@link DataInput}
+     * @return {@link Server}
+     * @throws IOException
+     */
+    public static Server readServer(final DataInput in) throws IOException {
+        Server server = new Server();
+        server.setId(readUuid(in));
+        server.setName(in.readBoolean() ? in.readUTF() : null);
+        server.setCpus(in.readInt());
+        server.setRam(in.readInt());
+        server.setDiskSpace(in.readInt());
+        byte state = in.readByte();
+        server.setState(state < 0 ? null : ServerState.values()[state]);
+        server.setVersion(in.readLong());
+
+        return server;
+    }
+
+    /**
+     * Writes a UUID as its two longs.
+     * @param out {@link DataOutput}
+     * @param uuid {@link UUID}
+     * @throws IOException
+     */
+    public static void writeUuid(final DataOutput out, final UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Reads a UUID written by {@link #writeUuid(DataOutput, UUID)}.
+     * @param in {@link DataInput}
+     * @return {@link UUID}
+     * @throws IOException
+     */
+    public static UUID readUuid(final DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao;
+
+import com.mariolopezjr.pandapi.data.server.Server;
+
+/**
+ * Callback for code that needs to know when a server resource changes in the backing data store.  Listeners are
+ * called on the thread that made the change, after the change is visible to readers, so implementations should hand
+ * off any real work instead of doing it inline.<br/>
+ *
+ * The {@link Server} instances passed in are the ones held by the data store.  They must not be modified.<br/>
+ *
+ * Listeners must never call back into the data store: they may be called on a thread its reads wait for (the one that
+ * applies a cluster's log, or a replica's feed), or its reads may be remote calls.  Everything they need is in the
+ * notification, including the version to order the notifications of a server by.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public interface ServerChangeListener {
+
+    /**
+     * Called after a new server resource was persisted.
+     * @param server {@link Server} the new server resource
+     */
+    void serverCreated(Server server);
+
+    /**
+     * Called after an existing server resource was updated.
+     * @param previous {@link Server} the values before the update
+     * @param current {@link Server} the values after the update
+     */
+    void serverUpdated(Server previous, Server current);
+
+    /**
+     * Called after a server resource was deleted (i.e. purged) from the data store.
+     * @param server {@link Server} the last values of the deleted server resource
+     */
+    void serverDeleted(Server server);
+}
@@ -18,6 +18,7 @@ package com.mariolopezjr.pandapi.dao;
 
 import com.mariolopezjr.pandapi.data.server.Server;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
@@ -34,6 +35,15 @@ public interface ServerDao {
      */
     List<Server> getAllServers();
 
+    /**
+     * Iterate over all of the server resources (including destroyed) currently in the backing data store without
+     * copying them into a list first, so the memory used doesn't depend on the number of servers.  The iterator is
+     * weakly consistent: every server returned is a consistent copy, but changes made during the iteration may or may
+     * not be reflected.
+     * @return {@link Iterator}<{@link Server}> read-only
+     */
+    Iterator<Server> iterateServers();
+
     /**
      * Retrieve the {@link Server} with the specified server identifier.
      * @param serverId {@link UUID} the server identifier
@@ -41,9 +51,16 @@ public interface ServerDao {
      */
     Server getServerById(UUID serverId);
 
+    /**
+     * Returns the version of the whole set of server resources.  It changes after every create, update, and delete,
+     * so if it hasn't changed, neither has the list of servers.
+     * @return long
+     */
+    long getInventoryVersion();
+
     /**
      * Persists the new server resource into the data store.  A {@link Server} is returned in case the data store
-     * makes any updates to the resource (e.g. setting the identifier).
+     * makes any updates to the resource (e.g. setting the identifier and version).
      * @param server {@link Server}
      * @return {@link Server}
      */
@@ -51,11 +68,21 @@ public interface ServerDao {
 
     /**
      * Updates the existing server resource with the same id as the specified server to its values (other than id).
+     * The data store assigns the updated resource a new version.
      * @param server {@link Server} the server resource with the updated values to use
      * @return boolean true if a server resource was updated, false if nothing was updated (e.g. it didn't already exist)
      */
     boolean updateServer(Server server);
 
+    /**
+     * Persists a batch of server resources that already have their identifiers (e.g. restored from an export),
+     * creating the ones that don't exist yet and replacing the ones that do.  Each one gets a new version from the data
+     * store, and the change listeners hear about each one like any other create or update.
+     * @param servers {@link List}<{@link Server}> with their identifiers set
+     * @return int the number of servers that were created, the rest replaced existing ones
+     */
+    int putServers(List<Server> servers);
+
     /**
      * Deletes the server resource with the specified server identifier.  Returns the number of records affected by
      * this action.
@@ -63,4 +90,16 @@ public interface ServerDao {
      * @return boolean true if the server resource was deleted, false if there was nothing to delete (e.g. it didn't exist)
      */
     boolean deleteServer(UUID serverId);
+
+    /**
+     * Registers a listener that will be notified of every change made to the server resources in the data store.
+     * @param listener {@link ServerChangeListener}
+     */
+    void addChangeListener(ServerChangeListener listener);
+
+    /**
+     * Removes a listener previously registered with {@link #addChangeListener(ServerChangeListener)}.
+     * @param listener {@link ServerChangeListener}
+     */
+    void removeChangeListener(ServerChangeListener listener);
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao;
+
+import com.mariolopezjr.pandapi.exception.InternalException;
+import org.apache.commons.configuration.Configuration;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How the data stores pick the identifier of a new server resource.  Every data store that assigns identifiers uses
+ * the configured one, so the identifiers look the same however the servers are stored.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public enum ServerIdGenerator {
+
+    /**
+     * Version 4 UUIDs: 122 random bits from the shared {@link java.security.SecureRandom}, which every thread creating
+     * a server has to take turns with.  The identifiers are in no particular order.
+     */
+    RANDOM {
+        @Override
+        public UUID nextId() {
+            return UUID.randomUUID();
+        }
+    },
+
+    /**
+     * Version 7 UUIDs: the creation time in milliseconds followed by 74 bits from the creating thread's own
+     * {@link ThreadLocalRandom}, so no thread ever waits for another one, and the identifiers sort (as strings, or
+     * with {@link UUID#compareTo(UUID)}) in the order the servers were created, give or take a millisecond.  The
+     * random bits aren't cryptographically strong, the identifiers aren't secrets.
+     */
+    TIME_ORDERED {
+        @Override
+        public UUID nextId() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            // 48 bits of time, the version, and 12 random bits
+            long mostSigBits = (System.currentTimeMillis() << 16) | 0x7000L | (random.nextLong() & 0x0fffL);
+
+            // the IETF variant and 62 random bits
+            long leastSigBits = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+
+            return new UUID(mostSigBits, leastSigBits);
+        }
+    };
+
+    // where the configured generator is, under the data store settings
+    private static final String CONFIG_PATH = "dataStore/idGenerator";
+
+    /**
+     * Returns a new identifier for a server resource.
+     * @return {@link UUID}
+     */
+    public abstract UUID nextId();
+
+    /**
+     * Returns the configured generator, "random" or "timeOrdered" (the default).
+     * @param config {@link Configuration}
+     * @return {@link ServerIdGenerator}
+     * @throws InternalException if the configured generator doesn't exist
+     */
+    public static ServerIdGenerator fromConfig(final Configuration config) {
+        String name = config.getString(CONFIG_PATH, "timeOrdered");
+
+        if (null == name || "timeOrdered".equals(name)) {
+            return TIME_ORDERED;
+        } else if ("random".equals(name)) {
+            return RANDOM;
+        }
+
+        throw new InternalException("Unknown server ID generator: " + name);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.cluster;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * An entry of the replicated log: a change to the server resources and the term of the leader that added it.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+final class LogEntry {
+
+    private final long term;
+    private final ServerCommand command;
+
+    /**
+     * Constructor
+     * @param term long
+     * @param command {@link ServerCommand}
+     */
+    LogEntry(final long term, final ServerCommand command) {
+        this.term = term;
+        this.command = command;
+    }
+
+    long getTerm() {
+        return term;
+    }
+
+    ServerCommand getCommand() {
+        return command;
+    }
+
+    /**
+     * Writes the entry for the log file or a peer.
+     * @param out {@link DataOutput}
+     * @throws IOException
+     */
+    void writeTo(final DataOutput out) throws IOException {
+        out.writeLong(term);
+        command.writeTo(out);
+    }
+
+    /**
+     * Reads an entry written by {@link #writeTo(DataOutput)}.
+     * @param in {@link DataInput}
+     * @return {@link LogEntry}
+     * @throws IOException
+     */
+    static LogEntry readFrom(final DataInput in) throws IOException {
+        return new LogEntry(in.readLong(), ServerCommand.readFrom(in));
+    }
+}
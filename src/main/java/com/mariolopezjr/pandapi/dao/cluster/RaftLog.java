@@ -0,0 +1,357 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.cluster;
+
+import com.mariolopezjr.pandapi.exception.InternalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The part of a node's consensus state that has to survive a restart: its log, the current term, and who it voted
+ * for in that term.  Without them a restarted node could vote twice in a term, or lose entries that were already
+ * counted as committed.<br/>
+ *
+ * The log is one append-only file of length-prefixed, checksummed entries, and is also kept in memory.  An entry that
+ * was only partly written when the process died fails its checksum and is dropped (along with everything after it)
+ * when the log is loaded again; it was never acknowledged to anyone.  Entries are written right away but only forced
+ * to the disk by {@link #sync()}, so the concurrent writes waiting on one sync all share it.<br/>
+ *
+ * Indexes start at 1, index 0 (term 0) is the empty log.  Thread safe.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class RaftLog implements Closeable {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(RaftLog.class);
+
+    // nobody was voted for in the current term
+    static final int NO_VOTE = -1;
+
+    private static final String LOG_FILE = "log";
+    private static final String TERM_FILE = "term";
+
+    // the length and the checksum in front of every entry
+    private static final int HEADER_BYTES = 8;
+
+    private final Path dir;
+    private final FileChannel channel;
+
+    // whether sync() forces the writes to the disk (off is only safe while a majority of the nodes stays up)
+    private final boolean forceWrites;
+
+    // guarded by this
+    private final List<LogEntry> entries = new ArrayList<>();
+    // where each entry starts in the file, plus where the next one will
+    private final List<Long> offsets = new ArrayList<>();
+    private long syncedIndex;
+    private long currentTerm;
+    private int votedFor = NO_VOTE;
+
+    /**
+     * Constructor, loads the log and the term left by an earlier run (if any).
+     * @param dir {@link Path} directory for the files, created if it doesn't exist
+     * @param forceWrites boolean whether {@link #sync()} forces the writes to the disk
+     * @throws IOException if the files can't be read or created
+     */
+    RaftLog(final Path dir, final boolean forceWrites) throws IOException {
+        this.dir = dir;
+        this.forceWrites = forceWrites;
+
+        Files.createDirectories(dir);
+        loadTerm();
+
+        channel = FileChannel.open(dir.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        loadEntries();
+        syncedIndex = entries.size();
+
+        LOG.info("Loaded {} log entries and term {} from {}", entries.size(), currentTerm, dir.toAbsolutePath());
+    }
+
+    /**
+     * Reads the current term and vote, if they were ever saved.
+     * @throws IOException
+     */
+    private void loadTerm() throws IOException {
+        Path termFile = dir.resolve(TERM_FILE);
+
+        if (Files.exists(termFile)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(termFile))) {
+                currentTerm = in.readLong();
+                votedFor = in.readInt();
+            }
+        }
+    }
+
+    /**
+     * Reads every intact entry from the log file and cuts off anything after the first one that isn't.
+     * @throws IOException
+     */
+    private void loadEntries() throws IOException {
+        long offset = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(
+                dir.resolve(LOG_FILE))))) {
+            while (true) {
+                byte[] payload;
+                long checksum;
+                try {
+                    int length = in.readInt();
+                    checksum = in.readInt() & 0xFFFFFFFFL;
+                    if (length < 0 || length > channel.size()) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (checksum(payload) != checksum) {
+                    break;
+                }
+
+                offsets.add(offset);
+                entries.add(LogEntry.readFrom(new DataInputStream(new ByteArrayInputStream(payload))));
+                offset += HEADER_BYTES + payload.length;
+            }
+        }
+
+        offsets.add(offset);
+
+        if (channel.size() > offset) {
+            LOG.warn("Dropping {} bytes of incomplete entries at the end of the log", channel.size() - offset);
+            channel.truncate(offset);
+            channel.force(true);
+        }
+    }
+
+    synchronized long getCurrentTerm() {
+        return currentTerm;
+    }
+
+    synchronized int getVotedFor() {
+        return votedFor;
+    }
+
+    /**
+     * Saves the current term and vote, both have to be on the disk before the node acts on them.
+     * @param term long
+     * @param votedFor int node identifier or {@link #NO_VOTE}
+     */
+    synchronized void setTermAndVote(final long term, final int votedFor) {
+        Path termFile = dir.resolve(TERM_FILE);
+        Path tempFile = dir.resolve(TERM_FILE + ".tmp");
+
+        try (FileChannel out = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(12).putLong(term).putInt(votedFor);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        } catch (IOException e) {
+            throw new InternalException("Unable to save the term to " + tempFile, e);
+        }
+
+        try {
+            Files.move(tempFile, termFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new InternalException("Unable to save the term to " + termFile, e);
+        }
+
+        this.currentTerm = term;
+        this.votedFor = votedFor;
+    }
+
+    /**
+     * Returns the index of the last entry.
+     * @return long 0 if the log is empty
+     */
+    synchronized long getLastIndex() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the term of the last entry.
+     * @return long 0 if the log is empty
+     */
+    synchronized long getLastTerm() {
+        return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).getTerm();
+    }
+
+    /**
+     * Returns the term of the entry at the index.
+     * @param index long between 0 and {@link #getLastIndex()}
+     * @return long 0 for index 0
+     */
+    synchronized long getTerm(final long index) {
+        return index == 0 ? 0 : entries.get((int) index - 1).getTerm();
+    }
+
+    /**
+     * Returns the entry at the index.
+     * @param index long between 1 and {@link #getLastIndex()}
+     * @return {@link LogEntry}
+     */
+    synchronized LogEntry get(final long index) {
+        return entries.get((int) index - 1);
+    }
+
+    /**
+     * Returns the entries starting at an index.
+     * @param fromIndex long the first index, may be past the end
+     * @param maxEntries int
+     * @return {@link List}<{@link LogEntry}> a copy, empty if there aren't any
+     */
+    synchronized List<LogEntry> getFrom(final long fromIndex, final int maxEntries) {
+        if (fromIndex > entries.size()) {
+            return Collections.emptyList();
+        }
+
+        int from = (int) fromIndex - 1;
+        return new ArrayList<>(entries.subList(from, Math.min(entries.size(), from + maxEntries)));
+    }
+
+    /**
+     * Adds an entry to the end of the log.  It's written to the file but not forced to the disk, see {@link #sync()}.
+     * @param entry {@link LogEntry}
+     * @return long the index of the entry
+     */
+    synchronized long append(final LogEntry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            // placeholders for the length and the checksum
+            out.writeLong(0);
+            entry.writeTo(out);
+        } catch (IOException e) {
+            throw new InternalException("Unable to serialize the log entry " + entry.getCommand(), e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        int length = buffer.capacity() - HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_BYTES, length);
+        buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+
+        long offset = offsets.get(offsets.size() - 1);
+        try {
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new InternalException("Unable to write to the log in " + dir, e);
+        }
+
+        entries.add(entry);
+        offsets.add(offset + buffer.capacity());
+
+        return entries.size();
+    }
+
+    /**
+     * Removes the entry at the index and every entry after it, which only ever happens to entries that a new leader
+     * doesn't have (and which therefore were never committed).
+     * @param index long between 1 and {@link #getLastIndex()}
+     */
+    synchronized void truncateFrom(final long index) {
+        int from = (int) index - 1;
+
+        try {
+            channel.truncate(offsets.get(from));
+            channel.force(true);
+        } catch (IOException e) {
+            throw new InternalException("Unable to truncate the log in " + dir, e);
+        }
+
+        entries.subList(from, entries.size()).clear();
+        offsets.subList(from + 1, offsets.size()).clear();
+        syncedIndex = Math.min(syncedIndex, entries.size());
+    }
+
+    /**
+     * Forces every entry written so far to the disk, unless another call already did.
+     * @return long the index up to which the entries are on the disk
+     */
+    synchronized long sync() {
+        if (syncedIndex < entries.size()) {
+            if (forceWrites) {
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    throw new InternalException("Unable to sync the log in " + dir, e);
+                }
+            }
+            syncedIndex = entries.size();
+        }
+
+        return syncedIndex;
+    }
+
+    /**
+     * Returns the index up to which the entries are on the disk.
+     * @return long
+     */
+    synchronized long getSyncedIndex() {
+        return syncedIndex;
+    }
+
+    /**
+     * Closes the log file.
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns the CRC-32 of the bytes.
+     * @param bytes byte[]
+     * @return long
+     */
+    private static long checksum(final byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        return crc.getValue();
+    }
+}
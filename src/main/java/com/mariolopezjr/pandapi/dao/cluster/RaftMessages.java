@@ -0,0 +1,239 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.cluster;
+
+import com.mariolopezjr.pandapi.dao.ServerBinaryFormat;
+import com.mariolopezjr.pandapi.data.server.Server;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The requests the nodes of a cluster send each other, and their responses, along with how they're written to and
+ * read from a connection.  The first four are Raft's, the other two let followers hand writes and linearizable reads
+ * to the leader.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+final class RaftMessages {
+
+    // no node, e.g. while there is no leader
+    static final int NONE = -1;
+
+    /**
+     * Only has static members.
+     */
+    private RaftMessages() {
+    }
+
+    /**
+     * Sent by the leader to replicate entries, and without any as a heartbeat.
+     */
+    static final class AppendEntries {
+        final long term;
+        final int leaderId;
+        final long prevLogIndex;
+        final long prevLogTerm;
+        final List<LogEntry> entries;
+        final long leaderCommit;
+
+        AppendEntries(
+                final long term,
+                final int leaderId,
+                final long prevLogIndex,
+                final long prevLogTerm,
+                final List<LogEntry> entries,
+                final long leaderCommit) {
+            this.term = term;
+            this.leaderId = leaderId;
+            this.prevLogIndex = prevLogIndex;
+            this.prevLogTerm = prevLogTerm;
+            this.entries = entries;
+            this.leaderCommit = leaderCommit;
+        }
+
+        void writeTo(final DataOutput out) throws IOException {
+            out.writeLong(term);
+            out.writeInt(leaderId);
+            out.writeLong(prevLogIndex);
+            out.writeLong(prevLogTerm);
+            out.writeInt(entries.size());
+            for (LogEntry entry : entries) {
+                entry.writeTo(out);
+            }
+            out.writeLong(leaderCommit);
+        }
+
+        static AppendEntries readFrom(final DataInput in) throws IOException {
+            long term = in.readLong();
+            int leaderId = in.readInt();
+            long prevLogIndex = in.readLong();
+            long prevLogTerm = in.readLong();
+            int count = in.readInt();
+            List<LogEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(LogEntry.readFrom(in));
+            }
+
+            return new AppendEntries(term, leaderId, prevLogIndex, prevLogTerm, entries, in.readLong());
+        }
+    }
+
+    /**
+     * The follower's answer to {@link AppendEntries}.  On success, the index is the last one the follower now has in
+     * common with the leader, otherwise it's the index the leader should try next.
+     */
+    static final class AppendEntriesResult {
+        final long term;
+        final boolean success;
+        final long index;
+
+        AppendEntriesResult(final long term, final boolean success, final long index) {
+            this.term = term;
+            this.success = success;
+            this.index = index;
+        }
+
+        void writeTo(final DataOutput out) throws IOException {
+            out.writeLong(term);
+            out.writeBoolean(success);
+            out.writeLong(index);
+        }
+
+        static AppendEntriesResult readFrom(final DataInput in) throws IOException {
+            return new AppendEntriesResult(in.readLong(), in.readBoolean(), in.readLong());
+        }
+    }
+
+    /**
+     * Sent by a candidate to ask for a vote.
+     */
+    static final class RequestVote {
+        final long term;
+        final int candidateId;
+        final long lastLogIndex;
+        final long lastLogTerm;
+
+        RequestVote(final long term, final int candidateId, final long lastLogIndex, final long lastLogTerm) {
+            this.term = term;
+            this.candidateId = candidateId;
+            this.lastLogIndex = lastLogIndex;
+            this.lastLogTerm = lastLogTerm;
+        }
+
+        void writeTo(final DataOutput out) throws IOException {
+            out.writeLong(term);
+            out.writeInt(candidateId);
+            out.writeLong(lastLogIndex);
+            out.writeLong(lastLogTerm);
+        }
+
+        static RequestVote readFrom(final DataInput in) throws IOException {
+            return new RequestVote(in.readLong(), in.readInt(), in.readLong(), in.readLong());
+        }
+    }
+
+    /**
+     * The answer to {@link RequestVote}.
+     */
+    static final class RequestVoteResult {
+        final long term;
+        final boolean granted;
+
+        RequestVoteResult(final long term, final boolean granted) {
+            this.term = term;
+            this.granted = granted;
+        }
+
+        void writeTo(final DataOutput out) throws IOException {
+            out.writeLong(term);
+            out.writeBoolean(granted);
+        }
+
+        static RequestVoteResult readFrom(final DataInput in) throws IOException {
+            return new RequestVoteResult(in.readLong(), in.readBoolean());
+        }
+    }
+
+    /**
+     * The leader's answer to a write a follower forwarded ({@link ServerCommand}) or to a follower asking for the
+     * index it has to catch up to before a read.  If it wasn't successful, the leader is the node to try instead (if
+     * known).  The result of a write is what applying it returned.
+     */
+    static final class LeaderResult {
+        final boolean success;
+        final int leaderId;
+        final long index;
+        final Object result;
+
+        LeaderResult(final boolean success, final int leaderId, final long index, final Object result) {
+            this.success = success;
+            this.leaderId = leaderId;
+            this.index = index;
+            this.result = result;
+        }
+
+        static LeaderResult notLeader(final int leaderId) {
+            return new LeaderResult(false, leaderId, 0, null);
+        }
+
+        void writeTo(final DataOutput out) throws IOException {
+            out.writeBoolean(success);
+            out.writeInt(leaderId);
+            out.writeLong(index);
+
+            if (result instanceof Server) {
+                out.writeByte(2);
+                ServerBinaryFormat.writeServer(out, (Server) result);
+            } else if (result instanceof Boolean) {
+                out.writeByte(1);
+                out.writeBoolean((Boolean) result);
+            } else if (result instanceof Integer) {
+                out.writeByte(3);
+                out.writeInt((Integer) result);
+            } else {
+                out.writeByte(0);
+            }
+        }
+
+        static LeaderResult readFrom(final DataInput in) throws IOException {
+            boolean success = in.readBoolean();
+            int leaderId = in.readInt();
+            long index = in.readLong();
+
+            Object result;
+            switch (in.readByte()) {
+                case 2:
+                    result = ServerBinaryFormat.readServer(in);
+                    break;
+                case 1:
+                    result = in.readBoolean();
+                    break;
+                case 3:
+                    result = in.readInt();
+                    break;
+                default:
+                    result = null;
+            }
+
+            return new LeaderResult(success, leaderId, index, result);
+        }
+    }
+}
@@ -0,0 +1,970 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.cluster;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.AppendEntries;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.AppendEntriesResult;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.LeaderResult;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.RequestVote;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.RequestVoteResult;
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao;
+import com.mariolopezjr.pandapi.exception.DataStoreUnavailableException;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntConsumer;
+
+import static com.mariolopezjr.pandapi.dao.cluster.RaftMessages.NONE;
+
+/**
+ * One node of a cluster that agrees on the changes to the server resources with the Raft consensus algorithm.  One
+ * node is elected leader and appends every write to its log, the write is committed once a majority of the nodes
+ * have it on their disk, and then every node applies it to its copy of the servers, in log order.  A leader that
+ * dies is replaced within an election timeout or two, without losing any committed writes.<br/>
+ *
+ * Writes on a follower are forwarded to the leader.  Reads are linearizable: a node only answers once it has applied
+ * every write committed before the read started.  The leader knows it's still the leader without asking, for as long
+ * as a majority acknowledged it within the last election timeout (its lease, the followers don't vote for anyone
+ * else in that time), and followers ask the leader for its commit index.<br/>
+ *
+ * Everything is guarded by the node's monitor, except for the calls to the peers and applying the entries.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class RaftNode {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(RaftNode.class);
+
+    // base path for all of the config values for this class
+    private static final String CONFIG_BASE_PATH = "dataStore/cluster/";
+
+    // how often the election timer is checked
+    private static final long TICK_MILLIS = 10;
+
+    /**
+     * What the node currently is.
+     */
+    enum Role {
+        FOLLOWER,
+        CANDIDATE,
+        LEADER
+    }
+
+    private final int id;
+    private final List<Integer> peers;
+    private final int quorum;
+    private final RaftLog log;
+    private final RaftTransport transport;
+    private final ServerInMemoryDao stateMachine;
+
+    private final long electionTimeoutMinNanos;
+    private final long electionTimeoutMaxNanos;
+    private final long heartbeatNanos;
+    private final long leaseNanos;
+    private final long requestTimeoutNanos;
+    private final int maxBatchSize;
+
+    // told whenever the node learns about a different leader, or that there isn't one
+    private final List<IntConsumer> leaderListeners = new CopyOnWriteArrayList<>();
+
+    // guarded by this
+    private boolean running;
+    private Role role = Role.FOLLOWER;
+    private int leaderId = NONE;
+    private long commitIndex;
+    private long lastApplied;
+    private long electionDeadline;
+    private long lastLeaderContact;
+    private int votesReceived;
+
+    // guarded by this, only used while leader
+    private long termStartIndex;
+    private final Map<Integer, Long> nextIndex = new HashMap<>();
+    private final Map<Integer, Long> matchIndex = new HashMap<>();
+    private final Map<Integer, Long> heartbeatDue = new HashMap<>();
+    // when the last request a peer answered in this term was sent, for the lease
+    private final Map<Integer, Long> ackedSendTime = new HashMap<>();
+    // writes waiting to be applied, by log index
+    private final Map<Long, Proposal> proposals = new HashMap<>();
+
+    private final List<Thread> threads = new ArrayList<>();
+    private ScheduledExecutorService timer;
+    private ExecutorService voteRequests;
+
+    /**
+     * Constructor
+     * @param config {@link Configuration}
+     * @param id int of this node
+     * @param peers {@link List}<{@link Integer}> the identifiers of the other nodes
+     * @param log {@link RaftLog} of this node
+     * @param transport {@link RaftTransport} to reach the other nodes with
+     * @param stateMachine {@link ServerInMemoryDao} this node's copy of the server resources
+     */
+    RaftNode(
+            final Configuration config,
+            final int id,
+            final List<Integer> peers,
+            final RaftLog log,
+            final RaftTransport transport,
+            final ServerInMemoryDao stateMachine) {
+        this.id = id;
+        this.peers = new ArrayList<>(peers);
+        this.quorum = (peers.size() + 1) / 2 + 1;
+        this.log = log;
+        this.transport = transport;
+        this.stateMachine = stateMachine;
+
+        long electionTimeoutMin = config.getLong(CONFIG_BASE_PATH + "electionTimeout/min", 300);
+        electionTimeoutMinNanos = TimeUnit.MILLISECONDS.toNanos(electionTimeoutMin);
+        electionTimeoutMaxNanos = TimeUnit.MILLISECONDS.toNanos(
+                Math.max(electionTimeoutMin + 1, config.getLong(CONFIG_BASE_PATH + "electionTimeout/max", 600)));
+        heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong(CONFIG_BASE_PATH + "heartbeatInterval", 50));
+        requestTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong(CONFIG_BASE_PATH + "requestTimeout", 5000));
+        maxBatchSize = config.getInt(CONFIG_BASE_PATH + "maxBatchSize", 256);
+
+        // a little shorter than the followers wait before voting for someone else, in case the clocks run at slightly
+        // different rates
+        leaseNanos = electionTimeoutMinNanos * 9 / 10;
+    }
+
+    /**
+     * Starts taking part in the cluster, as a follower.
+     * @throws IOException if the node can't listen for its peers
+     */
+    public void start() throws IOException {
+        synchronized (this) {
+            running = true;
+            resetElectionDeadline();
+        }
+
+        transport.start(this);
+
+        startThread("raft-apply", this::applyCommitted);
+        for (int peer : peers) {
+            startThread("raft-replicate-" + peer, () -> replicate(peer));
+        }
+
+        voteRequests = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("raft-vote-%d").setDaemon(true).build());
+        timer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("raft-timer").setDaemon(true).build());
+        timer.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        LOG.info("Started node {} of a cluster of {}", id, peers.size() + 1);
+    }
+
+    /**
+     * Starts one of the node's background threads.
+     * @param name {@link String}
+     * @param task {@link Runnable}
+     */
+    private void startThread(final String name, final Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        threads.add(thread);
+    }
+
+    /**
+     * Leaves the cluster.  Writes that are still waiting fail, the node's log stays on the disk.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            role = Role.FOLLOWER;
+            setLeader(NONE);
+            failProposals();
+            notifyAll();
+        }
+
+        timer.shutdownNow();
+        voteRequests.shutdownNow();
+
+        try {
+            // also breaks off the calls in progress
+            transport.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close the connections to the cluster", e);
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join(TimeUnit.NANOSECONDS.toMillis(requestTimeoutNanos));
+            }
+            log.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOG.warn("Unable to close the log", e);
+        }
+    }
+
+    /**
+     * Registers a listener for changes of the leader.
+     * @param listener {@link IntConsumer} of the new leader's identifier, -1 while there is none
+     */
+    public void addLeaderListener(final IntConsumer listener) {
+        leaderListeners.add(listener);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public synchronized boolean isLeader() {
+        return Role.LEADER == role;
+    }
+
+    public synchronized int getLeaderId() {
+        return leaderId;
+    }
+
+    public synchronized long getTerm() {
+        return log.getCurrentTerm();
+    }
+
+    public synchronized long getCommitIndex() {
+        return commitIndex;
+    }
+
+    public synchronized long getLastApplied() {
+        return lastApplied;
+    }
+
+    /**
+     * Commits a change and applies it on this node, forwarding it to the leader if this node isn't the leader.
+     * Retries (with the new leader) through an election, for up to the request timeout.
+     * @param command {@link ServerCommand}
+     * @return {@link Object} the result of applying the change
+     * @throws DataStoreUnavailableException if the change wasn't confirmed to be committed and applied in time
+     */
+    Object submit(final ServerCommand command) {
+        long deadline = System.nanoTime() + requestTimeoutNanos;
+
+        while (true) {
+            int leader = getLeaderId();
+
+            if (leader == id) {
+                Proposal proposal = propose(command);
+                if (proposal != null) {
+                    try {
+                        return proposal.future.get(remaining(deadline), TimeUnit.NANOSECONDS);
+                    } catch (ExecutionException e) {
+                        // lost the leadership before it was committed, it may still be by the next leader
+                        LOG.debug("Trying the write again: {}", e.getCause().getMessage());
+                    } catch (TimeoutException e) {
+                        break;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            } else if (leader != NONE) {
+                try {
+                    LeaderResult result = transport.forward(leader, command);
+                    if (result.success) {
+                        // so whoever wrote through this node also reads its own write here
+                        awaitApplied(result.index, deadline);
+                        return result.result;
+                    }
+                } catch (IOException e) {
+                    LOG.debug("Unable to forward a write to node {}", leader, e);
+                }
+            }
+
+            if (remaining(deadline) <= 0 || !pause()) {
+                break;
+            }
+        }
+
+        throw new DataStoreUnavailableException("The cluster didn't confirm the write within "
+                + TimeUnit.NANOSECONDS.toMillis(requestTimeoutNanos) + "ms, it may or may not have been made: "
+                + command);
+    }
+
+    /**
+     * Waits until this node has applied every write committed before the call, so a read that follows is
+     * linearizable.
+     * @throws DataStoreUnavailableException if the node couldn't catch up in time (e.g. there is no leader)
+     */
+    void awaitReadable() {
+        long deadline = System.nanoTime() + requestTimeoutNanos;
+        long readIndex = -1;
+
+        while (readIndex < 0) {
+            int leader;
+            synchronized (this) {
+                if (hasLease(System.nanoTime())) {
+                    readIndex = commitIndex;
+                    break;
+                }
+                leader = leaderId;
+            }
+
+            if (leader != NONE && leader != id) {
+                try {
+                    LeaderResult result = transport.readIndex(leader);
+                    if (result.success) {
+                        readIndex = result.index;
+                        break;
+                    }
+                } catch (IOException e) {
+                    LOG.debug("Unable to get the read index from node {}", leader, e);
+                }
+            }
+
+            if (remaining(deadline) <= 0 || !pause()) {
+                throw new DataStoreUnavailableException("The cluster has no leader to read from");
+            }
+        }
+
+        awaitApplied(readIndex, deadline);
+    }
+
+    /**
+     * Handles {@link AppendEntries} from the leader: drops any entries that conflict with the leader's, adds the new
+     * ones, and forces them to the disk before answering.
+     * @param request {@link AppendEntries}
+     * @return {@link AppendEntriesResult}
+     */
+    synchronized AppendEntriesResult handleAppendEntries(final AppendEntries request) {
+        long term = log.getCurrentTerm();
+
+        if (request.term < term) {
+            // from a leader that has been replaced, which will step down once it sees the term
+            return new AppendEntriesResult(term, false, 0);
+        }
+
+        if (request.term > term || Role.FOLLOWER != role) {
+            becomeFollower(request.term, request.leaderId);
+            term = request.term;
+        } else {
+            setLeader(request.leaderId);
+        }
+        lastLeaderContact = System.nanoTime();
+        resetElectionDeadline();
+
+        long lastIndex = log.getLastIndex();
+        if (request.prevLogIndex > lastIndex) {
+            return new AppendEntriesResult(term, false, lastIndex + 1);
+        }
+
+        long conflictTerm = log.getTerm(request.prevLogIndex);
+        if (conflictTerm != request.prevLogTerm) {
+            // skip back over the whole conflicting term at once, instead of one entry per round trip
+            long index = request.prevLogIndex;
+            while (index > 1 && log.getTerm(index - 1) == conflictTerm) {
+                index--;
+            }
+            return new AppendEntriesResult(term, false, index);
+        }
+
+        long index = request.prevLogIndex;
+        for (LogEntry entry : request.entries) {
+            index++;
+            if (index <= log.getLastIndex()) {
+                if (log.getTerm(index) == entry.getTerm()) {
+                    continue;
+                }
+                log.truncateFrom(index);
+            }
+            log.append(entry);
+        }
+        log.sync();
+
+        long newCommitIndex = Math.min(request.leaderCommit, index);
+        if (newCommitIndex > commitIndex) {
+            commitIndex = newCommitIndex;
+            notifyAll();
+        }
+
+        return new AppendEntriesResult(term, true, index);
+    }
+
+    /**
+     * Handles {@link RequestVote} from a candidate.  Votes go to the first candidate of a term whose log is at least
+     * as up to date as this node's, but only once the node hasn't heard from a leader for an election timeout: a node
+     * that was cut off from the others and comes back with a higher term doesn't disrupt the cluster, and the
+     * leader's lease holds.
+     * @param request {@link RequestVote}
+     * @return {@link RequestVoteResult}
+     */
+    synchronized RequestVoteResult handleRequestVote(final RequestVote request) {
+        long now = System.nanoTime();
+        boolean leaderAlive = Role.LEADER == role
+                ? now - leaseStart(now) < electionTimeoutMinNanos
+                : leaderId != NONE && now - lastLeaderContact < electionTimeoutMinNanos;
+
+        if (leaderAlive) {
+            return new RequestVoteResult(log.getCurrentTerm(), false);
+        }
+
+        if (request.term > log.getCurrentTerm()) {
+            becomeFollower(request.term, NONE);
+        }
+
+        long term = log.getCurrentTerm();
+        boolean upToDate = request.lastLogTerm > log.getLastTerm()
+                || (request.lastLogTerm == log.getLastTerm() && request.lastLogIndex >= log.getLastIndex());
+        int votedFor = log.getVotedFor();
+        boolean granted = request.term == term && upToDate
+                && (RaftLog.NO_VOTE == votedFor || request.candidateId == votedFor);
+
+        if (granted) {
+            if (RaftLog.NO_VOTE == votedFor) {
+                log.setTermAndVote(term, request.candidateId);
+            }
+            resetElectionDeadline();
+        }
+
+        return new RequestVoteResult(term, granted);
+    }
+
+    /**
+     * Handles a write forwarded by a follower, answering once it's committed.
+     * @param command {@link ServerCommand}
+     * @return {@link LeaderResult}
+     */
+    LeaderResult handleForward(final ServerCommand command) {
+        Proposal proposal = propose(command);
+
+        if (null == proposal) {
+            return LeaderResult.notLeader(getLeaderId());
+        }
+
+        try {
+            Object result = proposal.future.get(requestTimeoutNanos, TimeUnit.NANOSECONDS);
+            return new LeaderResult(true, id, proposal.index, result);
+        } catch (ExecutionException | TimeoutException e) {
+            return LeaderResult.notLeader(NONE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return LeaderResult.notLeader(NONE);
+        }
+    }
+
+    /**
+     * Handles a follower asking for the commit index before a read, answering once the lease confirms this node is
+     * still the leader.
+     * @return {@link LeaderResult}
+     */
+    synchronized LeaderResult handleReadIndex() {
+        long deadline = System.nanoTime() + requestTimeoutNanos;
+
+        try {
+            while (running && Role.LEADER == role) {
+                long now = System.nanoTime();
+                if (hasLease(now)) {
+                    return new LeaderResult(true, id, commitIndex, null);
+                }
+                if (deadline - now <= 0) {
+                    break;
+                }
+                wait(TimeUnit.NANOSECONDS.toMillis(heartbeatNanos));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return LeaderResult.notLeader(Role.LEADER == role ? NONE : leaderId);
+    }
+
+    /**
+     * Appends a change to the leader's log and forces it to the disk.  The writes that come in while another one is
+     * being forced are all forced together afterwards.
+     * @param command {@link ServerCommand}
+     * @return {@link Proposal} to wait on, null if this node isn't the leader
+     */
+    private Proposal propose(final ServerCommand command) {
+        Proposal proposal;
+
+        synchronized (this) {
+            if (!running || Role.LEADER != role) {
+                return null;
+            }
+
+            long term = log.getCurrentTerm();
+            proposal = new Proposal(term, log.append(new LogEntry(term, command)));
+            proposals.put(proposal.index, proposal);
+
+            // the replicators send it right away
+            notifyAll();
+        }
+
+        log.sync();
+
+        synchronized (this) {
+            if (Role.LEADER == role) {
+                advanceCommitIndex();
+            }
+        }
+
+        return proposal;
+    }
+
+    /**
+     * Checks the timers: a follower (or candidate) that hasn't heard from a leader starts an election, and a leader
+     * that hasn't heard from a majority steps down so its clients go elsewhere.
+     */
+    private synchronized void tick() {
+        try {
+            if (!running) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            if (Role.LEADER == role) {
+                if (now - leaseStart(now) > electionTimeoutMaxNanos) {
+                    LOG.warn("Stepping down as leader, a majority of the cluster hasn't answered in {}ms",
+                            TimeUnit.NANOSECONDS.toMillis(now - leaseStart(now)));
+                    becomeFollower(log.getCurrentTerm(), NONE);
+                }
+            } else if (now - electionDeadline >= 0) {
+                startElection();
+            }
+        } catch (RuntimeException e) {
+            // an exception would cancel the timer
+            LOG.error("Unable to check the election timer", e);
+        }
+    }
+
+    /**
+     * Becomes a candidate for the next term and asks the other nodes for their votes.
+     */
+    private void startElection() {
+        long term = log.getCurrentTerm() + 1;
+        log.setTermAndVote(term, id);
+        role = Role.CANDIDATE;
+        setLeader(NONE);
+        resetElectionDeadline();
+        votesReceived = 1;
+
+        LOG.info("Starting an election for term {}", term);
+
+        if (votesReceived >= quorum) {
+            becomeLeader();
+            return;
+        }
+
+        RequestVote request = new RequestVote(term, id, log.getLastIndex(), log.getLastTerm());
+        for (int peer : peers) {
+            voteRequests.execute(() -> requestVote(peer, request));
+        }
+    }
+
+    /**
+     * Asks one peer for its vote, and becomes the leader if it was the deciding one.
+     * @param peer int
+     * @param request {@link RequestVote}
+     */
+    private void requestVote(final int peer, final RequestVote request) {
+        RequestVoteResult result;
+        try {
+            result = transport.requestVote(peer, request);
+        } catch (IOException e) {
+            LOG.debug("Unable to ask node {} for its vote", peer, e);
+            return;
+        }
+
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+
+            if (result.term > log.getCurrentTerm()) {
+                becomeFollower(result.term, NONE);
+            } else if (result.granted && Role.CANDIDATE == role && request.term == log.getCurrentTerm()) {
+                votesReceived++;
+                if (votesReceived == quorum) {
+                    becomeLeader();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes over as leader: every follower is assumed to be up to date until it says otherwise, and the term starts
+     * with a no-op entry, since a leader can only tell which entries of the earlier terms are committed (and serve
+     * reads) once an entry of its own term is.
+     */
+    private void becomeLeader() {
+        role = Role.LEADER;
+        setLeader(id);
+
+        long now = System.nanoTime();
+        long next = log.getLastIndex() + 1;
+        for (int peer : peers) {
+            nextIndex.put(peer, next);
+            matchIndex.put(peer, 0L);
+            heartbeatDue.put(peer, now);
+            // only counts once the no-op is committed, which takes answers to requests sent after this
+            ackedSendTime.put(peer, now);
+        }
+
+        termStartIndex = log.append(new LogEntry(log.getCurrentTerm(), ServerCommand.noop()));
+        log.sync();
+        advanceCommitIndex();
+
+        LOG.info("Elected leader for term {}", log.getCurrentTerm());
+        notifyAll();
+    }
+
+    /**
+     * Goes back to following, e.g. after seeing a higher term.
+     * @param term long the term to follow in
+     * @param leader int the leader of that term, if known
+     */
+    private void becomeFollower(final long term, final int leader) {
+        if (term > log.getCurrentTerm()) {
+            log.setTermAndVote(term, RaftLog.NO_VOTE);
+        }
+
+        role = Role.FOLLOWER;
+        setLeader(leader);
+        failProposals();
+        resetElectionDeadline();
+        notifyAll();
+    }
+
+    /**
+     * Records who the leader is and tells the listeners if that changed.
+     * @param leader int
+     */
+    private void setLeader(final int leader) {
+        if (leader == leaderId) {
+            return;
+        }
+
+        leaderId = leader;
+        if (NONE != leader) {
+            LOG.info("Node {} is the leader for term {}", leader, log.getCurrentTerm());
+        }
+
+        for (IntConsumer listener : leaderListeners) {
+            listener.accept(leader);
+        }
+    }
+
+    /**
+     * Picks a new random election timeout, so the nodes don't all become candidates at the same time.
+     */
+    private void resetElectionDeadline() {
+        electionDeadline = System.nanoTime() + electionTimeoutMinNanos
+                + ThreadLocalRandom.current().nextLong(electionTimeoutMaxNanos - electionTimeoutMinNanos);
+    }
+
+    /**
+     * Replicates the log to one follower, for as long as the node runs.  Only one request is in flight at a time; the
+     * entries that are added in the meantime all go in the next one.
+     * @param peer int
+     */
+    private void replicate(final int peer) {
+        while (true) {
+            AppendEntries request;
+
+            synchronized (this) {
+                try {
+                    while (running && !needsAppendEntries(peer)) {
+                        // wakes up when there are new entries, or in time for the next heartbeat
+                        wait(Role.LEADER == role ? toWaitMillis(heartbeatDue.get(peer) - System.nanoTime()) : 0);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                if (!running) {
+                    return;
+                }
+
+                long next = nextIndex.get(peer);
+                request = new AppendEntries(log.getCurrentTerm(), id, next - 1, log.getTerm(next - 1),
+                        log.getFrom(next, maxBatchSize), commitIndex);
+                heartbeatDue.put(peer, System.nanoTime() + heartbeatNanos);
+            }
+
+            long sentAt = System.nanoTime();
+            try {
+                AppendEntriesResult result = transport.appendEntries(peer, request);
+                handleAppendEntriesResult(peer, request, result, sentAt);
+            } catch (IOException e) {
+                LOG.debug("Unable to replicate to node {}", peer, e);
+                if (!pause()) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                // keep replicating to the peer, this thread is the only one that does
+                LOG.error("Unable to replicate to node {}", peer, e);
+                if (!pause()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a follower is due for {@link AppendEntries}, either because there are entries it doesn't have
+     * yet or for a heartbeat.
+     * @param peer int
+     * @return boolean
+     */
+    private boolean needsAppendEntries(final int peer) {
+        return Role.LEADER == role
+                && (nextIndex.get(peer) <= log.getLastIndex() || System.nanoTime() - heartbeatDue.get(peer) >= 0);
+    }
+
+    /**
+     * Handles a follower's answer to {@link AppendEntries}.
+     * @param peer int
+     * @param request {@link AppendEntries} that was sent
+     * @param result {@link AppendEntriesResult}
+     * @param sentAt long when the request was sent
+     */
+    private synchronized void handleAppendEntriesResult(
+            final int peer,
+            final AppendEntries request,
+            final AppendEntriesResult result,
+            final long sentAt) {
+        if (result.term > log.getCurrentTerm()) {
+            becomeFollower(result.term, NONE);
+            return;
+        }
+
+        if (Role.LEADER != role || request.term != log.getCurrentTerm()) {
+            // an answer from an earlier term
+            return;
+        }
+
+        // either way, the follower accepted this node as its leader when it answered
+        ackedSendTime.put(peer, Math.max(ackedSendTime.get(peer), sentAt));
+
+        if (result.success) {
+            matchIndex.put(peer, Math.max(matchIndex.get(peer), result.index));
+            nextIndex.put(peer, Math.max(nextIndex.get(peer), result.index + 1));
+            advanceCommitIndex();
+        } else {
+            nextIndex.put(peer, Math.max(1, Math.min(request.prevLogIndex, result.index)));
+        }
+
+        // for the reads waiting on the lease
+        notifyAll();
+    }
+
+    /**
+     * Moves the commit index up to the highest entry of the current term that a majority has on their disk.
+     */
+    private void advanceCommitIndex() {
+        long[] matches = new long[peers.size() + 1];
+        matches[0] = log.getSyncedIndex();
+        for (int i = 0; i < peers.size(); i++) {
+            matches[i + 1] = matchIndex.get(peers.get(i));
+        }
+        Arrays.sort(matches);
+
+        long majorityIndex = matches[matches.length - quorum];
+        if (majorityIndex > commitIndex && log.getTerm(majorityIndex) == log.getCurrentTerm()) {
+            commitIndex = majorityIndex;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the send time of the latest request that a majority (counting this node) answered.
+     * @param now long
+     * @return long
+     */
+    private long leaseStart(final long now) {
+        long[] times = new long[peers.size() + 1];
+        times[0] = now;
+        for (int i = 0; i < peers.size(); i++) {
+            times[i + 1] = ackedSendTime.get(peers.get(i));
+        }
+        Arrays.sort(times);
+
+        return times[times.length - quorum];
+    }
+
+    /**
+     * Returns whether this node is the leader and can be sure nobody else is, so it can serve reads without asking.
+     * @param now long
+     * @return boolean
+     */
+    private boolean hasLease(final long now) {
+        return Role.LEADER == role && commitIndex >= termStartIndex && now - leaseStart(now) < leaseNanos;
+    }
+
+    /**
+     * Applies the committed entries to this node's copy of the server resources, in order, for as long as the node
+     * runs, and hands the results to the writes waiting on them.
+     */
+    private void applyCommitted() {
+        while (true) {
+            long index;
+            List<LogEntry> entries;
+
+            synchronized (this) {
+                try {
+                    while (running && lastApplied >= commitIndex) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                if (!running) {
+                    return;
+                }
+
+                index = lastApplied + 1;
+                entries = log.getFrom(index, (int) Math.min(commitIndex - lastApplied, maxBatchSize));
+            }
+
+            for (LogEntry entry : entries) {
+                Object result = null;
+                try {
+                    result = entry.getCommand().applyTo(stateMachine);
+                } catch (RuntimeException e) {
+                    // every node gets the same exception, keep going so they all stay in sync
+                    LOG.error("Unable to apply log entry {}: {}", index, entry.getCommand(), e);
+                }
+
+                synchronized (this) {
+                    lastApplied = index;
+                    Proposal proposal = proposals.remove(index);
+                    if (proposal != null) {
+                        proposal.complete(entry.getTerm(), result);
+                    }
+                    notifyAll();
+                }
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Waits until this node has applied the entry at the index.
+     * @param index long
+     * @param deadline long
+     * @throws DataStoreUnavailableException if it didn't in time
+     */
+    private synchronized void awaitApplied(final long index, final long deadline) {
+        try {
+            while (lastApplied < index) {
+                long remaining = remaining(deadline);
+                if (remaining <= 0 || !running) {
+                    throw new DataStoreUnavailableException("This node hasn't caught up with the cluster");
+                }
+                wait(toWaitMillis(remaining));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataStoreUnavailableException("Interrupted while catching up with the cluster", e);
+        }
+    }
+
+    /**
+     * Fails the writes still waiting to be committed, once this node isn't the leader anymore.
+     */
+    private void failProposals() {
+        for (Proposal proposal : proposals.values()) {
+            proposal.future.completeExceptionally(
+                    new DataStoreUnavailableException("Node " + id + " lost the leadership"));
+        }
+        proposals.clear();
+    }
+
+    /**
+     * Waits for a heartbeat interval (or until something changes), before trying again.
+     * @return boolean false if the node stopped or the thread was interrupted
+     */
+    private synchronized boolean pause() {
+        try {
+            wait(toWaitMillis(heartbeatNanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return running;
+    }
+
+    /**
+     * Returns how long is left until a deadline.
+     * @param deadline long
+     * @return long nanoseconds, negative if it passed
+     */
+    private static long remaining(final long deadline) {
+        return deadline - System.nanoTime();
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds for {@link Object#wait(long)}, where 0 would mean forever.
+     * @param nanos long
+     * @return long at least 1
+     */
+    private static long toWaitMillis(final long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    /**
+     * A write appended to the leader's log, waiting to be applied.
+     */
+    private static final class Proposal {
+
+        private final long term;
+        private final long index;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Proposal(final long term, final long index) {
+            this.term = term;
+            this.index = index;
+        }
+
+        /**
+         * Completes the write once the entry at its index was applied.
+         * @param appliedTerm long of the entry that was applied, a different term means this write was overwritten
+         * @param result {@link Object}
+         */
+        void complete(final long appliedTerm, final Object result) {
+            if (appliedTerm == term) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(new DataStoreUnavailableException("The write was overwritten"));
+            }
+        }
+    }
+}
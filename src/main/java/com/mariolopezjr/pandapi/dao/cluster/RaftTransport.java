@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.cluster;
+
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.AppendEntries;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.AppendEntriesResult;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.LeaderResult;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.RequestVote;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.RequestVoteResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * How the nodes of a cluster reach each other.  Every call blocks until the peer answered, and throws if it couldn't
+ * be reached or didn't answer in time; the node tries again later.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+interface RaftTransport extends Closeable {
+
+    /**
+     * Starts taking requests from the peers and hands them to the node.
+     * @param node {@link RaftNode}
+     * @throws IOException if the node can't listen for requests
+     */
+    void start(RaftNode node) throws IOException;
+
+    /**
+     * Replicates entries to a follower (or just tells it the leader is still there).
+     * @param peerId int
+     * @param request {@link AppendEntries}
+     * @return {@link AppendEntriesResult}
+     * @throws IOException
+     */
+    AppendEntriesResult appendEntries(int peerId, AppendEntries request) throws IOException;
+
+    /**
+     * Asks a peer for its vote.
+     * @param peerId int
+     * @param request {@link RequestVote}
+     * @return {@link RequestVoteResult}
+     * @throws IOException
+     */
+    RequestVoteResult requestVote(int peerId, RequestVote request) throws IOException;
+
+    /**
+     * Hands a write to the leader, which answers once it's committed.
+     * @param peerId int the leader
+     * @param command {@link ServerCommand}
+     * @return {@link LeaderResult}
+     * @throws IOException
+     */
+    LeaderResult forward(int peerId, ServerCommand command) throws IOException;
+
+    /**
+     * Asks the leader for its commit index, which a follower has to catch up to before a read is linearizable.
+     * @param peerId int the leader
+     * @return {@link LeaderResult}
+     * @throws IOException
+     */
+    LeaderResult readIndex(int peerId) throws IOException;
+}
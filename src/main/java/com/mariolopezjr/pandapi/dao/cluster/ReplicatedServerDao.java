@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.cluster;
+
+import com.mariolopezjr.pandapi.dao.ServerChangeListener;
+import com.mariolopezjr.pandapi.dao.ServerDao;
+import com.mariolopezjr.pandapi.dao.ServerIdGenerator;
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.exception.InternalException;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
+import com.mariolopezjr.pandapi.util.ClusterMembers;
+import org.apache.commons.configuration.Configuration;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.IntConsumer;
+
+/**
+ * Implementation of the {@link ServerDao} interface that replicates the server resources to every node of a cluster
+ * through a {@link RaftNode}.  Each node keeps its copy in a {@link ServerInMemoryDao}, which also tells the change
+ * listeners about every change, whichever node it was made on.<br/>
+ *
+ * Writes return once a majority of the nodes have them, and reads see every write that returned before they started
+ * (unless linearizable reads are turned off, then a follower answers from its copy right away, which may be a
+ * heartbeat or so behind).
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ReplicatedServerDao implements ServerDao {
+
+    // base path for all of the config values for this class
+    private static final String CONFIG_BASE_PATH = "dataStore/cluster/";
+
+    // this node's copy of the server resources
+    private final ServerInMemoryDao stateMachine;
+
+    private final RaftNode node;
+
+    // whether reads wait until this node has caught up with the leader
+    private final boolean linearizableReads;
+
+    // picks the identifiers of new servers
+    private final ServerIdGenerator idGenerator;
+
+    /**
+     * Constructor, opens (or creates) this node's log but doesn't join the cluster until {@link #start()}.
+     * @param config {@link Configuration}
+     * @param metrics {@link MetricsRegistry}
+     */
+    public ReplicatedServerDao(final Configuration config, final MetricsRegistry metrics) {
+        this.stateMachine = new ServerInMemoryDao(config, metrics);
+        this.linearizableReads = config.getBoolean(CONFIG_BASE_PATH + "linearizableReads", true);
+        this.idGenerator = ServerIdGenerator.fromConfig(config);
+
+        int nodeId = config.getInt(CONFIG_BASE_PATH + "nodeId");
+        Map<Integer, InetSocketAddress> members =
+                ClusterMembers.parse(config.getStringArray(CONFIG_BASE_PATH + "members"));
+        if (!members.containsKey(nodeId)) {
+            throw new InternalException("Node " + nodeId + " isn't one of the cluster members " + members.keySet());
+        }
+
+        List<Integer> peers = new ArrayList<>(members.keySet());
+        peers.remove(Integer.valueOf(nodeId));
+
+        RaftLog log;
+        try {
+            log = new RaftLog(Paths.get(config.getString(CONFIG_BASE_PATH + "dataDir", "cluster")),
+                    config.getBoolean(CONFIG_BASE_PATH + "syncWrites", true));
+        } catch (IOException e) {
+            throw new InternalException("Unable to open the cluster log", e);
+        }
+
+        // forwarded writes take up to the request timeout on the leader, so wait a little longer for them
+        int timeout = config.getInt(CONFIG_BASE_PATH + "requestTimeout", 5000) * 2;
+
+        this.node = new RaftNode(config, nodeId, peers, log, new SocketRaftTransport(nodeId, members, timeout),
+                stateMachine);
+
+        registerMetrics(metrics);
+    }
+
+    /**
+     * Constructor for the unit test to call.  Purposely has package level scope.
+     * @param stateMachine {@link ServerInMemoryDao} the node's copy of the servers
+     * @param node {@link RaftNode}
+     * @param linearizableReads boolean
+     * @param idGenerator {@link ServerIdGenerator}
+     */
+    ReplicatedServerDao(final ServerInMemoryDao stateMachine, final RaftNode node, final boolean linearizableReads,
+                        final ServerIdGenerator idGenerator) {
+        this.stateMachine = stateMachine;
+        this.node = node;
+        this.linearizableReads = linearizableReads;
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Returns whether the server resources should be replicated across a cluster.
+     * @param config {@link Configuration}
+     * @return boolean
+     */
+    public static boolean isEnabled(final Configuration config) {
+        return config.getBoolean(CONFIG_BASE_PATH + "enabled", false);
+    }
+
+    /**
+     * Registers the gauges for this node's part in the cluster.
+     * @param metrics {@link MetricsRegistry}
+     */
+    private void registerMetrics(final MetricsRegistry metrics) {
+        metrics.gauge("pandapi_cluster_leader", "1 if this node is the leader of the cluster.",
+                () -> node.isLeader() ? 1 : 0);
+        metrics.gauge("pandapi_cluster_term", "Current election term of the cluster.", node::getTerm);
+        metrics.gauge("pandapi_cluster_commit_index", "Last log entry known to be on a majority of the nodes.",
+                node::getCommitIndex);
+        metrics.gauge("pandapi_cluster_applied_index", "Last log entry applied to this node's servers.",
+                node::getLastApplied);
+    }
+
+    /**
+     * Joins the cluster.
+     */
+    public void start() {
+        try {
+            node.start();
+        } catch (IOException e) {
+            throw new InternalException("Unable to join the cluster", e);
+        }
+    }
+
+    /**
+     * Leaves the cluster.
+     */
+    public void stop() {
+        node.stop();
+    }
+
+    /**
+     * Registers a listener for changes of the leader.
+     * @param listener {@link IntConsumer} of the new leader's node identifier, -1 while there is none
+     */
+    public void addLeaderListener(final IntConsumer listener) {
+        node.addLeaderListener(listener);
+    }
+
+    /**
+     * Waits until a read can be linearizable, if it should be.
+     */
+    private void awaitReadable() {
+        if (linearizableReads) {
+            node.awaitReadable();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Server> getAllServers() {
+        awaitReadable();
+        return stateMachine.getAllServers();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Server> iterateServers() {
+        awaitReadable();
+        return stateMachine.iterateServers();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Server getServerById(UUID serverId) {
+        awaitReadable();
+        return stateMachine.getServerById(serverId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getInventoryVersion() {
+        awaitReadable();
+        return stateMachine.getInventoryVersion();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Server createServer(Server server) {
+        if (server.getId() != null) {
+            // only the service should be calling the DAO directly, but in case someone else tries...
+            throw new InternalException(
+                    "New server resources get an ID from the DAO, but this server came in with an ID already: "
+                            + server);
+        }
+
+        // every node has to apply the create with the same identifier
+        Server serverWithId = server.clone();
+        serverWithId.setId(idGenerator.nextId());
+
+        return (Server) node.submit(ServerCommand.create(serverWithId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean updateServer(Server server) {
+        return Boolean.TRUE.equals(node.submit(ServerCommand.update(server)));
+    }
+
+    /**
+     * {@inheritDoc}<br/>
+     *
+     * The whole batch is a single entry in the log, so every node applies all of it or none of it.
+     */
+    @Override
+    public int putServers(List<Server> servers) {
+        return (Integer) node.submit(ServerCommand.put(servers));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean deleteServer(UUID serverId) {
+        return Boolean.TRUE.equals(node.submit(ServerCommand.delete(serverId)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addChangeListener(ServerChangeListener listener) {
+        stateMachine.addChangeListener(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeChangeListener(ServerChangeListener listener) {
+        stateMachine.removeChangeListener(listener);
+    }
+}
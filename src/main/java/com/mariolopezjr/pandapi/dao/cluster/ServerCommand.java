@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.cluster;
+
+import com.mariolopezjr.pandapi.dao.ServerBinaryFormat;
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao;
+import com.mariolopezjr.pandapi.data.server.Server;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A change to the server resources, as it is replicated through the log and applied to every node's copy of them.
+ * Applying the same commands in the same order always ends in the same servers (and versions), so creates carry the
+ * identifier that the node taking the request assigned.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+final class ServerCommand {
+
+    /**
+     * The kinds of changes.
+     */
+    enum Type {
+        // a new leader's first entry, commits the entries of the earlier terms, changes nothing
+        NOOP,
+        CREATE,
+        UPDATE,
+        DELETE,
+        PUT
+    }
+
+    private static final ServerCommand NOOP = new ServerCommand(Type.NOOP, null, null);
+
+    private final Type type;
+    private final Server server;
+    private final UUID serverId;
+    private final List<Server> servers;
+
+    /**
+     * Constructor
+     * @param type {@link Type}
+     * @param server {@link Server} for creates and updates, null otherwise
+     * @param serverId {@link UUID} for deletes, null otherwise
+     */
+    private ServerCommand(final Type type, final Server server, final UUID serverId) {
+        this.type = type;
+        this.server = server;
+        this.serverId = serverId;
+        this.servers = null;
+    }
+
+    /**
+     * Constructor for a put.
+     * @param servers {@link List}<{@link Server}> with their identifiers set
+     */
+    private ServerCommand(final List<Server> servers) {
+        this.type = Type.PUT;
+        this.server = null;
+        this.serverId = null;
+        this.servers = Collections.unmodifiableList(servers);
+    }
+
+    /**
+     * Returns the command a new leader starts its term with.
+     * @return {@link ServerCommand}
+     */
+    static ServerCommand noop() {
+        return NOOP;
+    }
+
+    /**
+     * Creates the command for {@link com.mariolopezjr.pandapi.dao.ServerDao#createServer(Server)}.
+     * @param server {@link Server} with its new identifier already set
+     * @return {@link ServerCommand}
+     */
+    static ServerCommand create(final Server server) {
+        return new ServerCommand(Type.CREATE, server.clone(), null);
+    }
+
+    /**
+     * Creates the command for {@link com.mariolopezjr.pandapi.dao.ServerDao#updateServer(Server)}.
+     * @param server {@link Server}
+     * @return {@link ServerCommand}
+     */
+    static ServerCommand update(final Server server) {
+        return new ServerCommand(Type.UPDATE, server.clone(), null);
+    }
+
+    /**
+     * Creates the command for {@link com.mariolopezjr.pandapi.dao.ServerDao#deleteServer(UUID)}.
+     * @param serverId {@link UUID}
+     * @return {@link ServerCommand}
+     */
+    static ServerCommand delete(final UUID serverId) {
+        return new ServerCommand(Type.DELETE, null, serverId);
+    }
+
+    /**
+     * Creates the command for {@link com.mariolopezjr.pandapi.dao.ServerDao#putServers(List)}.
+     * @param servers {@link List}<{@link Server}> with their identifiers set
+     * @return {@link ServerCommand}
+     */
+    static ServerCommand put(final List<Server> servers) {
+        List<Server> clonedServers = new ArrayList<>(servers.size());
+        for (Server server : servers) {
+            clonedServers.add(server.clone());
+        }
+
+        return new ServerCommand(clonedServers);
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    /**
+     * Applies the change to a node's copy of the server resources.
+     * @param dao {@link ServerInMemoryDao}
+     * @return {@link Object} what the matching {@link com.mariolopezjr.pandapi.dao.ServerDao} method returns, i.e. the
+     * created {@link Server}, whether anything was updated or deleted, or how many servers a put created, null for a
+     * no-op
+     */
+    Object applyTo(final ServerInMemoryDao dao) {
+        switch (type) {
+            case CREATE:
+                return dao.createServerWithId(server);
+            case UPDATE:
+                return dao.updateServer(server);
+            case DELETE:
+                return dao.deleteServer(serverId);
+            case PUT:
+                return dao.putServers(servers);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Writes the command for the log or a peer.
+     * @param out {@link DataOutput}
+     * @throws IOException
+     */
+    void writeTo(final DataOutput out) throws IOException {
+        out.writeByte(type.ordinal());
+
+        if (Type.CREATE == type || Type.UPDATE == type) {
+            ServerBinaryFormat.writeServer(out, server);
+        } else if (Type.DELETE == type) {
+            ServerBinaryFormat.writeUuid(out, serverId);
+        } else if (Type.PUT == type) {
+            out.writeInt(servers.size());
+            for (Server each : servers) {
+                ServerBinaryFormat.writeServer(out, each);
+            }
+        }
+    }
+
+    /**
+     * Reads a command written by {@link #writeTo(DataOutput)}.
+     * @param in {@link DataInput}
+     * @return {@link ServerCommand}
+     * @throws IOException
+     */
+    static ServerCommand readFrom(final DataInput in) throws IOException {
+        Type type = Type.values()[in.readByte()];
+
+        switch (type) {
+            case CREATE:
+            case UPDATE:
+                return new ServerCommand(type, ServerBinaryFormat.readServer(in), null);
+            case DELETE:
+                return new ServerCommand(type, null, ServerBinaryFormat.readUuid(in));
+            case PUT: {
+                int count = in.readInt();
+                List<Server> servers = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    servers.add(ServerBinaryFormat.readServer(in));
+                }
+                return new ServerCommand(servers);
+            }
+            default:
+                return NOOP;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return type + (server != null ? " " + server : "") + (serverId != null ? " " + serverId : "")
+                + (servers != null ? " " + servers.size() + " servers" : "");
+    }
+}
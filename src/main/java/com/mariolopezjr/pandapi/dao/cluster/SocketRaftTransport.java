@@ -0,0 +1,322 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.cluster;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.AppendEntries;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.AppendEntriesResult;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.LeaderResult;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.RequestVote;
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.RequestVoteResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * {@link RaftTransport} over plain TCP connections: one byte for the kind of request, then the request written by
+ * {@link RaftMessages}, and the response the same way.  Connections to the peers are kept open and reused, one
+ * request at a time each, and every connection from a peer is served by its own thread.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class SocketRaftTransport implements RaftTransport {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(SocketRaftTransport.class);
+
+    // the kinds of requests
+    private static final byte APPEND_ENTRIES = 1;
+    private static final byte REQUEST_VOTE = 2;
+    private static final byte FORWARD = 3;
+    private static final byte READ_INDEX = 4;
+
+    private final int nodeId;
+    private final Map<Integer, InetSocketAddress> members;
+    private final int timeoutMillis;
+
+    // connections to the peers that aren't in use, by peer
+    private final Map<Integer, BlockingQueue<Connection>> idle = new ConcurrentHashMap<>();
+
+    // every open connection (in both directions), to break them off on close
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService connectionThreads = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("raft-connection-%d").setDaemon(true).build());
+
+    private volatile ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    /**
+     * Constructor
+     * @param nodeId int of this node
+     * @param members {@link Map}<{@link Integer}, {@link InetSocketAddress}> every node's address, including this one
+     * @param timeoutMillis int to connect, and to wait for an answer (the leader answers forwarded requests within
+     *                      the request timeout, so this should be longer)
+     */
+    SocketRaftTransport(final int nodeId, final Map<Integer, InetSocketAddress> members, final int timeoutMillis) {
+        this.nodeId = nodeId;
+        this.members = members;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void start(final RaftNode node) throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(members.get(nodeId));
+        serverSocket = socket;
+
+        connectionThreads.execute(() -> accept(node));
+
+        LOG.info("Listening for the rest of the cluster on {}", members.get(nodeId));
+    }
+
+    /**
+     * Accepts connections from the peers until closed.
+     * @param node {@link RaftNode} that handles the requests
+     */
+    private void accept(final RaftNode node) {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                connectionThreads.execute(() -> serve(socket, node));
+            } catch (IOException e) {
+                if (!closed) {
+                    LOG.warn("Unable to accept a connection from the cluster", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the requests that come in on a connection, until the peer closes it.
+     * @param socket {@link Socket}
+     * @param node {@link RaftNode}
+     */
+    private void serve(final Socket socket, final RaftNode node) {
+        try (Socket ignored = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            int type;
+            while ((type = in.read()) != -1) {
+                switch (type) {
+                    case APPEND_ENTRIES:
+                        node.handleAppendEntries(AppendEntries.readFrom(in)).writeTo(out);
+                        break;
+                    case REQUEST_VOTE:
+                        node.handleRequestVote(RequestVote.readFrom(in)).writeTo(out);
+                        break;
+                    case FORWARD:
+                        node.handleForward(ServerCommand.readFrom(in)).writeTo(out);
+                        break;
+                    case READ_INDEX:
+                        node.handleReadIndex().writeTo(out);
+                        break;
+                    default:
+                        throw new IOException("Unknown request type " + type);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                LOG.debug("Connection from {} closed", socket.getRemoteSocketAddress(), e);
+            }
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AppendEntriesResult appendEntries(final int peerId, final AppendEntries request) throws IOException {
+        return call(peerId, (in, out) -> {
+            out.writeByte(APPEND_ENTRIES);
+            request.writeTo(out);
+            out.flush();
+            return AppendEntriesResult.readFrom(in);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RequestVoteResult requestVote(final int peerId, final RequestVote request) throws IOException {
+        return call(peerId, (in, out) -> {
+            out.writeByte(REQUEST_VOTE);
+            request.writeTo(out);
+            out.flush();
+            return RequestVoteResult.readFrom(in);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LeaderResult forward(final int peerId, final ServerCommand command) throws IOException {
+        return call(peerId, (in, out) -> {
+            out.writeByte(FORWARD);
+            command.writeTo(out);
+            out.flush();
+            return LeaderResult.readFrom(in);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LeaderResult readIndex(final int peerId) throws IOException {
+        return call(peerId, (in, out) -> {
+            out.writeByte(READ_INDEX);
+            out.flush();
+            return LeaderResult.readFrom(in);
+        });
+    }
+
+    /**
+     * Sends a request to a peer on an idle connection (or a new one) and reads the response.  A connection that
+     * failed is closed, since it could be left in the middle of a message.
+     * @param peerId int
+     * @param exchange {@link Exchange}
+     * @param <T> type of the response
+     * @return T the response
+     * @throws IOException
+     */
+    private <T> T call(final int peerId, final Exchange<T> exchange) throws IOException {
+        if (closed) {
+            throw new SocketException("The transport is closed");
+        }
+
+        BlockingQueue<Connection> connections = idle.computeIfAbsent(peerId, id -> new LinkedBlockingQueue<>());
+        Connection connection = connections.poll();
+        if (null == connection) {
+            connection = connect(peerId);
+        }
+
+        try {
+            T response = exchange.exchange(connection.in, connection.out);
+            connections.offer(connection);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a new connection to a peer.
+     * @param peerId int
+     * @return {@link Connection}
+     * @throws IOException
+     */
+    private Connection connect(final int peerId) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutMillis);
+            socket.connect(members.get(peerId), timeoutMillis);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        sockets.add(socket);
+        if (closed) {
+            socket.close();
+            throw new SocketException("The transport is closed");
+        }
+
+        return new Connection(socket);
+    }
+
+    /**
+     * Stops listening and closes every connection, which also breaks off the calls in progress.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        connectionThreads.shutdownNow();
+    }
+
+    /**
+     * Writes a request and reads its response.
+     * @param <T> type of the response
+     */
+    @FunctionalInterface
+    private interface Exchange<T> {
+        T exchange(DataInputStream in, DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * An open connection to a peer, with its streams.
+     */
+    private final class Connection {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(final Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            sockets.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.debug("Unable to close the connection to {}", socket.getRemoteSocketAddress(), e);
+            }
+        }
+    }
+}
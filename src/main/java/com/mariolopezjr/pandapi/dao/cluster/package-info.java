@@ -0,0 +1,23 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Clustered implementation of the server DAO: the changes are replicated to every node through a Raft consensus log,
+ * so the server resources survive as long as a majority of the nodes are up.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+package com.mariolopezjr.pandapi.dao.cluster;
\ No newline at end of file
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.feed;
+
+import com.mariolopezjr.pandapi.dao.ServerChangeListener;
+import com.mariolopezjr.pandapi.data.server.Server;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Sends the changes to the servers on this node to other nodes: the other partitions, so their change listeners (the
+ * rendered server cache, the event stream, the long-polls) hear about every server wherever it's kept, and the read
+ * replicas, which keep a copy of them.  Each subscriber first gets a snapshot of the servers, then every change after
+ * it, in the order the data store made them.  Whenever a subscriber has been sent every change so far, it gets a
+ * heartbeat, so it knows how far behind it could be even while the changes keep coming.<br/>
+ *
+ * The changes are queued for each subscriber, so a slow one doesn't hold up the writes.  A subscriber that falls so
+ * far behind that its queue is full is disconnected instead; it subscribes again and starts over with a snapshot.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public final class ChangeFeed implements ServerChangeListener {
+
+    private final int bufferSize;
+    private final long heartbeatMillis;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor
+     * @param bufferSize int changes queued per subscriber
+     * @param heartbeatMillis long how often to tell an idle subscriber that the connection is still alive (and that
+     *                        it's caught up)
+     */
+    public ChangeFeed(final int bufferSize, final long heartbeatMillis) {
+        this.bufferSize = bufferSize;
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serverCreated(Server server) {
+        publish(FeedEvent.put(server, true));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serverUpdated(Server previous, Server current) {
+        publish(FeedEvent.put(current, true));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serverDeleted(Server server) {
+        publish(FeedEvent.remove(server, true));
+    }
+
+    /**
+     * Tells the subscribers about a server that moved to this node.
+     * @param server {@link Server}
+     */
+    public void serverImported(final Server server) {
+        publish(FeedEvent.put(server, false));
+    }
+
+    /**
+     * Tells the subscribers about a server that moved away from this node.
+     * @param server {@link Server}
+     */
+    public void serverEvicted(final Server server) {
+        publish(FeedEvent.remove(server, false));
+    }
+
+    /**
+     * Queues an event for every subscriber.
+     * @param event {@link FeedEvent}
+     */
+    private void publish(final FeedEvent event) {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.queue.offer(event)) {
+                subscriber.behind = true;
+            }
+        }
+    }
+
+    /**
+     * Sends a snapshot and then the changes to a subscriber, until the connection breaks or the subscriber falls
+     * behind.
+     * @param out {@link DataOutputStream} to the subscriber
+     * @param snapshot {@link Supplier} of the servers on this node, only iterated after subscribing so no change can
+     *                 fall in between (a change can be in both, the subscriber sorts that out by version)
+     * @throws IOException when the subscriber is gone or fell behind
+     */
+    public void serve(final DataOutputStream out, final Supplier<Iterator<Server>> snapshot) throws IOException {
+        Subscriber subscriber = new Subscriber(bufferSize);
+        subscribers.add(subscriber);
+
+        try {
+            Iterator<Server> servers = snapshot.get();
+            while (servers.hasNext()) {
+                FeedEvent.put(servers.next(), true).writeTo(out);
+            }
+            FeedEvent.SNAPSHOT_DONE.writeTo(out);
+
+            while (true) {
+                if (subscriber.queue.isEmpty()) {
+                    // every change made before now has been written
+                    FeedEvent.HEARTBEAT.writeTo(out);
+                    out.flush();
+                }
+
+                FeedEvent event = subscriber.queue.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                if (subscriber.behind) {
+                    throw new IOException("The subscriber fell more than " + bufferSize + " changes behind");
+                }
+
+                if (event != null) {
+                    event.writeTo(out);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sending changes", e);
+        } finally {
+            subscribers.remove(subscriber);
+        }
+    }
+
+    /**
+     * The changes waiting to be sent to one subscriber.
+     */
+    private static final class Subscriber {
+
+        private final BlockingQueue<FeedEvent> queue;
+
+        // set instead of blocking the writer when the queue is full
+        private volatile boolean behind;
+
+        Subscriber(final int bufferSize) {
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.feed;
+
+import com.mariolopezjr.pandapi.dao.ServerBinaryFormat;
+import com.mariolopezjr.pandapi.data.server.Server;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * One message of a node's {@link ChangeFeed}: a server that is now on the node (created, updated, or moved there), a
+ * server that no longer is (deleted, or moved away), the end of the initial snapshot, or a heartbeat (which also says
+ * that every change before it was sent).  Servers that only moved between partitions aren't changes, so they're marked
+ * as not to be passed on to the change listeners.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public final class FeedEvent {
+
+    /**
+     * The kinds of events.
+     */
+    public enum Type {
+        PUT,
+        REMOVE,
+        SNAPSHOT_DONE,
+        HEARTBEAT
+    }
+
+    public static final FeedEvent SNAPSHOT_DONE = new FeedEvent(Type.SNAPSHOT_DONE, false, null, null, 0);
+    public static final FeedEvent HEARTBEAT = new FeedEvent(Type.HEARTBEAT, false, null, null, 0);
+
+    private final Type type;
+    private final boolean change;
+    private final Server server;
+    private final UUID serverId;
+    private final long version;
+
+    /**
+     * Constructor
+     * @param type {@link Type}
+     * @param change boolean whether the listeners should hear about it
+     * @param server {@link Server} for puts, null otherwise
+     * @param serverId {@link UUID} for removes, null otherwise
+     * @param version long last version of a removed server
+     */
+    private FeedEvent(final Type type, final boolean change, final Server server, final UUID serverId,
+                      final long version) {
+        this.type = type;
+        this.change = change;
+        this.server = server;
+        this.serverId = serverId;
+        this.version = version;
+    }
+
+    /**
+     * Creates the event for a server that is now on the node.
+     * @param server {@link Server} as it is on the node (not copied, the data store never modifies it)
+     * @param change boolean false if it only moved there
+     * @return {@link FeedEvent}
+     */
+    public static FeedEvent put(final Server server, final boolean change) {
+        return new FeedEvent(Type.PUT, change, server, null, 0);
+    }
+
+    /**
+     * Creates the event for a server that is no longer on the node.
+     * @param server {@link Server} its last values
+     * @param change boolean false if it only moved away
+     * @return {@link FeedEvent}
+     */
+    public static FeedEvent remove(final Server server, final boolean change) {
+        return new FeedEvent(Type.REMOVE, change, null, server.getId(), server.getVersion());
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public boolean isChange() {
+        return change;
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    public UUID getServerId() {
+        return serverId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Writes the event to a subscriber.
+     * @param out {@link DataOutput}
+     * @throws IOException
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        out.writeByte(type.ordinal());
+
+        if (Type.PUT == type) {
+            out.writeBoolean(change);
+            ServerBinaryFormat.writeServer(out, server);
+        } else if (Type.REMOVE == type) {
+            out.writeBoolean(change);
+            ServerBinaryFormat.writeUuid(out, serverId);
+            out.writeLong(version);
+        }
+    }
+
+    /**
+     * Reads an event written by {@link #writeTo(DataOutput)}.
+     * @param in {@link DataInput}
+     * @return {@link FeedEvent}
+     * @throws IOException
+     */
+    public static FeedEvent readFrom(final DataInput in) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= Type.values().length) {
+            throw new IOException("Unknown change feed event type " + ordinal);
+        }
+        Type type = Type.values()[ordinal];
+
+        switch (type) {
+            case PUT:
+                return new FeedEvent(type, in.readBoolean(), ServerBinaryFormat.readServer(in), null, 0);
+            case REMOVE:
+                return new FeedEvent(type, in.readBoolean(), null, ServerBinaryFormat.readUuid(in), in.readLong());
+            case SNAPSHOT_DONE:
+                return SNAPSHOT_DONE;
+            default:
+                return HEARTBEAT;
+        }
+    }
+}
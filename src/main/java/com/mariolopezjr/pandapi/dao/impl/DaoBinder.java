@@ -29,11 +29,33 @@ import javax.inject.Singleton;
  */
 public class DaoBinder extends AbstractBinder {
 
+    // the server DAO to use instead of creating an in-memory one, e.g. one that was already started
+    private final ServerDao serverDao;
+
+    /**
+     * Constructor, the server resources are kept in memory.
+     */
+    public DaoBinder() {
+        this(null);
+    }
+
+    /**
+     * Constructor
+     * @param serverDao {@link ServerDao} to inject instead of an in-memory one, null for the in-memory one
+     */
+    public DaoBinder(final ServerDao serverDao) {
+        this.serverDao = serverDao;
+    }
+
     /**
      * Configure injection binding definitions
      */
     @Override
     protected void configure() {
-        bind(ServerInMemoryDao.class).to(ServerDao.class).in(Singleton.class);
+        if (null == serverDao) {
+            bind(ServerInMemoryDao.class).to(ServerDao.class).in(Singleton.class);
+        } else {
+            bind(serverDao).to(ServerDao.class);
+        }
     }
 }
@@ -16,15 +16,21 @@
 
 package com.mariolopezjr.pandapi.dao.impl;
 
+import com.mariolopezjr.pandapi.dao.ServerChangeListener;
 import com.mariolopezjr.pandapi.dao.ServerDao;
+import com.mariolopezjr.pandapi.dao.ServerIdGenerator;
 import com.mariolopezjr.pandapi.data.server.Server;
 import com.mariolopezjr.pandapi.exception.InternalException;
+import com.mariolopezjr.pandapi.metrics.LatencyHistogram;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
 import org.apache.commons.configuration.Configuration;
 
 import javax.inject.Inject;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of the {@link ServerDao} interface that uses an internal in-memory data store.  The in-memory
@@ -43,16 +49,34 @@ public class ServerInMemoryDao implements ServerDao {
     // where we get our configuration
     private final Configuration config;
 
+    // picks the identifiers of new servers
+    private final ServerIdGenerator idGenerator;
+
+    // source of the per-server versions.  A new server is stamped before it is stored, a changed one inside the
+    // compute/computeIfPresent that stores it, so two changes of the same server are stored in version order
+    private final AtomicLong versionSequence = new AtomicLong();
+
+    // bumped after every change is stored, so a reader that sees a version is guaranteed to see the data behind it
+    private final AtomicLong inventoryVersion = new AtomicLong();
+
+    // code that wants to know about changes (registered rarely, iterated on every write)
+    private final List<ServerChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    // how long each operation takes
+    private final LatencyHistogram getAllServersLatency;
+    private final LatencyHistogram getServerByIdLatency;
+    private final LatencyHistogram createServerLatency;
+    private final LatencyHistogram updateServerLatency;
+    private final LatencyHistogram putServersLatency;
+    private final LatencyHistogram deleteServerLatency;
+
     /**
      * Constructor
      */
     @Inject
-    public ServerInMemoryDao(final Configuration config) {
-        // must be first so other initialization has access to config
-        this.config = config;
-
+    public ServerInMemoryDao(final Configuration config, final MetricsRegistry metrics) {
         // initialize the data store
-        dataStore = createDataStore();
+        this(createDataStore(config), config, metrics);
     }
 
     /**
@@ -62,11 +86,44 @@ public class ServerInMemoryDao implements ServerDao {
     ServerInMemoryDao(
             final ConcurrentMap<UUID, Server> dataStore,
             final Configuration config) {
-        // must be first so other initialization has access to config
+        this(dataStore, config, new MetricsRegistry());
+    }
+
+    /**
+     * Constructor for the unit test to call.  Purposely has package level scope.
+     * @param dataStore {@link ConcurrentMap}<{@link UUID}, {@link Server}>
+     * @param config {@link Configuration}
+     * @param metrics {@link MetricsRegistry}
+     */
+    ServerInMemoryDao(
+            final ConcurrentMap<UUID, Server> dataStore,
+            final Configuration config,
+            final MetricsRegistry metrics) {
         this.config = config;
+        this.idGenerator = ServerIdGenerator.fromConfig(config);
 
         // use the data store provided
         this.dataStore = dataStore;
+
+        getAllServersLatency = operationLatency(metrics, "getAllServers");
+        getServerByIdLatency = operationLatency(metrics, "getServerById");
+        createServerLatency = operationLatency(metrics, "createServer");
+        updateServerLatency = operationLatency(metrics, "updateServer");
+        putServersLatency = operationLatency(metrics, "putServers");
+        deleteServerLatency = operationLatency(metrics, "deleteServer");
+
+        metrics.gauge("pandapi_servers", "Servers in the data store, in any state.", dataStore::size);
+    }
+
+    /**
+     * Registers the latency histogram for one of the DAO's operations.
+     * @param metrics {@link MetricsRegistry}
+     * @param operation {@link String} name
+     * @return {@link LatencyHistogram}
+     */
+    private static LatencyHistogram operationLatency(final MetricsRegistry metrics, final String operation) {
+        return metrics.histogram("pandapi_dao_operation_duration_seconds",
+                "Time spent in each server data store operation.", "operation", operation);
     }
 
     /**
@@ -76,9 +133,10 @@ public class ServerInMemoryDao implements ServerDao {
      * With an initial capacity of 1,024 and a load factor of 0.75f, we won't see any map re-sizing until we have
      * about 768 elements.  See {@link ConcurrentHashMap#ConcurrentHashMap(int, float, int)} for additional details.<br/>
      *
+     * @param config {@link Configuration}
      * @return {@link ConcurrentMap}<{@link UUID}, {@link Server}>
      */
-    private ConcurrentMap<UUID, Server> createDataStore() {
+    private static ConcurrentMap<UUID, Server> createDataStore(final Configuration config) {
         // initial size of the ConcurrentHashMap to prevent frequent re-sizing below a certain threshold
         int initialCapacity = config.getInt(CONFIG_BASE_PATH + "initialCapacity", 1_024);
 
@@ -96,6 +154,7 @@ public class ServerInMemoryDao implements ServerDao {
      */
     @Override
     public List<Server> getAllServers() {
+        long start = System.nanoTime();
         Collection<Server> servers = dataStore.values();
         List<Server> clonedServers = new ArrayList<>(servers.size());
 
@@ -104,14 +163,38 @@ public class ServerInMemoryDao implements ServerDao {
             clonedServers.add(server.clone());
         }
 
+        getAllServersLatency.recordSince(start);
+
         return Collections.unmodifiableList(clonedServers);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Server> iterateServers() {
+        final Iterator<Server> servers = dataStore.values().iterator();
+
+        return new Iterator<Server>() {
+            @Override
+            public boolean hasNext() {
+                return servers.hasNext();
+            }
+
+            @Override
+            public Server next() {
+                // prevent the calling class from being able to manipulate the object in the data store directly
+                return servers.next().clone();
+            }
+        };
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public Server getServerById(UUID serverId) {
+        long start = System.nanoTime();
         Server result = dataStore.get(serverId);
 
         if (result != null) {
@@ -119,9 +202,19 @@ public class ServerInMemoryDao implements ServerDao {
             result = result.clone();
         }
 
+        getServerByIdLatency.recordSince(start);
+
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getInventoryVersion() {
+        return inventoryVersion.get();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -133,12 +226,15 @@ public class ServerInMemoryDao implements ServerDao {
                     "New server resources get an ID from the DAO, but this server came in with an ID already: " + server);
         }
 
+        long start = System.nanoTime();
+
         // prevent the calling class from being able to manipulate the object in the data store directly
         Server clonedServer = server.clone();
+        clonedServer.setVersion(versionSequence.incrementAndGet());
         boolean serverCreated = false;
 
         while (!serverCreated) {
-            UUID id = UUID.randomUUID();
+            UUID id = idGenerator.nextId();
             clonedServer.setId(id);
 
             // putIfAbsent will return null if the server was successfully persisted or it'll return the existing
@@ -150,10 +246,123 @@ public class ServerInMemoryDao implements ServerDao {
             }
         }
 
+        inventoryVersion.incrementAndGet();
+
+        for (ServerChangeListener listener : listeners) {
+            listener.serverCreated(clonedServer);
+        }
+
+        createServerLatency.recordSince(start);
+
+        // prevent the calling class from being able to manipulate the object in the data store directly
+        return clonedServer.clone();
+    }
+
+    /**
+     * Persists a new server resource that already has its identifier, e.g. one assigned by another node of a cluster
+     * before the change was replicated.  Creating a server whose identifier is already in use changes nothing, so a
+     * create that is applied twice is harmless.
+     * @param server {@link Server} with its identifier set
+     * @return {@link Server} the server resource in the data store (with its version set)
+     */
+    public Server createServerWithId(Server server) {
+        if (server.getId() == null) {
+            throw new InternalException("The server to create needs an ID already: " + server);
+        }
+
+        long start = System.nanoTime();
+
         // prevent the calling class from being able to manipulate the object in the data store directly
-        clonedServer = clonedServer.clone();
+        Server clonedServer = server.clone();
+        clonedServer.setVersion(versionSequence.incrementAndGet());
+
+        Server existingServer = dataStore.putIfAbsent(clonedServer.getId(), clonedServer);
+
+        if (null == existingServer) {
+            inventoryVersion.incrementAndGet();
+
+            for (ServerChangeListener listener : listeners) {
+                listener.serverCreated(clonedServer);
+            }
+        } else {
+            clonedServer = existingServer;
+        }
+
+        createServerLatency.recordSince(start);
 
-        return clonedServer;
+        return clonedServer.clone();
+    }
+
+    /**
+     * Stores a server resource that was handed over by another node, as is (including its version), without telling
+     * the change listeners: it isn't a change, the server only moved.  A newer version that is already here is kept.
+     * @param server {@link Server} with its identifier and version set
+     */
+    public void importServer(Server server) {
+        // prevent the calling class from being able to manipulate the object in the data store directly
+        Server clonedServer = server.clone();
+
+        // the next update has to get a higher version than the one it came with
+        versionSequence.accumulateAndGet(clonedServer.getVersion(), Math::max);
+
+        dataStore.merge(clonedServer.getId(), clonedServer,
+                (existing, imported) -> existing.getVersion() >= imported.getVersion() ? existing : imported);
+
+        inventoryVersion.incrementAndGet();
+    }
+
+    /**
+     * Stores a server resource as another node has it (including its version), e.g. a change a read replica got from
+     * its primary, and tells the change listeners about it.  An older version than the one already here is ignored,
+     * so a change that arrives twice (or late) is harmless.
+     * @param server {@link Server} with its identifier and version set
+     * @return boolean true if it was stored
+     */
+    public boolean replicateServer(Server server) {
+        // prevent the calling class from being able to manipulate the object in the data store directly
+        Server clonedServer = server.clone();
+        versionSequence.accumulateAndGet(clonedServer.getVersion(), Math::max);
+
+        Server previousValue;
+        while (true) {
+            previousValue = dataStore.putIfAbsent(clonedServer.getId(), clonedServer);
+
+            if (null == previousValue) {
+                break;
+            } else if (previousValue.getVersion() >= clonedServer.getVersion()) {
+                return false;
+            } else if (dataStore.replace(clonedServer.getId(), previousValue, clonedServer)) {
+                break;
+            }
+        }
+
+        inventoryVersion.incrementAndGet();
+
+        for (ServerChangeListener listener : listeners) {
+            if (null == previousValue) {
+                listener.serverCreated(clonedServer);
+            } else {
+                listener.serverUpdated(previousValue, clonedServer);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes a server resource that was handed over to another node, without telling the change listeners (see
+     * {@link #importServer(Server)}).
+     * @param serverId {@link UUID} the server identifier
+     * @return {@link Server} that was removed, or null if there was none
+     */
+    public Server evictServer(UUID serverId) {
+        Server server = dataStore.remove(serverId);
+
+        if (server != null) {
+            inventoryVersion.incrementAndGet();
+        }
+
+        return server;
     }
 
     /**
@@ -161,14 +370,81 @@ public class ServerInMemoryDao implements ServerDao {
      */
     @Override
     public boolean updateServer(Server server) {
+        long start = System.nanoTime();
+
         // prevent the calling class from being able to manipulate the object in the data store directly
         Server clonedServer = server.clone();
+        Server[] previous = new Server[1];
 
-        // the resource will only be updated if the resource already existed
-        Server previousValue = dataStore.replace(clonedServer.getId(), clonedServer);
+        // the resource will only be updated if the resource already existed, and the version is stamped while nothing
+        // else can change it, otherwise two updates at the same time could store their versions the wrong way around
+        dataStore.computeIfPresent(clonedServer.getId(), (id, existing) -> {
+            previous[0] = existing;
+            clonedServer.setVersion(versionSequence.incrementAndGet());
+            return clonedServer;
+        });
+        Server previousValue = previous[0];
 
         // return false if there was no previous value (which means nothing was updated)
-        return previousValue != null;
+        if (null == previousValue) {
+            updateServerLatency.recordSince(start);
+            return false;
+        }
+
+        inventoryVersion.incrementAndGet();
+
+        for (ServerChangeListener listener : listeners) {
+            listener.serverUpdated(previousValue, clonedServer);
+        }
+
+        updateServerLatency.recordSince(start);
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int putServers(List<Server> servers) {
+        long start = System.nanoTime();
+        int created = 0;
+
+        for (Server server : servers) {
+            if (server.getId() == null) {
+                throw new InternalException("The server to put needs an ID already: " + server);
+            }
+
+            // prevent the calling class from being able to manipulate the object in the data store directly
+            Server clonedServer = server.clone();
+            Server[] previous = new Server[1];
+
+            // stamp the version while nothing else can change the server (see updateServer)
+            dataStore.compute(clonedServer.getId(), (id, existing) -> {
+                previous[0] = existing;
+                clonedServer.setVersion(versionSequence.incrementAndGet());
+                return clonedServer;
+            });
+            Server previousValue = previous[0];
+
+            inventoryVersion.incrementAndGet();
+
+            for (ServerChangeListener listener : listeners) {
+                if (null == previousValue) {
+                    listener.serverCreated(clonedServer);
+                } else {
+                    listener.serverUpdated(previousValue, clonedServer);
+                }
+            }
+
+            if (null == previousValue) {
+                created++;
+            }
+        }
+
+        putServersLatency.recordSince(start);
+
+        return created;
     }
 
     /**
@@ -176,16 +452,39 @@ public class ServerInMemoryDao implements ServerDao {
      */
     @Override
     public boolean deleteServer(UUID serverId) {
-        // get the existing value to remove it from the data store safely
-        Server server = dataStore.get(serverId);
+        long start = System.nanoTime();
 
-        if (null == server) {
-            // nothing to delete
-            return false;
+        // delete the server, whatever version of it is there (a get followed by a conditional remove would lose the
+        // delete to an update that came in between, even though the server was there the whole time)
+        Server server = dataStore.remove(serverId);
+        boolean deleted = server != null;
+
+        if (deleted) {
+            inventoryVersion.incrementAndGet();
+
+            for (ServerChangeListener listener : listeners) {
+                listener.serverDeleted(server);
+            }
         }
 
-        // delete the server
-        return dataStore.remove(serverId, server);
+        deleteServerLatency.recordSince(start);
+
+        return deleted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addChangeListener(ServerChangeListener listener) {
+        listeners.add(listener);
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeChangeListener(ServerChangeListener listener) {
+        listeners.remove(listener);
     }
 }
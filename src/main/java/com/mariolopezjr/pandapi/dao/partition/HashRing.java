@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.partition;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Consistent hash ring that decides which node owns each server.  Every node is placed on the ring at a number of
+ * pseudo-random points (its virtual nodes), and a server belongs to the node at the first point at or after the hash
+ * of its identifier.  Adding or removing a node only moves the servers between its points and the ones before them,
+ * about 1/N of them, and with enough virtual nodes every node ends up with about the same share.<br/>
+ *
+ * Immutable, so it can be swapped out in one go when a node joins or leaves.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+final class HashRing {
+
+    // fast and evenly spread, the same on every node and every JVM
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final int virtualNodes;
+
+    // point on the ring -> node identifier
+    private final NavigableMap<Long, Integer> points;
+
+    private final Set<Integer> nodes;
+
+    /**
+     * Constructor
+     * @param virtualNodes int points per node
+     * @param nodes {@link Collection}<{@link Integer}> node identifiers
+     */
+    HashRing(final int virtualNodes, final Collection<Integer> nodes) {
+        this.virtualNodes = virtualNodes;
+        this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodes));
+        this.points = new TreeMap<>();
+
+        for (int node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // in the unlikely case that two nodes hash to the same point, the same node gets it everywhere
+                points.merge(pointOf(node, i), node, Math::min);
+            }
+        }
+    }
+
+    /**
+     * Returns a ring that also has the specified node.
+     * @param node int
+     * @return {@link HashRing} this one if the node is already on it
+     */
+    HashRing withNode(final int node) {
+        if (nodes.contains(node)) {
+            return this;
+        }
+
+        Set<Integer> newNodes = new TreeSet<>(nodes);
+        newNodes.add(node);
+        return new HashRing(virtualNodes, newNodes);
+    }
+
+    /**
+     * Returns a ring without the specified node.
+     * @param node int
+     * @return {@link HashRing} this one if the node isn't on it
+     */
+    HashRing withoutNode(final int node) {
+        if (!nodes.contains(node)) {
+            return this;
+        }
+
+        Set<Integer> newNodes = new TreeSet<>(nodes);
+        newNodes.remove(node);
+        return new HashRing(virtualNodes, newNodes);
+    }
+
+    /**
+     * Returns the node that owns a server.
+     * @param serverId {@link UUID}
+     * @return int node identifier
+     * @throws IllegalStateException if the ring is empty
+     */
+    int ownerOf(final UUID serverId) {
+        if (points.isEmpty()) {
+            throw new IllegalStateException("There are no nodes on the ring");
+        }
+
+        long hash = HASH.newHasher()
+                .putLong(serverId.getMostSignificantBits())
+                .putLong(serverId.getLeastSignificantBits())
+                .hash().asLong();
+
+        // wraps around to the first point
+        Map.Entry<Long, Integer> owner = points.ceilingEntry(hash);
+        return null == owner ? points.firstEntry().getValue() : owner.getValue();
+    }
+
+    /**
+     * Returns whether the node is on the ring.
+     * @param node int
+     * @return boolean
+     */
+    boolean contains(final int node) {
+        return nodes.contains(node);
+    }
+
+    /**
+     * Returns the nodes on the ring.
+     * @return {@link Set}<{@link Integer}> in ascending order
+     */
+    Set<Integer> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the position of one of a node's virtual nodes.
+     * @param node int
+     * @param virtualNode int
+     * @return long
+     */
+    private static long pointOf(final int node, final int virtualNode) {
+        return HASH.newHasher().putInt(node).putInt(virtualNode).hash().asLong();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "HashRing" + nodes;
+    }
+}
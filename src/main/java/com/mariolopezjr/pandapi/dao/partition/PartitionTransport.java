@@ -0,0 +1,734 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.partition;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mariolopezjr.pandapi.dao.ServerBinaryFormat;
+import com.mariolopezjr.pandapi.dao.feed.ChangeFeed;
+import com.mariolopezjr.pandapi.dao.feed.FeedEvent;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.exception.DataStoreUnavailableException;
+import com.mariolopezjr.pandapi.exception.InternalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Requests between the nodes of a partitioned data store, over plain TCP connections: one byte for the kind of
+ * request, then its arguments, and a status byte followed by the result in the response.  Connections to the other
+ * nodes are kept open and reused, one request at a time each, and every connection from another node is served by
+ * its own thread.  A subscription to a node's {@link ChangeFeed} gets a connection of its own.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class PartitionTransport implements Closeable {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionTransport.class);
+
+    // the kinds of requests
+    private static final byte GET = 1;
+    private static final byte CREATE = 2;
+    private static final byte UPDATE = 3;
+    private static final byte DELETE = 4;
+    private static final byte LIST = 5;
+    private static final byte VERSION = 6;
+    private static final byte JOIN = 7;
+    private static final byte LEAVE = 8;
+    private static final byte IMPORT = 9;
+    private static final byte SUBSCRIBE = 10;
+    private static final byte PUT = 11;
+
+    // the status of a response, followed by the result or the error message
+    private static final byte OK = 0;
+    private static final byte UNAVAILABLE = 1;
+    private static final byte ERROR = 2;
+
+    private final int nodeId;
+    private final int timeoutMillis;
+    private final int feedTimeoutMillis;
+
+    // every node's address, including this one, changes as nodes join and leave
+    private final Map<Integer, InetSocketAddress> members = new ConcurrentHashMap<>();
+
+    // connections to the other nodes that aren't in use, by node
+    private final Map<Integer, BlockingQueue<Connection>> idle = new ConcurrentHashMap<>();
+
+    // every open connection (in both directions), to break them off on close
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService connectionThreads = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("partition-connection-%d").setDaemon(true).build());
+
+    private volatile ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    /**
+     * Constructor
+     * @param nodeId int of this node
+     * @param members {@link Map}<{@link Integer}, {@link InetSocketAddress}> the known nodes, including this one
+     * @param timeoutMillis int to connect, and to wait for an answer
+     * @param feedTimeoutMillis int to wait for the next change (or heartbeat) of a subscription
+     */
+    PartitionTransport(final int nodeId, final Map<Integer, InetSocketAddress> members, final int timeoutMillis,
+                       final int feedTimeoutMillis) {
+        this.nodeId = nodeId;
+        this.members.putAll(members);
+        this.timeoutMillis = timeoutMillis;
+        this.feedTimeoutMillis = feedTimeoutMillis;
+    }
+
+    /**
+     * Starts listening for requests from the other nodes.
+     * @param dao {@link PartitionedServerDao} that handles them
+     * @throws IOException if this node's address can't be listened on
+     */
+    void start(final PartitionedServerDao dao) throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(members.get(nodeId));
+        serverSocket = socket;
+
+        connectionThreads.execute(() -> accept(dao));
+
+        LOG.info("Listening for the other partitions on {}", members.get(nodeId));
+    }
+
+    /**
+     * Returns the known nodes.
+     * @return {@link Map}<{@link Integer}, {@link InetSocketAddress}> by node identifier
+     */
+    Map<Integer, InetSocketAddress> getMembers() {
+        return new TreeMap<>(members);
+    }
+
+    /**
+     * Adds (or moves) a node.
+     * @param id int
+     * @param address {@link InetSocketAddress}
+     */
+    void addMember(final int id, final InetSocketAddress address) {
+        if (!address.equals(members.put(id, address))) {
+            closeIdle(id);
+        }
+    }
+
+    /**
+     * Forgets a node that left.
+     * @param id int
+     */
+    void removeMember(final int id) {
+        members.remove(id);
+        closeIdle(id);
+    }
+
+    /**
+     * Accepts connections from the other nodes until closed.
+     * @param dao {@link PartitionedServerDao}
+     */
+    private void accept(final PartitionedServerDao dao) {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                connectionThreads.execute(() -> serve(socket, dao));
+            } catch (IOException e) {
+                if (!closed) {
+                    LOG.warn("Unable to accept a connection from another partition", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the requests that come in on a connection, until the other node closes it.
+     * @param socket {@link Socket}
+     * @param dao {@link PartitionedServerDao}
+     */
+    private void serve(final Socket socket, final PartitionedServerDao dao) {
+        try (Socket ignored = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            int type;
+            while ((type = in.read()) != -1) {
+                serveRequest(type, in, out, dao);
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                LOG.debug("Connection from {} closed", socket.getRemoteSocketAddress(), e);
+            }
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    /**
+     * Reads one request, has the DAO handle it, and writes the response.
+     * @param type int of request
+     * @param in {@link DataInputStream}
+     * @param out {@link DataOutputStream}
+     * @param dao {@link PartitionedServerDao}
+     * @throws IOException
+     */
+    private void serveRequest(final int type, final DataInputStream in, final DataOutputStream out,
+                              final PartitionedServerDao dao) throws IOException {
+        switch (type) {
+            case GET: {
+                UUID serverId = ServerBinaryFormat.readUuid(in);
+                int hops = in.readByte();
+                respond(out, () -> dao.getServerById(serverId, hops), PartitionTransport::writeNullableServer);
+                break;
+            }
+            case CREATE: {
+                Server server = ServerBinaryFormat.readServer(in);
+                int hops = in.readByte();
+                respond(out, () -> dao.createServerWithId(server, hops), ServerBinaryFormat::writeServer);
+                break;
+            }
+            case UPDATE: {
+                Server server = ServerBinaryFormat.readServer(in);
+                int hops = in.readByte();
+                respond(out, () -> dao.updateServer(server, hops), DataOutputStream::writeBoolean);
+                break;
+            }
+            case DELETE: {
+                UUID serverId = ServerBinaryFormat.readUuid(in);
+                int hops = in.readByte();
+                respond(out, () -> dao.deleteServer(serverId, hops), DataOutputStream::writeBoolean);
+                break;
+            }
+            case LIST:
+                respond(out, dao::getLocalServers, PartitionTransport::writeServers);
+                break;
+            case VERSION:
+                respond(out, dao::getLocalInventoryVersion, DataOutputStream::writeLong);
+                break;
+            case JOIN: {
+                int joiner = in.readInt();
+                InetSocketAddress address = new InetSocketAddress(in.readUTF(), in.readInt());
+                respond(out, () -> dao.handleJoin(joiner, address), PartitionTransport::writeMembers);
+                break;
+            }
+            case LEAVE: {
+                int leaver = in.readInt();
+                respond(out, () -> {
+                    dao.handleLeave(leaver);
+                    return null;
+                }, (o, nothing) -> { });
+                break;
+            }
+            case IMPORT: {
+                List<Server> servers = readServers(in);
+                respond(out, () -> {
+                    dao.handleImport(servers);
+                    return null;
+                }, (o, nothing) -> { });
+                break;
+            }
+            case PUT: {
+                List<Server> servers = readServers(in);
+                int hops = in.readByte();
+                respond(out, () -> dao.putServers(servers, hops), DataOutputStream::writeInt);
+                break;
+            }
+            case SUBSCRIBE:
+                // takes over the connection until the subscriber goes away
+                dao.handleSubscribe(out);
+                break;
+            default:
+                throw new IOException("Unknown request type " + type);
+        }
+    }
+
+    /**
+     * Writes the response to a request, or the error that handling it ended in.
+     * @param out {@link DataOutputStream}
+     * @param handler {@link Supplier} of the result
+     * @param writer {@link ResultWriter} for the result
+     * @param <T> type of the result
+     * @throws IOException
+     */
+    private static <T> void respond(final DataOutputStream out, final Supplier<T> handler,
+                                    final ResultWriter<T> writer) throws IOException {
+        T result;
+        try {
+            result = handler.get();
+        } catch (DataStoreUnavailableException e) {
+            out.writeByte(UNAVAILABLE);
+            out.writeUTF(String.valueOf(e.getMessage()));
+            return;
+        } catch (RuntimeException e) {
+            LOG.error("Unable to handle a request from another partition", e);
+            out.writeByte(ERROR);
+            out.writeUTF(String.valueOf(e.getMessage()));
+            return;
+        }
+
+        out.writeByte(OK);
+        writer.write(out, result);
+    }
+
+    /**
+     * Reads the status of a response, and throws the error that the other node ran into, if any.
+     * @param in {@link DataInputStream}
+     * @throws IOException
+     */
+    private static void readStatus(final DataInputStream in) throws IOException {
+        byte status = in.readByte();
+
+        if (UNAVAILABLE == status) {
+            throw new DataStoreUnavailableException(in.readUTF());
+        } else if (ERROR == status) {
+            throw new InternalException("Another partition was unable to handle the request: " + in.readUTF());
+        }
+    }
+
+    /**
+     * Asks a node for a server it owns.
+     * @param peerId int
+     * @param serverId {@link UUID}
+     * @param hops int how many more times the request may be passed on
+     * @return {@link Server} or null if there is no such server
+     * @throws IOException
+     */
+    Server getServerById(final int peerId, final UUID serverId, final int hops) throws IOException {
+        return call(peerId, (in, out) -> {
+            out.writeByte(GET);
+            ServerBinaryFormat.writeUuid(out, serverId);
+            out.writeByte(hops);
+            out.flush();
+            readStatus(in);
+            return in.readBoolean() ? ServerBinaryFormat.readServer(in) : null;
+        });
+    }
+
+    /**
+     * Has a node create a server it owns.
+     * @param peerId int
+     * @param server {@link Server} with its identifier set
+     * @param hops int how many more times the request may be passed on
+     * @return {@link Server} as created
+     * @throws IOException
+     */
+    Server createServerWithId(final int peerId, final Server server, final int hops) throws IOException {
+        return call(peerId, (in, out) -> {
+            out.writeByte(CREATE);
+            ServerBinaryFormat.writeServer(out, server);
+            out.writeByte(hops);
+            out.flush();
+            readStatus(in);
+            return ServerBinaryFormat.readServer(in);
+        });
+    }
+
+    /**
+     * Has a node update a server it owns.
+     * @param peerId int
+     * @param server {@link Server}
+     * @param hops int how many more times the request may be passed on
+     * @return boolean true if it was updated
+     * @throws IOException
+     */
+    boolean updateServer(final int peerId, final Server server, final int hops) throws IOException {
+        return call(peerId, (in, out) -> {
+            out.writeByte(UPDATE);
+            ServerBinaryFormat.writeServer(out, server);
+            out.writeByte(hops);
+            out.flush();
+            readStatus(in);
+            return in.readBoolean();
+        });
+    }
+
+    /**
+     * Has a node delete a server it owns.
+     * @param peerId int
+     * @param serverId {@link UUID}
+     * @param hops int how many more times the request may be passed on
+     * @return boolean true if it was deleted
+     * @throws IOException
+     */
+    boolean deleteServer(final int peerId, final UUID serverId, final int hops) throws IOException {
+        return call(peerId, (in, out) -> {
+            out.writeByte(DELETE);
+            ServerBinaryFormat.writeUuid(out, serverId);
+            out.writeByte(hops);
+            out.flush();
+            readStatus(in);
+            return in.readBoolean();
+        });
+    }
+
+    /**
+     * Has a node put servers it owns.
+     * @param peerId int
+     * @param servers {@link Collection}<{@link Server}> with their identifiers set
+     * @param hops int how many more times the request may be passed on
+     * @return int the number of servers that were created
+     * @throws IOException
+     */
+    int putServers(final int peerId, final Collection<Server> servers, final int hops) throws IOException {
+        return call(peerId, (in, out) -> {
+            out.writeByte(PUT);
+            writeServers(out, servers);
+            out.writeByte(hops);
+            out.flush();
+            readStatus(in);
+            return in.readInt();
+        });
+    }
+
+    /**
+     * Asks a node for all of the servers it owns.
+     * @param peerId int
+     * @return {@link List}<{@link Server}>
+     * @throws IOException
+     */
+    List<Server> getServers(final int peerId) throws IOException {
+        return call(peerId, (in, out) -> {
+            out.writeByte(LIST);
+            out.flush();
+            readStatus(in);
+            return readServers(in);
+        });
+    }
+
+    /**
+     * Asks a node for the version of the servers it owns.
+     * @param peerId int
+     * @return long
+     * @throws IOException
+     */
+    long getInventoryVersion(final int peerId) throws IOException {
+        return call(peerId, (in, out) -> {
+            out.writeByte(VERSION);
+            out.flush();
+            readStatus(in);
+            return in.readLong();
+        });
+    }
+
+    /**
+     * Tells a node that this one joins, which hands over the servers this one owns from now on before it answers.
+     * @param peerId int
+     * @param address {@link InetSocketAddress} of this node
+     * @return {@link Map}<{@link Integer}, {@link InetSocketAddress}> the nodes the other node knows of
+     * @throws IOException
+     */
+    Map<Integer, InetSocketAddress> join(final int peerId, final InetSocketAddress address) throws IOException {
+        return call(peerId, (in, out) -> {
+            out.writeByte(JOIN);
+            out.writeInt(nodeId);
+            out.writeUTF(address.getHostString());
+            out.writeInt(address.getPort());
+            out.flush();
+            readStatus(in);
+            return readMembers(in);
+        });
+    }
+
+    /**
+     * Tells a node that this one leaves, after it handed over its servers.
+     * @param peerId int
+     * @throws IOException
+     */
+    void leave(final int peerId) throws IOException {
+        call(peerId, (in, out) -> {
+            out.writeByte(LEAVE);
+            out.writeInt(nodeId);
+            out.flush();
+            readStatus(in);
+            return null;
+        });
+    }
+
+    /**
+     * Hands servers over to the node that owns them from now on.
+     * @param peerId int
+     * @param servers {@link Collection}<{@link Server}>
+     * @throws IOException
+     */
+    void importServers(final int peerId, final Collection<Server> servers) throws IOException {
+        call(peerId, (in, out) -> {
+            out.writeByte(IMPORT);
+            writeServers(out, servers);
+            out.flush();
+            readStatus(in);
+            return null;
+        });
+    }
+
+    /**
+     * Subscribes to a node's changes, and passes them on until the connection breaks (or the subscription is no
+     * longer wanted, checked at least at every heartbeat).
+     * @param peerId int
+     * @param handler {@link Consumer}<{@link FeedEvent}>
+     * @param wanted {@link BooleanSupplier} whether to carry on
+     * @throws IOException when the connection breaks
+     */
+    void subscribe(final int peerId, final Consumer<FeedEvent> handler, final BooleanSupplier wanted)
+            throws IOException {
+        Connection connection = connect(peerId, feedTimeoutMillis);
+
+        try {
+            connection.out.writeByte(SUBSCRIBE);
+            connection.out.flush();
+
+            while (wanted.getAsBoolean()) {
+                handler.accept(FeedEvent.readFrom(connection.in));
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Sends a request to a node on an idle connection (or a new one) and reads the response.  A connection that
+     * failed is closed, since it could be left in the middle of a message.
+     * @param peerId int
+     * @param exchange {@link Exchange}
+     * @param <T> type of the response
+     * @return T the response
+     * @throws IOException
+     */
+    private <T> T call(final int peerId, final Exchange<T> exchange) throws IOException {
+        if (closed) {
+            throw new SocketException("The transport is closed");
+        }
+
+        BlockingQueue<Connection> connections = idle.computeIfAbsent(peerId, id -> new LinkedBlockingQueue<>());
+        Connection connection = connections.poll();
+        if (null == connection) {
+            connection = connect(peerId, timeoutMillis);
+        }
+
+        try {
+            T response = exchange.exchange(connection.in, connection.out);
+            connections.offer(connection);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a new connection to a node.
+     * @param peerId int
+     * @param readTimeoutMillis int
+     * @return {@link Connection}
+     * @throws IOException
+     */
+    private Connection connect(final int peerId, final int readTimeoutMillis) throws IOException {
+        InetSocketAddress address = members.get(peerId);
+        if (null == address) {
+            throw new SocketException("Node " + peerId + " isn't one of the partitions");
+        }
+
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(readTimeoutMillis);
+            socket.connect(address, timeoutMillis);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        sockets.add(socket);
+        if (closed) {
+            socket.close();
+            throw new SocketException("The transport is closed");
+        }
+
+        return new Connection(socket);
+    }
+
+    /**
+     * Closes the idle connections to a node, e.g. after it moved.
+     * @param peerId int
+     */
+    private void closeIdle(final int peerId) {
+        BlockingQueue<Connection> connections = idle.remove(peerId);
+        if (connections != null) {
+            connections.forEach(Connection::close);
+        }
+    }
+
+    /**
+     * Stops listening and closes every connection, which also breaks off the calls and subscriptions in progress.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        connectionThreads.shutdownNow();
+    }
+
+    /**
+     * Writes a server, or that there is none.
+     * @param out {@link DataOutputStream}
+     * @param server {@link Server} or null
+     * @throws IOException
+     */
+    private static void writeNullableServer(final DataOutputStream out, final Server server) throws IOException {
+        out.writeBoolean(server != null);
+        if (server != null) {
+            ServerBinaryFormat.writeServer(out, server);
+        }
+    }
+
+    /**
+     * Writes a number of servers.
+     * @param out {@link DataOutputStream}
+     * @param servers {@link Collection}<{@link Server}>
+     * @throws IOException
+     */
+    private static void writeServers(final DataOutputStream out, final Collection<Server> servers)
+            throws IOException {
+        out.writeInt(servers.size());
+        for (Server server : servers) {
+            ServerBinaryFormat.writeServer(out, server);
+        }
+    }
+
+    /**
+     * Reads the servers written by {@link #writeServers(DataOutputStream, Collection)}.
+     * @param in {@link DataInputStream}
+     * @return {@link List}<{@link Server}>
+     * @throws IOException
+     */
+    private static List<Server> readServers(final DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Server> servers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            servers.add(ServerBinaryFormat.readServer(in));
+        }
+
+        return servers;
+    }
+
+    /**
+     * Writes the known nodes and their addresses.
+     * @param out {@link DataOutputStream}
+     * @param members {@link Map}<{@link Integer}, {@link InetSocketAddress}>
+     * @throws IOException
+     */
+    private static void writeMembers(final DataOutputStream out, final Map<Integer, InetSocketAddress> members)
+            throws IOException {
+        out.writeInt(members.size());
+        for (Map.Entry<Integer, InetSocketAddress> member : members.entrySet()) {
+            out.writeInt(member.getKey());
+            out.writeUTF(member.getValue().getHostString());
+            out.writeInt(member.getValue().getPort());
+        }
+    }
+
+    /**
+     * Reads the nodes written by {@link #writeMembers(DataOutputStream, Map)}.
+     * @param in {@link DataInputStream}
+     * @return {@link Map}<{@link Integer}, {@link InetSocketAddress}>
+     * @throws IOException
+     */
+    private static Map<Integer, InetSocketAddress> readMembers(final DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<Integer, InetSocketAddress> members = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            members.put(in.readInt(), new InetSocketAddress(in.readUTF(), in.readInt()));
+        }
+
+        return members;
+    }
+
+    /**
+     * Writes a request and reads its response.
+     * @param <T> type of the response
+     */
+    @FunctionalInterface
+    private interface Exchange<T> {
+        T exchange(DataInputStream in, DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes the result of a request.
+     * @param <T> type of the result
+     */
+    @FunctionalInterface
+    private interface ResultWriter<T> {
+        void write(DataOutputStream out, T result) throws IOException;
+    }
+
+    /**
+     * An open connection to a node, with its streams.
+     */
+    private final class Connection {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(final Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            sockets.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.debug("Unable to close the connection to {}", socket.getRemoteSocketAddress(), e);
+            }
+        }
+    }
+}
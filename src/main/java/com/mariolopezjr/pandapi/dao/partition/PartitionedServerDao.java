@@ -0,0 +1,718 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.partition;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mariolopezjr.pandapi.dao.ServerChangeListener;
+import com.mariolopezjr.pandapi.dao.ServerDao;
+import com.mariolopezjr.pandapi.dao.ServerIdGenerator;
+import com.mariolopezjr.pandapi.dao.feed.ChangeFeed;
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.exception.DataStoreUnavailableException;
+import com.mariolopezjr.pandapi.exception.InternalException;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
+import com.mariolopezjr.pandapi.util.ClusterMembers;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Implementation of the {@link ServerDao} interface that splits the server resources across the nodes of a cluster,
+ * so each node only stores (and takes the writes for) its share of them.  A {@link HashRing} decides which node owns
+ * each server, and every node can take any request: the ones for another node's servers are passed on to it, and the
+ * list is put together from every node's share, asked for in parallel.<br/>
+ *
+ * When a node joins, every other node hands over the servers it owns from then on before it starts passing their
+ * requests on to it, and a node that leaves (i.e. shuts down) hands all of its servers over first.  Either way only
+ * the servers of the affected ranges move.  A node that goes down without leaving takes its servers with it, and
+ * requests for them get a 503 until it's back.<br/>
+ *
+ * The change listeners hear about every change, on whichever node it was made, through the other nodes'
+ * {@link ChangeFeed}s.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class PartitionedServerDao implements ServerDao {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionedServerDao.class);
+
+    // base path for all of the config values for this class
+    private static final String CONFIG_BASE_PATH = "dataStore/partitioning/";
+
+    // times a request can be passed on, e.g. from a node that doesn't know yet that a server moved to one that does
+    static final int MAX_HOPS = 2;
+
+    // how often an idle change feed says it's still there
+    private static final int FEED_HEARTBEAT_MILLIS = 1000;
+
+    private final int nodeId;
+    private final int virtualNodes;
+    private final long timeoutMillis;
+
+    // picks the identifiers of new servers
+    private final ServerIdGenerator idGenerator;
+
+    // this node's share of the server resources
+    private final ServerInMemoryDao local;
+
+    private final PartitionTransport transport;
+
+    // this node's changes, for the other nodes
+    private final ChangeFeed feed;
+
+    // the other nodes' changes, by node
+    private final Map<Integer, PeerMirror> mirrors = new ConcurrentHashMap<>();
+
+    // the listeners, which also hear about the other nodes' changes
+    private final List<ServerChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    // held to read or change this node's share, and exclusively to hand some of it over
+    private final ReadWriteLock handOverLock = new ReentrantReadWriteLock();
+
+    // asks the other nodes for their share of the list
+    private final ExecutorService fanOut = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("partition-fan-out-%d").setDaemon(true).build());
+
+    private volatile HashRing ring;
+    private volatile boolean running;
+
+    /**
+     * Constructor, doesn't join the other nodes until {@link #start()}.
+     * @param config {@link Configuration}
+     * @param metrics {@link MetricsRegistry}
+     */
+    public PartitionedServerDao(final Configuration config, final MetricsRegistry metrics) {
+        this(config.getInt(CONFIG_BASE_PATH + "nodeId"),
+                ClusterMembers.parse(config.getStringArray(CONFIG_BASE_PATH + "members")),
+                config.getInt(CONFIG_BASE_PATH + "virtualNodes", 128),
+                config.getInt(CONFIG_BASE_PATH + "requestTimeout", 5000),
+                config.getInt(CONFIG_BASE_PATH + "feedBufferSize", 100_000),
+                ServerIdGenerator.fromConfig(config),
+                new ServerInMemoryDao(config, metrics));
+
+        metrics.gauge("pandapi_partition_nodes", "Nodes the servers are split across.", () -> ring.getNodes().size());
+    }
+
+    /**
+     * Constructor for the unit test to call.  Purposely has package level scope.
+     * @param nodeId int of this node
+     * @param members {@link Map}<{@link Integer}, {@link InetSocketAddress}> this node and the ones to join
+     * @param virtualNodes int points on the ring per node
+     * @param timeoutMillis int for requests to the other nodes
+     * @param feedBufferSize int changes queued per subscriber
+     * @param idGenerator {@link ServerIdGenerator}
+     * @param local {@link ServerInMemoryDao} this node's share of the servers
+     */
+    PartitionedServerDao(final int nodeId, final Map<Integer, InetSocketAddress> members, final int virtualNodes,
+                         final int timeoutMillis, final int feedBufferSize, final ServerIdGenerator idGenerator,
+                         final ServerInMemoryDao local) {
+        if (!members.containsKey(nodeId)) {
+            throw new InternalException("Node " + nodeId + " isn't one of the partition members " + members.keySet());
+        }
+
+        this.nodeId = nodeId;
+        this.virtualNodes = virtualNodes;
+        this.timeoutMillis = timeoutMillis;
+        this.idGenerator = idGenerator;
+        this.local = local;
+        this.ring = new HashRing(virtualNodes, members.keySet());
+        this.transport = new PartitionTransport(nodeId, members, timeoutMillis, FEED_HEARTBEAT_MILLIS * 3);
+        this.feed = new ChangeFeed(feedBufferSize, FEED_HEARTBEAT_MILLIS);
+
+        local.addChangeListener(feed);
+    }
+
+    /**
+     * Returns whether the server resources should be split across the nodes of a cluster.
+     * @param config {@link Configuration}
+     * @return boolean
+     */
+    public static boolean isEnabled(final Configuration config) {
+        return config.getBoolean(CONFIG_BASE_PATH + "enabled", false);
+    }
+
+    /**
+     * Starts taking requests from the other nodes and joins them.  The configured members that are up answer with
+     * the nodes they know of (which may have changed since the configuration was written), and hand over this node's
+     * share of the servers.
+     */
+    public void start() {
+        try {
+            transport.start(this);
+        } catch (IOException e) {
+            throw new InternalException("Unable to listen for the other partitions", e);
+        }
+        running = true;
+
+        InetSocketAddress address = transport.getMembers().get(nodeId);
+        Set<Integer> nodes = new HashSet<>(Collections.singleton(nodeId));
+        Set<Integer> asked = new HashSet<>(nodes);
+        Deque<Integer> toAsk = new ArrayDeque<>(ring.getNodes());
+
+        while (!toAsk.isEmpty()) {
+            int peer = toAsk.poll();
+            if (!asked.add(peer)) {
+                continue;
+            }
+
+            try {
+                for (Map.Entry<Integer, InetSocketAddress> member : transport.join(peer, address).entrySet()) {
+                    nodes.add(member.getKey());
+                    if (member.getKey() != nodeId) {
+                        transport.addMember(member.getKey(), member.getValue());
+                        toAsk.add(member.getKey());
+                    }
+                }
+            } catch (IOException e) {
+                LOG.info("Node {} isn't up, it'll hand over this node's servers when it joins", peer);
+            }
+        }
+
+        // without any answers, this is the first node up and the configured members are all there is to go on
+        if (nodes.size() > 1) {
+            handOverLock.writeLock().lock();
+            try {
+                ring = new HashRing(virtualNodes, nodes);
+            } finally {
+                handOverLock.writeLock().unlock();
+            }
+        }
+
+        for (int peer : ring.getNodes()) {
+            startMirror(peer);
+        }
+
+        LOG.info("Joined the partitions {}, this node has {} servers", ring.getNodes(), local.getAllServers().size());
+    }
+
+    /**
+     * Leaves the other nodes: hands every server over to its new owner, then tells every node to take this one off
+     * of the ring.
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+
+        HashRing newRing;
+
+        handOverLock.writeLock().lock();
+        try {
+            newRing = ring.withoutNode(nodeId);
+            if (!newRing.getNodes().isEmpty()) {
+                Map<Integer, List<Server>> byOwner = new HashMap<>();
+                for (Server server : local.getAllServers()) {
+                    byOwner.computeIfAbsent(newRing.ownerOf(server.getId()), owner -> new ArrayList<>()).add(server);
+                }
+
+                for (Map.Entry<Integer, List<Server>> servers : byOwner.entrySet()) {
+                    try {
+                        transport.importServers(servers.getKey(), servers.getValue());
+                    } catch (IOException | RuntimeException e) {
+                        LOG.error("Unable to hand {} servers over to node {}, they're lost", servers.getValue().size(),
+                                servers.getKey(), e);
+                    }
+                }
+
+                LOG.info("Handed over {} servers", local.getAllServers().size());
+
+                // anything that was waiting for the lock is passed on to the new owners from here on
+                ring = newRing;
+            }
+
+            running = false;
+        } finally {
+            handOverLock.writeLock().unlock();
+        }
+
+        // not while holding the lock, a node that's leaving at the same time would wait for it
+        for (int peer : newRing.getNodes()) {
+            try {
+                transport.leave(peer);
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Unable to tell node {} that this node is leaving", peer, e);
+            }
+        }
+
+        mirrors.values().forEach(PeerMirror::stop);
+        fanOut.shutdownNow();
+        try {
+            transport.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close the connections to the other partitions", e);
+        }
+    }
+
+    /**
+     * Follows the changes of another node, unless this node already does.
+     * @param peer int
+     */
+    private void startMirror(final int peer) {
+        if (peer == nodeId || !running) {
+            return;
+        }
+
+        mirrors.computeIfAbsent(peer, id -> {
+            PeerMirror mirror = new PeerMirror(id, transport, listeners, serverId -> findElsewhere(serverId, id),
+                    FEED_HEARTBEAT_MILLIS);
+            mirror.start();
+            return mirror;
+        });
+    }
+
+    /**
+     * Finds a server on this node or in the mirror of another node than the specified one.
+     * @param serverId {@link UUID}
+     * @param exceptPeer int whose mirror not to look in
+     * @return {@link Server} or null
+     */
+    private Server findElsewhere(final UUID serverId, final int exceptPeer) {
+        Server server = local.getServerById(serverId);
+
+        for (Iterator<Map.Entry<Integer, PeerMirror>> it = mirrors.entrySet().iterator();
+             null == server && it.hasNext(); ) {
+            Map.Entry<Integer, PeerMirror> mirror = it.next();
+            if (mirror.getKey() != exceptPeer) {
+                server = mirror.getValue().get(serverId);
+            }
+        }
+
+        return server;
+    }
+
+    /**
+     * Runs an operation on the node that owns the server: here, while holding on to this node's share of the servers
+     * so none of them can be handed over in the middle of it, or on the owner.
+     * @param serverId {@link UUID}
+     * @param hops int how many more times the request may be passed on
+     * @param locally {@link Supplier} that runs it here
+     * @param remotely {@link RemoteCall} that runs it on another node
+     * @param <T> type of the result
+     * @return T
+     */
+    private <T> T route(final UUID serverId, final int hops, final Supplier<T> locally, final RemoteCall<T> remotely) {
+        int owner;
+
+        handOverLock.readLock().lock();
+        try {
+            owner = ring.ownerOf(serverId);
+            if (owner == nodeId) {
+                return locally.get();
+            }
+        } finally {
+            handOverLock.readLock().unlock();
+        }
+
+        if (hops <= 0) {
+            // the nodes don't agree on the owner yet, which only lasts for a moment while one joins or leaves
+            throw new DataStoreUnavailableException("Server " + serverId + " is moving to node " + owner);
+        }
+
+        try {
+            return remotely.call(owner, hops - 1);
+        } catch (IOException e) {
+            throw new DataStoreUnavailableException("Unable to reach node " + owner + " for server " + serverId, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Server> getAllServers() {
+        Map<UUID, Server> servers = new LinkedHashMap<>();
+        for (List<Server> share : askEveryNode(transport::getServers, local::getAllServers).values()) {
+            for (Server server : share) {
+                // a server that's being handed over can be in two shares at once
+                servers.merge(server.getId(), server, (a, b) -> a.getVersion() >= b.getVersion() ? a : b);
+            }
+        }
+
+        return Collections.unmodifiableList(new ArrayList<>(servers.values()));
+    }
+
+    /**
+     * {@inheritDoc}<br/>
+     *
+     * The servers of every node are fetched before the first one is returned.
+     */
+    @Override
+    public Iterator<Server> iterateServers() {
+        return getAllServers().iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Server getServerById(UUID serverId) {
+        return getServerById(serverId, MAX_HOPS);
+    }
+
+    /**
+     * Returns a server from the node that owns it.
+     * @param serverId {@link UUID}
+     * @param hops int how many more times the request may be passed on
+     * @return {@link Server} or null
+     */
+    Server getServerById(final UUID serverId, final int hops) {
+        return route(serverId, hops, () -> local.getServerById(serverId),
+                (owner, remainingHops) -> transport.getServerById(owner, serverId, remainingHops));
+    }
+
+    /**
+     * {@inheritDoc}<br/>
+     *
+     * Combines every node's version, so it changes whenever one of them does (or a node joins or leaves), but unlike
+     * a single node's version it doesn't only go up.
+     */
+    @Override
+    public long getInventoryVersion() {
+        long version = 17;
+        for (Map.Entry<Integer, Long> node : askEveryNode(transport::getInventoryVersion, local::getInventoryVersion)
+                .entrySet()) {
+            version = 31 * (31 * version + node.getKey()) + node.getValue();
+        }
+
+        return version;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Server createServer(Server server) {
+        if (server.getId() != null) {
+            // only the service should be calling the DAO directly, but in case someone else tries...
+            throw new InternalException(
+                    "New server resources get an ID from the DAO, but this server came in with an ID already: "
+                            + server);
+        }
+
+        // the identifier decides which node owns the server
+        Server serverWithId = server.clone();
+        serverWithId.setId(idGenerator.nextId());
+
+        return createServerWithId(serverWithId, MAX_HOPS);
+    }
+
+    /**
+     * Creates a server on the node that owns it.
+     * @param server {@link Server} with its identifier set
+     * @param hops int how many more times the request may be passed on
+     * @return {@link Server} as created
+     */
+    Server createServerWithId(final Server server, final int hops) {
+        return route(server.getId(), hops, () -> local.createServerWithId(server),
+                (owner, remainingHops) -> transport.createServerWithId(owner, server, remainingHops));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean updateServer(Server server) {
+        return updateServer(server, MAX_HOPS);
+    }
+
+    /**
+     * Updates a server on the node that owns it.
+     * @param server {@link Server}
+     * @param hops int how many more times the request may be passed on
+     * @return boolean true if it was updated
+     */
+    boolean updateServer(final Server server, final int hops) {
+        return route(server.getId(), hops, () -> local.updateServer(server),
+                (owner, remainingHops) -> transport.updateServer(owner, server, remainingHops));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean deleteServer(UUID serverId) {
+        return deleteServer(serverId, MAX_HOPS);
+    }
+
+    /**
+     * Deletes a server on the node that owns it.
+     * @param serverId {@link UUID}
+     * @param hops int how many more times the request may be passed on
+     * @return boolean true if it was deleted
+     */
+    boolean deleteServer(final UUID serverId, final int hops) {
+        return route(serverId, hops, () -> local.deleteServer(serverId),
+                (owner, remainingHops) -> transport.deleteServer(owner, serverId, remainingHops));
+    }
+
+    /**
+     * {@inheritDoc}<br/>
+     *
+     * The batch is split up by owner, and each node gets its share in one request.
+     */
+    @Override
+    public int putServers(List<Server> servers) {
+        return putServers(servers, MAX_HOPS);
+    }
+
+    /**
+     * Puts servers on the nodes that own them.
+     * @param servers {@link List}<{@link Server}> with their identifiers set
+     * @param hops int how many more times the request may be passed on
+     * @return int the number of servers that were created
+     */
+    int putServers(final List<Server> servers, final int hops) {
+        Map<Integer, List<Server>> shares = new TreeMap<>();
+        int created = 0;
+
+        handOverLock.readLock().lock();
+        try {
+            for (Server server : servers) {
+                shares.computeIfAbsent(ring.ownerOf(server.getId()), owner -> new ArrayList<>()).add(server);
+            }
+
+            // this node's share, while none of its servers can be handed over
+            List<Server> share = shares.remove(nodeId);
+            if (share != null) {
+                created += local.putServers(share);
+            }
+        } finally {
+            handOverLock.readLock().unlock();
+        }
+
+        for (Map.Entry<Integer, List<Server>> share : shares.entrySet()) {
+            int owner = share.getKey();
+
+            if (hops <= 0) {
+                throw new DataStoreUnavailableException("Servers are moving to node " + owner);
+            }
+
+            try {
+                created += transport.putServers(owner, share.getValue(), hops - 1);
+            } catch (IOException e) {
+                throw new DataStoreUnavailableException("Unable to reach node " + owner + " to put servers", e);
+            }
+        }
+
+        return created;
+    }
+
+    /**
+     * Returns this node's share of the servers.
+     * @return {@link List}<{@link Server}>
+     */
+    List<Server> getLocalServers() {
+        return local.getAllServers();
+    }
+
+    /**
+     * Returns the version of this node's share of the servers.
+     * @return long
+     */
+    long getLocalInventoryVersion() {
+        return local.getInventoryVersion();
+    }
+
+    /**
+     * Adds a node that joins: hands over the servers it owns from now on and then starts passing their requests on
+     * to it.
+     * @param joiner int node identifier
+     * @param address {@link InetSocketAddress} of the node
+     * @return {@link Map}<{@link Integer}, {@link InetSocketAddress}> the nodes this one knows of, including itself
+     */
+    Map<Integer, InetSocketAddress> handleJoin(final int joiner, final InetSocketAddress address) {
+        handOverLock.writeLock().lock();
+        try {
+            transport.addMember(joiner, address);
+
+            HashRing newRing = ring.withNode(joiner);
+            List<Server> moving = new ArrayList<>();
+            for (Server server : local.getAllServers()) {
+                if (newRing.ownerOf(server.getId()) == joiner) {
+                    moving.add(server);
+                }
+            }
+
+            if (!moving.isEmpty()) {
+                transport.importServers(joiner, moving);
+            }
+            ring = newRing;
+
+            for (Server server : moving) {
+                Server evicted = local.evictServer(server.getId());
+                if (evicted != null) {
+                    feed.serverEvicted(evicted);
+                }
+            }
+
+            LOG.info("Node {} joined the partitions {}, handed {} servers over to it", joiner, ring.getNodes(),
+                    moving.size());
+        } catch (IOException e) {
+            throw new DataStoreUnavailableException("Unable to hand servers over to node " + joiner, e);
+        } finally {
+            handOverLock.writeLock().unlock();
+        }
+
+        startMirror(joiner);
+
+        return transport.getMembers();
+    }
+
+    /**
+     * Takes a node that left off of the ring, after it handed over its servers.
+     * @param leaver int node identifier
+     */
+    void handleLeave(final int leaver) {
+        handOverLock.writeLock().lock();
+        try {
+            ring = ring.withoutNode(leaver);
+            transport.removeMember(leaver);
+        } finally {
+            handOverLock.writeLock().unlock();
+        }
+
+        // the servers it had were handed over, so they don't count as deleted
+        PeerMirror mirror = mirrors.remove(leaver);
+        if (mirror != null) {
+            mirror.stop();
+        }
+
+        LOG.info("Node {} left the partitions, {} are left", leaver, ring.getNodes());
+    }
+
+    /**
+     * Takes over servers from another node, as they are.
+     * @param servers {@link Collection}<{@link Server}>
+     */
+    void handleImport(final Collection<Server> servers) {
+        for (Server server : servers) {
+            local.importServer(server);
+            feed.serverImported(server);
+        }
+    }
+
+    /**
+     * Sends this node's changes to another node, until it goes away.
+     * @param out {@link DataOutputStream} to the other node
+     * @throws IOException when the other node is gone
+     */
+    void handleSubscribe(final DataOutputStream out) throws IOException {
+        feed.serve(out, local::iterateServers);
+    }
+
+    /**
+     * Asks every node on the ring for something at the same time.
+     * @param remotely {@link RemoteQuery} for the other nodes
+     * @param locally {@link Supplier} for this node
+     * @param <T> type of the answer
+     * @return {@link SortedMap}<{@link Integer}, T> the answers by node
+     * @throws DataStoreUnavailableException if one of the nodes didn't answer
+     */
+    private <T> SortedMap<Integer, T> askEveryNode(final RemoteQuery<T> remotely, final Supplier<T> locally) {
+        Map<Integer, Future<T>> futures = new HashMap<>();
+        for (int node : ring.getNodes()) {
+            if (node != nodeId) {
+                futures.put(node, fanOut.submit(() -> remotely.ask(node)));
+            }
+        }
+
+        SortedMap<Integer, T> answers = new TreeMap<>();
+        answers.put(nodeId, locally.get());
+
+        for (Map.Entry<Integer, Future<T>> future : futures.entrySet()) {
+            try {
+                answers.put(future.getKey(), future.getValue().get(timeoutMillis, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DataStoreUnavailableException("Interrupted while asking node " + future.getKey(), e);
+            } catch (ExecutionException | TimeoutException e) {
+                futures.values().forEach(f -> f.cancel(true));
+                throw new DataStoreUnavailableException("Unable to reach node " + future.getKey(), e);
+            }
+        }
+
+        return answers;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addChangeListener(ServerChangeListener listener) {
+        local.addChangeListener(listener);
+        listeners.add(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeChangeListener(ServerChangeListener listener) {
+        local.removeChangeListener(listener);
+        listeners.remove(listener);
+    }
+
+    /**
+     * An operation on another node's server.
+     * @param <T> type of the result
+     */
+    @FunctionalInterface
+    private interface RemoteCall<T> {
+        T call(int owner, int hops) throws IOException;
+    }
+
+    /**
+     * A question for another node.
+     * @param <T> type of the answer
+     */
+    @FunctionalInterface
+    private interface RemoteQuery<T> {
+        T ask(int node) throws IOException;
+    }
+}
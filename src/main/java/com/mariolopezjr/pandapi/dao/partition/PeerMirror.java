@@ -0,0 +1,252 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.partition;
+
+import com.mariolopezjr.pandapi.dao.ServerChangeListener;
+import com.mariolopezjr.pandapi.dao.feed.ChangeFeed;
+import com.mariolopezjr.pandapi.dao.feed.FeedEvent;
+import com.mariolopezjr.pandapi.data.server.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Follows another node's {@link ChangeFeed} and passes its changes on to this node's change listeners.  It keeps the
+ * last version of each of the other node's servers it heard about, which is how it can tell which changes are new
+ * (the same change can come in twice around a snapshot, and the data store can notify out of order) and, after
+ * subscribing again, which changes it missed in between.<br/>
+ *
+ * A server that moves between two nodes is removed from one mirror and put in the other without telling the
+ * listeners, since it didn't change.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+final class PeerMirror implements Runnable {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(PeerMirror.class);
+
+    // removed servers remembered, so a late put of an older version doesn't bring them back
+    private static final int MAX_TOMBSTONES = 10_000;
+
+    private final int peerId;
+    private final PartitionTransport transport;
+    private final List<ServerChangeListener> listeners;
+
+    // finds a server on this node or in the other mirrors
+    private final Function<UUID, Server> elsewhere;
+
+    private final long retryMillis;
+
+    // the other node's servers as of the last change heard, only written by the mirror's thread
+    private final Map<UUID, Server> servers = new ConcurrentHashMap<>();
+
+    // identifier -> last version of the servers removed lately
+    private final Map<UUID, Long> tombstones = new LinkedHashMap<UUID, Long>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<UUID, Long> eldest) {
+            return size() > MAX_TOMBSTONES;
+        }
+    };
+
+    // the servers in the snapshot being received, null once it's done
+    private Set<UUID> snapshot;
+
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Constructor
+     * @param peerId int the node to follow
+     * @param transport {@link PartitionTransport}
+     * @param listeners {@link List}<{@link ServerChangeListener}> of this node
+     * @param elsewhere {@link Function} that finds a server on this node or another mirror, null if it's on neither
+     * @param retryMillis long to wait before subscribing again after the connection broke
+     */
+    PeerMirror(final int peerId, final PartitionTransport transport, final List<ServerChangeListener> listeners,
+               final Function<UUID, Server> elsewhere, final long retryMillis) {
+        this.peerId = peerId;
+        this.transport = transport;
+        this.listeners = listeners;
+        this.elsewhere = elsewhere;
+        this.retryMillis = retryMillis;
+        this.thread = new Thread(this, "partition-feed-" + peerId);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts following the other node.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops following the other node, e.g. after it left.  Doesn't tell the listeners anything, the servers it had
+     * moved to the other nodes.
+     */
+    void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Returns the other node's copy of a server, as of the last change heard.
+     * @param serverId {@link UUID}
+     * @return {@link Server} or null
+     */
+    Server get(final UUID serverId) {
+        return servers.get(serverId);
+    }
+
+    /**
+     * Subscribes to the other node's changes, and subscribes again whenever the connection breaks.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                snapshot = new HashSet<>();
+                transport.subscribe(peerId, this::apply, () -> running);
+            } catch (IOException e) {
+                LOG.debug("Lost the changes from node {}", peerId, e);
+            } catch (RuntimeException e) {
+                // keep following, this thread is the only one that does
+                LOG.error("Unable to apply a change from node {}", peerId, e);
+            }
+
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies one event from the other node.
+     * @param event {@link FeedEvent}
+     */
+    void apply(final FeedEvent event) {
+        switch (event.getType()) {
+            case PUT:
+                put(event.getServer(), event.isChange());
+                break;
+            case REMOVE:
+                remove(event.getServerId(), event.getVersion(), event.isChange());
+                break;
+            case SNAPSHOT_DONE:
+                snapshotDone();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Records a server that is on the other node, and tells the listeners about it if that's news.
+     * @param server {@link Server}
+     * @param change boolean false if the server only moved there
+     */
+    private void put(final Server server, final boolean change) {
+        UUID id = server.getId();
+        if (snapshot != null) {
+            snapshot.add(id);
+        }
+
+        Server previous = servers.get(id);
+        Long removedVersion = tombstones.get(id);
+        if ((previous != null && previous.getVersion() >= server.getVersion())
+                || (removedVersion != null && removedVersion >= server.getVersion())) {
+            // heard about it already
+            return;
+        }
+
+        servers.put(id, server);
+        if (!change) {
+            return;
+        }
+
+        if (null == previous) {
+            // it may have been somewhere else before, while this node wasn't listening
+            previous = elsewhere.apply(id);
+        }
+
+        if (null == previous) {
+            for (ServerChangeListener listener : listeners) {
+                listener.serverCreated(server);
+            }
+        } else if (previous.getVersion() < server.getVersion()) {
+            for (ServerChangeListener listener : listeners) {
+                listener.serverUpdated(previous, server);
+            }
+        }
+    }
+
+    /**
+     * Forgets a server that is no longer on the other node, and tells the listeners if it was deleted.
+     * @param serverId {@link UUID}
+     * @param version long its last version
+     * @param change boolean false if the server only moved away
+     */
+    private void remove(final UUID serverId, final long version, final boolean change) {
+        Server previous = servers.remove(serverId);
+        if (!change) {
+            // it may well come back (with the same version), so no tombstone
+            return;
+        }
+
+        tombstones.put(serverId, version);
+        if (previous != null && null == elsewhere.apply(serverId)) {
+            for (ServerChangeListener listener : listeners) {
+                listener.serverDeleted(previous);
+            }
+        }
+    }
+
+    /**
+     * Forgets the servers that weren't in the snapshot, which were deleted (or moved) while the connection was down.
+     */
+    private void snapshotDone() {
+        Iterator<Map.Entry<UUID, Server>> entries = servers.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<UUID, Server> entry = entries.next();
+            if (!snapshot.contains(entry.getKey())) {
+                entries.remove();
+
+                if (null == elsewhere.apply(entry.getKey())) {
+                    for (ServerChangeListener listener : listeners) {
+                        listener.serverDeleted(entry.getValue());
+                    }
+                }
+            }
+        }
+
+        snapshot = null;
+        LOG.info("Following the changes of node {}, which has {} servers", peerId, servers.size());
+    }
+}
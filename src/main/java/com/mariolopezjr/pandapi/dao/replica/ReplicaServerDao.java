@@ -0,0 +1,429 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.replica;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mariolopezjr.pandapi.dao.ServerChangeListener;
+import com.mariolopezjr.pandapi.dao.ServerDao;
+import com.mariolopezjr.pandapi.dao.feed.ChangeFeed;
+import com.mariolopezjr.pandapi.dao.feed.FeedEvent;
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.exception.DataStoreUnavailableException;
+import com.mariolopezjr.pandapi.exception.InternalException;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Implementation of the {@link ServerDao} interface for a read replica: it keeps a copy of a primary's server
+ * resources in a {@link ServerInMemoryDao}, which also tells the change listeners about every change, and follows the
+ * primary's {@link ChangeFeed} over HTTP.  After (re)connecting it gets a snapshot of every server, and then each
+ * change in the order the primary made it.<br/>
+ *
+ * The primary says whenever the replica has every change it made so far, so the replica knows how far behind it could
+ * be (the staleness): the time since it last heard that, plus however long that took to get here.  Reads are turned
+ * away with a 503 while the replica is further behind than it may be, and writes are only taken by the primary.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ReplicaServerDao implements ServerDao {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaServerDao.class);
+
+    // base path for all of the config values for this class
+    private static final String CONFIG_BASE_PATH = "dataStore/replication/";
+
+    // where the primary serves its change feed
+    public static final String FEED_PATH = "/replication/feed";
+
+    // time between attempts to reach the primary
+    private static final long RETRY_MILLIS = 1000;
+
+    // this replica's copy of the server resources
+    private final ServerInMemoryDao local;
+
+    private final URL feedUrl;
+    private final long maxStalenessMillis;
+
+    // code that wants to know when the replica catches up or falls behind
+    private final List<Consumer<Boolean>> caughtUpListeners = new CopyOnWriteArrayList<>();
+
+    // follows the feed, and checks how far behind the replica is
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2,
+            new ThreadFactoryBuilder().setNameFormat("replica-%d").setDaemon(true).build());
+
+    // System.nanoTime() of the last time the replica had every change the primary made, only valid once synced
+    private volatile long syncedAt;
+    private volatile boolean synced;
+
+    // whether the listeners were last told that the replica is caught up
+    private boolean caughtUp;
+
+    // the thread that applies the feed (and tells the change listeners about it)
+    private volatile Thread feedThread;
+
+    // the connection to the primary, to break off on stop
+    private volatile HttpURLConnection connection;
+    private volatile boolean running;
+
+    /**
+     * Constructor, doesn't follow the primary until {@link #start()}.
+     * @param config {@link Configuration}
+     * @param metrics {@link MetricsRegistry}
+     */
+    public ReplicaServerDao(final Configuration config, final MetricsRegistry metrics) {
+        this(getPrimaryUrl(config), config.getLong(CONFIG_BASE_PATH + "maxStaleness", 5000),
+                new ServerInMemoryDao(config, metrics));
+
+        metrics.gauge("pandapi_replica_staleness_milliseconds",
+                "How far this replica could be behind its primary, -1 before its first snapshot.",
+                () -> synced ? getStalenessMillis() : -1);
+    }
+
+    /**
+     * Constructor for the unit test to call.  Purposely has package level scope.
+     * @param primaryUrl {@link String} base URL of the primary
+     * @param maxStalenessMillis long how far behind the primary reads are still answered
+     * @param local {@link ServerInMemoryDao} the replica's copy of the servers
+     */
+    ReplicaServerDao(final String primaryUrl, final long maxStalenessMillis, final ServerInMemoryDao local) {
+        try {
+            this.feedUrl = new URL(primaryUrl + FEED_PATH);
+        } catch (MalformedURLException e) {
+            throw new InternalException("The primary URL isn't valid: " + primaryUrl, e);
+        }
+
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.local = local;
+    }
+
+    /**
+     * Returns whether this node is a read replica.
+     * @param config {@link Configuration}
+     * @return boolean
+     */
+    public static boolean isEnabled(final Configuration config) {
+        return "replica".equals(config.getString(CONFIG_BASE_PATH + "role", "none"));
+    }
+
+    /**
+     * Returns the base URL of the primary, which takes the writes.
+     * @param config {@link Configuration}
+     * @return {@link String} without a trailing slash
+     */
+    public static String getPrimaryUrl(final Configuration config) {
+        return config.getString(CONFIG_BASE_PATH + "primaryUrl").replaceAll("/+$", "");
+    }
+
+    /**
+     * Starts following the primary.
+     */
+    public void start() {
+        running = true;
+        executor.execute(this::follow);
+
+        long checkInterval = Math.max(10, maxStalenessMillis / 10);
+        executor.scheduleWithFixedDelay(this::checkCaughtUp, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops following the primary.  The copy of the servers is kept, but gets staler.
+     */
+    public void stop() {
+        running = false;
+        executor.shutdownNow();
+
+        HttpURLConnection current = connection;
+        if (current != null) {
+            current.disconnect();
+        }
+    }
+
+    /**
+     * Registers a listener for when the replica catches up with the primary (the first time, or again after falling
+     * further behind than it may be), and for when it falls behind.
+     * @param listener {@link Consumer}<{@link Boolean}> true when it caught up, false when it fell behind
+     */
+    public void addCaughtUpListener(final Consumer<Boolean> listener) {
+        caughtUpListeners.add(listener);
+    }
+
+    /**
+     * Returns how far this replica could be behind its primary.
+     * @return long milliseconds, {@link Long#MAX_VALUE} before its first snapshot
+     */
+    public long getStalenessMillis() {
+        return synced ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - syncedAt) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Follows the primary's change feed until stopped, connecting again (and starting over with a snapshot) whenever
+     * the connection breaks.
+     */
+    private void follow() {
+        feedThread = Thread.currentThread();
+
+        while (running) {
+            try {
+                followOnce();
+            } catch (IOException | RuntimeException e) {
+                if (running) {
+                    LOG.warn("Lost the change feed from {}, connecting again: {}", feedUrl, e.toString());
+                }
+            }
+
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the change feed of one connection to the primary, until it breaks.
+     * @throws IOException when it does
+     */
+    private void followOnce() throws IOException {
+        HttpURLConnection current = (HttpURLConnection) feedUrl.openConnection();
+        connection = current;
+
+        // the primary sends a heartbeat at least every so often, a connection that went quiet for longer is dead
+        current.setConnectTimeout((int) Math.max(1000, maxStalenessMillis));
+        current.setReadTimeout((int) Math.max(1000, maxStalenessMillis));
+
+        try {
+            if (current.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("The primary returned " + current.getResponseCode() + " for its change feed");
+            }
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(current.getInputStream()));
+            Set<UUID> snapshot = new HashSet<>();
+            long start = System.nanoTime();
+
+            while (running) {
+                FeedEvent event = FeedEvent.readFrom(in);
+
+                if (snapshot != null && event.getType() == FeedEvent.Type.SNAPSHOT_DONE) {
+                    removeAllBut(snapshot);
+                    LOG.info("Got a snapshot of {} servers from {} in {}ms, following its changes", snapshot.size(),
+                            feedUrl, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    snapshot = null;
+                } else if (snapshot != null && event.getType() == FeedEvent.Type.PUT) {
+                    snapshot.add(event.getServer().getId());
+                }
+
+                apply(event, snapshot != null);
+            }
+        } finally {
+            current.disconnect();
+        }
+    }
+
+    /**
+     * Applies an event from the primary.
+     * @param event {@link FeedEvent}
+     * @param inSnapshot boolean whether the snapshot is still coming in
+     */
+    private void apply(final FeedEvent event, final boolean inSnapshot) {
+        switch (event.getType()) {
+            case PUT:
+                local.replicateServer(event.getServer());
+                break;
+            case REMOVE:
+                local.deleteServer(event.getServerId());
+                break;
+            case HEARTBEAT:
+                if (!inSnapshot) {
+                    syncedAt = System.nanoTime();
+                    synced = true;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Removes the servers the primary no longer has, after a snapshot.
+     * @param snapshot {@link Set}<{@link UUID}> the servers it has
+     */
+    private void removeAllBut(final Set<UUID> snapshot) {
+        for (Iterator<Server> servers = local.iterateServers(); servers.hasNext(); ) {
+            UUID id = servers.next().getId();
+            if (!snapshot.contains(id)) {
+                local.deleteServer(id);
+            }
+        }
+    }
+
+    /**
+     * Tells the listeners when the replica caught up, or fell further behind than it may be.
+     */
+    void checkCaughtUp() {
+        boolean nowCaughtUp = getStalenessMillis() <= maxStalenessMillis;
+
+        if (nowCaughtUp != caughtUp) {
+            caughtUp = nowCaughtUp;
+            if (nowCaughtUp) {
+                LOG.info("Caught up with the primary");
+            } else {
+                LOG.warn("Fell more than {}ms behind the primary", maxStalenessMillis);
+            }
+
+            for (Consumer<Boolean> listener : caughtUpListeners) {
+                listener.accept(nowCaughtUp);
+            }
+        }
+    }
+
+    /**
+     * Makes sure this replica isn't too far behind the primary to answer a read, unless it's read by the feed itself.
+     * @throws DataStoreUnavailableException if it is
+     */
+    private void checkStaleness() {
+        if (Thread.currentThread() == feedThread) {
+            // a change listener reading while a snapshot is applied, turning it away would break off the snapshot
+            // that gets the replica caught up again
+            return;
+        }
+
+        long staleness = getStalenessMillis();
+
+        if (staleness > maxStalenessMillis) {
+            throw new DataStoreUnavailableException(synced
+                    ? "This replica could be " + staleness + "ms behind its primary"
+                    : "This replica doesn't have a copy of the servers from its primary yet");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Server> getAllServers() {
+        checkStaleness();
+        return local.getAllServers();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Server> iterateServers() {
+        checkStaleness();
+        return local.iterateServers();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Server getServerById(UUID serverId) {
+        checkStaleness();
+        return local.getServerById(serverId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getInventoryVersion() {
+        return local.getInventoryVersion();
+    }
+
+    /**
+     * Not supported, the primary takes the writes (requests for them are redirected there before they get here).
+     * @param server {@link Server}
+     * @return never returns
+     * @throws InternalException always
+     */
+    @Override
+    public Server createServer(Server server) {
+        throw new InternalException("A read replica doesn't take writes, the primary does");
+    }
+
+    /**
+     * Not supported, the primary takes the writes.
+     * @param server {@link Server}
+     * @return never returns
+     * @throws InternalException always
+     */
+    @Override
+    public boolean updateServer(Server server) {
+        throw new InternalException("A read replica doesn't take writes, the primary does");
+    }
+
+    /**
+     * Not supported, the primary takes the writes.
+     * @param servers {@link List}<{@link Server}>
+     * @return never returns
+     * @throws InternalException always
+     */
+    @Override
+    public int putServers(List<Server> servers) {
+        throw new InternalException("A read replica doesn't take writes, the primary does");
+    }
+
+    /**
+     * Not supported, the primary takes the writes.
+     * @param serverId {@link UUID}
+     * @return never returns
+     * @throws InternalException always
+     */
+    @Override
+    public boolean deleteServer(UUID serverId) {
+        throw new InternalException("A read replica doesn't take writes, the primary does");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addChangeListener(ServerChangeListener listener) {
+        local.addChangeListener(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeChangeListener(ServerChangeListener listener) {
+        local.removeChangeListener(listener);
+    }
+}
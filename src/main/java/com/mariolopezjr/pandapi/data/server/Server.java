@@ -17,10 +17,7 @@
 package com.mariolopezjr.pandapi.data.server;
 
 import com.mariolopezjr.pandapi.exception.BadRequestException;
-import com.google.common.base.Joiner;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 /**
@@ -37,43 +34,8 @@ public class Server implements Cloneable, Comparable<Server> {
     private int diskSpace;
     private ServerState state;
 
-
-    /**
-     * Will verify that the contents of this instance are valid for the purpose of creating a new server resource.
-     * Note: This could be way more generic.
-     */
-    public void validateAsCreateRequest() {
-        List<String> errors = new ArrayList<>();
-
-        // shouldn't have an id already specified
-        if (id != null) {
-            errors.add("IDs are generated by the server and should not be specified by the client");
-        }
-
-        if (name == null || name.isEmpty()) {
-            errors.add("Name must be specified");
-        }
-
-        if (cpus < 1) {
-            errors.add("Number of CPUs should be 1 or higher");
-        }
-
-        if (ram < 1) {
-            errors.add("Amount of RAM should be 1 (gigabyte) or higher");
-        }
-
-        if (diskSpace < 1) {
-            errors.add("Amount of diskSpace should be 1 (gigabyte) or higher");
-        }
-
-        if (state != null) {
-            errors.add("Server state should not be specified by the client");
-        }
-
-        if (!errors.isEmpty()) {
-            throw new BadRequestException(Joiner.on(",").join(errors));
-        }
-    }
+    // changes every time the resource is modified, assigned by the data store and not part of equals/hashCode
+    private long version;
 
     public UUID getId() {
         return id;
@@ -135,6 +97,20 @@ public class Server implements Cloneable, Comparable<Server> {
         this.state = state;
     }
 
+    /**
+     * Returns the version of the resource as of the last time it was persisted.  Two instances of the same server
+     * read from the data store with the same version are guaranteed to have the same values, so it can be used for
+     * cheap change detection (e.g. HTTP entity tags).
+     * @return long
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public Server clone() {
         Server clone = new Server();
@@ -145,6 +121,7 @@ public class Server implements Cloneable, Comparable<Server> {
         clone.ram = this.ram;
         clone.diskSpace = this.diskSpace;
         clone.state = this.state;
+        clone.version = this.version;
 
         return clone;
     }
@@ -17,17 +17,19 @@
 package com.mariolopezjr.pandapi.exception;
 
 /**
- * Exception to indicate that a received request was bad (e.g. contained invalid or out of range values).
+ * Exception to indicate that a received request was bad (e.g. contained invalid or out of range values).  It's the
+ * client's mistake and only the message is sent back, so no stack trace is captured: throwing one is about as cheap
+ * as creating any other small object.
  * @author Mario Lopez Jr
  * @since 0.0.7
  */
 public class BadRequestException extends RuntimeException {
 
     public BadRequestException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public BadRequestException(String message, Throwable cause) {
-        super(message, cause);
+        super(message, cause, false, false);
     }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.exception;
+
+/**
+ * Exception to indicate that the data store can't take the request right now (e.g. a cluster without a leader), but
+ * should be able to again shortly.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class DataStoreUnavailableException extends RuntimeException {
+
+    public DataStoreUnavailableException(String message) {
+        super(message);
+    }
+
+    public DataStoreUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
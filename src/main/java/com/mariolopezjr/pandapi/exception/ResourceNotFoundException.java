@@ -17,17 +17,18 @@
 package com.mariolopezjr.pandapi.exception;
 
 /**
- * Exception to indicate that the requested resource was not found.
+ * Exception to indicate that the requested resource was not found.  Scanners probing random ids cause plenty of
+ * these, and they're never logged, so they don't capture a stack trace (which would be most of the cost of a 404).
  * @author Mario Lopez Jr
  * @since 0.0.7
  */
 public class ResourceNotFoundException extends RuntimeException {
 
     public ResourceNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public ResourceNotFoundException(String message, Throwable cause) {
-        super(message, cause);
+        super(message, cause, false, false);
     }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.logging;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.CoreConstants;
+import ch.qos.logback.core.LayoutBase;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Lays out each event as a single line of JSON, e.g.
+ * {"timestamp":"2015-06-01T12:00:00.000Z","level":"INFO","thread":"main","logger":"...","message":"..."}.
+ * The MDC, if there is one, is written as an object of its own ("mdc"), which is how the access log passes along the
+ * fields of each request, and exceptions are written as their stack trace ("exception").
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class JsonLayout extends LayoutBase<ILoggingEvent> {
+
+    // thread safe
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String doLayout(final ILoggingEvent event) {
+        StringWriter out = new StringWriter(256);
+
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("timestamp", Instant.ofEpochMilli(event.getTimeStamp()).toString());
+            generator.writeStringField("level", event.getLevel().toString());
+            generator.writeStringField("thread", event.getThreadName());
+            generator.writeStringField("logger", event.getLoggerName());
+            generator.writeStringField("message", event.getFormattedMessage());
+
+            Map<String, String> mdc = event.getMDCPropertyMap();
+            if (mdc != null && !mdc.isEmpty()) {
+                generator.writeObjectFieldStart("mdc");
+                for (Map.Entry<String, String> entry : mdc.entrySet()) {
+                    generator.writeStringField(entry.getKey(), entry.getValue());
+                }
+                generator.writeEndObject();
+            }
+
+            IThrowableProxy throwable = event.getThrowableProxy();
+            if (throwable != null) {
+                generator.writeStringField("exception", ThrowableProxyUtil.asString(throwable));
+            }
+
+            generator.writeEndObject();
+        } catch (IOException e) {
+            // can't happen writing to a string
+            addError("Unable to lay out the event as JSON", e);
+        }
+
+        return out.append(CoreConstants.LINE_SEPARATOR).toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getContentType() {
+        return "application/json";
+    }
+}
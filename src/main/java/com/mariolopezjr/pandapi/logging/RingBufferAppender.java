@@ -0,0 +1,297 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appender that hands events to the attached appenders on a background thread through a fixed size ring buffer, so
+ * the thread that logs never waits on I/O.  What happens once the buffer is full is up to the {@link OverflowPolicy};
+ * by default the event is dropped rather than making the request wait.  Like logback's own AsyncAppender, events less
+ * severe than WARN are dropped early once the buffer is nearly full, to leave room for the ones that matter.<br/>
+ *
+ * Dropped events are counted, and the count is logged (as a WARN from this appender) once the buffer is empty again,
+ * i.e. after every event that was accepted before them.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class RingBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    /**
+     * What to do with an event when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        // drop the event (and count it)
+        DROP,
+        // wait for room, i.e. logging is allowed to slow the application down
+        BLOCK
+    }
+
+    // how long the worker waits to flush the remaining events when stopping
+    private static final long STOP_TIMEOUT_MILLIS = 1_000;
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+
+    // events dropped since the worker last reported it
+    private final AtomicLong dropped = new AtomicLong();
+
+    // an array used as a ring buffer, offer() never waits
+    private BlockingQueue<ILoggingEvent> buffer;
+
+    private Thread worker;
+
+    private int bufferSize = 8_192;
+    private int discardingThreshold = -1;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+
+        if (bufferSize < 1) {
+            addError("Invalid bufferSize: " + bufferSize);
+            return;
+        }
+
+        if (discardingThreshold < 0) {
+            // same default as logback's AsyncAppender, start dropping the less important events at 80% full
+            discardingThreshold = bufferSize / 5;
+        }
+
+        buffer = new ArrayBlockingQueue<>(bufferSize);
+
+        worker = new Thread(this::drain, "log-" + getName());
+        worker.setDaemon(true);
+
+        super.start();
+        worker.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+
+        // stops new events from being accepted
+        super.stop();
+
+        // the worker flushes whatever is left before it exits
+        worker.interrupt();
+        try {
+            worker.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        appenders.detachAndStopAllAppenders();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void append(final ILoggingEvent event) {
+        if (buffer.remainingCapacity() < discardingThreshold && event.getLevel().toInt() < Level.WARN_INT) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        // has to happen on the caller's thread (formats the message, copies the MDC, and remembers the thread name)
+        event.prepareForDeferredProcessing();
+
+        if (OverflowPolicy.BLOCK == overflowPolicy) {
+            try {
+                buffer.put(event);
+            } catch (InterruptedException e) {
+                dropped.incrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+        } else if (!buffer.offer(event)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Hands the events to the attached appenders until stopped, then flushes what's left.
+     */
+    private void drain() {
+        while (isStarted()) {
+            try {
+                ILoggingEvent event = buffer.poll(1, TimeUnit.SECONDS);
+
+                if (event != null) {
+                    appenders.appendLoopOnAppenders(event);
+                }
+
+                // only once the events accepted before the drops are written, so the report doesn't come before them
+                if (buffer.isEmpty()) {
+                    reportDropped();
+                }
+            } catch (InterruptedException e) {
+                // stopped
+                break;
+            }
+        }
+
+        List<ILoggingEvent> remaining = new ArrayList<>(buffer.size());
+        buffer.drainTo(remaining);
+
+        for (ILoggingEvent event : remaining) {
+            appenders.appendLoopOnAppenders(event);
+        }
+
+        reportDropped();
+    }
+
+    /**
+     * Logs the number of events dropped since the last time, if any.
+     */
+    private void reportDropped() {
+        if (0 == dropped.get()) {
+            return;
+        }
+
+        long count = dropped.getAndSet(0);
+        Logger logger = ((LoggerContext) getContext()).getLogger(RingBufferAppender.class);
+
+        appenders.appendLoopOnAppenders(new LoggingEvent(RingBufferAppender.class.getName(), logger, Level.WARN,
+                "Dropped {} log events, the " + getName() + " buffer was full", null, new Object[] {count}));
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Sets the number of events that can be waiting to be written.  Has no effect once started.
+     * @param bufferSize int
+     */
+    public void setBufferSize(final int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getDiscardingThreshold() {
+        return discardingThreshold;
+    }
+
+    /**
+     * Sets how few free slots there have to be for events less severe than WARN to be dropped.  0 never drops them
+     * early.  Defaults to a fifth of the buffer size.
+     * @param discardingThreshold int
+     */
+    public void setDiscardingThreshold(final int discardingThreshold) {
+        this.discardingThreshold = discardingThreshold;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(final OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Returns the number of events dropped that haven't been reported yet.
+     * @return long
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAppender(final Appender<ILoggingEvent> appender) {
+        appenders.addAppender(appender);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Appender<ILoggingEvent> getAppender(final String name) {
+        return appenders.getAppender(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAttached(final Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean detachAppender(final Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean detachAppender(final String name) {
+        return appenders.detachAppender(name);
+    }
+}
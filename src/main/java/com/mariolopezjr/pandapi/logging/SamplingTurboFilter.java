@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps only a sample (one in {@link #setOneIn(int) N}) of the events at or below a level from a logger and its
+ * children.  Turbo filters run before the event is even created, so the events that aren't kept cost next to nothing,
+ * which lets something like per-request timing stay on at TRACE in production.<br/>
+ *
+ * Level checks (e.g. isTraceEnabled()) are left alone, only the events themselves are sampled; otherwise an event
+ * guarded by a check would be sampled twice.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class SamplingTurboFilter extends TurboFilter {
+
+    private String loggerName = Logger.ROOT_LOGGER_NAME;
+    private Level level = Level.TRACE;
+    private int oneIn = 100;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FilterReply decide(
+            final Marker marker,
+            final Logger logger,
+            final Level level,
+            final String format,
+            final Object[] params,
+            final Throwable t) {
+        if (!isStarted() || null == format || level.toInt() > this.level.toInt() || !applies(logger.getName())) {
+            return FilterReply.NEUTRAL;
+        }
+
+        return 0 == ThreadLocalRandom.current().nextInt(oneIn) ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    /**
+     * Returns whether the specified logger is the configured logger or one of its children.
+     * @param name {@link String} of the logger
+     * @return boolean
+     */
+    private boolean applies(final String name) {
+        return Logger.ROOT_LOGGER_NAME.equals(loggerName)
+                || name.startsWith(loggerName) && (name.length() == loggerName.length()
+                        || name.charAt(loggerName.length()) == '.');
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void start() {
+        if (oneIn < 1) {
+            addError("Invalid oneIn: " + oneIn);
+            return;
+        }
+
+        super.start();
+    }
+
+    public String getLoggerName() {
+        return loggerName;
+    }
+
+    /**
+     * Sets the logger to sample, along with its children.  Defaults to every logger.
+     * @param loggerName {@link String}
+     */
+    public void setLoggerName(final String loggerName) {
+        this.loggerName = loggerName;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the most severe level that's sampled.  Defaults to TRACE.
+     * @param level {@link Level}
+     */
+    public void setLevel(final Level level) {
+        this.level = level;
+    }
+
+    public int getOneIn() {
+        return oneIn;
+    }
+
+    /**
+     * Sets how many events there are for each one kept, e.g. 100 keeps 1%.  Defaults to 100.
+     * @param oneIn int
+     */
+    public void setOneIn(final int oneIn) {
+        this.oneIn = oneIn;
+    }
+}
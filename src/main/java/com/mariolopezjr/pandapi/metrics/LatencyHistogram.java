@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds, laid out like HdrHistogram: every power of two is split into a
+ * fixed number of linear sub-buckets, so the relative error is the same (12.5%) from nanoseconds to minutes and
+ * recording a value is a few bit operations and one atomic increment, without allocating anything.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class LatencyHistogram {
+
+    // 2^3 = 8 sub-buckets per power of two
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // anything longer than 2^40ns (about 18 minutes) is counted as that
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    // the Prometheus buckets are every power of two between 2^14ns (16us) and 2^35ns (34s)
+    static final int MIN_EXPORTED_EXPONENT = 14;
+    static final int MAX_EXPORTED_EXPONENT = 35;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Records a latency.
+     * @param nanos long negative values are counted as 0
+     */
+    public void record(final long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * Records the time since the specified start, i.e. <code>record(System.nanoTime() - startNanos)</code>.
+     * @param startNanos long from {@link System#nanoTime()}
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of all of the recorded latencies.
+     * @return long nanoseconds
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the number of recorded latencies less than 2^exponent nanoseconds.
+     * @param exponent int
+     * @return long
+     */
+    public long getCountBelowPowerOfTwo(final int exponent) {
+        long total = 0;
+        int end = exponent <= SUB_BUCKET_BITS ? 1 << exponent : indexOf(1L << exponent);
+
+        for (int i = 0; i < end; i++) {
+            total += counts.get(i);
+        }
+
+        return total;
+    }
+
+    /**
+     * Returns the latency the specified percentage of the recorded latencies are at or below.  Only as precise as the
+     * buckets, i.e. the result is the upper end of the bucket the percentile falls in.
+     * @param percentile double e.g. 99.9
+     * @return long nanoseconds, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if (0 == total) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100.0) / 100.0));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return highestValueOf(i);
+            }
+        }
+
+        return MAX_VALUE;
+    }
+
+    /**
+     * Returns the bucket a value goes in.
+     * @param value long between 0 and {@link #MAX_VALUE}
+     * @return int
+     */
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            // exact
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the highest value that goes in a bucket.
+     * @param index int
+     * @return long
+     */
+    static long highestValueOf(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS;
+
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds every metric the application keeps.  Metrics are registered once (typically when the component that owns them
+ * is constructed) and recorded on the hot path without going back through the registry, so recording never looks
+ * anything up or allocates.  Gauges and counters are read from their owner only when the metrics are written out.
+ * <br/>
+ *
+ * Metrics are grouped into families by name, and each family has (at most) one label to tell its members apart, e.g.
+ * one latency histogram per API endpoint.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class MetricsRegistry {
+
+    // Prometheus text exposition format
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // sorted so the output is stable from one scrape to the next
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Returns the latency histogram with the specified name and label, registering it if it doesn't exist yet.
+     * @param name {@link String} of the family, e.g. "pandapi_api_request_duration_seconds"
+     * @param help {@link String} description of the family
+     * @param labelName {@link String} e.g. "endpoint"
+     * @param labelValue {@link String} e.g. "getServers"
+     * @return {@link LatencyHistogram}
+     */
+    public LatencyHistogram histogram(
+            final String name,
+            final String help,
+            final String labelName,
+            final String labelValue) {
+        return (LatencyHistogram) family(name, help, Type.HISTOGRAM, labelName).children
+                .computeIfAbsent(labelValue, value -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers a gauge without a label, replacing any gauge already registered with the same name.
+     * @param name {@link String}
+     * @param help {@link String}
+     * @param value {@link LongSupplier} of the current value
+     */
+    public void gauge(final String name, final String help, final LongSupplier value) {
+        gauge(name, help, null, null, value);
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge already registered with the same name and label.
+     * @param name {@link String}
+     * @param help {@link String}
+     * @param labelName {@link String}
+     * @param labelValue {@link String}
+     * @param value {@link LongSupplier} of the current value
+     */
+    public void gauge(
+            final String name,
+            final String help,
+            final String labelName,
+            final String labelValue,
+            final LongSupplier value) {
+        family(name, help, Type.GAUGE, labelName).children.put(null == labelValue ? "" : labelValue, value);
+    }
+
+    /**
+     * Registers a counter (a value that only goes up) without a label, replacing any counter already registered with
+     * the same name.
+     * @param name {@link String} should end with "_total"
+     * @param help {@link String}
+     * @param value {@link LongSupplier} of the current value
+     */
+    public void counter(final String name, final String help, final LongSupplier value) {
+        family(name, help, Type.COUNTER, null).children.put("", value);
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format.  Latencies are written in seconds.
+     * @param out {@link Writer}
+     * @throws IOException
+     */
+    public void writePrometheus(final Writer out) throws IOException {
+        for (Family family : families.values()) {
+            out.write("# HELP ");
+            out.write(family.name);
+            out.write(' ');
+            out.write(family.help);
+            out.write("\n# TYPE ");
+            out.write(family.name);
+            out.write(' ');
+            out.write(family.type.name().toLowerCase());
+            out.write('\n');
+
+            for (Map.Entry<String, Object> child : family.children.entrySet()) {
+                if (family.type == Type.HISTOGRAM) {
+                    writeHistogram(out, family, child.getKey(), (LatencyHistogram) child.getValue());
+                } else {
+                    writeSample(out, family.name, label(family.labelName, child.getKey()),
+                            Long.toString(((LongSupplier) child.getValue()).getAsLong()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the family with the specified name, creating it if it doesn't exist yet.
+     * @param name {@link String}
+     * @param help {@link String}
+     * @param type {@link Type}
+     * @param labelName {@link String} may be null
+     * @return {@link Family}
+     * @throws IllegalArgumentException if the family exists with a different type or label
+     */
+    private Family family(final String name, final String help, final Type type, final String labelName) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type, labelName));
+
+        if (family.type != type || !String.valueOf(family.labelName).equals(String.valueOf(labelName))) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type
+                    + " with label " + family.labelName);
+        }
+
+        return family;
+    }
+
+    /**
+     * Writes the buckets, sum, and count of a histogram.  The buckets are cumulative, as Prometheus expects.
+     * @param out {@link Writer}
+     * @param family {@link Family}
+     * @param labelValue {@link String}
+     * @param histogram {@link LatencyHistogram}
+     * @throws IOException
+     */
+    private static void writeHistogram(
+            final Writer out,
+            final Family family,
+            final String labelValue,
+            final LatencyHistogram histogram) throws IOException {
+        String label = label(family.labelName, labelValue);
+        String prefix = label.isEmpty() ? "{" : label.substring(0, label.length() - 1) + ",";
+
+        // read the count first so no bucket can end up above it
+        long count = histogram.getCount();
+
+        for (int exponent = LatencyHistogram.MIN_EXPORTED_EXPONENT;
+             exponent <= LatencyHistogram.MAX_EXPORTED_EXPONENT; exponent++) {
+            writeSample(out, family.name + "_bucket", prefix + "le=\"" + (Math.scalb(1.0, exponent) / 1e9) + "\"}",
+                    Long.toString(Math.min(count, histogram.getCountBelowPowerOfTwo(exponent))));
+        }
+
+        writeSample(out, family.name + "_bucket", prefix + "le=\"+Inf\"}", Long.toString(count));
+        writeSample(out, family.name + "_sum", label, Double.toString(histogram.getSum() / 1e9));
+        writeSample(out, family.name + "_count", label, Long.toString(count));
+    }
+
+    /**
+     * Writes a single sample line.
+     * @param out {@link Writer}
+     * @param name {@link String}
+     * @param label {@link String} e.g. {endpoint="getServers"}, may be empty
+     * @param value {@link String}
+     * @throws IOException
+     */
+    private static void writeSample(
+            final Writer out,
+            final String name,
+            final String label,
+            final String value) throws IOException {
+        out.write(name);
+        out.write(label);
+        out.write(' ');
+        out.write(value);
+        out.write('\n');
+    }
+
+    /**
+     * Formats a label.
+     * @param labelName {@link String} may be null
+     * @param labelValue {@link String}
+     * @return {@link String} empty if there's no label
+     */
+    private static String label(final String labelName, final String labelValue) {
+        if (null == labelName) {
+            return "";
+        }
+
+        return '{' + labelName + "=\"" + labelValue.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+
+    /**
+     * Kinds of metric families.
+     */
+    private enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    /**
+     * All of the metrics with the same name.
+     */
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final Type type;
+        private final String labelName;
+
+        // label value to histogram or gauge
+        private final ConcurrentMap<String, Object> children = new ConcurrentSkipListMap<>();
+
+        private Family(final String name, final String help, final Type type, final String labelName) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelName = labelName;
+        }
+    }
+}
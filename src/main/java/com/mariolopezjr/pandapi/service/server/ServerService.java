@@ -16,8 +16,11 @@
 
 package com.mariolopezjr.pandapi.service.server;
 
+import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.mariolopezjr.pandapi.data.server.Server;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
@@ -42,6 +45,20 @@ public interface ServerService {
      */
     List<Server> getAllServersSortedById();
 
+    /**
+     * Iterate over all of the server resources (including destroyed) currently in the system without building a list
+     * of them first.  See {@link com.mariolopezjr.pandapi.dao.ServerDao#iterateServers()} for the consistency rules.
+     * @return {@link Iterator}<{@link Server}> read-only
+     */
+    Iterator<Server> iterateServers();
+
+    /**
+     * Returns the version of the whole set of server resources, which changes whenever any server is created,
+     * updated, or purged.  See {@link Server#getVersion()} for the version of a single server.
+     * @return long
+     */
+    long getInventoryVersion();
+
     /**
      * Retrieve the server resource with the specified ID
      * @param serverId {@link String} UUID string
@@ -50,12 +67,39 @@ public interface ServerService {
     Server getServerById(String serverId);
 
     /**
-     * Create a new server with the specified values.
+     * Wait for the server resource with the specified ID to meet a condition (e.g. to reach a certain state).  No
+     * thread is held while waiting.  The returned future completes as soon as the condition is met (immediately if it
+     * already is), fails with a {@link com.mariolopezjr.pandapi.exception.ResourceNotFoundException} if the server is
+     * purged first, and should be cancelled by the caller if it stops waiting.
+     * @param serverId {@link String} UUID string
+     * @param condition {@link Predicate}<{@link Server}> the condition to wait for
+     * @return {@link ListenableFuture}<{@link Server}> the server as it was when it met the condition
+     * @throws com.mariolopezjr.pandapi.exception.BadRequestException if the ID is malformed
+     * @throws com.mariolopezjr.pandapi.exception.ResourceNotFoundException if server does not exist
+     */
+    ListenableFuture<Server> waitForServer(String serverId, Predicate<Server> condition);
+
+    /**
+     * Create a new server with the specified values, which have already been validated (see
+     * {@link com.mariolopezjr.pandapi.web.validation.ServerValidator}).
      * @param server {@link Server} the requested values
      * @return {@link Server} the persisted server with a unique ID and a state
      */
     Server createServer(Server server);
 
+    /**
+     * Imports server resources (e.g. from an export) with their IDs and states as they are, creating the ones that
+     * don't exist yet and replacing the ones that do.  The servers are stored in batches as they are read, so only one
+     * batch is held in memory at a time.  The lifecycle of each stored server carries on from its state: servers that
+     * are building are launched, and servers that are terminating or destroyed are destroyed and purged.  The servers
+     * should be validated as they are read, by the iterator.
+     * @param servers {@link Iterator}<{@link Server}> to import, in order
+     * @return long the number of servers imported
+     * @throws com.mariolopezjr.pandapi.exception.BadRequestException if the iterator finds an invalid server, after
+     * some of the ones before it were imported (the message says how many)
+     */
+    long importServers(Iterator<Server> servers);
+
     /**
      * Destroys the server with the specified ID.
      * @param serverId {@link String} UUID string
@@ -16,21 +16,35 @@
 
 package com.mariolopezjr.pandapi.service.server.impl;
 
-import com.google.common.base.Stopwatch;
+import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mariolopezjr.pandapi.dao.ServerDao;
 import com.mariolopezjr.pandapi.data.server.Server;
 import com.mariolopezjr.pandapi.data.server.ServerState;
 import com.mariolopezjr.pandapi.exception.BadRequestException;
 import com.mariolopezjr.pandapi.exception.ResourceNotFoundException;
+import com.mariolopezjr.pandapi.metrics.LatencyHistogram;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
 import com.mariolopezjr.pandapi.service.server.ServerService;
+import com.mariolopezjr.pandapi.util.UuidParser;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Implementation of the {@link ServerService} contract.
@@ -42,19 +56,89 @@ public class ServerServiceImpl implements ServerService {
     // slf4j logger
     private static final Logger LOG = LoggerFactory.getLogger(ServerServiceImpl.class);
 
+    // base path for all of the config values for this class
+    private static final String CONFIG_BASE_PATH = "application/lifecycle/";
+
     // comparator so we can sort Server instances by their id field
     private static final Comparator<Server> SERVER_UUID_COMPARATOR = new ServerUUIDComparator();
 
+    // servers stored per call to the DAO during an import, big enough to be cheap but small enough for one log entry
+    static final int IMPORT_BATCH_SIZE = 1_000;
+
     // server DAO to give us the data
     private final ServerDao serverDao;
 
+    // clients waiting for a server to reach a state, signalled by the DAO and completed on threads of their own
+    private final ServerStateWaiters stateWaiters = new ServerStateWaiters(Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("server-waiters-%d").setDaemon(true).build()));
+
+    // servers that are still being built or destroyed
+    private final AtomicInteger pendingBuilds = new AtomicInteger();
+    private final AtomicInteger pendingDestroys = new AtomicInteger();
+
+    // how long the simulated builds and destroys take, and how long a destroyed server is kept around, in milliseconds
+    private final long buildTime;
+    private final long destroyTime;
+    private final long purgeDelay;
+
+    // only one delete of a server at a time may check that it's running and mark it as terminating, otherwise two
+    // deletes that come in together would both destroy it (this only guards the deletes made on this node, two nodes
+    // of a cluster can still both accept a delete of the same server)
+    private final Striped<Lock> deleteLocks = Striped.lock(64);
+
+    // how long each method takes
+    private final LatencyHistogram getAllServersLatency;
+    private final LatencyHistogram getAllServersSortedByIdLatency;
+    private final LatencyHistogram getServerByIdLatency;
+    private final LatencyHistogram waitForServerLatency;
+    private final LatencyHistogram createServerLatency;
+    private final LatencyHistogram deleteServerLatency;
+
     /**
      * Constructor. Except in unit tests, this should never be called directly. Instead, use injection.
      * @param serverDao {@link ServerDao}
+     * @param config {@link Configuration}
+     * @param metrics {@link MetricsRegistry}
      */
     @Inject
-    public ServerServiceImpl(final ServerDao serverDao) {
+    public ServerServiceImpl(final ServerDao serverDao, final Configuration config, final MetricsRegistry metrics) {
         this.serverDao = serverDao;
+        this.buildTime = config.getLong(CONFIG_BASE_PATH + "buildTime", 35_000L);
+        this.destroyTime = config.getLong(CONFIG_BASE_PATH + "destroyTime", 30_000L);
+        this.purgeDelay = config.getLong(CONFIG_BASE_PATH + "purgeDelay", 30_000L);
+
+        // the service is a singleton, so this only happens once
+        serverDao.addChangeListener(stateWaiters);
+
+        getAllServersLatency = methodLatency(metrics, "getAllServers");
+        getAllServersSortedByIdLatency = methodLatency(metrics, "getAllServersSortedById");
+        getServerByIdLatency = methodLatency(metrics, "getServerById");
+        waitForServerLatency = methodLatency(metrics, "waitForServer");
+        createServerLatency = methodLatency(metrics, "createServer");
+        deleteServerLatency = methodLatency(metrics, "deleteServer");
+
+        String backlogHelp = "Servers that are still being built or destroyed.";
+        metrics.gauge("pandapi_lifecycle_backlog", backlogHelp, "operation", "build", pendingBuilds::get);
+        metrics.gauge("pandapi_lifecycle_backlog", backlogHelp, "operation", "destroy", pendingDestroys::get);
+    }
+
+    /**
+     * Constructor for the unit test to call.  Purposely has package level scope.
+     * @param serverDao {@link ServerDao}
+     */
+    ServerServiceImpl(final ServerDao serverDao) {
+        this(serverDao, new BaseConfiguration(), new MetricsRegistry());
+    }
+
+    /**
+     * Registers the latency histogram for one of the service's methods.
+     * @param metrics {@link MetricsRegistry}
+     * @param method {@link String} name
+     * @return {@link LatencyHistogram}
+     */
+    private static LatencyHistogram methodLatency(final MetricsRegistry metrics, final String method) {
+        return metrics.histogram("pandapi_service_call_duration_seconds",
+                "Time spent in each server service method.", "method", method);
     }
 
     /**
@@ -62,11 +146,11 @@ public class ServerServiceImpl implements ServerService {
      */
     @Override
     public List<Server> getAllServers() {
-        Stopwatch stopwatch = Stopwatch.createStarted();
+        long start = System.nanoTime();
 
         List<Server> servers = serverDao.getAllServers();
 
-        LOG.trace("getAllServers() took: {}", stopwatch);
+        getAllServersLatency.recordSince(start);
 
         return servers;
     }
@@ -76,57 +160,108 @@ public class ServerServiceImpl implements ServerService {
      */
     @Override
     public List<Server> getAllServersSortedById() {
-        Stopwatch stopwatch = Stopwatch.createStarted();
+        long start = System.nanoTime();
 
         List<Server> servers = getAllServers();
 
         // sort the list of servers by id
         Collections.sort(servers, SERVER_UUID_COMPARATOR);
 
-        LOG.trace("getAllServersSortedById() took: {}", stopwatch);
+        getAllServersSortedByIdLatency.recordSince(start);
 
         return servers;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Server> iterateServers() {
+        return serverDao.iterateServers();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getInventoryVersion() {
+        return serverDao.getInventoryVersion();
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public Server getServerById(String serverId) {
-        Stopwatch stopwatch = Stopwatch.createStarted();
+        long start = System.nanoTime();
 
         try {
-            UUID id = UUID.fromString(serverId);
-
-            Server server = serverDao.getServerById(id);
+            Server server = serverDao.getServerById(parseServerId(serverId));
 
             if (null == server) {
                 throw new ResourceNotFoundException("Server not found with identifier: " + serverId);
             }
 
             return server;
-        } catch (IllegalArgumentException iae) {
-            throw new BadRequestException("Invalid server identifier: " + serverId);
         } finally {
-            LOG.trace("getServerById(String) took: {}", stopwatch);
+            getServerByIdLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenableFuture<Server> waitForServer(String serverId, Predicate<Server> condition) {
+        // only the time to set up the wait, not the wait itself
+        long start = System.nanoTime();
+
+        try {
+            return registerWaiter(serverId, condition);
+        } finally {
+            waitForServerLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Registers a client waiting for a server to meet a condition, completing the future right away if it already
+     * does.
+     * @param serverId {@link String}
+     * @param condition {@link Predicate}<{@link Server}>
+     * @return {@link ListenableFuture}<{@link Server}>
+     */
+    private ListenableFuture<Server> registerWaiter(String serverId, Predicate<Server> condition) {
+        UUID id = parseServerId(serverId);
+
+        // register before looking at the server so a transition in between can't be missed
+        SettableFuture<Server> future = stateWaiters.register(id, condition);
+
+        Server server = serverDao.getServerById(id);
+
+        if (null == server) {
+            future.cancel(false);
+            throw new ResourceNotFoundException("Server not found with identifier: " + serverId);
+        }
+
+        if (condition.apply(server)) {
+            // no need to wait
+            future.set(server);
         }
+
+        return future;
     }
 
     /**
      * {@inheritDoc}
      *
      * This method has a few issues that make it difficult to test.<br/>
-     * 1. A more generic validator should be created (and mockable)
-     * 2. A new Server instance should be created to set the state
-     * 3. A new Server instance should be used for the DAO response, not the argument
-     * 4. The launch server simulation would be easier to test if it were in another class
+     * 1. A new Server instance should be created to set the state
+     * 2. A new Server instance should be used for the DAO response, not the argument
+     * 3. The launch server simulation would be easier to test if it were in another class
      */
     @Override
     public Server createServer(Server server) {
-        Stopwatch stopwatch = Stopwatch.createStarted();
-
-        // validate the request (this will throw an exception if the request is invalid)
-        server.validateAsCreateRequest();
+        long start = System.nanoTime();
 
         // servers take time to come up, so set the state to BUILDING
         server.setState(ServerState.BUILDING);
@@ -139,7 +274,7 @@ public class ServerServiceImpl implements ServerService {
         // launch the actual server
         launchServer(server);
 
-        LOG.trace("createServer(Server) took: {}", stopwatch);
+        createServerLatency.recordSince(start);
 
         return server;
     }
@@ -149,43 +284,127 @@ public class ServerServiceImpl implements ServerService {
      */
     @Override
     public void deleteServer(String serverId) {
-        Stopwatch stopwatch = Stopwatch.createStarted();
+        long start = System.nanoTime();
+        Server server;
 
-        Server server = getServerById(serverId);
+        Lock lock = deleteLocks.get(parseServerId(serverId));
+        lock.lock();
+        try {
+            server = getServerById(serverId);
 
-        // we can only destroy servers that are currently running
-        if (!ServerState.RUNNING.equals(server.getState())) {
-            LOG.trace("deleteServer(String) took: {}", stopwatch);
-            throw new BadRequestException("Only servers in the running state can be destroyed");
-        }
+            // we can only destroy servers that are currently running
+            if (!ServerState.RUNNING.equals(server.getState())) {
+                deleteServerLatency.recordSince(start);
+                throw new BadRequestException("Only servers in the running state can be destroyed");
+            }
 
-        // servers take time to go down, so set the state to TERMINATING
-        LOG.debug("Setting {} to TERMINATING", server);
-        server.setState(ServerState.TERMINATING);
+            // servers take time to go down, so set the state to TERMINATING
+            LOG.debug("Setting {} to TERMINATING", server);
+            server.setState(ServerState.TERMINATING);
 
-        // persist the server state update to the data store
-        serverDao.updateServer(server);
+            // persist the server state update to the data store
+            serverDao.updateServer(server);
+        } finally {
+            lock.unlock();
+        }
 
         LOG.info("Destroying server: {}", server);
-        LOG.trace("deleteServer(String) took: {}", stopwatch);
+        deleteServerLatency.recordSince(start);
 
         // destroy the actual server
         destroyServer(server);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long importServers(Iterator<Server> servers) {
+        List<Server> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        long imported = 0;
+        long created = 0;
+
+        try {
+            while (servers.hasNext()) {
+                batch.add(servers.next());
+
+                if (batch.size() == IMPORT_BATCH_SIZE) {
+                    created += serverDao.putServers(batch);
+                    imported += batch.size();
+                    resumeLifecycles(batch);
+                    batch.clear();
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                created += serverDao.putServers(batch);
+                imported += batch.size();
+                resumeLifecycles(batch);
+            }
+        } catch (BadRequestException e) {
+            // thrown by the iterator for an invalid server, and the servers of the batch in progress are dropped, so
+            // the client can pick up right after the first ones
+            throw new BadRequestException(e.getMessage() + " (the first " + imported + " servers were imported)", e);
+        }
+
+        LOG.info("Imported {} servers, {} of them new", imported, created);
+
+        return imported;
+    }
+
+    /**
+     * Picks the lifecycle of imported servers back up where the export left it, otherwise a server that was building
+     * would never be running, and one that was terminating or destroyed would never be purged (nor could it be
+     * deleted, since only running servers can be).
+     * @param servers {@link List}<{@link Server}> just stored
+     */
+    private void resumeLifecycles(List<Server> servers) {
+        for (Server server : servers) {
+            switch (server.getState()) {
+                case BUILDING:
+                    launchServer(server);
+                    break;
+                case TERMINATING:
+                case DESTROYED:
+                    destroyServer(server);
+                    break;
+                default:
+                    // running servers have nothing left to do
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Converts the client provided server identifier to a {@link UUID}.
+     * @param serverId {@link String}
+     * @return {@link UUID}
+     * @throws BadRequestException if the identifier is malformed
+     */
+    private static UUID parseServerId(String serverId) {
+        UUID id = UuidParser.parse(serverId);
+
+        if (null == id) {
+            throw new BadRequestException("Invalid server identifier: " + serverId);
+        }
+
+        return id;
+    }
+
     /**
      * Launch the server (or in this case, simulate it).
      * @param server {@link Server}
      */
     private void launchServer(Server server) {
         final Server clonedServer = server.clone();
+        pendingBuilds.incrementAndGet();
 
         Thread thread = new Thread() {
             @Override
             public void run() {
                 try {
-                    // simulate the server taking 35 seconds to build
-                    sleep(35_000);
+                    // simulate the server taking a while (35 seconds by default) to build
+                    sleep(buildTime);
                 } catch (InterruptedException e) {
                     // do nothing
                 } finally {
@@ -194,32 +413,37 @@ public class ServerServiceImpl implements ServerService {
                     // update server to running
                     clonedServer.setState(ServerState.RUNNING);
                     serverDao.updateServer(clonedServer);
+                    pendingBuilds.decrementAndGet();
                 }
             }
         };
 
-        thread.start();
+        start(thread, buildTime);
     }
 
     /**
-     * Destroy the server (or in this case, simulate it).
+     * Destroy the server (or in this case, simulate it), and then purge it.  A server that is already destroyed is just
+     * purged.
      * @param server {@link Server}
      */
     private void destroyServer(Server server) {
         final Server clonedServer = server.clone();
+        pendingDestroys.incrementAndGet();
 
         Thread thread = new Thread() {
             @Override
             public void run() {
                 try {
-                    // simulate the server taking 30 seconds to go down
-                    sleep(30_000);
+                    if (ServerState.TERMINATING.equals(clonedServer.getState())) {
+                        // simulate the server taking a while (30 seconds by default) to go down
+                        sleep(destroyTime);
 
-                    LOG.debug("Setting {} to DESTROYED", clonedServer);
+                        LOG.debug("Setting {} to DESTROYED", clonedServer);
 
-                    // update server to destroyed
-                    clonedServer.setState(ServerState.DESTROYED);
-                    serverDao.updateServer(clonedServer);
+                        // update server to destroyed
+                        clonedServer.setState(ServerState.DESTROYED);
+                        serverDao.updateServer(clonedServer);
+                    }
 
                     /**
                      * Note: A non-simulated purge shouldn't take up a thread per resource nor be particularly concerned
@@ -227,8 +451,8 @@ public class ServerServiceImpl implements ServerService {
                      * thread and occasionally wake up to see which server resources have been in the destroyed state
                      * for a long enough period of time (configurable, of course) and then purge them.
                      */
-                    // simulate a purge timer waiting 30 seconds
-                    sleep(30_000);
+                    // simulate a purge timer waiting a while (30 seconds by default)
+                    sleep(purgeDelay);
                 } catch (InterruptedException e) {
                     // do nothing
                 } finally {
@@ -236,10 +460,26 @@ public class ServerServiceImpl implements ServerService {
 
                     // purge the server from the data store
                     serverDao.deleteServer(clonedServer.getId());
+                    pendingDestroys.decrementAndGet();
                 }
             }
         };
 
-        thread.start();
+        start(thread, destroyTime + purgeDelay);
+    }
+
+    /**
+     * Starts the thread that simulates a step of a server's lifecycle.  If the step doesn't wait for anything (e.g. in
+     * the warm-up, which turns the lifecycle times down to zero), it runs on the calling thread instead, so creating
+     * and deleting servers doesn't start any threads.
+     * @param thread {@link Thread} that simulates the step
+     * @param waitTime long how long the step waits in total, in milliseconds
+     */
+    private static void start(final Thread thread, final long waitTime) {
+        if (0 == waitTime) {
+            thread.run();
+        } else {
+            thread.start();
+        }
     }
 }
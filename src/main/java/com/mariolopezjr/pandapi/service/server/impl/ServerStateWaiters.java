@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.service.server.impl;
+
+import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.mariolopezjr.pandapi.dao.ServerChangeListener;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.exception.ResourceNotFoundException;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Registry of clients waiting for a server resource to reach a certain condition (e.g. a state).  Nobody holds a
+ * thread while waiting; each waiter is just a future that gets completed by the DAO change notifications.<br/>
+ *
+ * The waiters for a server are kept in a small copy-on-write array that is only replaced inside the map's atomic
+ * operations, so notifications can iterate over it without locking.<br/>
+ *
+ * The futures are completed on the executor, never on the thread that notifies us: whatever the clients do once their
+ * wait is over (e.g. render and write the response) would otherwise hold up the writes to the data store.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ServerStateWaiters implements ServerChangeListener {
+
+    // nobody waiting is the common case, so share the empty array
+    private static final Waiter[] NO_WAITERS = new Waiter[0];
+
+    // server id -> everyone waiting on that server
+    private final ConcurrentMap<UUID, Waiter[]> waiters = new ConcurrentHashMap<>();
+
+    // completes the futures
+    private final Executor executor;
+
+    /**
+     * Constructor
+     * @param executor {@link Executor} to complete the futures on
+     */
+    ServerStateWaiters(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Registers a new waiter for the server with the specified id.  The caller is responsible for checking whether
+     * the server already meets the condition after registering (so no transition can be missed in between) and for
+     * cancelling the returned future if it gives up waiting.
+     * @param serverId {@link UUID}
+     * @param condition {@link Predicate}<{@link Server}> what the server has to look like to complete the future
+     * @return {@link SettableFuture}<{@link Server}>
+     */
+    SettableFuture<Server> register(final UUID serverId, final Predicate<Server> condition) {
+        final Waiter waiter = new Waiter(condition);
+
+        waiters.compute(serverId, (id, current) -> {
+            Waiter[] existing = current == null ? NO_WAITERS : current;
+            Waiter[] updated = Arrays.copyOf(existing, existing.length + 1);
+            updated[updated.length - 1] = waiter;
+            return updated;
+        });
+
+        // however the future gets completed (or cancelled), stop tracking it
+        waiter.future.addListener(() -> remove(serverId, waiter), MoreExecutors.directExecutor());
+
+        return waiter.future;
+    }
+
+    /**
+     * Returns the number of waiters currently registered for the server with the specified id.
+     * @param serverId {@link UUID}
+     * @return int
+     */
+    int getWaiterCount(final UUID serverId) {
+        Waiter[] current = waiters.get(serverId);
+        return current == null ? 0 : current.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serverCreated(Server server) {
+        signal(server);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serverUpdated(Server previous, Server current) {
+        signal(current);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serverDeleted(Server server) {
+        Waiter[] current = waiters.get(server.getId());
+
+        if (current != null) {
+            // the server is never going to reach the condition now
+            for (Waiter waiter : current) {
+                executor.execute(() -> waiter.future.setException(
+                        new ResourceNotFoundException("Server not found with identifier: " + server.getId())));
+            }
+        }
+    }
+
+    /**
+     * Completes the futures of all of the waiters whose condition is met by the specified server.
+     * @param server {@link Server}
+     */
+    private void signal(final Server server) {
+        Waiter[] current = waiters.get(server.getId());
+
+        if (current != null) {
+            for (Waiter waiter : current) {
+                if (waiter.condition.apply(server)) {
+                    // hand out a copy so the client can't touch the instance held by the data store
+                    Server copy = server.clone();
+                    executor.execute(() -> waiter.future.set(copy));
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops tracking the specified waiter.
+     * @param serverId {@link UUID}
+     * @param waiter {@link Waiter}
+     */
+    private void remove(final UUID serverId, final Waiter waiter) {
+        waiters.computeIfPresent(serverId, (id, current) -> {
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == waiter) {
+                    if (current.length == 1) {
+                        // returning null removes the mapping
+                        return null;
+                    }
+
+                    Waiter[] updated = new Waiter[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    return updated;
+                }
+            }
+
+            return current;
+        });
+    }
+
+    /**
+     * A single client waiting on a server.
+     */
+    private static final class Waiter {
+        private final Predicate<Server> condition;
+        private final SettableFuture<Server> future = SettableFuture.create();
+
+        Waiter(final Predicate<Server> condition) {
+            this.condition = condition;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.util;
+
+import com.mariolopezjr.pandapi.exception.InternalException;
+
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parses the list of nodes that the clustered data stores are configured with, e.g.
+ * "1=host1:9081, 2=host2:9081".
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public final class ClusterMembers {
+
+    private ClusterMembers() {
+        // static methods only
+    }
+
+    /**
+     * Parses the members, each one a node identifier and the address the other nodes reach it on.
+     * @param members {@link String}[] e.g. "1=host1:9081"
+     * @return {@link Map}<{@link Integer}, {@link InetSocketAddress}> in the configured order
+     * @throws InternalException if one of them isn't in that form
+     */
+    public static Map<Integer, InetSocketAddress> parse(final String[] members) {
+        Map<Integer, InetSocketAddress> addresses = new LinkedHashMap<>();
+
+        for (String member : members) {
+            String[] idAndAddress = member.trim().split("=", 2);
+            int colon = idAndAddress.length == 2 ? idAndAddress[1].lastIndexOf(':') : -1;
+            if (colon < 0) {
+                throw new InternalException("Cluster members look like \"1=host:port\", not: " + member);
+            }
+
+            addresses.put(Integer.parseInt(idAndAddress[0].trim()), new InetSocketAddress(
+                    idAndAddress[1].substring(0, colon).trim(),
+                    Integer.parseInt(idAndAddress[1].substring(colon + 1).trim())));
+        }
+
+        return addresses;
+    }
+}
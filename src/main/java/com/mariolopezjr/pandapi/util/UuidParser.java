@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.util;
+
+import java.util.UUID;
+
+/**
+ * Parses the canonical 36 character UUID form (e.g. "4e0b19f0-ef4a-4de6-b3a7-4dd74d6a39bd", either case) without
+ * allocating anything other than the resulting {@link UUID}.  Unlike {@link UUID#fromString(String)}, which splits the
+ * string and throws an exception on bad input, malformed identifiers just return null, so client mistakes don't cost
+ * a stack trace.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public final class UuidParser {
+
+    // length of the canonical form
+    private static final int LENGTH = 36;
+
+    // hex digit value of every ASCII character, -1 if it isn't one
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        for (int i = 0; i < HEX_VALUES.length; i++) {
+            HEX_VALUES[i] = (byte) Character.digit(i, 16);
+        }
+    }
+
+    private UuidParser() {
+        // static methods only
+    }
+
+    /**
+     * Parses the specified UUID string.
+     * @param value {@link CharSequence} may be null
+     * @return {@link UUID} or null if the value isn't a UUID in the canonical form
+     */
+    public static UUID parse(final CharSequence value) {
+        if (null == value || value.length() != LENGTH
+                || value.charAt(8) != '-' || value.charAt(13) != '-'
+                || value.charAt(18) != '-' || value.charAt(23) != '-') {
+            return null;
+        }
+
+        long mostSigBits = 0;
+        long leastSigBits = 0;
+
+        // the first 16 hex digits make up the most significant bits, the last 16 the least significant ones
+        int digits = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                continue;
+            }
+
+            char c = value.charAt(i);
+            int digit = c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+
+            if (digit < 0) {
+                return null;
+            }
+
+            if (digits++ < 16) {
+                mostSigBits = (mostSigBits << 4) | digit;
+            } else {
+                leastSigBits = (leastSigBits << 4) | digit;
+            }
+        }
+
+        return new UUID(mostSigBits, leastSigBits);
+    }
+}
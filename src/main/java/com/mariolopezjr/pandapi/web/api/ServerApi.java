@@ -16,67 +16,162 @@
 
 package com.mariolopezjr.pandapi.web.api;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.jaxrs.cbor.CBORMediaTypes;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.mariolopezjr.pandapi.data.server.Server;
 import com.mariolopezjr.pandapi.data.server.ServerState;
+import com.mariolopezjr.pandapi.exception.BadRequestException;
 import com.mariolopezjr.pandapi.exception.InternalException;
 import com.mariolopezjr.pandapi.service.server.ServerService;
+import com.mariolopezjr.pandapi.web.cache.CachedServer;
+import com.mariolopezjr.pandapi.web.cache.EntityTags;
+import com.mariolopezjr.pandapi.web.cache.ServerJsonCache;
+import com.mariolopezjr.pandapi.web.codec.ServerField;
+import com.mariolopezjr.pandapi.web.codec.ServerFormat;
+import com.mariolopezjr.pandapi.web.codec.ServerJsonReader;
+import com.mariolopezjr.pandapi.web.codec.ServerJsonWriter;
 import com.mariolopezjr.pandapi.web.document.server.ServerGetListResponse;
 import com.mariolopezjr.pandapi.web.document.server.ServerGetResponse;
+import com.mariolopezjr.pandapi.web.document.server.ServerImportResponse;
 import com.mariolopezjr.pandapi.web.document.server.ServerPostRequest;
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc;
+import com.mariolopezjr.pandapi.web.idempotency.IdempotencyKeys;
+import com.mariolopezjr.pandapi.web.limit.ConcurrencyLimitFilter;
+import com.mariolopezjr.pandapi.web.providers.ErrorResponses;
+import com.mariolopezjr.pandapi.web.validation.ServerValidator;
 import org.jvnet.hk2.annotations.Service;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * API code for the servers resource.  This class handles calling the server service to get domain objects for the
  * available data, creating a new document with the domain object data, and returning the document.  All API routing
- * for the endpoint is done here (i.e. path, methods, content type, etc.).
+ * for the endpoint is done here (i.e. path, methods, content type, etc.).  Every resource is available as JSON, Smile,
+ * and CBOR (see {@link ServerFormat}), picked by the client's "Accept" header.  There's a single instance for every
+ * request, so anything about the request itself is passed to the methods rather than injected.
  * @author Mario Lopez Jr
  * @since 0.0.1
  */
 @Service
+@Singleton
 @Path("/v1/servers")
 public class ServerApi {
 
+    // newline delimited JSON, i.e. one server document per line, for exports and imports
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    // how long a long-poll waits when the client doesn't specify a timeout
+    static final long DEFAULT_WAIT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    // longest a client is allowed to park a long-poll request
+    static final long MAX_WAIT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(120);
+
     // server service to handle the business logic for retrieving, creating, and deleting server resources
     private final ServerService serverService;
 
-    // URI info of the client request
-    @Context
-    UriInfo uriInfo;
+    // already rendered servers, so the common GET doesn't have to map or serialize anything
+    private final ServerJsonCache serverJsonCache;
+
+    // checks the servers in the requests against the rules in validation.xml
+    private final ServerValidator serverValidator;
+
+    // the servers created with an idempotency key, so retried creates get the same server
+    private final IdempotencyKeys idempotencyKeys;
 
     /**
      * Constructor. Except in unit tests, this should never be called directly. Instead, use injection.
      * @param serverService {@link ServerService}
+     * @param serverJsonCache {@link ServerJsonCache}
+     * @param serverValidator {@link ServerValidator}
+     * @param idempotencyKeys {@link IdempotencyKeys}
      */
     @Inject
-    public ServerApi(final ServerService serverService) {
+    public ServerApi(final ServerService serverService, final ServerJsonCache serverJsonCache,
+                     final ServerValidator serverValidator, final IdempotencyKeys idempotencyKeys) {
         this.serverService = serverService;
+        this.serverJsonCache = serverJsonCache;
+        this.serverValidator = serverValidator;
+        this.idempotencyKeys = idempotencyKeys;
     }
 
     /**
-     * Returns the list of server resources in the system.
-     * @return {@link ServerGetListResponse}
+     * Returns the list of server resources in the system.  The list is streamed to the client one server at a time
+     * instead of being built in memory first.  If the client already has the current version of the list (i.e. sends
+     * a matching "If-None-Match"), a 304 is returned without looking at any of the servers.
+     * @param fields {@link String} optional comma separated list of the server properties to return, e.g. "id,state"
+     * @param request {@link Request} used to evaluate the conditional headers
+     * @return {@link Response} with a {@link ServerGetListResponse} in the negotiated format as the entity
      */
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
-    public ServerGetListResponse getServers() {
-        return ServerGetListResponse.fromDomainObject(serverService.getAllServers());
+    @Produces({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE,
+            CBORMediaTypes.APPLICATION_JACKSON_CBOR})
+    public Response getServers(@QueryParam("fields") final String fields, @Context final Request request) {
+        final Set<ServerField> selectedFields = ServerField.parse(fields);
+        final ServerFormat format = ServerFormat.select(request);
+
+        // must be read before the servers, so a change in between can only make the tag older than the list
+        EntityTag entityTag = EntityTags.forServerList(serverService.getInventoryVersion(), selectedFields, format);
+
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+
+        StreamingOutput servers = out -> {
+            try (JsonGenerator generator = format.createGenerator(out)) {
+                ServerJsonWriter.writeServerList(generator, serverService.iterateServers(), selectedFields);
+            }
+        };
+
+        return Response.ok(servers).type(format.getMediaType()).tag(entityTag).build();
     }
 
     /**
-     * Creates a new server resource and returns the persisted resource with its new state and ID.
+     * Creates a new server resource and returns the persisted resource with its new state and ID.  An invalid request
+     * gets a 400 with all of its violations, returned directly rather than thrown, since bad requests are common.  A
+     * request with an "Idempotency-Key" header that was already used gets the response for the server created then
+     * (see {@link IdempotencyKeys}).
      * @param request {@link ServerPostRequest} the request from the client
+     * @param idempotencyKey {@link String} optional key picked by the client, the same for every retry of a create
+     * @param uriInfo {@link UriInfo} of the request, for the location of the new resource
      * @return {@link Response} wrapping a {@link ServerGetResponse} entity
      */
     @POST
-    @Produces(MediaType.APPLICATION_JSON)
-    @Consumes(MediaType.APPLICATION_JSON)
-    public Response createServer(ServerPostRequest request) {
-        Server createdServer = serverService.createServer(request.toDomainObject());
+    @Produces({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE,
+            CBORMediaTypes.APPLICATION_JACKSON_CBOR})
+    @Consumes({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE,
+            CBORMediaTypes.APPLICATION_JACKSON_CBOR})
+    public Response createServer(ServerPostRequest request,
+                                 @HeaderParam(IdempotencyKeys.HEADER) final String idempotencyKey,
+                                 @Context final UriInfo uriInfo) {
+        List<String> violations = serverValidator.validateCreateRequest(request);
+        if (!violations.isEmpty()) {
+            return ErrorResponses.badRequest(String.join(",", violations));
+        }
+
+        final Server server = request.toDomainObject();
+        Server createdServer = null == idempotencyKey
+                ? serverService.createServer(server)
+                : idempotencyKeys.createServer(idempotencyKey, server, () -> serverService.createServer(server));
         ServerGetResponse response = ServerGetResponse.fromDomainObject(createdServer);
 
         // generate the URI for the new resource
@@ -95,15 +190,126 @@ public class ServerApi {
     }
 
     /**
-     * Returns the specific server resource if it exists in the system.
+     * Exports every server resource in the system as newline delimited JSON: one complete server document per line,
+     * streamed to the client one server at a time, which {@link #importServers(InputStream)} takes as is.
+     * @return {@link Response} with the servers as the entity
+     */
+    @GET
+    @Path("export")
+    @Produces(APPLICATION_NDJSON)
+    public Response exportServers() {
+        StreamingOutput servers = out -> {
+            try (JsonGenerator generator = ServerJsonWriter.createGenerator(out)) {
+                ServerJsonWriter.writeServerLines(generator, serverService.iterateServers());
+            }
+        };
+
+        return Response.ok(servers).type(APPLICATION_NDJSON).build();
+    }
+
+    /**
+     * Imports server resources from newline delimited JSON (e.g. an export), with their IDs and states as they are.
+     * The servers are stored in batches while the request is still being read, so the size of the import doesn't
+     * matter.  If a line is invalid, the response says which one and how many servers were imported before it.
+     * @param servers {@link InputStream} one server document per line
+     * @return {@link Response} wrapping a {@link ServerImportResponse} entity
+     * @throws IOException if the request can't be read
+     */
+    @POST
+    @Path("import")
+    @Produces({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE,
+            CBORMediaTypes.APPLICATION_JACKSON_CBOR})
+    @Consumes(APPLICATION_NDJSON)
+    public Response importServers(final InputStream servers) throws IOException {
+        try (JsonParser parser = ServerFormat.JSON.createParser(servers)) {
+            long imported = serverService.importServers(ServerJsonReader.readServerLines(parser,
+                    serverValidator::validateImport));
+
+            return Response.ok(ServerImportResponse.of(imported)).build();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the specific server resource if it exists in the system.  If the client specifies a state to wait for,
+     * this is a long-poll: the request is parked (without holding a thread) until the server is in that state or the
+     * timeout expires, whichever comes first.  Either way the response is the server as it is at that moment, or a
+     * 304 if the client already has that version of it (i.e. sends a matching "If-None-Match").
      * @param serverId {@link String}
-     * @return {@link ServerGetResponse}
+     * @param waitFor {@link String} optional {@link ServerStateDoc} name to wait for
+     * @param timeout {@link String} optional max time to wait, e.g. "60s", "500ms", "2m" (plain numbers are seconds)
+     * @param request {@link Request} used to evaluate the conditional headers
+     * @param requestContext {@link ContainerRequestContext} marked as parked for a long-poll
+     * @param asyncResponse {@link AsyncResponse} resumed with a {@link Response} wrapping a {@link ServerGetResponse}
      */
     @GET
     @Path("{serverId}")
-    @Produces(MediaType.APPLICATION_JSON)
-    public ServerGetResponse getServerById(@PathParam("serverId") String serverId) {
-        return ServerGetResponse.fromDomainObject(serverService.getServerById(serverId));
+    @Produces({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE,
+            CBORMediaTypes.APPLICATION_JACKSON_CBOR})
+    public void getServerById(
+            @PathParam("serverId") final String serverId,
+            @QueryParam("waitFor") final String waitFor,
+            @QueryParam("timeout") final String timeout,
+            @Context final Request request,
+            @Context final ContainerRequestContext requestContext,
+            @Suspended final AsyncResponse asyncResponse) {
+        try {
+            long timeoutMillis = parseTimeout(timeout);
+            final ServerFormat format = ServerFormat.select(request);
+
+            if (null == waitFor || 0 == timeoutMillis) {
+                // plain old GET, which is almost always already rendered (only JSON is cached)
+                CachedServer cached = ServerFormat.JSON == format ? serverJsonCache.get(serverId) : null;
+
+                // malformed and unknown ids (and servers created a moment ago) go through the service
+                asyncResponse.resume(cached != null
+                        ? toResponse(request, cached)
+                        : toResponse(request, serverService.getServerById(serverId), format));
+                return;
+            }
+
+            final ServerStateDoc state = parseState(waitFor);
+
+            final ListenableFuture<Server> future =
+                    serverService.waitForServer(serverId, server -> state.matches(server.getState()));
+
+            // the time spent waiting says nothing about how busy we are, so keep it out of the concurrency limit
+            requestContext.setProperty(ConcurrencyLimitFilter.PARKED, Boolean.TRUE);
+
+            // must be set while the response is still suspended, i.e. before the future can resume it
+            asyncResponse.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            asyncResponse.setTimeoutHandler(response -> {
+                future.cancel(false);
+
+                // still not in the requested state, so just return what it looks like right now
+                try {
+                    response.resume(toResponse(request, serverService.getServerById(serverId), format));
+                } catch (RuntimeException e) {
+                    response.resume(e);
+                }
+            });
+
+            // the service completes the future on a thread of its own, so rendering and writing the response here
+            // never holds up the write to the data store that ended the wait
+            Futures.addCallback(future, new FutureCallback<Server>() {
+                @Override
+                public void onSuccess(Server server) {
+                    asyncResponse.resume(toResponse(request, server, format));
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    // cancellation only happens once the response was already resumed by the timeout
+                    if (!(t instanceof CancellationException)) {
+                        asyncResponse.resume(t);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // let the exception mappers handle it
+            asyncResponse.resume(e);
+        }
     }
 
     /**
@@ -119,4 +325,105 @@ public class ServerApi {
 
         return Response.noContent().build();
     }
+
+    /**
+     * Builds the response for a single server, which is a 304 if the client already has this version of it.
+     * @param request {@link Request}
+     * @param server {@link Server}
+     * @param format {@link ServerFormat} of the response
+     * @return {@link Response}
+     */
+    private Response toResponse(final Request request, final Server server, final ServerFormat format) {
+        CachedServer cached = ServerFormat.JSON == format
+                ? serverJsonCache.get(server.getId(), server.getVersion())
+                : null;
+
+        if (cached != null) {
+            return toResponse(request, cached);
+        }
+
+        // not rendered yet (or a newer version is, or it's a binary format), so do it the slow way
+        EntityTag entityTag = EntityTags.forServer(server.getVersion(), format);
+
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+
+        return Response.ok(ServerGetResponse.fromDomainObject(server))
+                .type(format.getMediaType())
+                .tag(entityTag)
+                .build();
+    }
+
+    /**
+     * Builds the response for an already rendered server, which is a 304 if the client already has this version of it.
+     * @param request {@link Request}
+     * @param cached {@link CachedServer}
+     * @return {@link Response}
+     */
+    private static Response toResponse(final Request request, final CachedServer cached) {
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(cached.getEntityTag());
+        if (notModified != null) {
+            return notModified.build();
+        }
+
+        // the bytes are written as-is
+        return Response.ok(cached.getJson()).type(MediaType.APPLICATION_JSON_TYPE).tag(cached.getEntityTag()).build();
+    }
+
+    /**
+     * Converts the client provided state name to a {@link ServerStateDoc}.
+     * @param state {@link String}
+     * @return {@link ServerStateDoc}
+     * @throws BadRequestException if the name doesn't match any state
+     */
+    static ServerStateDoc parseState(final String state) {
+        for (ServerStateDoc value : ServerStateDoc.values()) {
+            if (value.name().equalsIgnoreCase(state)) {
+                return value;
+            }
+        }
+
+        throw new BadRequestException("Invalid server state to wait for: " + state);
+    }
+
+    /**
+     * Converts the client provided timeout to milliseconds.  Accepts a number with an optional "ms", "s", or "m" unit
+     * (seconds if no unit is given).  Timeouts longer than {@link #MAX_WAIT_TIMEOUT_MILLIS} are capped at it.
+     * @param timeout {@link String} may be null, in which case {@link #DEFAULT_WAIT_TIMEOUT_MILLIS} is used
+     * @return long milliseconds
+     * @throws BadRequestException if the timeout is malformed
+     */
+    static long parseTimeout(final String timeout) {
+        if (null == timeout) {
+            return DEFAULT_WAIT_TIMEOUT_MILLIS;
+        }
+
+        String value = timeout.trim().toLowerCase();
+        TimeUnit unit = TimeUnit.SECONDS;
+
+        if (value.endsWith("ms")) {
+            unit = TimeUnit.MILLISECONDS;
+            value = value.substring(0, value.length() - 2);
+        } else if (value.endsWith("s")) {
+            value = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("m")) {
+            unit = TimeUnit.MINUTES;
+            value = value.substring(0, value.length() - 1);
+        }
+
+        long amount;
+        try {
+            amount = Long.parseLong(value);
+        } catch (NumberFormatException nfe) {
+            throw new BadRequestException("Invalid timeout: " + timeout);
+        }
+
+        if (amount < 0) {
+            throw new BadRequestException("Timeout can't be negative: " + timeout);
+        }
+
+        return Math.min(unit.toMillis(amount), MAX_WAIT_TIMEOUT_MILLIS);
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.application;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Jetty request log that writes one event per HTTP request to the "pandapi.access" logger, which logback.xml sends
+ * to its own file through a non-blocking appender.  The request's details are passed along in the MDC so the JSON
+ * layout writes them as separate fields.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class AccessRequestLog extends AbstractLifeCycle implements RequestLog {
+
+    // slf4j logger, separate from the class name so it can be routed on its own
+    private static final Logger LOG = LoggerFactory.getLogger("pandapi.access");
+
+    // MDC keys
+    static final String METHOD = "method";
+    static final String URI = "uri";
+    static final String STATUS = "status";
+    static final String BYTES = "bytes";
+    static final String DURATION = "durationMillis";
+    static final String REMOTE_ADDRESS = "remoteAddress";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void log(final Request request, final Response response) {
+        if (!LOG.isInfoEnabled()) {
+            return;
+        }
+
+        String uri = null == request.getQueryString()
+                ? request.getRequestURI()
+                : request.getRequestURI() + '?' + request.getQueryString();
+        int status = response.getStatus();
+
+        try {
+            MDC.put(METHOD, request.getMethod());
+            MDC.put(URI, uri);
+            MDC.put(STATUS, Integer.toString(status));
+            MDC.put(BYTES, Long.toString(response.getHttpOutput().getWritten()));
+            MDC.put(DURATION, Long.toString(System.currentTimeMillis() - request.getTimeStamp()));
+            MDC.put(REMOTE_ADDRESS, request.getRemoteAddr());
+
+            LOG.info("{} {} {}", request.getMethod(), uri, status);
+        } finally {
+            MDC.remove(METHOD);
+            MDC.remove(URI);
+            MDC.remove(STATUS);
+            MDC.remove(BYTES);
+            MDC.remove(DURATION);
+            MDC.remove(REMOTE_ADDRESS);
+        }
+    }
+}
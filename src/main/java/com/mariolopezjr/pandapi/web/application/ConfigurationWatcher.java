@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.application;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.configuration.CombinedConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.event.ConfigurationErrorEvent;
+import org.apache.commons.configuration.event.ConfigurationErrorListener;
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
+import org.apache.commons.configuration.event.EventSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Checks the configuration files for changes and tells the listeners when any of them was reloaded, so settings can
+ * be tuned without a restart.  Which files are reloaded is set up in config.xml, and only files on disk can be (not
+ * the copies inside of the JAR).  Commons configuration only notices a changed file when a value is read, so that's
+ * what the check does.  A file that can't be parsed (e.g. saved halfway through an edit) is logged and the previous
+ * values stay in effect until it can be.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ConfigurationWatcher implements ConfigurationListener, ConfigurationErrorListener {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigurationWatcher.class);
+
+    // base path in the configuration for all of the config values in this class
+    private static final String CONFIG_BASE_PATH = "application/configReload/";
+
+    private final Configuration config;
+
+    // called with the configuration after every reload
+    private final List<Consumer<Configuration>> listeners = new CopyOnWriteArrayList<>();
+
+    // set by the reload (which happens during a check), so the listeners aren't called in the middle of it
+    private volatile boolean reloaded;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor
+     * @param config {@link Configuration} only a {@link CombinedConfiguration} is ever reloaded
+     */
+    public ConfigurationWatcher(final Configuration config) {
+        this.config = config;
+
+        if (config instanceof CombinedConfiguration) {
+            CombinedConfiguration combined = (CombinedConfiguration) config;
+            combined.addConfigurationListener(this);
+
+            // the files report their own errors
+            for (int i = 0; i < combined.getNumberOfConfigurations(); i++) {
+                if (combined.getConfiguration(i) instanceof EventSource) {
+                    ((EventSource) combined.getConfiguration(i)).addErrorListener(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a listener that is called on the watcher's thread after every reload.
+     * @param listener {@link Consumer}<{@link Configuration}>
+     */
+    public void addListener(final Consumer<Configuration> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts checking for changes on a background thread.
+     */
+    public synchronized void start() {
+        long checkInterval = config.getLong(CONFIG_BASE_PATH + "checkInterval", 5_000L);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("config-reload").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(this::check, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops checking for changes.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Reads a value, which reloads any file that changed, and tells the listeners if one did.
+     */
+    void check() {
+        config.getProperty(CONFIG_BASE_PATH + "checkInterval");
+
+        if (!reloaded) {
+            return;
+        }
+
+        reloaded = false;
+        LOG.info("Configuration changed, applying the new settings");
+
+        for (Consumer<Configuration> listener : listeners) {
+            try {
+                listener.accept(config);
+            } catch (RuntimeException e) {
+                // one bad setting shouldn't keep the others from being applied
+                LOG.error("Unable to apply the new configuration", e);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void configurationChanged(final ConfigurationEvent event) {
+        if (!event.isBeforeUpdate() && CombinedConfiguration.EVENT_COMBINED_INVALIDATE == event.getType()) {
+            reloaded = true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void configurationError(final ConfigurationErrorEvent event) {
+        // logged on every check until the file is fixed, so just the parser's message
+        LOG.warn("Unable to reload the configuration, keeping the previous settings: {}",
+                Throwables.getRootCause(event.getCause()).getMessage());
+    }
+}
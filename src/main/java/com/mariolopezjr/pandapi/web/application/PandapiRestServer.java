@@ -16,24 +16,74 @@
 
 package com.mariolopezjr.pandapi.web.application;
 
+import com.fasterxml.jackson.jaxrs.cbor.JacksonCBORProvider;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
+import com.mariolopezjr.pandapi.dao.ServerDao;
+import com.mariolopezjr.pandapi.dao.cluster.ReplicatedServerDao;
 import com.mariolopezjr.pandapi.dao.impl.DaoBinder;
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao;
+import com.mariolopezjr.pandapi.dao.partition.PartitionedServerDao;
+import com.mariolopezjr.pandapi.dao.replica.ReplicaServerDao;
+import com.mariolopezjr.pandapi.exception.InternalException;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
 import com.mariolopezjr.pandapi.service.server.impl.ServerServiceBinder;
 import com.mariolopezjr.pandapi.web.api.ServerApi;
+import com.mariolopezjr.pandapi.web.cache.CacheBinder;
+import com.mariolopezjr.pandapi.web.cache.ServerJsonCache;
+import com.mariolopezjr.pandapi.web.events.ServerEventBroadcaster;
+import com.mariolopezjr.pandapi.web.events.ServerEventsServlet;
+import com.mariolopezjr.pandapi.web.health.Readiness;
+import com.mariolopezjr.pandapi.web.health.ReadinessServlet;
+import com.mariolopezjr.pandapi.web.idempotency.IdempotencyBinder;
+import com.mariolopezjr.pandapi.web.limit.ConcurrencyLimitFilter;
+import com.mariolopezjr.pandapi.web.limit.ConcurrencyLimiter;
+import com.mariolopezjr.pandapi.web.metrics.MetricsServlet;
+import com.mariolopezjr.pandapi.web.providers.ApiMetricsFilter;
+import com.mariolopezjr.pandapi.web.providers.BadRequestExceptionMapper;
+import com.mariolopezjr.pandapi.web.providers.DataStoreUnavailableExceptionMapper;
+import com.mariolopezjr.pandapi.web.providers.ErrorMessageDocWriter;
+import com.mariolopezjr.pandapi.web.providers.GzipEntityTagFilter;
 import com.mariolopezjr.pandapi.web.providers.InternalExceptionMapper;
+import com.mariolopezjr.pandapi.web.providers.ResourceNotFoundExceptionMapper;
+import com.mariolopezjr.pandapi.web.providers.ServerGetListResponseWriter;
+import com.mariolopezjr.pandapi.web.providers.ServerGetResponseWriter;
+import com.mariolopezjr.pandapi.web.providers.ServerImportResponseWriter;
+import com.mariolopezjr.pandapi.web.providers.ServerPostRequestReader;
+import com.mariolopezjr.pandapi.web.replication.ReplicaFilter;
+import com.mariolopezjr.pandapi.web.replication.ReplicationFeedServlet;
+import com.mariolopezjr.pandapi.web.validation.ValidationBinder;
 import org.apache.commons.configuration.Configuration;
+import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.HandlerCollection;
+import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.server.handler.RequestLogHandler;
+import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.servlets.AsyncGzipFilter;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.CommonProperties;
+import org.glassfish.jersey.jetty.JettyHttpContainer;
+import org.glassfish.jersey.jetty.JettyHttpContainerProvider;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
 import org.glassfish.jersey.servlet.ServletContainer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.DispatcherType;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 
 /**
@@ -49,51 +99,149 @@ public class PandapiRestServer {
     // base path for all of the config values for this class
     private static final String CONFIG_BASE_PATH = "webServer/";
 
+    // containers Jersey can run on
+    static final String CONTAINER_SERVLET = "servlet";
+    static final String CONTAINER_JETTY = "jetty";
+
     private final Configuration config;
 
+    // every metric in the application, from Jetty down to the DAO
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    // which parts of the application are up, for the readiness probe
+    private final Readiness readiness = new Readiness();
+
+    // applies tuning changes to the configuration without a restart
+    private final ConfigurationWatcher configWatcher;
+
+    // only set on a read replica, and on a primary that read replicas follow
+    private ReplicaServerDao replicaDao;
+    private ReplicationFeedServlet replicationFeedServlet;
+
     /**
      * Constructor
      * @param config {@link Configuration}
      */
     public PandapiRestServer(final Configuration config) {
         this.config = config;
+        this.configWatcher = new ConfigurationWatcher(config);
     }
 
     public void start() throws Exception {
         // we want to keep track of when the server was started
         LOG.info("Starting Panda API server");
 
-        // hack to both have the configuration here and also make it available through injection
-        AbstractBinder configBinder = new AbstractBinder() {
-            @Override
-            protected void configure() {
-                bind(config).to(Configuration.class);
-            }
-        };
+        // fans server changes out to the event stream clients
+        ServerEventBroadcaster broadcaster = new ServerEventBroadcaster(config);
+        configWatcher.addListener(broadcaster::reconfigure);
 
-        // dependency injection binders
-        List<AbstractBinder> binders = Arrays.asList(
-                new ServerServiceBinder(),
-                new DaoBinder(),
-                configBinder);
+        // the servers are either replicated across a cluster, split across one, copied from a primary, or only kept
+        // in this JVM (null for an in-memory data store created by the injection)
+        ServerDao serverDao = null;
+        ReplicatedServerDao clusterDao = null;
+        if ((ReplicatedServerDao.isEnabled(config) ? 1 : 0) + (PartitionedServerDao.isEnabled(config) ? 1 : 0)
+                + (ReplicaServerDao.isEnabled(config) ? 1 : 0) > 1) {
+            throw new InternalException("Only one of the cluster, partitioning, and the replica role can be turned on");
+        } else if (ReplicatedServerDao.isEnabled(config)) {
+            clusterDao = startCluster();
+            serverDao = clusterDao;
+        } else if (PartitionedServerDao.isEnabled(config)) {
+            serverDao = startPartitions();
+        } else if (ReplicaServerDao.isEnabled(config)) {
+            replicaDao = startReplica();
+            serverDao = replicaDao;
+        } else {
+            readiness.setReady(Readiness.Component.CLUSTER);
+        }
 
-        // set up Jersey servlet
-        ServletHolder servletHolder = createServlet(binders);
+        // a primary streams the changes of whichever data store it has to its replicas
+        if (ReplicationFeedServlet.isEnabled(config)) {
+            if (null == serverDao) {
+                serverDao = new ServerInMemoryDao(config, metrics);
+            }
+            replicationFeedServlet = new ReplicationFeedServlet(config, serverDao);
+        }
+
+        // set up Jersey
+        ResourceConfig resourceConfig =
+                createResourceConfig(createBinders(config, metrics, new DaoBinder(serverDao)), broadcaster, readiness);
 
         // set up Jetty
-        Server server = setupJetty(servletHolder);
+        Server server = setupJetty(resourceConfig, createEventsServlet(broadcaster));
 
         // main application loop
         server.start();
+        configWatcher.start();
         server.join();
+
+        if (clusterDao != null) {
+            clusterDao.stop();
+        }
+    }
+
+    /**
+     * Joins the cluster that the server resources are replicated across.  The application is only ready while the
+     * cluster has a leader, since it can't take writes (or linearizable reads) without one.
+     * @return {@link ReplicatedServerDao}
+     */
+    private ReplicatedServerDao startCluster() {
+        ReplicatedServerDao clusterDao = new ReplicatedServerDao(config, metrics);
+
+        clusterDao.addLeaderListener(leaderId -> {
+            if (leaderId < 0) {
+                readiness.setNotReady(Readiness.Component.CLUSTER);
+            } else {
+                readiness.setReady(Readiness.Component.CLUSTER);
+            }
+        });
+        clusterDao.start();
+
+        return clusterDao;
+    }
+
+    /**
+     * Joins the other nodes that the server resources are split across, which hand over this node's share of them.
+     * Stopping the server (which exits the JVM) hands them back, so this node leaves from a shutdown hook.
+     * @return {@link PartitionedServerDao}
+     */
+    private PartitionedServerDao startPartitions() {
+        PartitionedServerDao partitionDao = new PartitionedServerDao(config, metrics);
+        partitionDao.start();
+        readiness.setReady(Readiness.Component.CLUSTER);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(partitionDao::stop, "partition-leave"));
+
+        return partitionDao;
+    }
+
+    /**
+     * Starts following the primary that this read replica copies the server resources from.  The application is only
+     * ready while the replica isn't further behind the primary than it may be.
+     * @return {@link ReplicaServerDao}
+     */
+    private ReplicaServerDao startReplica() {
+        ReplicaServerDao replica = new ReplicaServerDao(config, metrics);
+
+        replica.addCaughtUpListener(caughtUp -> {
+            if (caughtUp) {
+                readiness.setReady(Readiness.Component.CLUSTER);
+            } else {
+                readiness.setNotReady(Readiness.Component.CLUSTER);
+            }
+        });
+        replica.start();
+
+        return replica;
     }
 
     /**
-     * Creates and sets up a Jetty server with the specified {@link ServletHolder} servlet.
-     * @param servletHolder {@link ServletHolder} The servlet to add to the Jetty servlet context.
+     * Creates and sets up a Jetty server with Jersey and the specified {@link ServletHolder} servlet.  Jersey is either
+     * a servlet like the others, or runs on its own Jetty handler (see {@link #isJettyContainer(Configuration)}).
+     * @param resourceConfig {@link ResourceConfig} The Jersey configuration.
+     * @param eventsServletHolder {@link ServletHolder} The servlet for the server event stream.
      * @return {@link Server} The Jetty server
      */
-    public Server setupJetty(final ServletHolder servletHolder) {
+    public Server setupJetty(final ResourceConfig resourceConfig, final ServletHolder eventsServletHolder) {
         // configuration values
         String contextPath = config.getString(CONFIG_BASE_PATH + "contextPath");
         int port = config.getInt(CONFIG_BASE_PATH + "port");
@@ -108,6 +256,7 @@ public class PandapiRestServer {
 
         // thread pool
         QueuedThreadPool threadPool = new QueuedThreadPool(maxThreads, minThreads, idleTimeout);
+        registerThreadPoolMetrics(threadPool);
 
         // create the Jetty server
         Server jettyServer = new Server(threadPool);
@@ -118,11 +267,53 @@ public class PandapiRestServer {
         connector.setIdleTimeout(clientTimeout);
         jettyServer.addConnector(connector);
 
-        // set up the Jetty context and add the specified servlet
-        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        // the pool and the connector can be tuned while they're in use
+        configWatcher.addListener(changed -> reconfigureJetty(changed, threadPool, connector));
+
+        // set up the Jetty context, without sessions since nothing in the API has any state of its own
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
         context.setContextPath(contextPath);
-        context.addServlet(servletHolder, "/*");
-        jettyServer.setHandler(context);
+
+        Handler application;
+        if (isJettyContainer(config)) {
+            application = createJettyContainer(resourceConfig, context);
+        } else {
+            context.addServlet(createServlet(resourceConfig), "/*");
+            application = context;
+        }
+
+        // exact mappings win over the Jersey wildcard
+        context.addServlet(eventsServletHolder, "/v1/servers/events");
+        context.addServlet(new ServletHolder(new MetricsServlet(metrics)), "/metrics");
+        context.addServlet(new ServletHolder(new ReadinessServlet(readiness)), "/health/ready");
+        if (replicationFeedServlet != null) {
+            context.addServlet(new ServletHolder(replicationFeedServlet), ReplicaServerDao.FEED_PATH);
+        }
+        // filters run in the order they're added, turn requests away before doing anything else for them (but never
+        // the metrics, they're most useful exactly when requests are being turned away)
+        if (replicaDao != null) {
+            context.addFilter(new FilterHolder(new ReplicaFilter(ReplicaServerDao.getPrimaryUrl(config), replicaDao)),
+                    "/v1/*", EnumSet.of(DispatcherType.REQUEST));
+        }
+        if (config.getBoolean(CONFIG_BASE_PATH + "concurrencyLimit/enabled")) {
+            context.addFilter(createConcurrencyLimitFilter(), "/v1/*", EnumSet.of(DispatcherType.REQUEST));
+        }
+        if (config.getBoolean(CONFIG_BASE_PATH + "compression/enabled")) {
+            context.addFilter(createGzipFilter(), "/*", EnumSet.of(DispatcherType.REQUEST));
+        }
+
+        if (config.getBoolean(CONFIG_BASE_PATH + "accessLog/enabled")) {
+            // the request log handler runs after the context, once the response is complete
+            RequestLogHandler requestLogHandler = new RequestLogHandler();
+            requestLogHandler.setRequestLog(new AccessRequestLog());
+
+            HandlerCollection handlers = new HandlerCollection();
+            handlers.addHandler(application);
+            handlers.addHandler(requestLogHandler);
+            jettyServer.setHandler(handlers);
+        } else {
+            jettyServer.setHandler(application);
+        }
 
         // scheduler
         jettyServer.addBean(new ScheduledExecutorScheduler());
@@ -130,30 +321,311 @@ public class PandapiRestServer {
         // gracefully shut down Jetty when the JVM goes down
         jettyServer.setStopAtShutdown(true);
 
+        // Jetty is only started once every servlet (including Jersey) is, and stops taking requests first thing
+        jettyServer.addLifeCycleListener(new AbstractLifeCycle.AbstractLifeCycleListener() {
+            @Override
+            public void lifeCycleStarted(LifeCycle event) {
+                readiness.setReady(Readiness.Component.WEB_SERVER);
+            }
+
+            @Override
+            public void lifeCycleStopping(LifeCycle event) {
+                readiness.setNotReady(Readiness.Component.WEB_SERVER);
+                configWatcher.stop();
+            }
+        });
+
         return jettyServer;
     }
 
+    /**
+     * Applies changes to the thread pool and client timeout.  The pool starts more threads right away if the minimum
+     * went up, and lets the extra ones go once they're idle if the maximum went down.  The client timeout only applies
+     * to new connections.
+     * @param config {@link Configuration}
+     * @param threadPool {@link QueuedThreadPool}
+     * @param connector {@link ServerConnector}
+     */
+    static void reconfigureJetty(
+            final Configuration config,
+            final QueuedThreadPool threadPool,
+            final ServerConnector connector) {
+        int clientTimeout = config.getInt(CONFIG_BASE_PATH + "clientTimeout");
+        int maxThreads = config.getInt(CONFIG_BASE_PATH + "threadPool/maxThreads");
+        int minThreads = config.getInt(CONFIG_BASE_PATH + "threadPool/minThreads");
+        int idleTimeout = config.getInt(CONFIG_BASE_PATH + "threadPool/idleTimeout");
+
+        if (minThreads > maxThreads) {
+            LOG.warn("Not changing the thread pool, minThreads={} is more than maxThreads={}", minThreads, maxThreads);
+        } else if (minThreads != threadPool.getMinThreads() || maxThreads != threadPool.getMaxThreads()
+                || idleTimeout != threadPool.getIdleTimeout()) {
+            LOG.info("Changing the thread pool to maxThreads={}, minThreads={}, idleTimeout={}",
+                    maxThreads, minThreads, idleTimeout);
+
+            // the minimum can't be above the maximum at any point
+            if (minThreads > threadPool.getMaxThreads()) {
+                threadPool.setMaxThreads(maxThreads);
+                threadPool.setMinThreads(minThreads);
+            } else {
+                threadPool.setMinThreads(minThreads);
+                threadPool.setMaxThreads(maxThreads);
+            }
+            threadPool.setIdleTimeout(idleTimeout);
+        }
+
+        if (clientTimeout != connector.getIdleTimeout()) {
+            LOG.info("Changing the client timeout to {}", clientTimeout);
+            connector.setIdleTimeout(clientTimeout);
+        }
+    }
+
+    /**
+     * Registers the gauges for the Jetty thread pool.  The queue is the requests waiting for a thread.
+     * @param threadPool {@link QueuedThreadPool}
+     */
+    private void registerThreadPoolMetrics(final QueuedThreadPool threadPool) {
+        String threadsHelp = "Jetty request threads.";
+        metrics.gauge("jetty_threads", threadsHelp, "state", "busy", threadPool::getBusyThreads);
+        metrics.gauge("jetty_threads", threadsHelp, "state", "idle", threadPool::getIdleThreads);
+        metrics.gauge("jetty_threads", threadsHelp, "state", "total", threadPool::getThreads);
+        metrics.gauge("jetty_threads", threadsHelp, "state", "max", threadPool::getMaxThreads);
+        metrics.gauge("jetty_queue_size", "Jobs waiting for a Jetty thread.", threadPool::getQueueSize);
+    }
+
+    /**
+     * Creates the filter that sheds load once there are more requests in progress than the service can handle.
+     * @return {@link FilterHolder}
+     */
+    private FilterHolder createConcurrencyLimitFilter() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config);
+        configWatcher.addListener(limiter::reconfigure);
+        FilterHolder filterHolder = new FilterHolder(new ConcurrencyLimitFilter(limiter));
+
+        metrics.gauge("pandapi_concurrency_limit", "Current adaptive limit on requests in progress.",
+                limiter::getLimit);
+        metrics.gauge("pandapi_concurrency_inflight", "API requests in progress.", limiter::getInflight);
+        metrics.counter("pandapi_concurrency_rejected_total", "API requests turned away with a 503.",
+                limiter::getRejected);
+
+        // long-polls are suspended
+        filterHolder.setAsyncSupported(true);
+
+        return filterHolder;
+    }
+
+    /**
+     * Creates the filter that gzips responses for clients that send "Accept-Encoding: gzip".  Only the configured
+     * content types are compressed, which leaves the event stream alone, and so are only the responses that are big
+     * enough to be worth it.  Entity tags get a "--gzip" suffix, which the filter removes again from "If-None-Match".
+     * @return {@link FilterHolder}
+     */
+    private FilterHolder createGzipFilter() {
+        String minSize = config.getString(CONFIG_BASE_PATH + "compression/minSize");
+        // commons configuration splits comma separated values into a list
+        String mimeTypes = String.join(",", config.getStringArray(CONFIG_BASE_PATH + "compression/mimeTypes"));
+
+        LOG.debug("Compressing responses of at least {} bytes of: {}", minSize, mimeTypes);
+
+        FilterHolder filterHolder = new FilterHolder(AsyncGzipFilter.class);
+        filterHolder.setInitParameter("minGzipSize", minSize);
+        filterHolder.setInitParameter("mimeTypes", mimeTypes);
+        filterHolder.setInitParameter("methods", "GET,POST");
+
+        // long-polls are suspended
+        filterHolder.setAsyncSupported(true);
+
+        return filterHolder;
+    }
+
+    /**
+     * Creates the dependency injection binders for the services, DAOs, caches, validators, and idempotency keys, plus
+     * the configuration and metrics.
+     * @param config {@link Configuration} made available through injection
+     * @param metrics {@link MetricsRegistry} made available through injection
+     * @param daoBinder {@link DaoBinder} for the data store
+     * @return {@link List}<{@link AbstractBinder}>
+     */
+    static List<AbstractBinder> createBinders(
+            final Configuration config,
+            final MetricsRegistry metrics,
+            final DaoBinder daoBinder) {
+        // hack to both have the configuration (and metrics) here and also make it available through injection
+        AbstractBinder configBinder = new AbstractBinder() {
+            @Override
+            protected void configure() {
+                bind(config).to(Configuration.class);
+                bind(metrics).to(MetricsRegistry.class);
+            }
+        };
+
+        return Arrays.asList(
+                new ServerServiceBinder(),
+                daoBinder,
+                new CacheBinder(),
+                new ValidationBinder(),
+                new IdempotencyBinder(),
+                configBinder);
+    }
+
+    /**
+     * Returns whether Jersey should run on its own Jetty handler instead of as a servlet.  That skips the servlet
+     * layer (and its filters) for every API request, so the servlet filters have to be turned off.
+     * @param config {@link Configuration}
+     * @return boolean
+     * @throws InternalException if the container is unknown, or a servlet filter the API needs is turned on
+     */
+    static boolean isJettyContainer(final Configuration config) {
+        String container = config.getString(CONFIG_BASE_PATH + "container", CONTAINER_SERVLET);
+
+        if (CONTAINER_SERVLET.equals(container)) {
+            return false;
+        } else if (!CONTAINER_JETTY.equals(container)) {
+            throw new InternalException("Unknown container for Jersey: " + container);
+        }
+
+        for (String filter : new String[] {"concurrencyLimit", "compression"}) {
+            if (config.getBoolean(CONFIG_BASE_PATH + filter + "/enabled")) {
+                throw new InternalException("The " + filter + " is a servlet filter, turn it off to run Jersey on the "
+                        + CONTAINER_JETTY + " container");
+            }
+        }
+        if (ReplicaServerDao.isEnabled(config)) {
+            throw new InternalException("A read replica redirects writes with a servlet filter, so it can only run "
+                    + "Jersey on the " + CONTAINER_SERVLET + " container");
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates the handler that runs Jersey without the servlet layer.  Requests go to the servlets first, and the ones
+     * none of them are mapped to (which are all of the API requests) go on to Jersey.
+     * @param resourceConfig {@link ResourceConfig}
+     * @param context {@link ServletContextHandler} for the servlets that aren't Jersey
+     * @return {@link Handler}
+     */
+    private static Handler createJettyContainer(
+            final ResourceConfig resourceConfig,
+            final ServletContextHandler context) {
+        // otherwise the servlets would answer everything else with a 404
+        context.getServletHandler().setEnsureDefaultServlet(false);
+
+        // created directly, the fat JAR may not have the provider's META-INF/services entry
+        ContextHandler jersey = new ContextHandler(context.getContextPath());
+        jersey.setHandler(new JettyHttpContainerProvider().createContainer(JettyHttpContainer.class, resourceConfig));
+
+        HandlerList handlers = new HandlerList();
+        handlers.setHandlers(new Handler[] {context, jersey});
+
+        return handlers;
+    }
+
     /**
      * Creates a Jersey servlet holder referencing our APIs.
-     * @param binders {@link List}<{@link AbstractBinder}> list of binders that should be registered with Jersey
+     * @param resourceConfig {@link ResourceConfig}
      * @return {@link ServletHolder} The Jersey servlet
      */
-    private static ServletHolder createServlet(final List<AbstractBinder> binders) {
-        // use a ResourceConfig to specify which Java packages Jersey should scan
-        ResourceConfig resourceConfig = new ResourceConfig() {{
+    private static ServletHolder createServlet(final ResourceConfig resourceConfig) {
+        ServletHolder servletHolder = new ServletHolder(new ServletContainer(resourceConfig));
+
+        // initialize Jersey while Jetty starts instead of on the first request
+        servletHolder.setInitOrder(0);
+
+        // long-polls are suspended without holding on to a Jetty thread
+        servletHolder.setAsyncSupported(true);
+
+        return servletHolder;
+    }
+
+    /**
+     * Creates the Jersey configuration with our APIs, providers, and dependency injection bindings.  Everything is
+     * registered explicitly: scanning packages (and the whole JAR) for annotated classes and discovering features
+     * are a good part of the startup time otherwise.
+     * @param binders {@link List}<{@link AbstractBinder}> list of binders that should be registered with Jersey
+     * @param broadcaster {@link ServerEventBroadcaster} to hook up to the DAO once Jersey has created it
+     * @param readiness {@link Readiness} to mark when Jersey and the data store are up
+     * @return {@link ResourceConfig}
+     */
+    static ResourceConfig createResourceConfig(
+            final List<AbstractBinder> binders,
+            final ServerEventBroadcaster broadcaster,
+            final Readiness readiness) {
+        return new ResourceConfig() {{
             // register our dependency injection bindings; services each get their own, DAOs share a single one
             for (AbstractBinder binder : binders) {
                 register(binder);
             }
 
-            // specify the API package by using a concrete class to give us some static type checking
-            packages(ServerApi.class.getPackage().getName());
+            // no features are discovered on the classpath either, see PandapiRestServerTest for the check that nothing
+            // is missing (META-INF/services is still looked up, it's cheap and it's how the servlet async support that
+            // the long-polls need is found)
+            property(CommonProperties.FEATURE_AUTO_DISCOVERY_DISABLE, true);
+
+            // APIs
+            register(ServerApi.class);
+
+            // exception mappers
+            register(BadRequestExceptionMapper.class);
+            register(DataStoreUnavailableExceptionMapper.class);
+            register(InternalExceptionMapper.class);
+            register(ResourceNotFoundExceptionMapper.class);
+
+            // filters
+            register(ApiMetricsFilter.class);
+            register(GzipEntityTagFilter.class);
+
+            // readers and writers for our documents, in every format
+            register(ErrorMessageDocWriter.class);
+            register(ServerGetListResponseWriter.class);
+            register(ServerGetResponseWriter.class);
+            register(ServerImportResponseWriter.class);
+            register(ServerPostRequestReader.class);
+
+            // Jackson's data binding for anything else
+            register(JacksonJsonProvider.class);
+            register(JacksonSmileProvider.class);
+            register(JacksonCBORProvider.class);
+
+            // the DAO only exists inside of Jersey's service locator, so listen for changes once it's available
+            register(new ContainerLifecycleListener() {
+                @Override
+                public void onStartup(Container container) {
+                    ServiceLocator serviceLocator = container.getApplicationHandler().getServiceLocator();
+                    readiness.setReady(Readiness.Component.INJECTION);
 
-            // specify the exception mappers package by using a concrete class to give us some static type checking
-            packages(InternalExceptionMapper.class.getPackage().getName());
+                    serviceLocator.getService(ServerDao.class).addChangeListener(broadcaster);
+
+                    // create the cache right away so it sees every change from the start
+                    serviceLocator.getService(ServerJsonCache.class);
+                    readiness.setReady(Readiness.Component.DATA_STORE);
+                }
+
+                @Override
+                public void onReload(Container container) {
+                    // nothing to do
+                }
+
+                @Override
+                public void onShutdown(Container container) {
+                    readiness.setNotReady(Readiness.Component.INJECTION);
+                    broadcaster.shutdown();
+                }
+            });
         }};
+    }
+
+    /**
+     * Creates the servlet holder for the server event stream.
+     * @param broadcaster {@link ServerEventBroadcaster}
+     * @return {@link ServletHolder} The event stream servlet
+     */
+    private static ServletHolder createEventsServlet(final ServerEventBroadcaster broadcaster) {
+        ServletHolder servletHolder = new ServletHolder(new ServerEventsServlet(broadcaster));
+
+        // every client gets a suspended request that is written to with non-blocking I/O
+        servletHolder.setAsyncSupported(true);
 
-        return new ServletHolder(new ServletContainer(resourceConfig));
+        return servletHolder;
     }
 
 }
@@ -16,11 +16,13 @@
 
 package com.mariolopezjr.pandapi.web.application;
 
+import ch.qos.logback.classic.LoggerContext;
 import org.apache.commons.cli.*;
 import org.apache.commons.configuration.CombinedConfiguration;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.DefaultConfigurationBuilder;
 import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.slf4j.ILoggerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -117,6 +119,11 @@ public class PandapiWebApplication {
         int port = config.getInt(CONFIG_BASE_PATH + "shutdownPort");
         listenForShutdownRequest(port);
 
+        // get the JIT going before the first real request
+        if (WarmUp.isEnabled(config)) {
+            new WarmUp(config).run();
+        }
+
         // start the server
         PandapiRestServer restServer = new PandapiRestServer(config);
         restServer.start();
@@ -181,13 +188,19 @@ public class PandapiWebApplication {
     }
 
     /**
-     * We want to know when the server shuts down, so add a shutdown hook to log it.
+     * We want to know when the server shuts down, so add a shutdown hook to log it.  Logging is asynchronous, so the
+     * hook also stops logback, which writes out whatever is still waiting in its buffers.
      */
     private static void logWhenServerShutsDown() {
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
                 LOG.info("Stopping Panda API server");
+
+                ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+                if (loggerFactory instanceof LoggerContext) {
+                    ((LoggerContext) loggerFactory).stop();
+                }
             }
         });
     }
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.application;
+
+import com.google.common.io.ByteStreams;
+import com.mariolopezjr.pandapi.dao.ServerDao;
+import com.mariolopezjr.pandapi.dao.impl.DaoBinder;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.data.server.ServerState;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
+import com.mariolopezjr.pandapi.web.codec.ServerFormat;
+import com.mariolopezjr.pandapi.web.events.ServerEventBroadcaster;
+import com.mariolopezjr.pandapi.web.health.Readiness;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.CompositeConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a synthetic workload through the APIs, the service, and the DAO before the server takes any traffic, so the
+ * first real requests run compiled code instead of the interpreter.  The requests go through a separate Jersey
+ * application with the same resources and providers but its own data store and metrics, which is thrown away
+ * afterwards, so nothing the warm-up does shows up in the real data or in /metrics.  Its servers are built and
+ * destroyed without any delay, so the warm-up doesn't leave any lifecycle threads behind either.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class WarmUp {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(WarmUp.class);
+
+    // base path in the configuration for all of the config values in this class
+    private static final String CONFIG_BASE_PATH = "application/warmUp/";
+
+    // the requests never leave the JVM, so the host doesn't matter
+    private static final URI BASE_URI = URI.create("http://localhost/");
+    private static final String SERVERS_PATH = "v1/servers";
+
+    private static final byte[] CREATE_REQUEST =
+            "{\"server\":{\"name\":\"warmUp\",\"cpus\":1,\"ram\":1,\"diskSpace\":1}}".getBytes(StandardCharsets.UTF_8);
+
+    // the same sequence of requests every time
+    private static final long RANDOM_SEED = 42L;
+
+    // how long the server lifecycle takes, all of it turned down to zero for the warm-up
+    private static final String[] LIFECYCLE_TIMES = {
+            "application/lifecycle/buildTime", "application/lifecycle/destroyTime", "application/lifecycle/purgeDelay"};
+
+    private final Configuration config;
+    private final int requests;
+    private final int servers;
+    private final int listWeight;
+    private final int getWeight;
+    private final int createWeight;
+    private final int deleteWeight;
+
+    /**
+     * Constructor
+     * @param config {@link Configuration}
+     */
+    public WarmUp(final Configuration config) {
+        this.config = config;
+        this.requests = config.getInt(CONFIG_BASE_PATH + "requests");
+        this.servers = config.getInt(CONFIG_BASE_PATH + "servers");
+        this.listWeight = config.getInt(CONFIG_BASE_PATH + "mix/list");
+        this.getWeight = config.getInt(CONFIG_BASE_PATH + "mix/get");
+        this.createWeight = config.getInt(CONFIG_BASE_PATH + "mix/create");
+        this.deleteWeight = config.getInt(CONFIG_BASE_PATH + "mix/delete");
+    }
+
+    /**
+     * Returns whether the warm-up is turned on.
+     * @param config {@link Configuration}
+     * @return boolean
+     */
+    public static boolean isEnabled(final Configuration config) {
+        return config.getBoolean(CONFIG_BASE_PATH + "enabled");
+    }
+
+    /**
+     * Runs the workload and logs how long it took.  A failing warm-up is logged, but doesn't keep the server from
+     * starting.
+     * @return int the number of requests that got a 5xx (or no response at all)
+     */
+    public int run() {
+        long start = System.nanoTime();
+
+        // none of this is shared with the real application, the data store is in memory even in a cluster, and its
+        // servers are built and destroyed right away instead of on a thread (that sleeps) per server
+        Configuration warmUpConfig = createWarmUpConfig(config);
+        ServerEventBroadcaster broadcaster = new ServerEventBroadcaster(warmUpConfig);
+        ApplicationHandler handler = new ApplicationHandler(PandapiRestServer.createResourceConfig(
+                PandapiRestServer.createBinders(warmUpConfig, new MetricsRegistry(), new DaoBinder()), broadcaster,
+                new Readiness()));
+
+        int errors = 0;
+        try {
+            errors = sendRequests(handler);
+        } catch (RuntimeException e) {
+            LOG.warn("Warm-up failed, starting anyway", e);
+        } finally {
+            handler.getServiceLocator().shutdown();
+            broadcaster.shutdown();
+        }
+
+        LOG.info("Warmed up with {} requests ({} errors) in {}ms", requests, errors,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        return errors;
+    }
+
+    /**
+     * Creates the configuration of the throwaway application, the same as the real one but with a server lifecycle
+     * that doesn't take any time.
+     * @param config {@link Configuration}
+     * @return {@link Configuration}
+     */
+    static Configuration createWarmUpConfig(final Configuration config) {
+        Configuration lifecycle = new BaseConfiguration();
+        for (String time : LIFECYCLE_TIMES) {
+            lifecycle.setProperty(time, 0L);
+        }
+
+        // the first configuration has precedence
+        CompositeConfiguration warmUpConfig = new CompositeConfiguration();
+        warmUpConfig.addConfiguration(lifecycle);
+        warmUpConfig.addConfiguration(config);
+
+        return warmUpConfig;
+    }
+
+    /**
+     * Sends the mix of requests, in a random but repeatable order.  Deletes need running servers, so enough of those go
+     * into the throwaway data store directly.
+     * @param handler {@link ApplicationHandler}
+     * @return int the number of requests that got a 5xx (or no response at all)
+     */
+    private int sendRequests(final ApplicationHandler handler) {
+        int totalWeight = listWeight + getWeight + createWeight + deleteWeight;
+        Deque<String> running = seedRunningServers(handler, servers + requests * deleteWeight / totalWeight);
+        List<String> ids = new ArrayList<>(running);
+        ServerFormat[] formats = ServerFormat.values();
+        Random random = new Random(RANDOM_SEED);
+        int errors = 0;
+
+        for (int i = 0; i < requests; i++) {
+            int pick = random.nextInt(totalWeight);
+            // mostly JSON, like the real clients
+            String accept = (random.nextInt(10) < 8 ? ServerFormat.JSON : formats[random.nextInt(formats.length)])
+                    .getMediaType().toString();
+            ContainerResponse response;
+
+            if (pick < listWeight) {
+                response = send(handler, HttpMethod.GET, SERVERS_PATH, accept, null);
+            } else if (pick < listWeight + getWeight) {
+                // now and then one that doesn't exist, so the error handling is warm too
+                String id = random.nextInt(20) == 0
+                        ? UUID.randomUUID().toString()
+                        : ids.get(random.nextInt(ids.size()));
+                response = send(handler, HttpMethod.GET, SERVERS_PATH + '/' + id, accept, null);
+            } else if (pick < listWeight + getWeight + createWeight) {
+                response = send(handler, HttpMethod.POST, SERVERS_PATH, accept, CREATE_REQUEST);
+                if (response != null && response.getLocation() != null) {
+                    String path = response.getLocation().getPath();
+                    ids.add(path.substring(path.lastIndexOf('/') + 1));
+                }
+            } else {
+                // once the running servers are used up, the deletes are turned away with a 400 instead
+                String id = running.isEmpty() ? ids.get(random.nextInt(ids.size())) : running.poll();
+                response = send(handler, HttpMethod.DELETE, SERVERS_PATH + '/' + id, accept, null);
+            }
+
+            if (null == response || response.getStatus() >= 500) {
+                errors++;
+            }
+        }
+
+        return errors;
+    }
+
+    /**
+     * Puts running servers in the throwaway data store.
+     * @param handler {@link ApplicationHandler}
+     * @param count int
+     * @return {@link Deque}<{@link String}> ids of the servers
+     */
+    private static Deque<String> seedRunningServers(final ApplicationHandler handler, final int count) {
+        ServerDao serverDao = handler.getServiceLocator().getService(ServerDao.class);
+        Deque<String> ids = new ArrayDeque<>(count);
+
+        for (int i = 0; i < count; i++) {
+            Server server = new Server();
+            server.setName("warmUp");
+            server.setCpus(1);
+            server.setRam(1);
+            server.setDiskSpace(1);
+            server.setState(ServerState.RUNNING);
+
+            ids.add(serverDao.createServer(server).getId().toString());
+        }
+
+        return ids;
+    }
+
+    /**
+     * Sends a request through Jersey, all the way through serializing the response (which is then thrown away).
+     * @param handler {@link ApplicationHandler}
+     * @param method {@link String}
+     * @param path {@link String} relative to the base URI
+     * @param accept {@link String} media type
+     * @param body byte[] JSON request body, null for none
+     * @return {@link ContainerResponse} null if the request failed without a response
+     */
+    private static ContainerResponse send(
+            final ApplicationHandler handler,
+            final String method,
+            final String path,
+            final String accept,
+            final byte[] body) {
+        ContainerRequest request =
+                new ContainerRequest(BASE_URI, BASE_URI.resolve(path), method, null, new MapPropertiesDelegate());
+        request.header(HttpHeaders.ACCEPT, accept);
+
+        if (body != null) {
+            request.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+            request.setEntityStream(new ByteArrayInputStream(body));
+        }
+
+        try {
+            return handler.apply(request, ByteStreams.nullOutputStream()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during the warm-up", e);
+        } catch (ExecutionException e) {
+            LOG.debug("Warm-up request failed: {} {}", method, path, e.getCause());
+            return null;
+        }
+    }
+}
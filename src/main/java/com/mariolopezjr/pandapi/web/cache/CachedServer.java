@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.cache;
+
+import javax.ws.rs.core.EntityTag;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A single version of a server rendered as the JSON of a GET response ({"server":{...}}), along with its entity
+ * tag.  Instances are immutable and shared by every request, so the bytes must never be modified.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public final class CachedServer {
+
+    // the document is wrapped like a ServerGetResponse
+    static final byte[] PREFIX = "{\"server\":".getBytes(StandardCharsets.UTF_8);
+    static final byte[] SUFFIX = "}".getBytes(StandardCharsets.UTF_8);
+
+    private final UUID id;
+    private final long version;
+    private final EntityTag entityTag;
+
+    // PREFIX + the server document + SUFFIX
+    private final byte[] json;
+
+    /**
+     * Constructor
+     * @param id {@link UUID}
+     * @param version long
+     * @param serverDocJson byte[] the JSON of just the server document
+     */
+    CachedServer(final UUID id, final long version, final byte[] serverDocJson) {
+        this.id = id;
+        this.version = version;
+        this.entityTag = EntityTags.forServer(version);
+
+        this.json = new byte[PREFIX.length + serverDocJson.length + SUFFIX.length];
+        System.arraycopy(PREFIX, 0, json, 0, PREFIX.length);
+        System.arraycopy(serverDocJson, 0, json, PREFIX.length, serverDocJson.length);
+        System.arraycopy(SUFFIX, 0, json, PREFIX.length + serverDocJson.length, SUFFIX.length);
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public EntityTag getEntityTag() {
+        return entityTag;
+    }
+
+    /**
+     * Returns the complete GET response.  The array is shared, so don't modify it.
+     * @return byte[]
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * Writes just the server document (i.e. without the "server" wrapper), e.g. as an element of a list.
+     * @param out {@link OutputStream}
+     * @throws IOException
+     */
+    public void writeServerDoc(final OutputStream out) throws IOException {
+        out.write(json, PREFIX.length, json.length - PREFIX.length - SUFFIX.length);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.cache;
+
+import com.mariolopezjr.pandapi.web.codec.ServerField;
+import com.mariolopezjr.pandapi.web.codec.ServerFormat;
+
+import javax.ws.rs.core.EntityTag;
+import java.util.Set;
+
+/**
+ * Builds the strong entity tags for the server resources from the versions assigned by the DAO.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public final class EntityTags {
+
+    // versions start over when the process restarts, so entity tags include when it started to keep them unique
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    private EntityTags() {
+        // static methods only
+    }
+
+    /**
+     * Returns the entity tag for the JSON of the specified version of a server.  Versions are unique across all
+     * servers.
+     * @param version long see {@link com.mariolopezjr.pandapi.data.server.Server#getVersion()}
+     * @return {@link EntityTag}
+     */
+    public static EntityTag forServer(final long version) {
+        return forServer(version, ServerFormat.JSON);
+    }
+
+    /**
+     * Returns the entity tag for the specified version of a server in the specified format.
+     * @param version long see {@link com.mariolopezjr.pandapi.data.server.Server#getVersion()}
+     * @param format {@link ServerFormat}
+     * @return {@link EntityTag}
+     */
+    public static EntityTag forServer(final long version, final ServerFormat format) {
+        return new EntityTag(EPOCH + '-' + Long.toString(version, Character.MAX_RADIX) + format.getTagSuffix());
+    }
+
+    /**
+     * Returns the entity tag for the specified version of the list of servers with only some of the fields in the
+     * specified format.  Each fieldset and format is a different representation, so each one gets its own tag.
+     * @param inventoryVersion long see {@link com.mariolopezjr.pandapi.dao.ServerDao#getInventoryVersion()}
+     * @param fields {@link Set}<{@link ServerField}>
+     * @param format {@link ServerFormat}
+     * @return {@link EntityTag}
+     */
+    public static EntityTag forServerList(
+            final long inventoryVersion,
+            final Set<ServerField> fields,
+            final ServerFormat format) {
+        StringBuilder value = new StringBuilder(EPOCH)
+                .append("-l").append(Long.toString(inventoryVersion, Character.MAX_RADIX));
+
+        if (!fields.equals(ServerField.ALL)) {
+            int mask = 0;
+            for (ServerField field : fields) {
+                mask |= 1 << field.ordinal();
+            }
+
+            value.append("-f").append(Integer.toString(mask, Character.MAX_RADIX));
+        }
+
+        return new EntityTag(value.append(format.getTagSuffix()).toString());
+    }
+}
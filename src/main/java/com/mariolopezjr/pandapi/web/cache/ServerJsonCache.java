@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.cache;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mariolopezjr.pandapi.dao.ServerChangeListener;
+import com.mariolopezjr.pandapi.dao.ServerDao;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.util.UuidParser;
+import com.mariolopezjr.pandapi.web.codec.ServerJsonWriter;
+import com.mariolopezjr.pandapi.web.document.server.ServerDoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The current version of every server already rendered as JSON.  Entries are rebuilt by the DAO change notifications
+ * when (and only when) a server changes, so reads are a map lookup that hands out shared bytes: no cloning, no
+ * document mapping, and no serialization.<br/>
+ *
+ * The cache is only ever filled by notifications, never by reads, so it can't hold on to a server that was purged
+ * while a read was in flight.  The notifications are handled without calling back into the DAO: they may come in on
+ * a thread the DAO's reads wait for (e.g. the one that applies a cluster's log).
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ServerJsonCache implements ServerChangeListener {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(ServerJsonCache.class);
+
+    // purged servers remembered, so a late update notification of an older version doesn't bring them back
+    private static final int MAX_TOMBSTONES = 10_000;
+
+    // server id -> the latest rendered version
+    private final ConcurrentMap<UUID, CachedServer> cache = new ConcurrentHashMap<>();
+
+    // server id -> last version of the servers purged lately, only changed while the cache entry is being computed
+    private final Map<UUID, Long> tombstones = Collections.synchronizedMap(new LinkedHashMap<UUID, Long>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<UUID, Long> eldest) {
+            return size() > MAX_TOMBSTONES;
+        }
+    });
+
+    /**
+     * Constructor. Except in unit tests, this should never be called directly. Instead, use injection.
+     * @param serverDao {@link ServerDao}
+     */
+    @Inject
+    public ServerJsonCache(final ServerDao serverDao) {
+        // the cache is a singleton, so this only happens once
+        serverDao.addChangeListener(this);
+    }
+
+    /**
+     * Returns the rendered server with the specified id.
+     * @param serverId {@link String} UUID string, may be malformed
+     * @return {@link CachedServer} or null if the id is malformed or there's no such server (as far as the cache
+     *         knows, a server that was just created may not have been added yet)
+     */
+    public CachedServer get(final String serverId) {
+        UUID id = UuidParser.parse(serverId);
+        return id == null ? null : cache.get(id);
+    }
+
+    /**
+     * Returns the rendered server with the specified id and version.
+     * @param serverId {@link UUID}
+     * @param version long see {@link Server#getVersion()}
+     * @return {@link CachedServer} or null if that version isn't the one in the cache
+     */
+    public CachedServer get(final UUID serverId, final long version) {
+        CachedServer cached = cache.get(serverId);
+        return cached != null && cached.getVersion() == version ? cached : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serverCreated(final Server server) {
+        put(server);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serverUpdated(final Server previous, final Server current) {
+        put(current);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serverDeleted(final Server server) {
+        cache.compute(server.getId(), (id, existing) -> {
+            if (existing != null && existing.getVersion() > server.getVersion()) {
+                // it was stored again after the purge, and this notification is late
+                return existing;
+            }
+
+            tombstones.put(id, server.getVersion());
+            return null;
+        });
+    }
+
+    /**
+     * Renders the server and stores it unless the cache already has a newer version, or the server was purged after
+     * this version.
+     * @param server {@link Server}
+     */
+    private void put(final Server server) {
+        // the same encoder as the responses rendered without the cache, so both have the same bytes
+        ByteArrayOutputStream json = new ByteArrayOutputStream(128);
+        try (JsonGenerator generator = ServerJsonWriter.createGenerator(json)) {
+            ServerJsonWriter.writeServerDoc(generator, ServerDoc.fromDomainObject(server));
+        } catch (IOException e) {
+            // reads fall back to rendering the server themselves, so this doesn't have to fail the write
+            LOG.error("Unable to render {}", server, e);
+            cache.remove(server.getId());
+            return;
+        }
+
+        CachedServer rendered = new CachedServer(server.getId(), server.getVersion(), json.toByteArray());
+
+        // notifications for the same server can arrive out of order when it's updated by two threads at once
+        cache.compute(server.getId(), (id, existing) -> {
+            Long purgedVersion = tombstones.get(id);
+            if ((existing != null && existing.getVersion() >= rendered.getVersion())
+                    || (purgedVersion != null && purgedVersion >= rendered.getVersion())) {
+                return existing;
+            }
+
+            // a newer version than the purged one, e.g. imported again
+            tombstones.remove(id);
+            return rendered;
+        });
+    }
+}
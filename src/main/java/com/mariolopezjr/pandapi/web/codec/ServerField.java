@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.codec;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.mariolopezjr.pandapi.exception.BadRequestException;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The properties of the server document, in the order they are written.  Used for sparse fieldsets (i.e. the
+ * "fields" query parameter).
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public enum ServerField {
+    ID("id"),
+    NAME("name"),
+    CPUS("cpus"),
+    RAM("ram"),
+    DISK_SPACE("diskSpace"),
+    STATE("state");
+
+    // every field, i.e. what's written when the client doesn't ask for specific ones
+    public static final Set<ServerField> ALL = Collections.unmodifiableSet(EnumSet.allOf(ServerField.class));
+
+    // name of the JSON property
+    private final String jsonName;
+
+    // the same name with its encoded and quoted forms cached, so generators just copy the bytes
+    private final SerializableString serializedName;
+
+    ServerField(final String jsonName) {
+        this.jsonName = jsonName;
+        this.serializedName = new SerializedString(jsonName);
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    public SerializableString getSerializedName() {
+        return serializedName;
+    }
+
+    /**
+     * Returns the field with the specified JSON property name.
+     * @param jsonName {@link String}
+     * @return {@link ServerField} or null if the name isn't a server property
+     */
+    public static ServerField forJsonName(final String jsonName) {
+        for (ServerField field : values()) {
+            if (field.jsonName.equals(jsonName)) {
+                return field;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Converts the client provided comma separated list of property names (e.g. "id,state") into fields.
+     * @param fields {@link String} may be null or empty for every field
+     * @return {@link Set}<{@link ServerField}>
+     * @throws BadRequestException if any of the names isn't a server property
+     */
+    public static Set<ServerField> parse(final String fields) {
+        if (null == fields || fields.trim().isEmpty()) {
+            return ALL;
+        }
+
+        EnumSet<ServerField> result = EnumSet.noneOf(ServerField.class);
+
+        for (String name : fields.split(",")) {
+            result.add(fromJsonName(name.trim()));
+        }
+
+        return result.size() == ALL.size() ? ALL : Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Returns the field with the specified JSON property name.
+     * @param jsonName {@link String}
+     * @return {@link ServerField}
+     * @throws BadRequestException if the name isn't a server property
+     */
+    private static ServerField fromJsonName(final String jsonName) {
+        ServerField field = forJsonName(jsonName);
+
+        if (null == field) {
+            throw new BadRequestException("Unknown server field: " + jsonName);
+        }
+
+        return field;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.codec;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.jaxrs.cbor.CBORMediaTypes;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Variant;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * The wire formats the server resources are available in.  They all share Jackson's data model, so the same
+ * documents and the same streaming writer work for every one of them; only the factory differs.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public enum ServerFormat {
+    JSON(MediaType.APPLICATION_JSON_TYPE, new JsonFactory(), ""),
+    // binary JSON, repeated property names (and states) are written once and then referred back to
+    SMILE(SmileMediaTypes.APPLICATION_JACKSON_SMILE_TYPE,
+            new SmileFactory().enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES), "-s"),
+    // RFC 7049
+    CBOR(CBORMediaTypes.APPLICATION_JACKSON_CBOR_TYPE, new CBORFactory(), "-c");
+
+    // in order of preference when the client accepts more than one
+    private static final List<Variant> VARIANTS = Variant.mediaTypes(
+            JSON.mediaType, SMILE.mediaType, CBOR.mediaType).build();
+
+    private final MediaType mediaType;
+
+    // thread safe, and expensive enough to create that it should be shared
+    private final JsonFactory factory;
+
+    // appended to entity tags, every format is a different representation
+    private final String tagSuffix;
+
+    ServerFormat(final MediaType mediaType, final JsonFactory factory, final String tagSuffix) {
+        this.mediaType = mediaType;
+        // the container owns the request and response streams
+        this.factory = factory
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        this.tagSuffix = tagSuffix;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public JsonFactory getFactory() {
+        return factory;
+    }
+
+    public String getTagSuffix() {
+        return tagSuffix;
+    }
+
+    /**
+     * Creates a generator for the specified stream.  The stream isn't closed when the generator is.
+     * @param out {@link OutputStream}
+     * @return {@link JsonGenerator}
+     * @throws IOException
+     */
+    public JsonGenerator createGenerator(final OutputStream out) throws IOException {
+        return factory.createGenerator(out, JsonEncoding.UTF8);
+    }
+
+    /**
+     * Creates a parser for the specified stream.  The stream isn't closed when the parser is.
+     * @param in {@link InputStream}
+     * @return {@link JsonParser}
+     * @throws IOException
+     */
+    public JsonParser createParser(final InputStream in) throws IOException {
+        return factory.createParser(in);
+    }
+
+    /**
+     * Picks the format for the response based on the client's "Accept" header.  Also lets the container know that the
+     * response varies by it.
+     * @param request {@link Request}
+     * @return {@link ServerFormat} JSON if the client doesn't care
+     */
+    public static ServerFormat select(final Request request) {
+        Variant variant = request.selectVariant(VARIANTS);
+        ServerFormat format = null == variant ? null : forMediaType(variant.getMediaType());
+
+        // Jersey already turned away clients that don't accept any of them
+        return null == format ? JSON : format;
+    }
+
+    /**
+     * Returns the format of the specified media type, ignoring any parameters (e.g. charset).
+     * @param mediaType {@link MediaType} may be null
+     * @return {@link ServerFormat} or null if it isn't one of them
+     */
+    public static ServerFormat forMediaType(final MediaType mediaType) {
+        if (null == mediaType) {
+            return null;
+        }
+
+        for (ServerFormat format : values()) {
+            if (format.mediaType.getType().equalsIgnoreCase(mediaType.getType())
+                    && format.mediaType.getSubtype().equalsIgnoreCase(mediaType.getSubtype())) {
+                return format;
+            }
+        }
+
+        return null;
+    }
+}
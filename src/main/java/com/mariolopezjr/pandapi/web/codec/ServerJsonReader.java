@@ -0,0 +1,387 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.exception.BadRequestException;
+import com.mariolopezjr.pandapi.util.UuidParser;
+import com.mariolopezjr.pandapi.web.document.server.ServerDoc;
+import com.mariolopezjr.pandapi.web.document.server.ServerGetListResponse;
+import com.mariolopezjr.pandapi.web.document.server.ServerGetResponse;
+import com.mariolopezjr.pandapi.web.document.server.ServerPostRequest;
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Reads the server documents token by token, accepting the same input Jackson's data binding does for them (unknown
+ * properties are rejected, numbers may be quoted, anything may be null).  Works with a parser for any of the
+ * {@link ServerFormat}s.  The requests are read by the API, the responses by its clients.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public final class ServerJsonReader {
+
+    private ServerJsonReader() {
+        // static methods only
+    }
+
+    /**
+     * Reads a {@link ServerPostRequest} ({"server":{...}}).
+     * @param parser {@link JsonParser} positioned before the document
+     * @return {@link ServerPostRequest}
+     * @throws IOException if the input can't be read
+     * @throws BadRequestException if the input isn't a valid request document
+     */
+    public static ServerPostRequest readServerPostRequest(final JsonParser parser) throws IOException {
+        ServerPostRequest request = new ServerPostRequest();
+        request.setServer(readServerWrapper(parser, "request"));
+        return request;
+    }
+
+    /**
+     * Reads a {@link ServerGetResponse} ({"server":{...}}).
+     * @param parser {@link JsonParser} positioned before the document
+     * @return {@link ServerGetResponse}
+     * @throws IOException if the input can't be read
+     * @throws BadRequestException if the input isn't a valid response document
+     */
+    public static ServerGetResponse readServerGetResponse(final JsonParser parser) throws IOException {
+        ServerGetResponse response = new ServerGetResponse();
+        response.setServer(readServerWrapper(parser, "response"));
+        return response;
+    }
+
+    /**
+     * Reads a {@link ServerGetListResponse} ({"servers":[...]}).
+     * @param parser {@link JsonParser} positioned before the document
+     * @return {@link ServerGetListResponse}
+     * @throws IOException if the input can't be read
+     * @throws BadRequestException if the input isn't a valid response document
+     */
+    public static ServerGetListResponse readServerGetListResponse(final JsonParser parser) throws IOException {
+        expect(parser.nextToken(), JsonToken.START_OBJECT, "response");
+
+        ServerGetListResponse response = new ServerGetListResponse();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (!ServerJsonWriter.SERVERS.getValue().equals(name)) {
+                throw new BadRequestException("Unrecognized response property: " + name);
+            }
+
+            if (value == JsonToken.VALUE_NULL) {
+                response.setServers(null);
+                continue;
+            }
+
+            expect(value, JsonToken.START_ARRAY, name);
+
+            List<ServerDoc> servers = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                servers.add(readServerDoc(parser));
+            }
+            response.setServers(servers);
+        }
+
+        return response;
+    }
+
+    /**
+     * Reads a document that only wraps a single server ({"server":{...}}).
+     * @param parser {@link JsonParser} positioned before the document
+     * @param what {@link String} the document is, for the error messages
+     * @return {@link ServerDoc} or null if there's none
+     * @throws IOException if the input can't be read
+     * @throws BadRequestException if the input isn't a valid document
+     */
+    private static ServerDoc readServerWrapper(final JsonParser parser, final String what) throws IOException {
+        expect(parser.nextToken(), JsonToken.START_OBJECT, what);
+
+        ServerDoc server = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+
+            if (ServerJsonWriter.SERVER.getValue().equals(name)) {
+                server = readServerDoc(parser);
+            } else {
+                throw new BadRequestException("Unrecognized " + what + " property: " + name);
+            }
+        }
+
+        return server;
+    }
+
+    /**
+     * Reads server documents written one after the other (newline delimited JSON), as they are iterated over.  Only
+     * the parser's own buffer is held on to, so the input can be any size.  Errors in the input are reported with the
+     * line they are on, and so are the violations the validator finds.
+     * @param parser {@link JsonParser} positioned before the first document
+     * @param validator {@link Function} returning the violations of a document, empty if it's valid
+     * @return {@link Iterator}<{@link Server}> read-only, throws a {@link BadRequestException} for invalid input and
+     * an {@link UncheckedIOException} if the input can't be read
+     */
+    public static Iterator<Server> readServerLines(final JsonParser parser,
+                                                   final Function<ServerDoc, List<String>> validator) {
+        return new Iterator<Server>() {
+
+            // whether the parser is on a document that wasn't returned yet
+            private boolean pending;
+
+            @Override
+            public boolean hasNext() {
+                if (!pending) {
+                    pending = null != nextDocument(parser);
+                }
+
+                return pending;
+            }
+
+            @Override
+            public Server next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                pending = false;
+                int line = parser.getCurrentLocation().getLineNr();
+
+                try {
+                    expect(parser.getCurrentToken(), JsonToken.START_OBJECT, "server");
+                    ServerDoc doc = readServerDoc(parser);
+
+                    List<String> violations = validator.apply(doc);
+                    if (!violations.isEmpty()) {
+                        throw new BadRequestException(String.join(",", violations));
+                    }
+
+                    return doc.toDomainObject();
+                } catch (BadRequestException e) {
+                    throw new BadRequestException("Line " + line + ": " + e.getMessage(), e);
+                } catch (JsonProcessingException e) {
+                    throw new BadRequestException("Line " + line + ": " + e.getOriginalMessage(), e);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Moves the parser on to the next document of a sequence.
+     * @param parser {@link JsonParser}
+     * @return {@link JsonToken} the document starts with, or null at the end of the input
+     */
+    private static JsonToken nextDocument(final JsonParser parser) {
+        try {
+            return parser.nextToken();
+        } catch (JsonProcessingException e) {
+            throw new BadRequestException("Line " + parser.getCurrentLocation().getLineNr() + ": "
+                    + e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a single server document.
+     * @param parser {@link JsonParser} positioned on the start of the document
+     * @return {@link ServerDoc} or null if the document is null
+     * @throws IOException if the input can't be read
+     * @throws BadRequestException if the input isn't a valid server document
+     */
+    public static ServerDoc readServerDoc(final JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+
+        expect(parser.getCurrentToken(), JsonToken.START_OBJECT, "server");
+
+        ServerDoc doc = new ServerDoc();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            ServerField field = ServerField.forJsonName(name);
+            JsonToken value = parser.nextToken();
+
+            if (null == field) {
+                throw new BadRequestException("Unrecognized server property: " + name);
+            }
+
+            switch (field) {
+                case ID:
+                    doc.setId(readId(parser, value));
+                    break;
+                case NAME:
+                    doc.setName(readString(parser, value, name));
+                    break;
+                case CPUS:
+                    doc.setCpus(readInteger(parser, value, name));
+                    break;
+                case RAM:
+                    doc.setRam(readInteger(parser, value, name));
+                    break;
+                case DISK_SPACE:
+                    doc.setDiskSpace(readInteger(parser, value, name));
+                    break;
+                case STATE:
+                    doc.setState(readState(parser, value));
+                    break;
+                default:
+                    throw new BadRequestException("Unrecognized server property: " + name);
+            }
+        }
+
+        return doc;
+    }
+
+    /**
+     * Reads a server id, which has to be a canonical UUID string (or, from the binary formats, the 16 raw bytes
+     * Jackson's data binding writes there).
+     * @param parser {@link JsonParser}
+     * @param value {@link JsonToken} the current token
+     * @return {@link UUID} or null
+     * @throws IOException
+     */
+    private static UUID readId(final JsonParser parser, final JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_EMBEDDED_OBJECT) {
+            byte[] bytes = parser.getBinaryValue();
+            if (bytes.length != 16) {
+                throw new BadRequestException("Invalid server identifier: " + bytes.length + " bytes");
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new UUID(buffer.getLong(), buffer.getLong());
+        }
+
+        String id = readString(parser, value, "id");
+
+        if (null == id) {
+            return null;
+        }
+
+        UUID uuid = UuidParser.parse(id);
+        if (null == uuid) {
+            throw new BadRequestException("Invalid server identifier: " + id);
+        }
+
+        return uuid;
+    }
+
+    /**
+     * Reads a server state, which has to match one of the {@link ServerStateDoc} names exactly.
+     * @param parser {@link JsonParser}
+     * @param value {@link JsonToken} the current token
+     * @return {@link ServerStateDoc} or null
+     * @throws IOException
+     */
+    private static ServerStateDoc readState(final JsonParser parser, final JsonToken value) throws IOException {
+        String state = readString(parser, value, "state");
+
+        if (null == state) {
+            return null;
+        }
+
+        for (ServerStateDoc candidate : ServerStateDoc.values()) {
+            if (candidate.name().equals(state)) {
+                return candidate;
+            }
+        }
+
+        throw new BadRequestException("Invalid server state: " + state);
+    }
+
+    /**
+     * Reads a string value.
+     * @param parser {@link JsonParser}
+     * @param value {@link JsonToken} the current token
+     * @param name {@link String} of the property, for the error message
+     * @return {@link String} or null
+     * @throws IOException
+     */
+    private static String readString(
+            final JsonParser parser,
+            final JsonToken value,
+            final String name) throws IOException {
+        switch (value) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return parser.getText();
+            default:
+                throw new BadRequestException("Expected a string for server property: " + name);
+        }
+    }
+
+    /**
+     * Reads an int value, which may be quoted.
+     * @param parser {@link JsonParser}
+     * @param value {@link JsonToken} the current token
+     * @param name {@link String} of the property, for the error message
+     * @return {@link Integer} or null
+     * @throws IOException
+     */
+    private static Integer readInteger(
+            final JsonParser parser,
+            final JsonToken value,
+            final String name) throws IOException {
+        switch (value) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() != JsonParser.NumberType.INT) {
+                    throw new BadRequestException("Number too large for server property: " + name);
+                }
+                return parser.getIntValue();
+            case VALUE_STRING:
+                try {
+                    return Integer.valueOf(parser.getText().trim());
+                } catch (NumberFormatException e) {
+                    throw new BadRequestException("Expected a number for server property: " + name);
+                }
+            default:
+                throw new BadRequestException("Expected a number for server property: " + name);
+        }
+    }
+
+    /**
+     * Makes sure the input has an object where one belongs.
+     * @param actual {@link JsonToken}
+     * @param expected {@link JsonToken}
+     * @param what {@link String} the object is, for the error message
+     */
+    private static void expect(final JsonToken actual, final JsonToken expected, final String what) {
+        if (actual != expected) {
+            throw new BadRequestException("Expected " + expected + " for the " + what + " but got: " + actual);
+        }
+    }
+}
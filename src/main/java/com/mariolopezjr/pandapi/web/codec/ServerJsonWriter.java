@@ -0,0 +1,336 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.exception.NonCorrespondingValueException;
+import com.mariolopezjr.pandapi.web.document.server.ServerDoc;
+import com.mariolopezjr.pandapi.web.document.server.ServerGetListResponse;
+import com.mariolopezjr.pandapi.web.document.server.ServerGetResponse;
+import com.mariolopezjr.pandapi.web.document.server.ServerImportResponse;
+import com.mariolopezjr.pandapi.web.document.server.ServerPostRequest;
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Writes server resources as JSON directly from the domain objects, producing exactly what Jackson's data binding
+ * would for the {@link com.mariolopezjr.pandapi.web.document.server.ServerDoc} based documents, minus the documents.
+ * The generator can be for any of the {@link ServerFormat}s, the binary ones just encode the same tokens differently.
+ * <br/>
+ *
+ * Nothing is looked up by reflection: property names and state names are encoded once up front, and the numbers are
+ * written straight from the primitives.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public final class ServerJsonWriter {
+
+    // wrapper properties of the response documents
+    static final SerializableString SERVER = new SerializedString("server");
+    static final SerializableString SERVERS = new SerializedString("servers");
+    static final SerializableString IMPORTED = new SerializedString("imported");
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // state names are the same few strings over and over
+    private static final Map<ServerStateDoc, SerializableString> STATE_NAMES = new EnumMap<>(ServerStateDoc.class);
+
+    static {
+        for (ServerStateDoc state : ServerStateDoc.values()) {
+            STATE_NAMES.put(state, new SerializedString(state.name()));
+        }
+    }
+
+    private ServerJsonWriter() {
+        // static methods only
+    }
+
+    /**
+     * Creates a UTF-8 generator for the specified stream.  The stream isn't closed when the generator is.
+     * @param out {@link OutputStream}
+     * @return {@link JsonGenerator}
+     * @throws IOException
+     */
+    public static JsonGenerator createGenerator(final OutputStream out) throws IOException {
+        return ServerFormat.JSON.createGenerator(out);
+    }
+
+    /**
+     * Writes the list response ({"servers":[...]}), one server at a time.  Nothing but the generator's own buffer is
+     * held on to, so memory use doesn't depend on the number of servers.
+     * @param generator {@link JsonGenerator}
+     * @param servers {@link Iterator}<{@link Server}>
+     * @param fields {@link Set}<{@link ServerField}> properties to write for each server
+     * @throws IOException
+     */
+    public static void writeServerList(
+            final JsonGenerator generator,
+            final Iterator<Server> servers,
+            final Set<ServerField> fields) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(SERVERS);
+        generator.writeStartArray();
+
+        while (servers.hasNext()) {
+            writeServer(generator, servers.next(), fields);
+        }
+
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes every server as its own document on its own line (newline delimited JSON), one server at a time.  Like
+     * {@link #writeServerList(JsonGenerator, Iterator, Set)}, memory use doesn't depend on the number of servers.
+     * @param generator {@link JsonGenerator} for JSON, the binary formats have no lines
+     * @param servers {@link Iterator}<{@link Server}>
+     * @throws IOException
+     */
+    public static void writeServerLines(final JsonGenerator generator, final Iterator<Server> servers)
+            throws IOException {
+        // the newline goes after every document, not just in between them
+        generator.setRootValueSeparator(null);
+
+        while (servers.hasNext()) {
+            writeServer(generator, servers.next(), ServerField.ALL);
+            generator.writeRaw('\n');
+        }
+    }
+
+    /**
+     * Writes a single server document ({"id":...,"name":...}).
+     * @param generator {@link JsonGenerator}
+     * @param server {@link Server}
+     * @param fields {@link Set}<{@link ServerField}> properties to write
+     * @throws IOException
+     */
+    public static void writeServer(
+            final JsonGenerator generator,
+            final Server server,
+            final Set<ServerField> fields) throws IOException {
+        generator.writeStartObject();
+
+        // in declaration order, same as the document
+        for (ServerField field : fields) {
+            generator.writeFieldName(field.getSerializedName());
+
+            switch (field) {
+                case ID:
+                    writeId(generator, server.getId());
+                    break;
+                case NAME:
+                    generator.writeString(server.getName());
+                    break;
+                case CPUS:
+                    generator.writeNumber(server.getCpus());
+                    break;
+                case RAM:
+                    generator.writeNumber(server.getRam());
+                    break;
+                case DISK_SPACE:
+                    generator.writeNumber(server.getDiskSpace());
+                    break;
+                case STATE:
+                    generator.writeString(STATE_NAMES.get(ServerStateDoc.fromDomainObject(server.getState())));
+                    break;
+                default:
+                    throw new NonCorrespondingValueException("Unknown server field: " + field);
+            }
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a {@link ServerGetResponse} ({"server":{...}}).
+     * @param generator {@link JsonGenerator}
+     * @param response {@link ServerGetResponse}
+     * @throws IOException
+     */
+    public static void writeServerGetResponse(
+            final JsonGenerator generator,
+            final ServerGetResponse response) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(SERVER);
+        writeServerDoc(generator, response.getServer());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a {@link ServerPostRequest} ({"server":{...}}).
+     * @param generator {@link JsonGenerator}
+     * @param request {@link ServerPostRequest}
+     * @throws IOException
+     */
+    public static void writeServerPostRequest(
+            final JsonGenerator generator,
+            final ServerPostRequest request) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(SERVER);
+        writeServerDoc(generator, request.getServer());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a {@link ServerImportResponse} ({"imported":...}).
+     * @param generator {@link JsonGenerator}
+     * @param response {@link ServerImportResponse}
+     * @throws IOException
+     */
+    public static void writeServerImportResponse(
+            final JsonGenerator generator,
+            final ServerImportResponse response) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(IMPORTED);
+        generator.writeNumber(response.getImported());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a {@link ServerGetListResponse} ({"servers":[...]}).
+     * @param generator {@link JsonGenerator}
+     * @param response {@link ServerGetListResponse}
+     * @throws IOException
+     */
+    public static void writeServerGetListResponse(
+            final JsonGenerator generator,
+            final ServerGetListResponse response) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(SERVERS);
+
+        if (null == response.getServers()) {
+            generator.writeNull();
+        } else {
+            generator.writeStartArray();
+            for (ServerDoc doc : response.getServers()) {
+                writeServerDoc(generator, doc);
+            }
+            generator.writeEndArray();
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a single server document, the same way Jackson's data binding does (i.e. unset properties are null).
+     * @param generator {@link JsonGenerator}
+     * @param doc {@link ServerDoc} may be null
+     * @throws IOException
+     */
+    public static void writeServerDoc(final JsonGenerator generator, final ServerDoc doc) throws IOException {
+        if (null == doc) {
+            generator.writeNull();
+            return;
+        }
+
+        generator.writeStartObject();
+
+        generator.writeFieldName(ServerField.ID.getSerializedName());
+        writeId(generator, doc.getId());
+
+        generator.writeFieldName(ServerField.NAME.getSerializedName());
+        generator.writeString(doc.getName());
+
+        generator.writeFieldName(ServerField.CPUS.getSerializedName());
+        writeNumber(generator, doc.getCpus());
+
+        generator.writeFieldName(ServerField.RAM.getSerializedName());
+        writeNumber(generator, doc.getRam());
+
+        generator.writeFieldName(ServerField.DISK_SPACE.getSerializedName());
+        writeNumber(generator, doc.getDiskSpace());
+
+        generator.writeFieldName(ServerField.STATE.getSerializedName());
+        if (null == doc.getState()) {
+            generator.writeNull();
+        } else {
+            generator.writeString(STATE_NAMES.get(doc.getState()));
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes an optional server id in its canonical form.  The characters are filled in directly, the same way
+     * Jackson's own UUID serializer does it, because {@link UUID#toString()} builds several intermediate strings per
+     * id.
+     * @param generator {@link JsonGenerator}
+     * @param id {@link UUID} may be null
+     * @throws IOException
+     */
+    private static void writeId(final JsonGenerator generator, final UUID id) throws IOException {
+        if (null == id) {
+            generator.writeNull();
+            return;
+        }
+
+        char[] chars = new char[36];
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+
+        // 8-4-4-4-12
+        appendHex(chars, 0, (int) (msb >>> 32), 8);
+        chars[8] = '-';
+        appendHex(chars, 9, (int) (msb >>> 16), 4);
+        chars[13] = '-';
+        appendHex(chars, 14, (int) msb, 4);
+        chars[18] = '-';
+        appendHex(chars, 19, (int) (lsb >>> 48), 4);
+        chars[23] = '-';
+        appendHex(chars, 24, (int) (lsb >>> 32), 4);
+        appendHex(chars, 28, (int) lsb, 8);
+
+        generator.writeString(chars, 0, chars.length);
+    }
+
+    /**
+     * Fills in the lowest digits of a value as lower case hex, most significant first.
+     * @param chars char[] to fill in
+     * @param offset int of the first digit
+     * @param value int
+     * @param digits int number of digits
+     */
+    private static void appendHex(final char[] chars, final int offset, final int value, final int digits) {
+        for (int i = 0; i < digits; i++) {
+            chars[offset + i] = HEX_DIGITS[(value >>> ((digits - 1 - i) << 2)) & 0xF];
+        }
+    }
+
+    /**
+     * Writes an optional number.
+     * @param generator {@link JsonGenerator}
+     * @param value {@link Integer} may be null
+     * @throws IOException
+     */
+    private static void writeNumber(final JsonGenerator generator, final Integer value) throws IOException {
+        if (null == value) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value.intValue());
+        }
+    }
+}
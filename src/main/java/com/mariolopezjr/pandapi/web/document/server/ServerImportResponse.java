@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.document.server;
+
+/**
+ * The data model for the response to an import of server resources.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ServerImportResponse {
+
+    private long imported;
+
+    /**
+     * Creates a new instance of this document.
+     * @param imported long the number of servers imported
+     * @return {@link ServerImportResponse}
+     */
+    public static ServerImportResponse of(final long imported) {
+        ServerImportResponse doc = new ServerImportResponse();
+        doc.setImported(imported);
+        return doc;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+}
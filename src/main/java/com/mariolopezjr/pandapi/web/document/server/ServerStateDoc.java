@@ -48,6 +48,16 @@ public enum ServerStateDoc {
         }
     }
 
+    /**
+     * Returns true if a server in the provided domain object state is displayed to the client as this state (e.g.
+     * both {@link ServerState#TERMINATING} and {@link ServerState#DESTROYED} are shown as {@link #Destroyed}).
+     * @param domainObject {@link ServerState}
+     * @return boolean
+     */
+    public boolean matches(final ServerState domainObject) {
+        return domainObject != null && fromDomainObject(domainObject) == this;
+    }
+
     /**
      * Returns an enum of type {@link ServerState} for the corresponding value of this enum instance.
      * @return {@link ServerState}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.events;
+
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc;
+
+import java.util.UUID;
+
+/**
+ * A single server event that has already been serialized into a complete Server-Sent Events frame.  The frame is
+ * shared by every subscriber the event is sent to, so it must never be modified.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+final class ServerEvent {
+
+    // sequence number of the event, sent to the client as the SSE "id"
+    private final long id;
+
+    // the server and its version (see Server#getVersion()) the event is about
+    private final UUID serverId;
+    private final long serverVersion;
+
+    // state of the server as the client sees it, used for filtering
+    private final ServerStateDoc state;
+
+    // the whole "id: ...\nevent: ...\ndata: ...\n\n" frame in UTF-8
+    private final byte[] frame;
+
+    /**
+     * Constructor
+     * @param id long
+     * @param serverId {@link UUID}
+     * @param serverVersion long
+     * @param state {@link ServerStateDoc}
+     * @param frame byte[]
+     */
+    ServerEvent(
+            final long id,
+            final UUID serverId,
+            final long serverVersion,
+            final ServerStateDoc state,
+            final byte[] frame) {
+        this.id = id;
+        this.serverId = serverId;
+        this.serverVersion = serverVersion;
+        this.state = state;
+        this.frame = frame;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    UUID getServerId() {
+        return serverId;
+    }
+
+    long getServerVersion() {
+        return serverVersion;
+    }
+
+    ServerStateDoc getState() {
+        return state;
+    }
+
+    byte[] getFrame() {
+        return frame;
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.events;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mariolopezjr.pandapi.dao.ServerChangeListener;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.exception.InternalException;
+import com.mariolopezjr.pandapi.web.codec.ServerJsonWriter;
+import com.mariolopezjr.pandapi.web.document.server.ServerGetResponse;
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns server resource changes from the DAO into Server-Sent Events and fans them out to every connected client.
+ * <br/><br/>
+ *
+ * Each event is serialized exactly once into a complete SSE frame which is then shared by all of the subscribers.
+ * All of the sequencing, history, and fan-out work happens on a single dispatcher thread, so the threads that change
+ * servers only pay for a hand-off, and a subscriber can never miss an event between its history replay and the live
+ * stream.  The last few events are kept so reconnecting clients can resume with "Last-Event-ID".<br/><br/>
+ *
+ * The DAO tells its listeners about a change after it's stored, so the notifications of two quick changes of the same
+ * server can come in the wrong way around.  The dispatcher remembers the last version it published of every server and
+ * drops any event for an older one, otherwise clients would end up with a stale state.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ServerEventBroadcaster implements ServerChangeListener {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(ServerEventBroadcaster.class);
+
+    // base path for all of the config values for this class
+    private static final String CONFIG_BASE_PATH = "webServer/events/";
+
+    // SSE event names
+    static final String CREATED = "created";
+    static final String STATE_CHANGED = "stateChanged";
+    static final String PURGED = "purged";
+    static final String RESYNC = "resync";
+
+    // comment line that keeps idle connections (and any proxies in between) from timing out
+    static final byte[] HEARTBEAT = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+
+    // tells the client that events were missed and it should reload the list of servers
+    static final byte[] RESYNC_FRAME = ("event: " + RESYNC + "\ndata: {}\n\n").getBytes(StandardCharsets.UTF_8);
+
+    // how long EventSource clients should wait before reconnecting, sent once at the start of the stream
+    private static final byte[] RETRY_FRAME = "retry: 2000\n\n".getBytes(StandardCharsets.UTF_8);
+
+    // purged servers remembered, so a late notification of an older version doesn't bring them back
+    private static final int MAX_PURGED_VERSIONS = 10_000;
+
+    // every connected client
+    private final Set<ServerEventSubscriber> subscribers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    // where all of the sequencing and fan-out happens
+    private final Executor dispatcher;
+
+    // only non-null when we own the dispatcher
+    private final ScheduledExecutorService scheduler;
+
+    // number of frames each client can have waiting before it gets dropped, clients keep the size they started with
+    private volatile int subscriberBufferSize;
+
+    // sends the heartbeats, only non-null when we own the dispatcher
+    private ScheduledFuture<?> heartbeatTask;
+    private long heartbeatInterval;
+
+    // ring buffer of recent events, only touched by the dispatcher thread
+    private ServerEvent[] history;
+    private int historyHead;
+    private int historySize;
+
+    // sequence number of the last event, only touched by the dispatcher thread
+    private long lastEventId;
+
+    // server id -> last version published of every server, only touched by the dispatcher thread
+    private final Map<UUID, Long> lastVersions = new HashMap<>();
+
+    // server id -> version of the servers purged lately, only touched by the dispatcher thread
+    private final Map<UUID, Long> purgedVersions = new LinkedHashMap<UUID, Long>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<UUID, Long> eldest) {
+            return size() > MAX_PURGED_VERSIONS;
+        }
+    };
+
+    /**
+     * Constructor
+     * @param config {@link Configuration}
+     */
+    public ServerEventBroadcaster(final Configuration config) {
+        this.history = new ServerEvent[config.getInt(CONFIG_BASE_PATH + "historySize", 1_024)];
+        this.subscriberBufferSize = config.getInt(CONFIG_BASE_PATH + "subscriberBufferSize", 256);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("server-events").setDaemon(true).build());
+        this.dispatcher = scheduler;
+
+        scheduleHeartbeat(config.getLong(CONFIG_BASE_PATH + "heartbeatInterval", 15_000L));
+    }
+
+    /**
+     * Constructor for the unit test to call.  Purposely has package level scope.
+     * @param historySize int
+     * @param subscriberBufferSize int
+     * @param dispatcher {@link Executor} should run tasks one at a time, in order
+     */
+    ServerEventBroadcaster(final int historySize, final int subscriberBufferSize, final Executor dispatcher) {
+        this.history = new ServerEvent[historySize];
+        this.subscriberBufferSize = subscriberBufferSize;
+        this.dispatcher = dispatcher;
+        this.scheduler = null;
+    }
+
+    /**
+     * Applies changed settings.  The history keeps as many of the most recent events as fit, and the new buffer size
+     * only applies to clients that connect from now on.
+     * @param config {@link Configuration}
+     */
+    public void reconfigure(final Configuration config) {
+        int historySize = config.getInt(CONFIG_BASE_PATH + "historySize", 1_024);
+        subscriberBufferSize = config.getInt(CONFIG_BASE_PATH + "subscriberBufferSize", 256);
+
+        dispatcher.execute(() -> resizeHistory(historySize));
+
+        if (scheduler != null) {
+            scheduleHeartbeat(config.getLong(CONFIG_BASE_PATH + "heartbeatInterval", 15_000L));
+        }
+    }
+
+    /**
+     * Sends the heartbeats at the specified interval, replacing the previous schedule if it's different.
+     * @param interval long milliseconds
+     */
+    private synchronized void scheduleHeartbeat(final long interval) {
+        if (heartbeatTask != null) {
+            if (interval == heartbeatInterval) {
+                return;
+            }
+
+            heartbeatTask.cancel(false);
+        }
+
+        heartbeatInterval = interval;
+        heartbeatTask = scheduler.scheduleWithFixedDelay(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Changes how many events are kept, keeping the most recent ones.  Only called on the dispatcher thread.
+     * @param size int
+     */
+    private void resizeHistory(final int size) {
+        if (size == history.length) {
+            return;
+        }
+
+        ServerEvent[] resized = new ServerEvent[size];
+        int kept = Math.min(size, historySize);
+        for (int i = 0; i < kept; i++) {
+            resized[i] = history[(historyHead + historySize - kept + i) % history.length];
+        }
+
+        history = resized;
+        historyHead = 0;
+        historySize = kept;
+    }
+
+    /**
+     * Starts streaming events to a client.  The request must already be in async mode.
+     * @param asyncContext {@link AsyncContext} of the client request, should have no timeout
+     * @param out {@link ServletOutputStream} of the response
+     * @param stateFilter {@link ServerStateDoc} only send events for servers in this state, null for all events
+     * @param lastEventId {@link Long} the last event the client received, null for a new client
+     */
+    public void subscribe(
+            final AsyncContext asyncContext,
+            final ServletOutputStream out,
+            final ServerStateDoc stateFilter,
+            final Long lastEventId) {
+        final ServerEventSubscriber subscriber =
+                new ServerEventSubscriber(this, asyncContext, out, stateFilter, subscriberBufferSize);
+        subscriber.offer(RETRY_FRAME);
+
+        asyncContext.addListener(subscriber);
+
+        // the container calls onWritePossible() right away, which sends the headers and the retry frame
+        out.setWriteListener(subscriber);
+
+        dispatcher.execute(() -> {
+            if (lastEventId != null) {
+                replay(subscriber, lastEventId);
+            }
+
+            subscribers.add(subscriber);
+
+            // the client may have gone away (or been dropped during the replay) before it was added
+            if (subscriber.isClosed()) {
+                subscribers.remove(subscriber);
+                return;
+            }
+
+            subscriber.drain();
+
+            LOG.debug("Event stream client subscribed, {} connected", subscribers.size());
+        });
+    }
+
+    /**
+     * Stops sending events to the specified client.
+     * @param subscriber {@link ServerEventSubscriber}
+     */
+    void unsubscribe(final ServerEventSubscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            LOG.debug("Event stream client unsubscribed, {} connected", subscribers.size());
+        }
+    }
+
+    /**
+     * Returns the number of connected clients.
+     * @return int
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Stops the dispatcher thread.  Connected clients are left to the container to close.
+     */
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serverCreated(final Server server) {
+        dispatcher.execute(() -> publish(CREATED, server));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serverUpdated(final Server previous, final Server current) {
+        // clients only see the document states, so e.g. TERMINATING -> DESTROYED isn't a transition for them
+        if (previous.getState() != current.getState()
+                && ServerStateDoc.fromDomainObject(previous.getState())
+                    != ServerStateDoc.fromDomainObject(current.getState())) {
+            dispatcher.execute(() -> publish(STATE_CHANGED, current));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serverDeleted(final Server server) {
+        dispatcher.execute(() -> publish(PURGED, server));
+    }
+
+    /**
+     * Serializes the event, adds it to the history, and hands it to every interested subscriber, unless a newer
+     * version of the server was already published.  Only called on the dispatcher thread.
+     * @param eventName {@link String}
+     * @param server {@link Server}
+     */
+    private void publish(final String eventName, final Server server) {
+        if (!isNewest(eventName, server)) {
+            LOG.debug("Dropping {} event for {}, a newer version was already published", eventName, server);
+            return;
+        }
+
+        ServerEvent event;
+        try {
+            event = new ServerEvent(++lastEventId, server.getId(), server.getVersion(),
+                    ServerStateDoc.fromDomainObject(server.getState()), toFrame(eventName, server));
+        } catch (RuntimeException e) {
+            // an event we can't build shouldn't take the dispatcher thread down with it
+            LOG.error("Unable to publish {} event for {}", eventName, server, e);
+            return;
+        }
+
+        // remember it for clients that reconnect
+        history[(historyHead + historySize) % history.length] = event;
+        if (historySize < history.length) {
+            historySize++;
+        } else {
+            historyHead = (historyHead + 1) % history.length;
+        }
+
+        for (ServerEventSubscriber subscriber : subscribers) {
+            if (subscriber.accepts(event)) {
+                send(subscriber, event.getFrame());
+            }
+        }
+    }
+
+    /**
+     * Returns whether the server is newer than the last version published of it, and if so, remembers it as the last
+     * one.  Only called on the dispatcher thread.
+     * @param eventName {@link String}
+     * @param server {@link Server}
+     * @return boolean
+     */
+    private boolean isNewest(final String eventName, final Server server) {
+        UUID id = server.getId();
+        Long lastVersion = lastVersions.get(id);
+        if (null == lastVersion) {
+            lastVersion = purgedVersions.get(id);
+        }
+
+        if (lastVersion != null && lastVersion >= server.getVersion()) {
+            return false;
+        }
+
+        if (PURGED.equals(eventName)) {
+            lastVersions.remove(id);
+            purgedVersions.put(id, server.getVersion());
+        } else {
+            // a newer version than the purged one, e.g. imported again
+            purgedVersions.remove(id);
+            lastVersions.put(id, server.getVersion());
+        }
+
+        return true;
+    }
+
+    /**
+     * Queues the events the client missed since the specified event.  Only called on the dispatcher thread.
+     * @param subscriber {@link ServerEventSubscriber}
+     * @param lastSeenId long
+     */
+    private void replay(final ServerEventSubscriber subscriber, final long lastSeenId) {
+        long oldestId = historySize == 0 ? lastEventId + 1 : history[historyHead].getId();
+
+        // ids start over when the server restarts, and the history only goes back so far
+        if (lastSeenId > lastEventId || lastSeenId < oldestId - 1) {
+            subscriber.offer(RESYNC_FRAME);
+        }
+
+        for (int i = 0; i < historySize; i++) {
+            ServerEvent event = history[(historyHead + i) % history.length];
+
+            if (event.getId() > lastSeenId && subscriber.accepts(event)) {
+                if (!subscriber.offer(event.getFrame())) {
+                    // more missed events than the client can buffer, it'll have to reload the list instead
+                    subscriber.close();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a comment to every subscriber so idle connections stay open and dead ones get noticed.
+     */
+    void heartbeat() {
+        for (ServerEventSubscriber subscriber : subscribers) {
+            send(subscriber, HEARTBEAT);
+        }
+    }
+
+    /**
+     * Queues and writes the frame, dropping the subscriber if it has fallen too far behind.
+     * @param subscriber {@link ServerEventSubscriber}
+     * @param frame byte[]
+     */
+    private void send(final ServerEventSubscriber subscriber, final byte[] frame) {
+        if (subscriber.offer(frame)) {
+            subscriber.drain();
+        } else {
+            LOG.debug("Dropping event stream client with {} events waiting", subscriber.getBacklog());
+            subscriber.close();
+        }
+    }
+
+    /**
+     * Builds the complete SSE frame for an event.
+     * @param eventName {@link String}
+     * @param server {@link Server}
+     * @return byte[]
+     */
+    private byte[] toFrame(final String eventName, final Server server) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(256);
+
+        try {
+            frame.write(("id: " + lastEventId + "\nevent: " + eventName + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+
+            // the same document as a GET of the server, and never pretty printed, so it's all on a single line
+            try (JsonGenerator generator = ServerJsonWriter.createGenerator(frame)) {
+                ServerJsonWriter.writeServerGetResponse(generator, ServerGetResponse.fromDomainObject(server));
+            }
+
+            frame.write('\n');
+            frame.write('\n');
+        } catch (IOException e) {
+            throw new InternalException("Unable to serialize server event", e);
+        }
+
+        return frame.toByteArray();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.events;
+
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+
+/**
+ * One client connected to the event stream.  Frames are queued in a small fixed size buffer and written with
+ * non-blocking I/O whenever the connection can take more.  If the client falls so far behind that the buffer fills
+ * up, it is disconnected instead of being allowed to hold on to an ever growing backlog; it can reconnect with
+ * "Last-Event-ID" to resume from the broadcaster's history.<br/>
+ *
+ * All of the buffer and output stream access happens while holding this instance's lock, since both the broadcaster
+ * thread and Jetty's {@link WriteListener} callbacks write to the connection.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ServerEventSubscriber implements WriteListener, AsyncListener {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(ServerEventSubscriber.class);
+
+    private final ServerEventBroadcaster broadcaster;
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream out;
+
+    // only events for servers in this state are sent (null means everything)
+    private final ServerStateDoc stateFilter;
+
+    // ring buffer of frames waiting to be written
+    private final byte[][] buffer;
+    private int head;
+    private int size;
+
+    private boolean closed;
+
+    /**
+     * Constructor
+     * @param broadcaster {@link ServerEventBroadcaster} to unsubscribe from when the connection goes away
+     * @param asyncContext {@link AsyncContext} of the suspended request
+     * @param out {@link ServletOutputStream} of the response
+     * @param stateFilter {@link ServerStateDoc} may be null
+     * @param capacity int number of frames that can be waiting before the client is dropped
+     */
+    ServerEventSubscriber(
+            final ServerEventBroadcaster broadcaster,
+            final AsyncContext asyncContext,
+            final ServletOutputStream out,
+            final ServerStateDoc stateFilter,
+            final int capacity) {
+        this.broadcaster = broadcaster;
+        this.asyncContext = asyncContext;
+        this.out = out;
+        this.stateFilter = stateFilter;
+        this.buffer = new byte[capacity][];
+    }
+
+    /**
+     * Returns true if this client wants the specified event.
+     * @param event {@link ServerEvent}
+     * @return boolean
+     */
+    boolean accepts(final ServerEvent event) {
+        return stateFilter == null || stateFilter == event.getState();
+    }
+
+    /**
+     * Queues a frame to be written.  This doesn't write anything, call {@link #drain()} after queueing.
+     * @param frame byte[]
+     * @return boolean false if the buffer was full (i.e. the client is lagging and should be dropped)
+     */
+    synchronized boolean offer(final byte[] frame) {
+        if (closed) {
+            return true;
+        }
+
+        if (size == buffer.length) {
+            return false;
+        }
+
+        buffer[(head + size) % buffer.length] = frame;
+        size++;
+        return true;
+    }
+
+    /**
+     * Writes as many of the queued frames as the connection can take without blocking.  If the connection can't take
+     * any more, Jetty calls {@link #onWritePossible()} once it can.
+     */
+    synchronized void drain() {
+        try {
+            // the response buffer is turned off, so every write goes straight to the connection
+            while (!closed && size > 0 && out.isReady()) {
+                byte[] frame = buffer[head];
+                buffer[head] = null;
+                head = (head + 1) % buffer.length;
+                size--;
+
+                out.write(frame);
+            }
+        } catch (IOException | IllegalStateException e) {
+            LOG.debug("Unable to write to event stream client, disconnecting", e);
+            close();
+        }
+    }
+
+    /**
+     * Number of frames waiting to be written.
+     * @return int
+     */
+    synchronized int getBacklog() {
+        return size;
+    }
+
+    /**
+     * Ends the response (if it hasn't already ended) and stops receiving events.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        size = 0;
+        broadcaster.unsubscribe(this);
+
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            // already completed by the container (e.g. the client went away)
+        }
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onWritePossible() {
+        drain();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onError(Throwable t) {
+        close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onComplete(AsyncEvent event) {
+        close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onError(AsyncEvent event) {
+        close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+        // nothing to do
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.events;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mariolopezjr.pandapi.web.document.ErrorMessageDoc;
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc;
+import com.mariolopezjr.pandapi.web.limit.ConcurrencyLimitFilter;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+
+/**
+ * Servlet for the GET /v1/servers/events Server-Sent Events stream.  Each request is put in async mode with no
+ * timeout and handed to the {@link ServerEventBroadcaster}, so the request thread goes straight back to the pool.
+ * <br/><br/>
+ *
+ * Optional query parameters: "state" to only receive events for servers in that state, and "lastEventId" as an
+ * alternative to the "Last-Event-ID" header for clients that can't set headers.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ServerEventsServlet extends HttpServlet {
+
+    // header EventSource clients send when they reconnect
+    static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    // media type of the stream
+    static final String EVENT_STREAM = "text/event-stream";
+
+    // thread safe once configured
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final transient ServerEventBroadcaster broadcaster;
+
+    /**
+     * Constructor
+     * @param broadcaster {@link ServerEventBroadcaster}
+     */
+    public ServerEventsServlet(final ServerEventBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ServerStateDoc stateFilter = null;
+        String state = request.getParameter("state");
+
+        if (state != null) {
+            stateFilter = parseState(state);
+
+            if (null == stateFilter) {
+                sendBadRequest(response, "Invalid server state to filter on: " + state);
+                return;
+            }
+        }
+
+        String lastEventId = request.getHeader(LAST_EVENT_ID_HEADER);
+        if (null == lastEventId) {
+            lastEventId = request.getParameter("lastEventId");
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(EVENT_STREAM);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+
+        // don't let frames sit in the container's buffer waiting for more data, a flush() would be needed after every
+        // write otherwise and async flushes are a lot more fragile than async writes
+        response.setBufferSize(1);
+
+        // park the request, the stream stays open until the client goes away or is dropped
+        request.setAttribute(ConcurrencyLimitFilter.PARKED, Boolean.TRUE);
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(0);
+
+        broadcaster.subscribe(asyncContext, response.getOutputStream(), stateFilter, parseEventId(lastEventId));
+    }
+
+    /**
+     * Converts the client provided state name to a {@link ServerStateDoc}.
+     * @param state {@link String}
+     * @return {@link ServerStateDoc} or null if the name doesn't match any state
+     */
+    private static ServerStateDoc parseState(final String state) {
+        for (ServerStateDoc value : ServerStateDoc.values()) {
+            if (value.name().equalsIgnoreCase(state)) {
+                return value;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Converts the client provided event id to a number.  Garbage is treated as if the client didn't send one, since
+     * the worst that can happen is the client misses a few events it can get by reloading the list.
+     * @param eventId {@link String} may be null
+     * @return {@link Long} or null
+     */
+    static Long parseEventId(final String eventId) {
+        if (null == eventId || eventId.isEmpty()) {
+            return null;
+        }
+
+        long value = 0;
+        for (int i = 0; i < eventId.length(); i++) {
+            char c = eventId.charAt(i);
+
+            if (c < '0' || c > '9' || value > (Long.MAX_VALUE - 9) / 10) {
+                return null;
+            }
+
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+
+    /**
+     * Writes a 400 response with the same JSON error document the API uses.
+     * @param response {@link HttpServletResponse}
+     * @param message {@link String}
+     * @throws IOException
+     */
+    private static void sendBadRequest(final HttpServletResponse response, final String message) throws IOException {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        response.setContentType(MediaType.APPLICATION_JSON);
+        MAPPER.writeValue(response.getOutputStream(), ErrorMessageDoc.message(message));
+    }
+}
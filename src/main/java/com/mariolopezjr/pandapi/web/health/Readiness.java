@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.health;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Keeps track of which parts of the application are up.  The application is only ready to serve requests once all of
+ * them are, and stops being ready as soon as any of them goes down again (e.g. while shutting down).
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class Readiness {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(Readiness.class);
+
+    /**
+     * The parts of the application that have to be up.
+     */
+    public enum Component {
+        // Jetty is started and listening
+        WEB_SERVER("webServer"),
+        // Jersey and the dependency injection are initialized
+        INJECTION("injection"),
+        // the data store exists and changes are being published
+        DATA_STORE("dataStore"),
+        // the cluster has a leader, this node joined the partitions, or the replica caught up with its primary (always
+        // up when the data store is only local)
+        CLUSTER("cluster");
+
+        private final String key;
+
+        Component(final String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    // guarded by this
+    private final Set<Component> ready = EnumSet.noneOf(Component.class);
+
+    /**
+     * Marks a component as up.  Logs how long it took from the JVM starting once the last one is.
+     * @param component {@link Component}
+     */
+    public void setReady(final Component component) {
+        boolean nowReady;
+
+        synchronized (this) {
+            nowReady = ready.add(component) && ready.size() == Component.values().length;
+        }
+
+        if (nowReady) {
+            LOG.info("Ready to serve requests {}ms after the JVM started",
+                    ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+    }
+
+    /**
+     * Marks a component as down.
+     * @param component {@link Component}
+     */
+    public synchronized void setNotReady(final Component component) {
+        ready.remove(component);
+    }
+
+    /**
+     * Returns whether every component is up.
+     * @return boolean
+     */
+    public synchronized boolean isReady() {
+        return ready.size() == Component.values().length;
+    }
+
+    /**
+     * Returns the components that aren't up.
+     * @return {@link Set}<{@link Component}> a copy, empty if the application is ready
+     */
+    public synchronized Set<Component> getNotReady() {
+        Set<Component> notReady = EnumSet.allOf(Component.class);
+        notReady.removeAll(ready);
+
+        return notReady;
+    }
+}
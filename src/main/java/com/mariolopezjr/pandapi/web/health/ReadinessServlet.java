@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.health;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * Servlet for GET /health/ready, which returns a 200 once the application is ready to serve requests and a 503
+ * (listing what it's still waiting for) before that and while shutting down.  It's outside of the APIs (and the
+ * concurrency limit), so it answers right away even while Jersey is still starting up.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ReadinessServlet extends HttpServlet {
+
+    private final transient Readiness readiness;
+
+    /**
+     * Constructor
+     * @param readiness {@link Readiness}
+     */
+    public ReadinessServlet(final Readiness readiness) {
+        this.readiness = readiness;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Set<Readiness.Component> notReady = readiness.getNotReady();
+
+        response.setStatus(notReady.isEmpty() ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+
+        // only a few fixed strings, not worth a generator
+        StringBuilder json = new StringBuilder("{\"ready\":").append(notReady.isEmpty());
+        if (!notReady.isEmpty()) {
+            json.append(",\"waitingFor\":[");
+            String separator = "";
+            for (Readiness.Component component : notReady) {
+                json.append(separator).append('"').append(component.getKey()).append('"');
+                separator = ",";
+            }
+            json.append(']');
+        }
+        json.append('}');
+
+        Writer writer = response.getWriter();
+        writer.write(json.toString());
+        writer.flush();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.idempotency;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.mariolopezjr.pandapi.data.server.Server;
+import com.mariolopezjr.pandapi.exception.BadRequestException;
+import com.mariolopezjr.pandapi.exception.InternalException;
+import org.apache.commons.configuration.Configuration;
+
+import javax.inject.Inject;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the servers created with an "Idempotency-Key" header, so a client that retries a create (e.g. after its
+ * connection broke before the response came back) gets the server that was already created instead of a second one.
+ * A retry that comes in while the first request is still being handled waits for it.  A create that fails isn't
+ * remembered, so it can be retried with the same key.<br/>
+ *
+ * The keys are only kept in this node's memory, for a limited time and up to a limited number of them, so a retry
+ * sent to another node (or after a restart) creates the server again.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class IdempotencyKeys {
+
+    // the header the clients send the key in
+    public static final String HEADER = "Idempotency-Key";
+
+    // base path for all of the config values for this class
+    private static final String CONFIG_BASE_PATH = "webServer/idempotency/";
+
+    // the keys are picked by the clients, but nothing they'd generate on purpose is longer than this
+    static final int MAX_KEY_LENGTH = 255;
+
+    private final Cache<String, CreatedServer> createdServers;
+
+    /**
+     * Constructor. Except in unit tests, this should never be called directly. Instead, use injection.
+     * @param config {@link Configuration}
+     */
+    @Inject
+    public IdempotencyKeys(final Configuration config) {
+        this(config.getLong(CONFIG_BASE_PATH + "maxKeys", 10_000),
+                config.getLong(CONFIG_BASE_PATH + "expireAfter", TimeUnit.DAYS.toMillis(1)));
+    }
+
+    /**
+     * Constructor for the unit test to call.  Purposely has package level scope.
+     * @param maxKeys long number of keys to remember at most, the least recently used ones are forgotten first
+     * @param expireAfterMillis long how long to remember a key for
+     */
+    IdempotencyKeys(final long maxKeys, final long expireAfterMillis) {
+        this.createdServers = CacheBuilder.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(expireAfterMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Creates a server the first time a key is used, and returns the server that was created then every time after.
+     * @param key {@link String} from the client
+     * @param server {@link Server} to create
+     * @param creator {@link Supplier} that creates the server
+     * @return {@link Server} as it was when it was created
+     * @throws BadRequestException if the key is empty or too long, or was used for a different server before
+     */
+    public Server createServer(final String key, final Server server, final Supplier<Server> creator) {
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException(HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+
+        CreatedServer created;
+        try {
+            created = createdServers.get(key, () -> new CreatedServer(server, creator.get()));
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            // let the exception mappers handle whatever the create threw
+            Throwables.propagateIfPossible(e.getCause());
+            throw new InternalException("Unable to create the server", e.getCause());
+        }
+
+        if (!created.isFor(server)) {
+            throw new BadRequestException(HEADER + " " + key + " was already used for a different server");
+        }
+
+        return created.server.clone();
+    }
+
+    /**
+     * A server that was created with a key, along with what the request asked for.
+     */
+    private static class CreatedServer {
+
+        private final Server request;
+        private final Server server;
+
+        CreatedServer(final Server request, final Server server) {
+            this.request = request.clone();
+            this.server = server.clone();
+        }
+
+        /**
+         * Returns whether this server was created for the same request, i.e. one with the same properties.
+         * @param other {@link Server} from the request
+         * @return boolean
+         */
+        boolean isFor(final Server other) {
+            return Objects.equals(request.getName(), other.getName())
+                    && request.getCpus() == other.getCpus()
+                    && request.getRam() == other.getRam()
+                    && request.getDiskSpace() == other.getDiskSpace();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.limit;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Servlet filter that puts the {@link ConcurrencyLimiter} in front of the APIs.  Requests over the limit get a 503 with
+ * a "Retry-After" header right away, before any work is done for them.<br/>
+ *
+ * Requests that are parked (long-polls, event streams) give their slot back as soon as they stop using a thread.
+ * Their latency isn't recorded, it says how long the client wanted to wait and nothing about how busy we are.  Going
+ * async isn't enough to tell them apart: Jersey suspends every request with an {@code AsyncResponse} parameter, even
+ * the ones it resumes before the thread gets back here, so whatever parks a request has to say so with the
+ * {@link #PARKED} attribute.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ConcurrencyLimitFilter implements Filter {
+
+    // same as the ErrorMessageDoc the exception mappers return, but written without any help from Jersey
+    static final byte[] OVERLOADED = "{\"error\":\"Too many requests in progress, try again later\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Name of the request attribute that marks a request as parked, i.e. waiting on something other than us.  The
+     * value doesn't matter.
+     */
+    public static final String PARKED = ConcurrencyLimitFilter.class.getName() + ".parked";
+
+    private final ConcurrencyLimiter limiter;
+
+    /**
+     * Constructor
+     * @param limiter {@link ConcurrencyLimiter}
+     */
+    public ConcurrencyLimitFilter(final ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init(final FilterConfig filterConfig) throws ServletException {
+        // nothing to do
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void doFilter(
+            final ServletRequest request,
+            final ServletResponse response,
+            final FilterChain chain) throws IOException, ServletException {
+        RequestPriority priority = RequestPriority.forMethod(((HttpServletRequest) request).getMethod());
+
+        if (!limiter.tryAcquire(priority)) {
+            reject((HttpServletResponse) response);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (null != request.getAttribute(PARKED)) {
+                limiter.release();
+            } else {
+                limiter.release(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() {
+        // nothing to do
+    }
+
+    /**
+     * Turns the request away.
+     * @param response {@link HttpServletResponse}
+     * @throws IOException
+     */
+    private void reject(final HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", Integer.toString(limiter.getRetryAfter()));
+        response.setContentType("application/json");
+        response.setContentLength(OVERLOADED.length);
+        response.getOutputStream().write(OVERLOADED);
+    }
+}
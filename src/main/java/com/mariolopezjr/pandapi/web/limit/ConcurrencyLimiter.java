@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.limit;
+
+import org.apache.commons.configuration.Configuration;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of how many requests are being worked on and turns away the ones over the adaptive limit (see
+ * {@link GradientLimit}).  Each {@link RequestPriority} may only use its configured share of the limit, e.g. with a
+ * write share of 0.5 writes are turned away once half of the limit is in use, which keeps the other half for reads.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ConcurrencyLimiter {
+
+    // base path for all of the config values for this class
+    private static final String CONFIG_BASE_PATH = "webServer/concurrencyLimit/";
+
+    private final GradientLimit limit;
+
+    // share of the limit each priority may use, replaced as a whole when the configuration changes
+    private volatile Map<RequestPriority, Double> shares;
+
+    // how long clients that were turned away should wait, in seconds
+    private volatile int retryAfter;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param config {@link Configuration}
+     */
+    public ConcurrencyLimiter(final Configuration config) {
+        this(new GradientLimit(
+                        config.getInt(CONFIG_BASE_PATH + "initialLimit", 20),
+                        config.getInt(CONFIG_BASE_PATH + "minLimit", 4),
+                        config.getInt(CONFIG_BASE_PATH + "maxLimit", 200),
+                        config.getDouble(CONFIG_BASE_PATH + "tolerance", 2.0),
+                        config.getDouble(CONFIG_BASE_PATH + "smoothing", 0.2),
+                        config.getLong(CONFIG_BASE_PATH + "windowMillis", 500L),
+                        config.getInt(CONFIG_BASE_PATH + "minWindowSamples", 10),
+                        config.getInt(CONFIG_BASE_PATH + "minRttResetWindows", 120),
+                        System::nanoTime),
+                config.getDouble(CONFIG_BASE_PATH + "readShare", 1.0),
+                config.getDouble(CONFIG_BASE_PATH + "writeShare", 0.5),
+                config.getInt(CONFIG_BASE_PATH + "retryAfter", 1));
+    }
+
+    /**
+     * Constructor for the unit test to call.  Purposely has package level scope.
+     * @param limit {@link GradientLimit}
+     * @param readShare double
+     * @param writeShare double
+     * @param retryAfter int seconds
+     */
+    ConcurrencyLimiter(
+            final GradientLimit limit,
+            final double readShare,
+            final double writeShare,
+            final int retryAfter) {
+        this.limit = limit;
+        setShares(readShare, writeShare);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Applies changed settings.  The initial limit only matters at startup, so it's the one setting that isn't
+     * applied.
+     * @param config {@link Configuration}
+     */
+    public void reconfigure(final Configuration config) {
+        limit.reconfigure(
+                config.getInt(CONFIG_BASE_PATH + "minLimit", 4),
+                config.getInt(CONFIG_BASE_PATH + "maxLimit", 200),
+                config.getDouble(CONFIG_BASE_PATH + "tolerance", 2.0),
+                config.getDouble(CONFIG_BASE_PATH + "smoothing", 0.2),
+                config.getLong(CONFIG_BASE_PATH + "windowMillis", 500L),
+                config.getInt(CONFIG_BASE_PATH + "minWindowSamples", 10),
+                config.getInt(CONFIG_BASE_PATH + "minRttResetWindows", 120));
+        setShares(
+                config.getDouble(CONFIG_BASE_PATH + "readShare", 1.0),
+                config.getDouble(CONFIG_BASE_PATH + "writeShare", 0.5));
+        retryAfter = config.getInt(CONFIG_BASE_PATH + "retryAfter", 1);
+    }
+
+    /**
+     * Sets the share of the limit each priority may use.
+     * @param readShare double
+     * @param writeShare double
+     */
+    private void setShares(final double readShare, final double writeShare) {
+        Map<RequestPriority, Double> newShares = new EnumMap<>(RequestPriority.class);
+        newShares.put(RequestPriority.READ, readShare);
+        newShares.put(RequestPriority.WRITE, writeShare);
+
+        shares = newShares;
+    }
+
+    /**
+     * Starts working on a request, unless there are already too many of them.  Every successful call must be followed
+     * by exactly one call to one of the release methods.
+     * @param priority {@link RequestPriority}
+     * @return boolean true if the request may go ahead
+     */
+    public boolean tryAcquire(final RequestPriority priority) {
+        // every priority gets at least one, otherwise a small limit could shut one out completely
+        int allowed = Math.max(1, (int) (limit.getLimit() * shares.get(priority)));
+
+        while (true) {
+            int current = inflight.get();
+
+            if (current >= allowed) {
+                rejected.incrementAndGet();
+                return false;
+            }
+
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Finishes a request and records how long it took.
+     * @param rttNanos long
+     */
+    public void release(final long rttNanos) {
+        limit.onSample(rttNanos, inflight.getAndDecrement());
+    }
+
+    /**
+     * Finishes a request without recording how long it took, e.g. because it's a long-poll that is now waiting without
+     * using any resources.
+     */
+    public void release() {
+        inflight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+}
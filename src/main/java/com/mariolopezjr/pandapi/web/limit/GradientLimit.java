@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.limit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Estimates how many requests the service can work on at once from how long they take, in the style of the gradient
+ * limiters (i.e. TCP Vegas applied to request concurrency).<br/><br/>
+ *
+ * Latencies are averaged over short windows.  The best window average seen recently is taken as the latency without
+ * any queueing.  After every window the limit is scaled by how much worse the current latency is than that (the
+ * gradient, within the tolerance it doesn't change at all), plus a little headroom to keep probing for more.  When
+ * requests start queueing inside the service the latency goes up and the limit comes down, long before clients time
+ * out.  The limit only grows while it's actually being used, so a quiet service doesn't talk itself into a huge one.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class GradientLimit {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(GradientLimit.class);
+
+    // never lower the limit by more than half in a single window
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final LongSupplier nanoClock;
+
+    // the limit in effect, read without locking by every request
+    private volatile int limit;
+
+    // everything below is guarded by this, the settings can be changed while requests are coming in
+    private int minLimit;
+    private int maxLimit;
+
+    // how much slower than the no-load latency requests can get before the limit comes down, e.g. 2.0 for twice as slow
+    private double tolerance;
+
+    // weight of each new estimate, the rest is the previous one
+    private double smoothing;
+
+    // a window closes once it's at least this long and has at least this many samples
+    private long windowNanos;
+    private int minWindowSamples;
+
+    // the no-load latency is measured again every so many windows, in case the service got slower (or faster) for good
+    private int minRttResetWindows;
+
+    private double estimatedLimit;
+    private long minRtt = Long.MAX_VALUE;
+    private long windowStart;
+    private long windowRttSum;
+    private int windowSamples;
+    private int windowMaxInflight;
+    private int windowsSinceReset;
+
+    /**
+     * Constructor
+     * @param initialLimit int
+     * @param minLimit int
+     * @param maxLimit int
+     * @param tolerance double
+     * @param smoothing double
+     * @param windowMillis long
+     * @param minWindowSamples int
+     * @param minRttResetWindows int
+     * @param nanoClock {@link LongSupplier} e.g. System::nanoTime
+     */
+    public GradientLimit(
+            final int initialLimit,
+            final int minLimit,
+            final int maxLimit,
+            final double tolerance,
+            final double smoothing,
+            final long windowMillis,
+            final int minWindowSamples,
+            final int minRttResetWindows,
+            final LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.estimatedLimit = initialLimit;
+        this.windowStart = nanoClock.getAsLong();
+
+        reconfigure(minLimit, maxLimit, tolerance, smoothing, windowMillis, minWindowSamples, minRttResetWindows);
+    }
+
+    /**
+     * Changes the settings.  The limit is moved within the new bounds right away, the rest applies from the current
+     * window on.
+     * @param minLimit int
+     * @param maxLimit int
+     * @param tolerance double
+     * @param smoothing double
+     * @param windowMillis long
+     * @param minWindowSamples int
+     * @param minRttResetWindows int
+     */
+    public synchronized void reconfigure(
+            final int minLimit,
+            final int maxLimit,
+            final double tolerance,
+            final double smoothing,
+            final long windowMillis,
+            final int minWindowSamples,
+            final int minRttResetWindows) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.windowNanos = windowMillis * 1_000_000L;
+        this.minWindowSamples = minWindowSamples;
+        this.minRttResetWindows = minRttResetWindows;
+
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * Returns the current limit.
+     * @return int
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Records how long a request took.
+     * @param rttNanos long
+     * @param inflight int number of requests being worked on when this one finished, including itself
+     */
+    public synchronized void onSample(final long rttNanos, final int inflight) {
+        windowRttSum += rttNanos;
+        windowSamples++;
+        windowMaxInflight = Math.max(windowMaxInflight, inflight);
+
+        long now = nanoClock.getAsLong();
+        if (windowSamples < minWindowSamples || now - windowStart < windowNanos) {
+            return;
+        }
+
+        long sampleRtt = windowRttSum / windowSamples;
+        int maxInflight = windowMaxInflight;
+
+        windowStart = now;
+        windowRttSum = 0;
+        windowSamples = 0;
+        windowMaxInflight = 0;
+
+        if (++windowsSinceReset >= minRttResetWindows) {
+            windowsSinceReset = 0;
+            minRtt = sampleRtt;
+        } else {
+            minRtt = Math.min(minRtt, sampleRtt);
+        }
+
+        update(sampleRtt, maxInflight);
+    }
+
+    /**
+     * Works out the new limit at the end of a window.
+     * @param sampleRtt long average latency of the window
+     * @param maxInflight int most requests that were being worked on at once during the window
+     */
+    private void update(final long sampleRtt, final int maxInflight) {
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * minRtt / sampleRtt));
+
+        // room for a few requests to queue, which is what lets the limit find out whether it could be higher
+        double queueSize = Math.sqrt(estimatedLimit);
+        double newLimit = estimatedLimit * gradient + queueSize;
+
+        // nothing was learned about a higher limit if the current one wasn't even used
+        if (maxInflight < estimatedLimit / 2 && newLimit > estimatedLimit) {
+            return;
+        }
+
+        newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+
+        int previous = limit;
+        limit = (int) estimatedLimit;
+
+        if (previous != limit) {
+            LOG.debug("Concurrency limit changed from {} to {} (latency {}us, no-load latency {}us)",
+                    previous, limit, sampleRtt / 1_000, minRtt / 1_000);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.limit;
+
+/**
+ * Classes of requests that get their own share of the concurrency limit, so that e.g. a storm of creates can't starve
+ * the reads.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public enum RequestPriority {
+    // GET, HEAD, OPTIONS
+    READ,
+    // everything that changes something
+    WRITE;
+
+    /**
+     * Returns the priority of a request with the specified HTTP method.
+     * @param method {@link String}
+     * @return {@link RequestPriority}
+     */
+    public static RequestPriority forMethod(final String method) {
+        switch (method) {
+            case "GET":
+            case "HEAD":
+            case "OPTIONS":
+                return READ;
+            default:
+                return WRITE;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.metrics;
+
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Servlet for GET /metrics, which returns every metric in the {@link MetricsRegistry} in the Prometheus text format.
+ * It's outside of the APIs (and the concurrency limit), so scrapes still work when the service is overloaded.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class MetricsServlet extends HttpServlet {
+
+    private final transient MetricsRegistry metrics;
+
+    /**
+     * Constructor
+     * @param metrics {@link MetricsRegistry}
+     */
+    public MetricsServlet(final MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(MetricsRegistry.CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-cache");
+
+        Writer writer = response.getWriter();
+        metrics.writePrometheus(writer);
+        writer.flush();
+    }
+}
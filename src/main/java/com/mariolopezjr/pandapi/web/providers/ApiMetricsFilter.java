@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.providers;
+
+import com.mariolopezjr.pandapi.metrics.LatencyHistogram;
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records how long every API request takes, per endpoint (i.e. resource method), from when Jersey starts on the request
+ * until the entity is written.  Long-polls (requests with "waitFor") are recorded separately since their latency is
+ * mostly however long the client asked to wait.<br/>
+ *
+ * Each request's time is also logged at TRACE, which is meant to be sampled (see logback.xml) rather than turned
+ * off.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@Provider
+public class ApiMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(ApiMetricsFilter.class);
+
+    // request properties, only visible to this filter
+    private static final String START_PROPERTY = ApiMetricsFilter.class.getName() + ".start";
+    private static final String HISTOGRAM_PROPERTY = ApiMetricsFilter.class.getName() + ".histogram";
+
+    // suffix for the long-poll variant of an endpoint
+    static final String LONG_POLL = "LongPoll";
+
+    private final MetricsRegistry metrics;
+
+    // histograms by resource method, so recording doesn't go through the registry
+    private final ConcurrentMap<Method, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, LatencyHistogram> longPollHistograms = new ConcurrentHashMap<>();
+
+    // proxy to the resource method of the current request
+    @Context
+    private ResourceInfo resourceInfo;
+
+    /**
+     * Constructor. Except in unit tests, this should never be called directly. Instead, use injection.
+     * @param metrics {@link MetricsRegistry}
+     */
+    @Inject
+    public ApiMetricsFilter(final MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void filter(final ContainerRequestContext requestContext) {
+        requestContext.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void filter(final ContainerRequestContext requestContext, final ContainerResponseContext responseContext) {
+        Long start = (Long) requestContext.getProperty(START_PROPERTY);
+
+        if (null == start) {
+            // didn't match any resource method, so the request filter never ran
+            return;
+        }
+
+        LatencyHistogram histogram = histogramFor(requestContext);
+
+        if (responseContext.hasEntity()) {
+            // done once the entity is written
+            requestContext.setProperty(HISTOGRAM_PROPERTY, histogram);
+        } else {
+            record(histogram, start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void aroundWriteTo(final WriterInterceptorContext context) throws IOException {
+        try {
+            context.proceed();
+        } finally {
+            LatencyHistogram histogram = (LatencyHistogram) context.getProperty(HISTOGRAM_PROPERTY);
+            Long start = (Long) context.getProperty(START_PROPERTY);
+
+            if (histogram != null && start != null) {
+                record(histogram, start);
+            }
+        }
+    }
+
+    /**
+     * Records the time since the request started.
+     * @param histogram {@link LatencyHistogram} of the endpoint
+     * @param start long from {@link System#nanoTime()}
+     */
+    private void record(final LatencyHistogram histogram, final long start) {
+        long nanos = System.nanoTime() - start;
+
+        histogram.record(nanos);
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("{}() took: {}us", resourceInfo.getResourceMethod().getName(), nanos / 1_000);
+        }
+    }
+
+    /**
+     * Returns the histogram for the endpoint of the specified request.
+     * @param requestContext {@link ContainerRequestContext}
+     * @return {@link LatencyHistogram}
+     */
+    private LatencyHistogram histogramFor(final ContainerRequestContext requestContext) {
+        Method method = resourceInfo.getResourceMethod();
+
+        if (requestContext.getUriInfo().getQueryParameters().containsKey("waitFor")) {
+            return longPollHistograms.computeIfAbsent(method, key -> histogram(key.getName() + LONG_POLL));
+        }
+
+        return histograms.computeIfAbsent(method, key -> histogram(key.getName()));
+    }
+
+    /**
+     * Returns the histogram for the specified endpoint from the registry.
+     * @param endpoint {@link String}
+     * @return {@link LatencyHistogram}
+     */
+    private LatencyHistogram histogram(final String endpoint) {
+        return metrics.histogram("pandapi_api_request_duration_seconds",
+                "Time spent on each API request, including writing the response.", "endpoint", endpoint);
+    }
+}
@@ -17,9 +17,7 @@
 package com.mariolopezjr.pandapi.web.providers;
 
 import com.mariolopezjr.pandapi.exception.BadRequestException;
-import com.mariolopezjr.pandapi.web.document.ErrorMessageDoc;
 
-import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
@@ -39,9 +37,6 @@ public class BadRequestExceptionMapper implements ExceptionMapper<BadRequestExce
     public Response toResponse(BadRequestException exception) {
         // no need to log this exception, the client will know what they did
 
-        return Response.status(Response.Status.BAD_REQUEST)
-                .entity(ErrorMessageDoc.message(exception.getMessage()))
-                .type(MediaType.APPLICATION_JSON_TYPE)
-                .build();
+        return ErrorResponses.badRequest(exception.getMessage());
     }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.providers;
+
+import com.mariolopezjr.pandapi.exception.DataStoreUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Jersey mapper to map a thrown {@link DataStoreUnavailableException} to a 503 status, with a "Retry-After" header
+ * since the data store is expected to be back shortly (e.g. once the cluster has elected a new leader).
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@Provider
+public class DataStoreUnavailableExceptionMapper implements ExceptionMapper<DataStoreUnavailableException> {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(DataStoreUnavailableExceptionMapper.class);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Response toResponse(DataStoreUnavailableException exception) {
+        // no stack trace, it's the cluster that's the problem and not this request
+        LOG.warn("Turning a request away: {}", exception.getMessage());
+
+        return ErrorResponses.serviceUnavailable()
+                .header(HttpHeaders.RETRY_AFTER, 1)
+                .build();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.providers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mariolopezjr.pandapi.web.codec.ServerFormat;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Base class for the Jersey writers of our documents.  Each document has its own writer that knows exactly which
+ * properties it has, so nothing is looked up by reflection, and since each one is declared for its document type
+ * Jersey prefers them over the generic Jackson providers.  They write every {@link ServerFormat}.
+ * @param <T> type of the document
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public abstract class DocumentWriter<T> implements MessageBodyWriter<T> {
+
+    private final Class<T> documentType;
+
+    /**
+     * Constructor
+     * @param documentType {@link Class} of the document
+     */
+    protected DocumentWriter(final Class<T> documentType) {
+        this.documentType = documentType;
+    }
+
+    /**
+     * Writes the document.
+     * @param generator {@link JsonGenerator}
+     * @param document T
+     * @throws IOException
+     */
+    protected abstract void write(JsonGenerator generator, T document) throws IOException;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isWriteable(
+            final Class<?> type,
+            final Type genericType,
+            final Annotation[] annotations,
+            final MediaType mediaType) {
+        return documentType == type && ServerFormat.forMediaType(mediaType) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSize(
+            final T document,
+            final Class<?> type,
+            final Type genericType,
+            final Annotation[] annotations,
+            final MediaType mediaType) {
+        // deprecated, and ignored by Jersey
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(
+            final T document,
+            final Class<?> type,
+            final Type genericType,
+            final Annotation[] annotations,
+            final MediaType mediaType,
+            final MultivaluedMap<String, Object> httpHeaders,
+            final OutputStream entityStream) throws IOException {
+        try (JsonGenerator generator = ServerFormat.forMediaType(mediaType).createGenerator(entityStream)) {
+            write(generator, document);
+        }
+    }
+}
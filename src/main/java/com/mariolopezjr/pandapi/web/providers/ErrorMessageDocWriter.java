@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.providers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.jaxrs.cbor.CBORMediaTypes;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+import com.mariolopezjr.pandapi.web.document.ErrorMessageDoc;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+
+/**
+ * Jersey writer for the {@link ErrorMessageDoc} document ({"error":"..."}).
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@Provider
+@Produces({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE,
+        CBORMediaTypes.APPLICATION_JACKSON_CBOR})
+public class ErrorMessageDocWriter extends DocumentWriter<ErrorMessageDoc> {
+
+    private static final SerializableString ERROR = new SerializedString("error");
+
+    public ErrorMessageDocWriter() {
+        super(ErrorMessageDoc.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void write(final JsonGenerator generator, final ErrorMessageDoc document) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(ERROR);
+        generator.writeString(document.getError());
+        generator.writeEndObject();
+    }
+}
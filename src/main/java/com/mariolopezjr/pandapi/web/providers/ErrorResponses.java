@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.providers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mariolopezjr.pandapi.exception.InternalException;
+import com.mariolopezjr.pandapi.web.codec.ServerFormat;
+import com.mariolopezjr.pandapi.web.document.ErrorMessageDoc;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Error responses with the {@link ErrorMessageDoc} ({"error":"..."}) already rendered as JSON, so they are written
+ * as-is instead of Jersey looking up a writer for the document on every error.  The bodies that never change are
+ * rendered once: the generic ones here, and the bad request messages registered with {@link #preRender(String)} (e.g.
+ * the violations of validation.xml), which make up most of the bad requests.  Every other message is rendered for its
+ * own response and never kept, since it may echo what the client sent (e.g. the requested identifier), and keeping
+ * those would let clients fill the memory with messages of their choosing.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public final class ErrorResponses {
+
+    private static final ErrorMessageDocWriter WRITER = new ErrorMessageDocWriter();
+
+    private static final byte[] INTERNAL_SERVER_ERROR = render("Internal Server Error");
+    private static final byte[] SERVICE_UNAVAILABLE = render("Service Unavailable");
+
+    // bad request messages that never change -> their rendered bodies, only ever filled by the application's own code
+    private static final ConcurrentMap<String, byte[]> FIXED_BAD_REQUESTS = new ConcurrentHashMap<>();
+
+    private ErrorResponses() {
+        // static methods only
+    }
+
+    /**
+     * Renders the body of a bad request message ahead of time, so every response with that message shares it.  Only
+     * for messages that never change, i.e. that don't include anything the client sent.
+     * @param message {@link String}
+     */
+    public static void preRender(final String message) {
+        FIXED_BAD_REQUESTS.computeIfAbsent(message, ErrorResponses::render);
+    }
+
+    /**
+     * Builds a 400 response.
+     * @param message {@link String}
+     * @return {@link Response}
+     */
+    public static Response badRequest(final String message) {
+        byte[] body = null == message ? null : FIXED_BAD_REQUESTS.get(message);
+
+        return build(Response.Status.BAD_REQUEST, null == body ? render(message) : body);
+    }
+
+    /**
+     * Builds a 404 response.
+     * @param message {@link String}
+     * @return {@link Response}
+     */
+    public static Response notFound(final String message) {
+        return build(Response.Status.NOT_FOUND, render(message));
+    }
+
+    /**
+     * Starts a 500 response, without any of the details.
+     * @return {@link Response.ResponseBuilder}
+     */
+    static Response.ResponseBuilder internalServerError() {
+        return builder(Response.Status.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR);
+    }
+
+    /**
+     * Starts a 503 response, which may need more headers.
+     * @return {@link Response.ResponseBuilder}
+     */
+    static Response.ResponseBuilder serviceUnavailable() {
+        return builder(Response.Status.SERVICE_UNAVAILABLE, SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Builds the response.
+     * @param status {@link Response.Status}
+     * @param body byte[] the rendered document
+     * @return {@link Response}
+     */
+    private static Response build(final Response.Status status, final byte[] body) {
+        return builder(status, body).build();
+    }
+
+    /**
+     * Starts the response.  The bytes are written as-is, and may be shared by other responses.
+     * @param status {@link Response.Status}
+     * @param body byte[] the rendered document
+     * @return {@link Response.ResponseBuilder}
+     */
+    private static Response.ResponseBuilder builder(final Response.Status status, final byte[] body) {
+        return Response.status(status).entity(body).type(MediaType.APPLICATION_JSON_TYPE);
+    }
+
+    /**
+     * Renders the error document for the message.
+     * @param message {@link String}
+     * @return byte[] the JSON
+     */
+    static byte[] render(final String message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(null == message ? 16 : message.length() + 16);
+
+        try (JsonGenerator generator = ServerFormat.JSON.createGenerator(out)) {
+            WRITER.write(generator, ErrorMessageDoc.message(message));
+        } catch (IOException e) {
+            // not possible with a ByteArrayOutputStream
+            throw new InternalException("Unable to render the error message: " + message, e);
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.providers;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Jersey filter that takes the "--gzip" suffix Jetty's gzip filter adds to the entity tags of compressed responses back
+ * off of "If-None-Match", so conditional requests still match the tags the APIs know about.  Jetty only does this
+ * itself for static content.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@Provider
+@PreMatching
+public class GzipEntityTagFilter implements ContainerRequestFilter {
+
+    // see org.eclipse.jetty.servlets.AsyncGzipFilter.ETAG_GZIP
+    static final String GZIP_SUFFIX = "--gzip";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void filter(final ContainerRequestContext requestContext) {
+        String ifNoneMatch = requestContext.getHeaderString(HttpHeaders.IF_NONE_MATCH);
+
+        if (ifNoneMatch != null && ifNoneMatch.contains(GZIP_SUFFIX)) {
+            requestContext.getHeaders().putSingle(HttpHeaders.IF_NONE_MATCH, ifNoneMatch.replace(GZIP_SUFFIX, ""));
+        }
+    }
+}
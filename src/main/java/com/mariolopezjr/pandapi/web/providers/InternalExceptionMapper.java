@@ -17,12 +17,10 @@
 package com.mariolopezjr.pandapi.web.providers;
 
 import com.mariolopezjr.pandapi.exception.InternalException;
-import com.mariolopezjr.pandapi.web.document.ErrorMessageDoc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.core.Context;
-import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.ExceptionMapper;
@@ -53,9 +51,6 @@ public class InternalExceptionMapper implements ExceptionMapper<InternalExceptio
         LOG.error("Internal error during client request for URI: {}", uriInfo.getAbsolutePath(), exception);
 
         // no need to tell the client about our problems
-        return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                .entity(ErrorMessageDoc.message("Internal Server Error"))
-                .type(MediaType.APPLICATION_JSON_TYPE)
-                .build();
+        return ErrorResponses.internalServerError().build();
     }
 }
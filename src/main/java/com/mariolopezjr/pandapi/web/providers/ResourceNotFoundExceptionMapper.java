@@ -17,9 +17,7 @@
 package com.mariolopezjr.pandapi.web.providers;
 
 import com.mariolopezjr.pandapi.exception.ResourceNotFoundException;
-import com.mariolopezjr.pandapi.web.document.ErrorMessageDoc;
 
-import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
@@ -39,9 +37,6 @@ public class ResourceNotFoundExceptionMapper implements ExceptionMapper<Resource
     public Response toResponse(ResourceNotFoundException exception) {
         // no need to log this exception, the access logs should be sufficient
 
-        return Response.status(Response.Status.NOT_FOUND)
-                .entity(ErrorMessageDoc.message(exception.getMessage()))
-                .type(MediaType.APPLICATION_JSON_TYPE)
-                .build();
+        return ErrorResponses.notFound(exception.getMessage());
     }
 }
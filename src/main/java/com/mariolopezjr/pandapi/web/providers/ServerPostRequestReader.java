@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.providers;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.jaxrs.cbor.CBORMediaTypes;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+import com.mariolopezjr.pandapi.exception.BadRequestException;
+import com.mariolopezjr.pandapi.web.codec.ServerFormat;
+import com.mariolopezjr.pandapi.web.codec.ServerJsonReader;
+import com.mariolopezjr.pandapi.web.document.server.ServerPostRequest;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Jersey reader for the {@link ServerPostRequest} document in any of the {@link ServerFormat}s.  Like the document
+ * writers, it's declared for the document type so Jersey prefers it over the generic Jackson providers.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+@Provider
+@Consumes({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE,
+        CBORMediaTypes.APPLICATION_JACKSON_CBOR})
+public class ServerPostRequestReader implements MessageBodyReader<ServerPostRequest> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isReadable(
+            final Class<?> type,
+            final Type genericType,
+            final Annotation[] annotations,
+            final MediaType mediaType) {
+        return ServerPostRequest.class == type && ServerFormat.forMediaType(mediaType) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ServerPostRequest readFrom(
+            final Class<ServerPostRequest> type,
+            final Type genericType,
+            final Annotation[] annotations,
+            final MediaType mediaType,
+            final MultivaluedMap<String, String> httpHeaders,
+            final InputStream entityStream) throws IOException {
+        try (JsonParser parser = ServerFormat.forMediaType(mediaType).createParser(entityStream)) {
+            return ServerJsonReader.readServerPostRequest(parser);
+        } catch (JsonProcessingException e) {
+            // malformed input, not our problem
+            throw new BadRequestException("Unable to read the request: " + e.getOriginalMessage());
+        }
+    }
+}
@@ -15,7 +15,7 @@
  */
 
 /**
- * Jersey providers (e.g. exception mappers).
+ * Jersey providers (e.g. exception mappers, filters, and the document readers and writers).
  * @author Mario Lopez Jr
  * @since 0.0.7
  */
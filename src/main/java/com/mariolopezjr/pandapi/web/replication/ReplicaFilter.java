@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.replication;
+
+import com.mariolopezjr.pandapi.dao.replica.ReplicaServerDao;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Servlet filter in front of the APIs of a read replica.  Writes are redirected to the primary with a 307 (so the
+ * client sends the same request there, body and all), before any work is done for them.  Every other response gets a
+ * "Replica-Staleness" header, with how many milliseconds the replica could be behind the primary when the request
+ * came in.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ReplicaFilter implements Filter {
+
+    // response header with the staleness
+    public static final String STALENESS_HEADER = "Replica-Staleness";
+
+    // same as the ErrorMessageDoc the exception mappers return, but written without any help from Jersey
+    static final byte[] WRITE_ON_PRIMARY = "{\"error\":\"This is a read replica, send writes to the primary\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final String primaryUrl;
+    private final ReplicaServerDao replica;
+
+    /**
+     * Constructor
+     * @param primaryUrl {@link String} base URL of the primary, without a trailing slash
+     * @param replica {@link ReplicaServerDao}
+     */
+    public ReplicaFilter(final String primaryUrl, final ReplicaServerDao replica) {
+        this.primaryUrl = primaryUrl;
+        this.replica = replica;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init(final FilterConfig filterConfig) throws ServletException {
+        // nothing to do
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void doFilter(
+            final ServletRequest request,
+            final ServletResponse response,
+            final FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        switch (httpRequest.getMethod()) {
+            case "GET":
+            case "HEAD":
+            case "OPTIONS":
+                httpResponse.setHeader(STALENESS_HEADER, Long.toString(replica.getStalenessMillis()));
+                chain.doFilter(request, response);
+                break;
+            default:
+                redirect(httpRequest, httpResponse);
+                break;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() {
+        // nothing to do
+    }
+
+    /**
+     * Sends the client to the same URL on the primary.
+     * @param request {@link HttpServletRequest}
+     * @param response {@link HttpServletResponse}
+     * @throws IOException
+     */
+    private void redirect(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        StringBuilder location = new StringBuilder(primaryUrl).append(request.getRequestURI());
+        if (request.getQueryString() != null) {
+            location.append('?').append(request.getQueryString());
+        }
+
+        response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
+        response.setHeader("Location", location.toString());
+        response.setContentType("application/json");
+        response.setContentLength(WRITE_ON_PRIMARY.length);
+        response.getOutputStream().write(WRITE_ON_PRIMARY);
+    }
+}
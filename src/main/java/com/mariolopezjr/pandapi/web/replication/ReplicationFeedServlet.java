@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.replication;
+
+import com.mariolopezjr.pandapi.dao.ServerDao;
+import com.mariolopezjr.pandapi.dao.feed.ChangeFeed;
+import com.mariolopezjr.pandapi.dao.replica.ReplicaServerDao;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Servlet for GET /replication/feed on a primary, which streams the {@link ChangeFeed} of its data store to a read
+ * replica (see {@link ReplicaServerDao}): a snapshot of every server, then every change, for as long as the replica
+ * stays connected.  Each replica keeps one of Jetty's threads for itself, there aren't meant to be many of them.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ReplicationFeedServlet extends HttpServlet {
+
+    // slf4j logger
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationFeedServlet.class);
+
+    // base path for all of the config values for this class
+    private static final String CONFIG_BASE_PATH = "dataStore/replication/";
+
+    private final transient ChangeFeed feed;
+    private final transient ServerDao serverDao;
+
+    /**
+     * Constructor, starts queueing the changes for the replicas that connect.
+     * @param config {@link Configuration}
+     * @param serverDao {@link ServerDao} whose changes to stream
+     */
+    public ReplicationFeedServlet(final Configuration config, final ServerDao serverDao) {
+        this.feed = new ChangeFeed(config.getInt(CONFIG_BASE_PATH + "feedBufferSize", 100_000),
+                config.getLong(CONFIG_BASE_PATH + "heartbeatInterval", 500));
+        this.serverDao = serverDao;
+
+        serverDao.addChangeListener(feed);
+    }
+
+    /**
+     * Returns whether this node is a primary that read replicas can follow.
+     * @param config {@link Configuration}
+     * @return boolean
+     */
+    public static boolean isEnabled(final Configuration config) {
+        return "primary".equals(config.getString(CONFIG_BASE_PATH + "role", "none"));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/octet-stream");
+        response.setHeader("Cache-Control", "no-cache");
+
+        LOG.info("Read replica {} connected", request.getRemoteAddr());
+        try {
+            feed.serve(new DataOutputStream(new BufferedOutputStream(response.getOutputStream())),
+                    serverDao::iterateServers);
+        } catch (IOException e) {
+            LOG.info("Read replica {} disconnected: {}", request.getRemoteAddr(), e.toString());
+        }
+    }
+}
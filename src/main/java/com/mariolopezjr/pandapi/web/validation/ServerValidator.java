@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.validation;
+
+import com.mariolopezjr.pandapi.exception.InternalException;
+import com.mariolopezjr.pandapi.web.codec.ServerField;
+import com.mariolopezjr.pandapi.web.document.server.ServerDoc;
+import com.mariolopezjr.pandapi.web.document.server.ServerPostRequest;
+import com.mariolopezjr.pandapi.web.providers.ErrorResponses;
+import org.apache.commons.configuration.Configuration;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Checks server documents against the rules in validation.xml.  The rules are compiled once, into a flat list of
+ * checks with their messages already built, so validating a document is a few null checks and comparisons: nothing is
+ * looked up by name or by reflection, and nothing is thrown.  Every violation is collected, not just the first one.
+ * <br/>
+ *
+ * Each field of an operation can be required, forbidden (e.g. the id of a create request), or have a min and max (for
+ * the numbers).
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+public class ServerValidator {
+
+    // base path for all of the config values for this class
+    private static final String CONFIG_BASE_PATH = "validation/server/";
+
+    // the create request wrapper without a server in it
+    private static final List<String> MISSING_SERVER = Collections.singletonList("server must be specified");
+
+    private final Check[] createChecks;
+    private final Check[] importChecks;
+
+    /**
+     * Constructor. Except in unit tests, this should never be called directly. Instead, use injection.
+     * @param config {@link Configuration}
+     * @throws InternalException if the rules don't make sense
+     */
+    @Inject
+    public ServerValidator(final Configuration config) {
+        fixed(MISSING_SERVER.get(0));
+        this.createChecks = compile(config, "create");
+        this.importChecks = compile(config, "import");
+    }
+
+    /**
+     * Validates a request to create a server.
+     * @param request {@link ServerPostRequest}
+     * @return {@link List}<{@link String}> the violations, empty if the request is valid
+     */
+    public List<String> validateCreateRequest(final ServerPostRequest request) {
+        if (null == request.getServer()) {
+            return MISSING_SERVER;
+        }
+
+        return validate(createChecks, request.getServer());
+    }
+
+    /**
+     * Validates a server to import, e.g. a line of an export.
+     * @param doc {@link ServerDoc}
+     * @return {@link List}<{@link String}> the violations, empty if the server is valid
+     */
+    public List<String> validateImport(final ServerDoc doc) {
+        return validate(importChecks, doc);
+    }
+
+    /**
+     * Runs every check on the document.
+     * @param checks {@link Check}[]
+     * @param doc {@link ServerDoc}
+     * @return {@link List}<{@link String}> the violations, only allocated if there are any
+     */
+    private static List<String> validate(final Check[] checks, final ServerDoc doc) {
+        List<String> violations = Collections.emptyList();
+
+        for (Check check : checks) {
+            String violation = check.apply(doc);
+
+            if (violation != null) {
+                if (violations.isEmpty()) {
+                    violations = new ArrayList<>(checks.length);
+                }
+                violations.add(violation);
+            }
+        }
+
+        return violations;
+    }
+
+    /**
+     * Compiles the rules of an operation into checks, in the order of the fields.
+     * @param config {@link Configuration}
+     * @param operation {@link String} e.g. "create"
+     * @return {@link Check}[]
+     */
+    private static Check[] compile(final Configuration config, final String operation) {
+        List<Check> checks = new ArrayList<>();
+
+        for (ServerField field : ServerField.values()) {
+            String path = CONFIG_BASE_PATH + operation + "/fields/" + field.getJsonName() + "/@";
+            String name = field.getJsonName();
+            Function<ServerDoc, Object> value = valueOf(field);
+
+            if (config.getBoolean(path + "required", false)) {
+                String message = fixed(name + " must be specified");
+                checks.add(doc -> isMissing(value.apply(doc)) ? message : null);
+            }
+
+            if (config.getBoolean(path + "forbidden", false)) {
+                String message = fixed(name + " must not be specified");
+                checks.add(doc -> value.apply(doc) != null ? message : null);
+            }
+
+            Integer min = config.getInteger(path + "min", null);
+            if (min != null) {
+                Function<ServerDoc, Integer> number = numberOf(field);
+                String message = fixed(name + " must be at least " + min);
+                checks.add(doc -> {
+                    Integer actual = number.apply(doc);
+                    return actual != null && actual < min ? message : null;
+                });
+            }
+
+            Integer max = config.getInteger(path + "max", null);
+            if (max != null) {
+                Function<ServerDoc, Integer> number = numberOf(field);
+                String message = fixed(name + " must be at most " + max);
+                checks.add(doc -> {
+                    Integer actual = number.apply(doc);
+                    return actual != null && actual > max ? message : null;
+                });
+            }
+        }
+
+        return checks.toArray(new Check[checks.size()]);
+    }
+
+    /**
+     * Has the bad request body of a violation message rendered ahead of time, since it never changes.
+     * @param message {@link String}
+     * @return {@link String} the message
+     */
+    private static String fixed(final String message) {
+        ErrorResponses.preRender(message);
+        return message;
+    }
+
+    /**
+     * Returns whether a value counts as not specified.
+     * @param value {@link Object}
+     * @return boolean true if it's null or an empty string
+     */
+    private static boolean isMissing(final Object value) {
+        return null == value || (value instanceof String && ((String) value).isEmpty());
+    }
+
+    /**
+     * Returns the getter of a field.
+     * @param field {@link ServerField}
+     * @return {@link Function} from the document to the field's value
+     */
+    private static Function<ServerDoc, Object> valueOf(final ServerField field) {
+        switch (field) {
+            case ID:
+                return ServerDoc::getId;
+            case NAME:
+                return ServerDoc::getName;
+            case STATE:
+                return ServerDoc::getState;
+            default:
+                return numberOf(field)::apply;
+        }
+    }
+
+    /**
+     * Returns the getter of a numeric field.
+     * @param field {@link ServerField}
+     * @return {@link Function} from the document to the field's value
+     * @throws InternalException if the field isn't a number
+     */
+    private static Function<ServerDoc, Integer> numberOf(final ServerField field) {
+        switch (field) {
+            case CPUS:
+                return ServerDoc::getCpus;
+            case RAM:
+                return ServerDoc::getRam;
+            case DISK_SPACE:
+                return ServerDoc::getDiskSpace;
+            default:
+                throw new InternalException("Only numbers can have a min or max, not " + field.getJsonName());
+        }
+    }
+
+    /**
+     * One compiled rule.
+     */
+    @FunctionalInterface
+    private interface Check {
+
+        /**
+         * Checks the document.
+         * @param doc {@link ServerDoc}
+         * @return {@link String} the violation, or null if there is none
+         */
+        String apply(ServerDoc doc);
+    }
+}
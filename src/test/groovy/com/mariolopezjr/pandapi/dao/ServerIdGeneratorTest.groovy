@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao
+
+import com.mariolopezjr.pandapi.exception.InternalException
+import org.apache.commons.configuration.BaseConfiguration
+import org.apache.commons.configuration.Configuration
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit tests for the {@link ServerIdGenerator} enum.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ServerIdGeneratorTest extends Specification {
+
+    @Unroll
+    def "#generator makes version #version UUIDs of the IETF variant"() {
+        when: "an id is generated"
+        UUID id = generator.nextId()
+
+        then: "it has the right version and variant, and round trips through its string form"
+        id.version() == version
+        id.variant() == 2
+        UUID.fromString(id.toString()) == id
+
+        where:
+        generator                        | version
+        ServerIdGenerator.RANDOM         | 4
+        ServerIdGenerator.TIME_ORDERED   | 7
+    }
+
+    def "time ordered ids start with the time they were made"() {
+        given: "the time before and after an id is made"
+        long before = System.currentTimeMillis()
+        UUID id = ServerIdGenerator.TIME_ORDERED.nextId()
+        long after = System.currentTimeMillis()
+
+        expect: "the first 48 bits are that time"
+        (id.mostSignificantBits >>> 16) in before..after
+    }
+
+    def "time ordered ids sort by the time they were made, as UUIDs and as strings"() {
+        given: "ids made a few milliseconds apart"
+        List<UUID> ids = (1..5).collect {
+            sleep(2)
+            ServerIdGenerator.TIME_ORDERED.nextId()
+        }
+
+        expect: "they're already sorted"
+        ids.sort(false) == ids
+        ids*.toString().sort(false) == ids*.toString()
+    }
+
+    def "ids made on many threads at once are unique"() {
+        when: "a lot of ids are made on several threads"
+        List<Set<UUID>> perThread = (1..8).collect { [] as Set }
+        List<Thread> threads = perThread.collect { Set<UUID> ids ->
+            Thread.start { 10_000.times { ids << ServerIdGenerator.TIME_ORDERED.nextId() } }
+        }
+        threads*.join()
+
+        then: "none of them repeat"
+        perThread.collectMany { it }.toSet().size() == 80_000
+    }
+
+    @Unroll
+    def "configured generator '#name' is #generator"() {
+        given: "a configuration"
+        Configuration config = new BaseConfiguration()
+        if (name != null) {
+            config.setProperty('dataStore/idGenerator', name)
+        }
+
+        expect:
+        ServerIdGenerator.fromConfig(config) == generator
+
+        where:
+        name          | generator
+        null          | ServerIdGenerator.TIME_ORDERED
+        'timeOrdered' | ServerIdGenerator.TIME_ORDERED
+        'random'      | ServerIdGenerator.RANDOM
+    }
+
+    def "an unknown configured generator fails"() {
+        given: "a configuration with a made up generator"
+        Configuration config = new BaseConfiguration()
+        config.setProperty('dataStore/idGenerator', 'sequential')
+
+        when:
+        ServerIdGenerator.fromConfig(config)
+
+        then:
+        thrown(InternalException)
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.dao.cluster
+
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao
+import com.mariolopezjr.pandapi.data.server.Server
+import com.mariolopezjr.pandapi.data.server.ServerState
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry
+import org.apache.commons.configuration.BaseConfiguration
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Unit tests for the {@link RaftLog} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class RaftLogTest extends Specification {
+
+    @Rule
+    TemporaryFolder folder = new TemporaryFolder()
+
+    def "entries, the term, and the vote are all still there after a restart"() {
+        given: "a log with a few entries and a vote"
+        Path dir = folder.root.toPath()
+        RaftLog log = new RaftLog(dir, true)
+        Server server = new Server(id: UUID.randomUUID(), name: 'web', cpus: 2, ram: 4, diskSpace: 20,
+                state: ServerState.BUILDING)
+        log.append(new LogEntry(1, ServerCommand.noop()))
+        log.append(new LogEntry(1, ServerCommand.create(server)))
+        log.append(new LogEntry(2, ServerCommand.delete(server.id)))
+        log.setTermAndVote(2, 3)
+        log.sync()
+        log.close()
+
+        when: "it's loaded again"
+        RaftLog reloaded = new RaftLog(dir, true)
+
+        then: "everything is the same"
+        reloaded.lastIndex == 3
+        reloaded.lastTerm == 2
+        reloaded.getTerm(2) == 1
+        reloaded.currentTerm == 2
+        reloaded.votedFor == 3
+        reloaded.syncedIndex == 3
+        reloaded.get(2).command.type == ServerCommand.Type.CREATE
+        reloaded.get(2).command.applyTo(new ServerInMemoryDao(new BaseConfiguration(), new MetricsRegistry())) == server
+
+        cleanup:
+        reloaded?.close()
+    }
+
+    def "truncated entries stay gone and new ones take their place"() {
+        given: "a log with three entries"
+        Path dir = folder.root.toPath()
+        RaftLog log = new RaftLog(dir, true)
+        3.times { log.append(new LogEntry(1, ServerCommand.noop())) }
+
+        when: "the last two are replaced with one from a later term"
+        log.truncateFrom(2)
+        log.append(new LogEntry(2, ServerCommand.noop()))
+        log.sync()
+        log.close()
+        RaftLog reloaded = new RaftLog(dir, true)
+
+        then: "that's what is loaded"
+        reloaded.lastIndex == 2
+        reloaded.getTerm(1) == 1
+        reloaded.getTerm(2) == 2
+        reloaded.getFrom(2, 10)*.term == [2L]
+        reloaded.getFrom(3, 10).empty
+
+        cleanup:
+        reloaded?.close()
+    }
+
+    def "an entry that was only partly written is dropped when the log is loaded"() {
+        given: "a log with two entries"
+        Path dir = folder.root.toPath()
+        RaftLog log = new RaftLog(dir, true)
+        2.times { log.append(new LogEntry(1, ServerCommand.noop())) }
+        log.close()
+
+        and: "the process died in the middle of writing the second one"
+        Path file = dir.resolve('log')
+        byte[] bytes = Files.readAllBytes(file)
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3))
+
+        when: "it's loaded again"
+        RaftLog reloaded = new RaftLog(dir, true)
+
+        then: "only the first entry is left, and the next one goes right after it"
+        reloaded.lastIndex == 1
+        reloaded.append(new LogEntry(2, ServerCommand.noop())) == 2
+        reloaded.getTerm(2) == 2
+
+        cleanup:
+        reloaded?.close()
+    }
+}
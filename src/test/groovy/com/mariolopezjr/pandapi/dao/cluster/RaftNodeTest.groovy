@@ -0,0 +1,230 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.dao.cluster
+
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.AppendEntries
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.AppendEntriesResult
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.LeaderResult
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.RequestVote
+import com.mariolopezjr.pandapi.dao.cluster.RaftMessages.RequestVoteResult
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao
+import com.mariolopezjr.pandapi.data.server.Server
+import com.mariolopezjr.pandapi.data.server.ServerState
+import com.mariolopezjr.pandapi.exception.DataStoreUnavailableException
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry
+import org.apache.commons.configuration.BaseConfiguration
+import org.apache.commons.configuration.Configuration
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Unit tests for the {@link RaftNode} class, with the nodes of a cluster in the same JVM.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class RaftNodeTest extends Specification {
+
+    @Rule
+    TemporaryFolder folder = new TemporaryFolder()
+
+    private PollingConditions conditions = new PollingConditions(timeout: 10)
+
+    // the nodes can reach each other unless they're cut off
+    private Map<Integer, RaftNode> nodes = new ConcurrentHashMap<>()
+    private Map<Integer, ServerInMemoryDao> servers = [:]
+    private Set<Integer> cutOff = ConcurrentHashMap.newKeySet()
+
+    def cleanup() {
+        nodes.values()*.stop()
+    }
+
+    def "writes on any node are replicated to every node in the same order"() {
+        given: "a cluster of three with a leader"
+        startCluster(3)
+        RaftNode leader = awaitLeader()
+        RaftNode follower = nodes.values().find { it != leader }
+
+        when: "servers are created through the leader and through a follower, and one is updated"
+        Server first = (Server) leader.submit(ServerCommand.create(newServer('first')))
+        Server second = (Server) follower.submit(ServerCommand.create(newServer('second')))
+        first.state = ServerState.RUNNING
+        boolean updated = (boolean) follower.submit(ServerCommand.update(first))
+
+        then: "the follower already has its own writes"
+        updated
+        servers[follower.id].getServerById(second.id) == second
+        servers[follower.id].getServerById(first.id).state == ServerState.RUNNING
+
+        and: "eventually every node has the same servers with the same versions"
+        conditions.eventually {
+            nodes.keySet().each { id ->
+                assert servers[id].getServerById(first.id).state == ServerState.RUNNING
+                assert servers[id].getServerById(first.id).version == servers[leader.id].getServerById(first.id).version
+                assert servers[id].getServerById(second.id) == second
+                assert servers[id].inventoryVersion == 3
+            }
+        }
+    }
+
+    def "a new leader takes over when the leader is cut off, without losing committed writes"() {
+        given: "a cluster of three with a committed write"
+        startCluster(3)
+        RaftNode oldLeader = awaitLeader()
+        Server server = (Server) oldLeader.submit(ServerCommand.create(newServer('kept')))
+
+        when: "the leader is cut off from the others"
+        cutOff << oldLeader.id
+
+        then: "the other two elect a new leader which still has the write"
+        conditions.eventually {
+            RaftNode leader = nodes.values().find { it.leader && it != oldLeader }
+            assert leader != null
+            assert leader.term > 1
+        }
+
+        when: "a write is made through the new leader, and a read through the other node"
+        RaftNode newLeader = nodes.values().find { it.leader && it != oldLeader }
+        RaftNode follower = nodes.values().find { it != oldLeader && it != newLeader }
+        Server later = (Server) newLeader.submit(ServerCommand.create(newServer('later')))
+        follower.awaitReadable()
+
+        then: "the follower sees both"
+        servers[follower.id].getServerById(server.id) == server
+        servers[follower.id].getServerById(later.id) == later
+
+        when: "the old leader is asked to make a write on its own"
+        oldLeader.submit(ServerCommand.create(newServer('lost')))
+
+        then: "it can't"
+        thrown(DataStoreUnavailableException)
+
+        when: "it's asked for a linearizable read"
+        oldLeader.awaitReadable()
+
+        then: "it can't either"
+        thrown(DataStoreUnavailableException)
+
+        when: "it can reach the others again"
+        cutOff.clear()
+
+        then: "it follows the new leader and catches up"
+        conditions.eventually {
+            assert oldLeader.leaderId == newLeader.id || oldLeader.leaderId == follower.id
+            assert servers[oldLeader.id].getServerById(later.id) == later
+        }
+    }
+
+    def "a restarted node keeps its log and catches up"() {
+        given: "a cluster of three with a committed write"
+        startCluster(3)
+        RaftNode leader = awaitLeader()
+        Server server = (Server) leader.submit(ServerCommand.create(newServer('before')))
+        RaftNode follower = nodes.values().find { it != leader }
+
+        when: "a follower restarts, and a write is made while it's down"
+        nodes.remove(follower.id).stop()
+        Server whileDown = (Server) leader.submit(ServerCommand.create(newServer('whileDown')))
+        startNode(follower.id, 3)
+
+        then: "it rebuilds the servers from its log and the leader"
+        conditions.eventually {
+            assert servers[follower.id].getServerById(server.id) == server
+            assert servers[follower.id].getServerById(whileDown.id) == whileDown
+        }
+    }
+
+    /**
+     * Starts every node of a cluster.
+     */
+    private void startCluster(int size) {
+        (1..size).each { startNode(it, size) }
+    }
+
+    /**
+     * Starts (or restarts) a node with a fresh copy of the servers and its log in a folder of its own.
+     */
+    private void startNode(int id, int size) {
+        Configuration config = new BaseConfiguration()
+        config.setProperty('dataStore/cluster/electionTimeout/min', 150)
+        config.setProperty('dataStore/cluster/electionTimeout/max', 300)
+        config.setProperty('dataStore/cluster/heartbeatInterval', 20)
+        config.setProperty('dataStore/cluster/requestTimeout', 1000)
+
+        File dir = new File(folder.root, "node-$id")
+        servers[id] = new ServerInMemoryDao(config, new MetricsRegistry())
+        RaftNode node = new RaftNode(config, id, (1..size).findAll { it != id }, new RaftLog(dir.toPath(), false),
+                transport(id), servers[id])
+        nodes[id] = node
+        node.start()
+    }
+
+    /**
+     * Returns a transport that calls the other nodes directly, unless either one is cut off or isn't running.
+     */
+    private RaftTransport transport(int from) {
+        return new RaftTransport() {
+            void start(RaftNode node) {
+            }
+
+            AppendEntriesResult appendEntries(int peerId, AppendEntries request) {
+                return reach(peerId).handleAppendEntries(request)
+            }
+
+            RequestVoteResult requestVote(int peerId, RequestVote request) {
+                return reach(peerId).handleRequestVote(request)
+            }
+
+            LeaderResult forward(int peerId, ServerCommand command) {
+                return reach(peerId).handleForward(command)
+            }
+
+            LeaderResult readIndex(int peerId) {
+                return reach(peerId).handleReadIndex()
+            }
+
+            void close() {
+            }
+
+            private RaftNode reach(int to) {
+                RaftNode node = nodes[to]
+                if (from in cutOff || to in cutOff || null == node) {
+                    sleep(5)
+                    throw new ConnectException("Node $from can't reach node $to")
+                }
+                return node
+            }
+        }
+    }
+
+    /**
+     * Waits for the cluster to elect a leader and returns it.
+     */
+    private RaftNode awaitLeader() {
+        conditions.eventually {
+            assert nodes.values().any { it.leader }
+        }
+        return nodes.values().find { it.leader }
+    }
+
+    private static Server newServer(String name) {
+        return new Server(id: UUID.randomUUID(), name: name, cpus: 1, ram: 1, diskSpace: 1,
+                state: ServerState.BUILDING)
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.dao.cluster
+
+import com.mariolopezjr.pandapi.dao.ServerChangeListener
+import com.mariolopezjr.pandapi.data.server.Server
+import com.mariolopezjr.pandapi.data.server.ServerState
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry
+import com.mariolopezjr.pandapi.web.cache.ServerJsonCache
+import org.apache.commons.configuration.BaseConfiguration
+import org.apache.commons.configuration.Configuration
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+/**
+ * Unit tests for the {@link ReplicatedServerDao} class, with a cluster of three talking over local sockets.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ReplicatedServerDaoTest extends Specification {
+
+    @Rule
+    TemporaryFolder folder = new TemporaryFolder()
+
+    private List<ReplicatedServerDao> daos = []
+
+    def cleanup() {
+        daos*.stop()
+    }
+
+    def "a server created on one node can be read, updated, and deleted on the others"() {
+        given: "a cluster of three"
+        List<Integer> ports = (1..3).collect { freePort() }
+        String members = (1..3).collect { "$it=localhost:${ports[it - 1]}" }.join(',')
+        daos = (1..3).collect { new ReplicatedServerDao(nodeConfig(it, members), new MetricsRegistry()) }
+
+        and: "a listener on the last node (called on the thread that applies the changes)"
+        List<Server> seen = [].asSynchronized()
+        daos[2].addChangeListener([
+                serverCreated: { seen << it },
+                serverUpdated: { previous, current -> },
+                serverDeleted: { }] as ServerChangeListener)
+        daos*.start()
+
+        when: "a server is created on the first node"
+        Server created = daos[0].createServer(new Server(name: 'web', cpus: 2, ram: 4, diskSpace: 20,
+                state: ServerState.BUILDING))
+
+        then: "it has an ID and every node returns it right away"
+        created.id != null
+        daos.every { it.getServerById(created.id) == created }
+        daos.every { it.inventoryVersion == 1 }
+
+        and: "the listener on the last node was told about it"
+        seen*.id == [created.id]
+
+        when: "it's updated on the second node and deleted on the third"
+        created.state = ServerState.RUNNING
+        boolean updated = daos[1].updateServer(created)
+        Server afterUpdate = daos[0].getServerById(created.id)
+        boolean deleted = daos[2].deleteServer(created.id)
+
+        then: "both worked and every node agrees"
+        updated
+        afterUpdate.state == ServerState.RUNNING
+        deleted
+        daos.every { it.getServerById(created.id) == null }
+        daos.every { it.allServers.empty }
+
+        when: "a batch of servers with IDs is put on the second node"
+        List<Server> batch = (1..3).collect {
+            new Server(id: UUID.randomUUID(), name: "db-$it", cpus: 2, ram: 4, diskSpace: 20,
+                    state: ServerState.RUNNING)
+        }
+        int createdInBatch = daos[1].putServers(batch)
+
+        then: "every node has all of them"
+        createdInBatch == 3
+        daos.every { it.allServers as Set == batch as Set }
+        seen*.id == [created.id] + batch*.id
+    }
+
+    def "a server can be updated and read back while the JSON cache is listening"() {
+        given: "a cluster of one, with the JSON cache listening (on the thread that applies the changes)"
+        ReplicatedServerDao dao = new ReplicatedServerDao(nodeConfig(1, "1=localhost:${freePort()}"),
+                new MetricsRegistry())
+        daos = [dao]
+        ServerJsonCache cache = new ServerJsonCache(dao)
+        dao.start()
+
+        and: "a server"
+        Server server = dao.createServer(new Server(name: 'web', cpus: 2, ram: 4, diskSpace: 20,
+                state: ServerState.BUILDING))
+
+        when: "it's updated"
+        server.state = ServerState.RUNNING
+        boolean updated = dao.updateServer(server)
+
+        then: "the update went through and it can be read back, from the DAO and from the cache"
+        updated
+        Server afterUpdate = dao.getServerById(server.id)
+        afterUpdate.state == ServerState.RUNNING
+        cache.get(server.id as String).version == afterUpdate.version
+    }
+
+    /**
+     * Returns the configuration for one of the nodes, with short timeouts.
+     */
+    private Configuration nodeConfig(int nodeId, String members) {
+        Configuration config = new BaseConfiguration()
+        config.setProperty('dataStore/cluster/nodeId', nodeId)
+        config.setProperty('dataStore/cluster/members', members)
+        config.setProperty('dataStore/cluster/dataDir', new File(folder.root, "node-$nodeId").path)
+        config.setProperty('dataStore/cluster/electionTimeout/min', 150)
+        config.setProperty('dataStore/cluster/electionTimeout/max', 300)
+        config.setProperty('dataStore/cluster/heartbeatInterval', 20)
+        return config
+    }
+
+    private static int freePort() {
+        new ServerSocket(0).withCloseable { it.localPort }
+    }
+}
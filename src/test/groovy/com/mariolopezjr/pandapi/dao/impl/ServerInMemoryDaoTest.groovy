@@ -16,7 +16,9 @@
 
 package com.mariolopezjr.pandapi.dao.impl
 
+import com.mariolopezjr.pandapi.dao.ServerChangeListener
 import com.mariolopezjr.pandapi.data.server.Server
+import com.mariolopezjr.pandapi.data.server.ServerState
 import com.mariolopezjr.pandapi.data.server.ServerUtility
 import com.mariolopezjr.pandapi.exception.InternalException
 import org.apache.commons.configuration.Configuration
@@ -77,6 +79,39 @@ class ServerInMemoryDaoTest extends Specification {
         100       | _
     }
 
+    def "iterate over the servers without being able to modify the data store"() {
+        given: "some servers in the data store"
+        dataStore << ServerUtility.generateServerInstances(3).collectEntries {[(it.id): it]}
+
+        when: "the DAO is called to iterate over the servers"
+        List<Server> servers = codeUnderTest.iterateServers().collect()
+
+        then: "every server was returned as a copy"
+        servers as Set == dataStore.values() as Set
+        servers.every { !it.is(dataStore.get(it.id)) }
+
+        when: "one of them is modified"
+        servers.first().name = 'Not the original'
+
+        then: "the instance in the data store is not affected"
+        dataStore.get(servers.first().id).name != 'Not the original'
+    }
+
+    def "client code is not allowed to remove instances through the iterator"() {
+        given: "a server in the data store"
+        Server existingServer = ServerUtility.generateServerInstances(1).first()
+        dataStore.put(existingServer.id, existingServer)
+
+        when: "the iterator is used to remove it"
+        Iterator<Server> iterator = codeUnderTest.iterateServers()
+        iterator.next()
+        iterator.remove()
+
+        then: "it isn't allowed"
+        thrown(UnsupportedOperationException)
+        dataStore.containsKey(existingServer.id)
+    }
+
     def "client code is not allowed to add instances to the data store directly"() {
         given: "the list of servers returned from the DAO"
         dataStore << ServerUtility.generateServerInstances(5).collectEntries {[(it.id): it]}
@@ -282,4 +317,221 @@ class ServerInMemoryDaoTest extends Specification {
         then: "nothing was deleted"
         !wasSuccessful
     }
+
+    def "delete a server that is updated at the same time"() {
+        given: "an existing server that another thread updates as soon as it's looked up"
+        Server existingServer = ServerUtility.generateServerInstances(1).first()
+        ConcurrentMap<UUID, Server> racingDataStore = new ConcurrentHashMap<UUID, Server>() {
+            @Override
+            Server get(Object key) {
+                Server server = super.get(key)
+                if (server) {
+                    Server updated = server.clone()
+                    updated.state = ServerState.TERMINATING
+                    put(server.id, updated)
+                }
+                return server
+            }
+        }
+        racingDataStore.put(existingServer.id, existingServer)
+        codeUnderTest = new ServerInMemoryDao(racingDataStore, config)
+
+        when: "the DAO is called to delete the server"
+        boolean wasSuccessful = codeUnderTest.deleteServer(existingServer.id)
+
+        then: "it was deleted anyway"
+        wasSuccessful
+        !racingDataStore.containsKey(existingServer.id)
+    }
+
+    def "every change gets a new version"() {
+        given: "a valid server instance"
+        Server newServer = ServerUtility.generateServerInstances(1).first()
+        newServer.id = null   // DAO sets the ID
+
+        when: "the server is created"
+        Server created = codeUnderTest.createServer(newServer)
+        long createdInventoryVersion = codeUnderTest.inventoryVersion
+
+        and: "then updated"
+        Server updatedServer = created.clone()
+        updatedServer.state = ServerState.RUNNING
+        codeUnderTest.updateServer(updatedServer)
+        Server updated = codeUnderTest.getServerById(created.id)
+        long updatedInventoryVersion = codeUnderTest.inventoryVersion
+
+        and: "then deleted"
+        codeUnderTest.deleteServer(created.id)
+
+        then: "the server and the inventory versions went up with every change"
+        created.version > 0
+        updated.version > created.version
+        createdInventoryVersion > 0
+        updatedInventoryVersion > createdInventoryVersion
+        codeUnderTest.inventoryVersion > updatedInventoryVersion
+    }
+
+    def "versions don't change when nothing changed"() {
+        given: "the current inventory version"
+        long inventoryVersion = codeUnderTest.inventoryVersion
+
+        when: "a non-existent server is updated and deleted"
+        Server server = ServerUtility.generateServerInstances(1).first()
+        codeUnderTest.updateServer(server)
+        codeUnderTest.deleteServer(server.id)
+
+        then: "the inventory version is the same"
+        codeUnderTest.inventoryVersion == inventoryVersion
+    }
+
+    def "listeners are notified of creates"() {
+        given: "a registered listener"
+        ServerChangeListener listener = Mock(ServerChangeListener)
+        codeUnderTest.addChangeListener(listener)
+
+        and: "a valid server instance"
+        Server newServer = ServerUtility.generateServerInstances(1).first()
+        newServer.id = null   // DAO sets the ID
+
+        when: "the server is created"
+        codeUnderTest.createServer(newServer)
+
+        then: "the listener is told about the persisted server"
+        1 * listener.serverCreated({ it.id && it.name == newServer.name })
+    }
+
+    def "listeners are notified of updates and deletes"() {
+        given: "an existing server in the data store"
+        Server existingServer = ServerUtility.generateServerInstances(1).first()
+        dataStore.put(existingServer.id, existingServer)
+
+        and: "a registered listener"
+        ServerChangeListener listener = Mock(ServerChangeListener)
+        codeUnderTest.addChangeListener(listener)
+
+        and: "an update for that server"
+        Server updatedServer = existingServer.clone()
+        updatedServer.state = ServerState.DESTROYED
+
+        when: "the server is updated"
+        codeUnderTest.updateServer(updatedServer)
+
+        then: "the listener gets the before and after values"
+        1 * listener.serverUpdated(existingServer, updatedServer)
+
+        when: "the server is deleted"
+        codeUnderTest.deleteServer(existingServer.id)
+
+        then: "the listener is told about it"
+        1 * listener.serverDeleted(updatedServer)
+    }
+
+    def "listeners are not notified when nothing changed"() {
+        given: "a registered listener"
+        ServerChangeListener listener = Mock(ServerChangeListener)
+        codeUnderTest.addChangeListener(listener)
+
+        when: "a non-existent server is updated and deleted"
+        Server server = ServerUtility.generateServerInstances(1).first()
+        codeUnderTest.updateServer(server)
+        codeUnderTest.deleteServer(server.id)
+
+        then: "the listener is not called"
+        0 * listener._
+    }
+
+    def "removed listeners are not notified"() {
+        given: "a listener that was registered and then removed"
+        ServerChangeListener listener = Mock(ServerChangeListener)
+        codeUnderTest.addChangeListener(listener)
+        codeUnderTest.removeChangeListener(listener)
+
+        and: "a valid server instance"
+        Server newServer = ServerUtility.generateServerInstances(1).first()
+        newServer.id = null   // DAO sets the ID
+
+        when: "the server is created"
+        codeUnderTest.createServer(newServer)
+
+        then: "the listener is not called"
+        0 * listener._
+    }
+
+    def "servers handed over from another node keep their version and aren't changes"() {
+        given: "a registered listener"
+        ServerChangeListener listener = Mock(ServerChangeListener)
+        codeUnderTest.addChangeListener(listener)
+
+        and: "a server from another node, and an older copy of it"
+        Server imported = ServerUtility.generateServerInstances(1).first()
+        imported.version = 42
+        Server older = imported.clone()
+        older.version = 7
+
+        when: "both are imported"
+        codeUnderTest.importServer(imported)
+        codeUnderTest.importServer(older)
+
+        then: "the newer one is kept as is, and the listener isn't called"
+        codeUnderTest.getServerById(imported.id).version == 42
+        codeUnderTest.inventoryVersion > 0
+        0 * listener._
+
+        when: "it's updated"
+        codeUnderTest.updateServer(imported)
+
+        then: "the update gets a higher version"
+        codeUnderTest.getServerById(imported.id).version > 42
+        1 * listener.serverUpdated(_, _)
+
+        when: "it's handed over again"
+        Server evicted = codeUnderTest.evictServer(imported.id)
+
+        then: "it's gone, and the listener isn't called"
+        evicted.id == imported.id
+        codeUnderTest.getServerById(imported.id) == null
+        codeUnderTest.evictServer(imported.id) == null
+        0 * listener._
+    }
+
+    def "put a batch of new and existing servers"() {
+        given: "an existing server in the data store"
+        Server existingServer = ServerUtility.generateServerInstances(1).first()
+        dataStore.put(existingServer.id, existingServer)
+
+        and: "a registered listener"
+        ServerChangeListener listener = Mock(ServerChangeListener)
+        codeUnderTest.addChangeListener(listener)
+
+        and: "a batch with a replacement for it and two new servers"
+        Server replacement = existingServer.clone()
+        replacement.state = ServerState.TERMINATING
+        List<Server> batch = [replacement] + ServerUtility.generateServerInstances(2)
+
+        when: "the batch is put"
+        int created = codeUnderTest.putServers(batch)
+
+        then: "the new ones are created and the existing one is replaced"
+        created == 2
+        dataStore.size() == 3
+        codeUnderTest.getServerById(existingServer.id).state == ServerState.TERMINATING
+        batch.every { codeUnderTest.getServerById(it.id).version > 0 }
+
+        and: "the listener hears about each of them"
+        1 * listener.serverUpdated(existingServer, replacement)
+        2 * listener.serverCreated(_)
+    }
+
+    def "put a server without an ID unsuccessfully"() {
+        given: "a server without an ID"
+        Server server = ServerUtility.generateServerInstances(1).first()
+        server.id = null
+
+        when: "it is put"
+        codeUnderTest.putServers([server])
+
+        then: "it fails"
+        thrown(InternalException)
+        dataStore.isEmpty()
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.partition
+
+import spock.lang.Specification
+
+/**
+ * Unit tests for the {@link HashRing} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class HashRingTest extends Specification {
+
+    private final List<UUID> ids = (1..10_000).collect { UUID.randomUUID() }
+
+    def "every node owns a fair share of the servers"() {
+        given:
+        HashRing ring = new HashRing(128, [1, 2, 3])
+
+        when:
+        Map<Integer, Integer> owned = ids.countBy { ring.ownerOf(it) }
+
+        then: "each node owns roughly a third, give or take a fifth of that"
+        owned.keySet() == [1, 2, 3] as Set
+        owned.values().every { Math.abs(it - ids.size() / 3) < ids.size() / 15 }
+    }
+
+    def "every node agrees on the owner, whatever the order it heard of the nodes in"() {
+        expect:
+        ids.every { new HashRing(128, [1, 2, 3]).ownerOf(it) == new HashRing(128, [3, 1, 2]).ownerOf(it) }
+    }
+
+    def "a node that joins only takes servers over, none move between the others"() {
+        given:
+        HashRing before = new HashRing(128, [1, 2, 3])
+        HashRing after = before.withNode(4)
+
+        when:
+        List<UUID> moved = ids.findAll { before.ownerOf(it) != after.ownerOf(it) }
+
+        then: "the ones that moved went to the new node, about a quarter of them"
+        moved.every { after.ownerOf(it) == 4 }
+        Math.abs(moved.size() - ids.size() / 4) < ids.size() / 20
+
+        and: "the ring it came from didn't change"
+        before.nodes == [1, 2, 3] as Set
+        after.contains(4)
+    }
+
+    def "only the servers of a node that leaves move"() {
+        given:
+        HashRing before = new HashRing(128, [1, 2, 3])
+        HashRing after = before.withoutNode(2)
+
+        expect:
+        ids.every { before.ownerOf(it) == 2 ? after.ownerOf(it) != 2 : after.ownerOf(it) == before.ownerOf(it) }
+        after.nodes == [1, 3] as Set
+    }
+
+    def "an empty ring has no owners"() {
+        when:
+        new HashRing(128, [1]).withoutNode(1).ownerOf(ids[0])
+
+        then:
+        thrown(IllegalStateException)
+    }
+}
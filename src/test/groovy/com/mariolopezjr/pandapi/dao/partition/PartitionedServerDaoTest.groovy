@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.partition
+
+import com.mariolopezjr.pandapi.dao.ServerChangeListener
+import com.mariolopezjr.pandapi.data.server.Server
+import com.mariolopezjr.pandapi.data.server.ServerState
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry
+import org.apache.commons.configuration.BaseConfiguration
+import org.apache.commons.configuration.Configuration
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+/**
+ * Unit tests for the {@link PartitionedServerDao} class, with nodes talking over local sockets.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class PartitionedServerDaoTest extends Specification {
+
+    private final PollingConditions conditions = new PollingConditions(timeout: 10)
+
+    private final List<Integer> ports = (1..3).collect { freePort() }
+
+    private List<PartitionedServerDao> daos = []
+
+    def cleanup() {
+        daos*.stop()
+    }
+
+    def "every node answers for every server, but only keeps its own share"() {
+        given: "three nodes"
+        daos = (1..3).collect { new PartitionedServerDao(nodeConfig(it, 3), new MetricsRegistry()) }
+        daos*.start()
+
+        when: "servers are created on the first node"
+        List<Server> created = (1..30).collect { daos[0].createServer(newServer("web-$it")) }
+
+        then: "every node returns every one of them"
+        created.every { server -> daos.every { it.getServerById(server.id) == server } }
+        daos.every { it.allServers as Set == created as Set }
+        daos.every { it.iterateServers().collect() as Set == created as Set }
+        daos*.inventoryVersion.unique().size() == 1
+
+        and: "each node only has its share"
+        daos*.localServers*.size().sum() == created.size()
+        daos.every { !it.localServers.empty }
+
+        when: "one is updated on the second node and another deleted on the third"
+        Server toUpdate = created[0]
+        toUpdate.state = ServerState.RUNNING
+        boolean updated = daos[1].updateServer(toUpdate)
+        boolean deleted = daos[2].deleteServer(created[1].id)
+
+        then: "every node sees both changes"
+        updated
+        deleted
+        daos.every { it.getServerById(toUpdate.id).state == ServerState.RUNNING }
+        daos.every { it.getServerById(created[1].id) == null }
+        daos.every { it.allServers.size() == created.size() - 1 }
+    }
+
+    def "a batch put on one node is split up between the owners"() {
+        given: "three nodes"
+        daos = (1..3).collect { new PartitionedServerDao(nodeConfig(it, 3), new MetricsRegistry()) }
+        daos*.start()
+
+        and: "an existing server, and a batch with a replacement for it and some new ones"
+        Server existing = daos[0].createServer(newServer('web-0'))
+        Server replacement = existing.clone()
+        replacement.state = ServerState.RUNNING
+        List<Server> batch = [replacement] + (1..20).collect {
+            Server server = newServer("web-$it")
+            server.id = UUID.randomUUID()
+            server
+        }
+
+        when: "the batch is put on the second node"
+        int created = daos[1].putServers(batch)
+
+        then: "the new ones are created and the existing one replaced, each on the node that owns it"
+        created == 20
+        daos.every { it.allServers as Set == batch as Set }
+        daos*.localServers*.size().sum() == batch.size()
+        daos.every { it.getServerById(existing.id).state == ServerState.RUNNING }
+    }
+
+    def "the listeners hear about the changes made on every node"() {
+        given: "three nodes, with a listener on the last one"
+        daos = (1..3).collect { new PartitionedServerDao(nodeConfig(it, 3), new MetricsRegistry()) }
+        Set<UUID> live = [].asSynchronized() as Set
+        daos[2].addChangeListener([
+                serverCreated: { live << it.id },
+                serverUpdated: { previous, current -> },
+                serverDeleted: { live.remove(it.id) }] as ServerChangeListener)
+        daos*.start()
+
+        when: "servers are created and one of them deleted on the first node"
+        List<Server> created = (1..20).collect { daos[0].createServer(newServer("web-$it")) }
+        daos[0].deleteServer(created[0].id)
+
+        then: "the listener hears about the ones left, whichever node owns them"
+        conditions.eventually {
+            assert live == created.drop(1)*.id as Set
+        }
+    }
+
+    def "a node that joins takes over its share, and hands it back when it leaves"() {
+        given: "two nodes with some servers"
+        daos = (1..2).collect { new PartitionedServerDao(nodeConfig(it, 2), new MetricsRegistry()) }
+        daos*.start()
+        List<Server> created = (1..30).collect { daos[0].createServer(newServer("web-$it")) }
+
+        when: "a third node joins"
+        PartitionedServerDao joiner = new PartitionedServerDao(nodeConfig(3, 3), new MetricsRegistry())
+        daos << joiner
+        joiner.start()
+
+        then: "it took over some of them, and they're still all there on every node"
+        !joiner.localServers.empty
+        daos*.localServers*.size().sum() == created.size()
+        created.every { server -> daos.every { it.getServerById(server.id) == server } }
+
+        when: "it's updated and then leaves"
+        joiner.localServers.each { joiner.updateServer(it) }
+        joiner.stop()
+        daos.remove(joiner)
+
+        then: "the other two have every server again, with the updates"
+        daos*.localServers*.size().sum() == created.size()
+        created.every { server -> daos.every { it.getServerById(server.id).version > 0 } }
+        daos.every { it.allServers.size() == created.size() }
+    }
+
+    /**
+     * Returns a new server resource, without an ID.
+     */
+    private static Server newServer(String name) {
+        new Server(name: name, cpus: 2, ram: 4, diskSpace: 20, state: ServerState.BUILDING)
+    }
+
+    /**
+     * Returns the configuration for one of the nodes, which starts out knowing of the first few of them.
+     */
+    private Configuration nodeConfig(int nodeId, int knownNodes) {
+        Configuration config = new BaseConfiguration()
+        config.setProperty('dataStore/partitioning/nodeId', nodeId)
+        config.setProperty('dataStore/partitioning/members',
+                (1..knownNodes).collect { "$it=localhost:${ports[it - 1]}" }.join(','))
+        config.setProperty('dataStore/partitioning/requestTimeout', 2000)
+        return config
+    }
+
+    private static int freePort() {
+        new ServerSocket(0).withCloseable { it.localPort }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.dao.replica
+
+import com.mariolopezjr.pandapi.dao.ServerChangeListener
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao
+import com.mariolopezjr.pandapi.data.server.Server
+import com.mariolopezjr.pandapi.data.server.ServerState
+import com.mariolopezjr.pandapi.exception.DataStoreUnavailableException
+import com.mariolopezjr.pandapi.exception.InternalException
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry
+import com.mariolopezjr.pandapi.web.cache.ServerJsonCache
+import com.mariolopezjr.pandapi.web.replication.ReplicationFeedServlet
+import org.apache.commons.configuration.BaseConfiguration
+import org.apache.commons.configuration.Configuration
+import org.eclipse.jetty.servlet.ServletContextHandler
+import org.eclipse.jetty.servlet.ServletHolder
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+/**
+ * Unit tests for the {@link ReplicaServerDao} class, following a primary's {@link ReplicationFeedServlet} in Jetty.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ReplicaServerDaoTest extends Specification {
+
+    private final PollingConditions conditions = new PollingConditions(timeout: 10)
+
+    private final Configuration config = new BaseConfiguration()
+
+    private final ServerInMemoryDao primary = new ServerInMemoryDao(config, new MetricsRegistry())
+
+    private final int port = freePort()
+
+    private org.eclipse.jetty.server.Server jetty
+
+    private ReplicaServerDao replica
+
+    def setup() {
+        config.setProperty('dataStore/replication/heartbeatInterval', 50)
+        startPrimary()
+    }
+
+    def cleanup() {
+        replica?.stop()
+        jetty.stop()
+    }
+
+    def "a replica gets a snapshot of the primary's servers, and then every change as the primary made it"() {
+        given: "a primary with some servers"
+        List<Server> before = (1..3).collect { primary.createServer(newServer("web-$it")) }
+
+        and: "a replica with a listener"
+        replica = new ReplicaServerDao("http://localhost:$port", 5000, new ServerInMemoryDao(config,
+                new MetricsRegistry()))
+        List<String> heard = [].asSynchronized()
+        replica.addChangeListener([
+                serverCreated: { heard << "created ${it.name}".toString() },
+                serverUpdated: { previous, current -> heard << "updated ${current.name}".toString() },
+                serverDeleted: { heard << "deleted ${it.name}".toString() }] as ServerChangeListener)
+
+        when: "it starts following the primary"
+        replica.start()
+
+        then: "it has the same servers, with the same versions"
+        conditions.eventually {
+            assert replica.stalenessMillis < 5000
+            assert replica.allServers as Set == before as Set
+        }
+
+        when: "servers are created, updated, and deleted on the primary"
+        heard.clear()
+        Server created = primary.createServer(newServer('web-4'))
+        Server updated = before[0].clone()
+        updated.state = ServerState.RUNNING
+        primary.updateServer(updated)
+        primary.deleteServer(before[1].id)
+
+        then: "the replica makes the same changes, in the same order"
+        conditions.eventually {
+            assert replica.allServers as Set == primary.allServers as Set
+            assert heard == ['created web-4', 'updated web-1', 'deleted web-2']
+        }
+        replica.getServerById(created.id) == primary.getServerById(created.id)
+        replica.getServerById(updated.id).state == ServerState.RUNNING
+    }
+
+    def "reads are turned away while the replica is further behind than it may be"() {
+        given: "a replica that may be a quarter of a second behind"
+        replica = new ReplicaServerDao("http://localhost:$port", 250, new ServerInMemoryDao(config,
+                new MetricsRegistry()))
+        List<Boolean> caughtUp = [].asSynchronized()
+        replica.addCaughtUpListener { caughtUp << it }
+
+        when: "it hasn't got a snapshot yet"
+        replica.allServers
+
+        then:
+        thrown(DataStoreUnavailableException)
+
+        when: "it catches up with the primary"
+        replica.start()
+
+        then: "reads are answered"
+        conditions.eventually {
+            assert caughtUp == [true]
+        }
+        replica.allServers.empty
+
+        when: "the primary goes away"
+        jetty.stop()
+
+        then: "reads are turned away once it could be too far behind"
+        conditions.eventually {
+            assert caughtUp == [true, false]
+        }
+        replica.stalenessMillis > 250
+
+        when:
+        replica.getServerById(UUID.randomUUID())
+
+        then:
+        thrown(DataStoreUnavailableException)
+    }
+
+    def "a replica that connects again drops the servers deleted while it was away"() {
+        given: "a replica that caught up with a primary with two servers"
+        List<Server> servers = (1..2).collect { primary.createServer(newServer("web-$it")) }
+        replica = new ReplicaServerDao("http://localhost:$port", 60_000, new ServerInMemoryDao(config,
+                new MetricsRegistry()))
+        List<Server> deleted = [].asSynchronized()
+        replica.addChangeListener([
+                serverCreated: { },
+                serverUpdated: { previous, current -> },
+                serverDeleted: { deleted << it }] as ServerChangeListener)
+        replica.start()
+        conditions.eventually {
+            assert replica.stalenessMillis < 60_000
+            assert replica.allServers.size() == 2
+        }
+
+        when: "one of them is deleted while the primary isn't reachable"
+        jetty.stop()
+        primary.deleteServer(servers[0].id)
+        startPrimary()
+
+        then: "the replica finds out from the next snapshot"
+        conditions.eventually {
+            assert replica.allServers == [servers[1]]
+        }
+        deleted*.id == [servers[0].id]
+    }
+
+    def "a replica that fell too far behind catches up again from a snapshot with updated servers"() {
+        given: "a replica that may be a quarter of a second behind, with the JSON cache listening (on the feed thread)"
+        List<Server> servers = (1..30).collect { primary.createServer(newServer("web-$it")) }
+        replica = new ReplicaServerDao("http://localhost:$port", 250, new ServerInMemoryDao(config,
+                new MetricsRegistry()))
+        ServerJsonCache cache = new ServerJsonCache(replica)
+        List<Boolean> caughtUp = [].asSynchronized()
+        replica.addCaughtUpListener { caughtUp << it }
+        replica.start()
+        conditions.eventually {
+            assert caughtUp == [true]
+        }
+
+        when: "the primary goes away for longer than that, and the servers are updated in the meantime"
+        jetty.stop()
+        conditions.eventually {
+            assert caughtUp == [true, false]
+        }
+        servers.each {
+            Server updated = it.clone()
+            updated.state = ServerState.RUNNING
+            primary.updateServer(updated)
+        }
+        startPrimary()
+
+        then: "the replica catches up from the next snapshot (not one reconnect per server), and so does the cache"
+        conditions.eventually {
+            assert caughtUp == [true, false, true]
+        }
+        servers.every { replica.getServerById(it.id).state == ServerState.RUNNING }
+        servers.every { cache.get(it.id as String).version == primary.getServerById(it.id).version }
+    }
+
+    def "writes are only taken by the primary"() {
+        given:
+        replica = new ReplicaServerDao("http://localhost:$port", 5000, new ServerInMemoryDao(config,
+                new MetricsRegistry()))
+
+        when:
+        replica.createServer(newServer('web'))
+
+        then:
+        thrown(InternalException)
+    }
+
+    /**
+     * Starts Jetty with the primary's change feed.
+     */
+    private void startPrimary() {
+        jetty = new org.eclipse.jetty.server.Server(port)
+        ServletContextHandler context = new ServletContextHandler()
+        context.addServlet(new ServletHolder(new ReplicationFeedServlet(config, primary)), ReplicaServerDao.FEED_PATH)
+        jetty.handler = context
+        jetty.start()
+    }
+
+    /**
+     * Returns a new server resource, without an ID.
+     */
+    private static Server newServer(String name) {
+        new Server(name: name, cpus: 2, ram: 4, diskSpace: 20, state: ServerState.BUILDING)
+    }
+
+    private static int freePort() {
+        new ServerSocket(0).withCloseable { it.localPort }
+    }
+}
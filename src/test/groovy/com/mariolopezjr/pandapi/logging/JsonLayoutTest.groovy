@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.logging
+
+import ch.qos.logback.classic.Level
+import ch.qos.logback.classic.LoggerContext
+import ch.qos.logback.classic.spi.LoggingEvent
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+/**
+ * Unit tests for the {@link JsonLayout} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class JsonLayoutTest extends Specification {
+
+    private final LoggerContext context = new LoggerContext()
+
+    private final JsonLayout codeUnderTest = new JsonLayout()
+
+    def "an event is a single line of JSON"() {
+        given: "an event"
+        LoggingEvent event = createEvent("Creating server: {}", null, "web")
+        event.timeStamp = 0
+
+        when: "laying it out"
+        String line = codeUnderTest.doLayout(event)
+        Map json = new ObjectMapper().readValue(line, Map)
+
+        then: "it ends with the one line break"
+        line.endsWith(System.lineSeparator())
+        line.trim().readLines().size() == 1
+
+        and: "it has the fields of the event"
+        json.timestamp == "1970-01-01T00:00:00Z"
+        json.level == "INFO"
+        json.logger == "com.example.Service"
+        json.message == "Creating server: web"
+        !json.containsKey("mdc")
+        !json.containsKey("exception")
+    }
+
+    def "the MDC and the exception are included"() {
+        given: "an event with an exception and an MDC"
+        LoggingEvent event = createEvent("failed", new IllegalStateException("boom"))
+        event.setMDCPropertyMap([status: "500"])
+
+        when: "laying it out"
+        Map json = new ObjectMapper().readValue(codeUnderTest.doLayout(event), Map)
+
+        then: "they're written as fields"
+        json.mdc == [status: "500"]
+        json.exception.contains("java.lang.IllegalStateException: boom")
+    }
+
+    /**
+     * Creates an INFO event.
+     * @param message {@link String}
+     * @param t {@link Throwable} may be null
+     * @param args {@link Object}... for the message
+     * @return {@link LoggingEvent}
+     */
+    private LoggingEvent createEvent(String message, Throwable t, Object... args) {
+        return new LoggingEvent(JsonLayoutTest.name, context.getLogger("com.example.Service"), Level.INFO, message,
+                t, args)
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.logging
+
+import ch.qos.logback.classic.Level
+import ch.qos.logback.classic.LoggerContext
+import ch.qos.logback.classic.spi.ILoggingEvent
+import ch.qos.logback.classic.spi.LoggingEvent
+import ch.qos.logback.core.AppenderBase
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+
+/**
+ * Unit tests for the {@link RingBufferAppender} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class RingBufferAppenderTest extends Specification {
+
+    private final LoggerContext context = new LoggerContext()
+
+    private final RingBufferAppender codeUnderTest = new RingBufferAppender()
+
+    // what the attached appender received
+    private final List<ILoggingEvent> received = Collections.synchronizedList([])
+
+    // holds up the attached appender until released
+    private final CountDownLatch release = new CountDownLatch(1)
+
+    // counted down once the attached appender is stuck on the first event
+    private final CountDownLatch stuckOnFirst = new CountDownLatch(1)
+
+    // a permit for every event the attached appender received
+    private final Semaphore appended = new Semaphore(0)
+
+    def setup() {
+        codeUnderTest.context = context
+        codeUnderTest.name = "TEST"
+    }
+
+    def cleanup() {
+        release.countDown()
+        codeUnderTest.stop()
+    }
+
+    def "events are handed to the attached appender"() {
+        given: "a started appender"
+        attach(false)
+        codeUnderTest.start()
+
+        when: "logging a few events"
+        3.times { codeUnderTest.doAppend(createEvent(Level.INFO, "event " + it)) }
+        codeUnderTest.stop()
+
+        then: "they all arrive, in order"
+        received*.formattedMessage == ["event 0", "event 1", "event 2"]
+    }
+
+    def "events are dropped instead of waiting when the buffer is full"() {
+        given: "a tiny buffer in front of an appender that's stuck"
+        attach(true)
+        codeUnderTest.bufferSize = 2
+        codeUnderTest.discardingThreshold = 0
+        codeUnderTest.start()
+
+        and: "the first event already taken off of the buffer"
+        codeUnderTest.doAppend(createEvent(Level.ERROR, "stuck"))
+        stuckOnFirst.await()
+
+        when: "logging more events than fit"
+        9.times { codeUnderTest.doAppend(createEvent(Level.ERROR, "event " + it)) }
+
+        then: "the ones that didn't fit were dropped"
+        codeUnderTest.droppedCount == 7
+
+        when: "the appender gets going again, and takes everything that was accepted and the report"
+        release.countDown()
+        appended.tryAcquire(4, 5, TimeUnit.SECONDS)
+
+        then: "the drops are reported after the events that were accepted before them"
+        received*.formattedMessage ==
+                ["stuck", "event 0", "event 1", "Dropped 7 log events, the TEST buffer was full"]
+        received.last().level == Level.WARN
+    }
+
+    def "less severe events are dropped first once the buffer is nearly full"() {
+        given: "a buffer that drops below WARN with 2 of 4 slots left"
+        attach(true)
+        codeUnderTest.bufferSize = 4
+        codeUnderTest.discardingThreshold = 2
+        codeUnderTest.start()
+
+        and: "the buffer filling up"
+        codeUnderTest.doAppend(createEvent(Level.ERROR, "stuck"))
+        stuckOnFirst.await()
+        3.times { codeUnderTest.doAppend(createEvent(Level.ERROR, "error")) }
+
+        when: "logging an INFO and a WARN"
+        codeUnderTest.doAppend(createEvent(Level.INFO, "info"))
+        codeUnderTest.doAppend(createEvent(Level.WARN, "warn"))
+
+        then: "only the INFO is dropped"
+        codeUnderTest.droppedCount == 1
+    }
+
+    /**
+     * Attaches an appender that records what it gets.
+     * @param stuck boolean whether it waits for {@link #release} before taking each event
+     */
+    private void attach(boolean stuck) {
+        AppenderBase<ILoggingEvent> appender = new AppenderBase<ILoggingEvent>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                if (stuck) {
+                    stuckOnFirst.countDown()
+                    release.await()
+                }
+                received << event
+                appended.release()
+            }
+        }
+        appender.context = context
+        appender.start()
+
+        codeUnderTest.addAppender(appender)
+    }
+
+    /**
+     * Creates an event.
+     * @param level {@link Level}
+     * @param message {@link String}
+     * @return {@link LoggingEvent}
+     */
+    private LoggingEvent createEvent(Level level, String message) {
+        return new LoggingEvent(RingBufferAppenderTest.name, context.getLogger("com.example"), level, message, null,
+                null)
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.logging
+
+import ch.qos.logback.classic.Level
+import ch.qos.logback.classic.Logger
+import ch.qos.logback.classic.LoggerContext
+import ch.qos.logback.core.spi.FilterReply
+import spock.lang.Specification
+
+/**
+ * Unit tests for the {@link SamplingTurboFilter} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class SamplingTurboFilterTest extends Specification {
+
+    private final LoggerContext context = new LoggerContext()
+
+    private final SamplingTurboFilter codeUnderTest = new SamplingTurboFilter()
+
+    def setup() {
+        codeUnderTest.loggerName = "com.example"
+        codeUnderTest.level = Level.DEBUG
+        codeUnderTest.oneIn = 10
+        codeUnderTest.start()
+    }
+
+    def "about one in N events at or below the level are kept"() {
+        given: "a child of the sampled logger"
+        Logger logger = context.getLogger("com.example.Service")
+
+        when: "logging a lot of TRACE events"
+        int kept = (1..10_000).count { decide(logger, Level.TRACE, "took {}") == FilterReply.NEUTRAL }
+
+        then: "about 10% are kept"
+        kept > 700
+        kept < 1_300
+    }
+
+    def "events above the level aren't sampled"() {
+        expect:
+        (1..100).every { decide(context.getLogger("com.example"), Level.INFO, "msg") == FilterReply.NEUTRAL }
+    }
+
+    def "other loggers aren't sampled"() {
+        expect: "neither a logger outside of it nor one that only shares the prefix"
+        (1..100).every { decide(context.getLogger("org.other"), Level.TRACE, "msg") == FilterReply.NEUTRAL }
+        (1..100).every { decide(context.getLogger("com.examples"), Level.TRACE, "msg") == FilterReply.NEUTRAL }
+    }
+
+    def "level checks aren't sampled"() {
+        expect: "isTraceEnabled() passes a null format"
+        (1..100).every { decide(context.getLogger("com.example"), Level.TRACE, null) == FilterReply.NEUTRAL }
+    }
+
+    def "an invalid rate doesn't start"() {
+        given: "a filter that would keep 1 in 0"
+        SamplingTurboFilter filter = new SamplingTurboFilter()
+        filter.context = context
+        filter.oneIn = 0
+
+        when: "starting it"
+        filter.start()
+
+        then: "it isn't started"
+        !filter.started
+    }
+
+    /**
+     * Asks the filter about an event.
+     * @param logger {@link Logger}
+     * @param level {@link Level}
+     * @param format {@link String}
+     * @return {@link FilterReply}
+     */
+    private FilterReply decide(Logger logger, Level level, String format) {
+        return codeUnderTest.decide(null, logger, level, format, null, null)
+    }
+}
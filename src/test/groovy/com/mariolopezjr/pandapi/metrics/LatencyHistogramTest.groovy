@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.metrics
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit tests for the {@link LatencyHistogram} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class LatencyHistogramTest extends Specification {
+
+    @Unroll
+    def "#value ns goes in a bucket that holds it, within 12.5%"() {
+        when: "looking up the bucket"
+        int index = LatencyHistogram.indexOf(value)
+
+        then: "the bucket's highest value is the value or a little above it"
+        LatencyHistogram.highestValueOf(index) >= value
+        LatencyHistogram.highestValueOf(index) <= value * 1.125
+
+        and: "the previous bucket is entirely below it"
+        index == 0 || LatencyHistogram.highestValueOf(index - 1) < value
+
+        where:
+        value << [0L, 1L, 7L, 8L, 9L, 15L, 16L, 1_000L, 65_535L, 65_536L, 1_000_000L, 123_456_789L, 1L << 40]
+    }
+
+    def "percentiles are read from the recorded latencies"() {
+        given: "a histogram"
+        LatencyHistogram histogram = new LatencyHistogram()
+
+        when: "recording 1ms a hundred times and 100ms once"
+        100.times { histogram.record(1_000_000L) }
+        histogram.record(100_000_000L)
+
+        then: "the median is about 1ms"
+        histogram.getValueAtPercentile(50.0) >= 1_000_000L
+        histogram.getValueAtPercentile(50.0) <= 1_125_000L
+
+        and: "the max is about 100ms"
+        histogram.getValueAtPercentile(100.0) >= 100_000_000L
+        histogram.getValueAtPercentile(100.0) <= 112_500_000L
+
+        and: "the count and sum are exact"
+        histogram.count == 101
+        histogram.sum == 200_000_000L
+    }
+
+    def "counts below a power of two only include smaller latencies"() {
+        given: "a histogram"
+        LatencyHistogram histogram = new LatencyHistogram()
+
+        when: "recording latencies on both sides of 2^20ns"
+        histogram.record((1L << 20) - 1)
+        histogram.record(1L << 20)
+        histogram.record(3)
+
+        then: "only the ones below it are counted"
+        histogram.getCountBelowPowerOfTwo(20) == 2
+        histogram.getCountBelowPowerOfTwo(2) == 1
+        histogram.getCountBelowPowerOfTwo(21) == 3
+    }
+
+    def "out of range latencies are clamped"() {
+        given: "a histogram"
+        LatencyHistogram histogram = new LatencyHistogram()
+
+        when: "recording a negative and an absurdly long latency"
+        histogram.record(-5)
+        histogram.record(Long.MAX_VALUE)
+
+        then: "both are counted"
+        histogram.count == 2
+        histogram.getValueAtPercentile(0.0) == 0
+    }
+
+    def "an empty histogram has no percentiles"() {
+        expect:
+        new LatencyHistogram().getValueAtPercentile(99.0) == 0
+    }
+}
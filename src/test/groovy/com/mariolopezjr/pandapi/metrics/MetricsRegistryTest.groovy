@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.metrics
+
+import spock.lang.Specification
+
+import java.util.function.LongSupplier
+
+/**
+ * Unit tests for the {@link MetricsRegistry} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class MetricsRegistryTest extends Specification {
+
+    private final MetricsRegistry codeUnderTest = new MetricsRegistry()
+
+    def "histograms are written as cumulative Prometheus buckets in seconds"() {
+        given: "a histogram with a 1ms and a 1s latency"
+        LatencyHistogram histogram = codeUnderTest.histogram("test_seconds", "Test latency.", "endpoint", "getServers")
+        histogram.record(1_000_000L)
+        histogram.record(1_000_000_000L)
+
+        when: "writing the metrics"
+        String text = write()
+
+        then: "the family is described"
+        text.contains("# HELP test_seconds Test latency.\n# TYPE test_seconds histogram\n")
+
+        and: "the buckets count everything below them"
+        text.contains('test_seconds_bucket{endpoint="getServers",le="6.5536E-5"} 0\n')
+        text.contains('test_seconds_bucket{endpoint="getServers",le="0.001048576"} 1\n')
+        text.contains('test_seconds_bucket{endpoint="getServers",le="+Inf"} 2\n')
+
+        and: "the sum and count are there"
+        text.contains('test_seconds_sum{endpoint="getServers"} 1.001\n')
+        text.contains('test_seconds_count{endpoint="getServers"} 2\n')
+    }
+
+    def "the same histogram is returned for the same name and label"() {
+        expect:
+        codeUnderTest.histogram("test_seconds", "Test.", "method", "a").is(
+                codeUnderTest.histogram("test_seconds", "Test.", "method", "a"))
+        !codeUnderTest.histogram("test_seconds", "Test.", "method", "a").is(
+                codeUnderTest.histogram("test_seconds", "Test.", "method", "b"))
+    }
+
+    def "gauges and counters are read when the metrics are written"() {
+        given: "a gauge with a label and a counter"
+        long value = 1
+        codeUnderTest.gauge("test_threads", "Threads.", "state", "busy", { -> value } as LongSupplier)
+        codeUnderTest.counter("test_rejected_total", "Rejected.", { -> 7L } as LongSupplier)
+
+        when: "the value changes before the metrics are written"
+        value = 5
+        String text = write()
+
+        then: "the current values are written"
+        text.contains('# TYPE test_threads gauge\ntest_threads{state="busy"} 5\n')
+        text.contains('# TYPE test_rejected_total counter\ntest_rejected_total 7\n')
+    }
+
+    def "families are written in name order"() {
+        given: "metrics registered out of order"
+        codeUnderTest.gauge("b_metric", "B.", { -> 0L } as LongSupplier)
+        codeUnderTest.gauge("a_metric", "A.", { -> 0L } as LongSupplier)
+
+        expect:
+        write().indexOf("a_metric") < write().indexOf("b_metric")
+    }
+
+    def "a name can't be registered as two different kinds of metric"() {
+        given: "a gauge"
+        codeUnderTest.gauge("test_metric", "Test.", { -> 0L } as LongSupplier)
+
+        when: "registering a histogram with the same name"
+        codeUnderTest.histogram("test_metric", "Test.", "method", "a")
+
+        then: "it's rejected"
+        thrown(IllegalArgumentException)
+    }
+
+    def "label values are escaped"() {
+        given: "a gauge with a quote in its label"
+        codeUnderTest.gauge("test_metric", "Test.", "name", 'a"b', { -> 1L } as LongSupplier)
+
+        expect:
+        write().contains('test_metric{name="a\\"b"} 1\n')
+    }
+
+    /**
+     * Writes the registry's metrics to a string.
+     * @return {@link String}
+     */
+    private String write() {
+        StringWriter writer = new StringWriter()
+        codeUnderTest.writePrometheus(writer)
+        return writer.toString()
+    }
+}
@@ -16,16 +16,26 @@
 
 package com.mariolopezjr.pandapi.service.server.impl
 
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.MoreExecutors
 import com.mariolopezjr.pandapi.dao.ServerDao
+import com.mariolopezjr.pandapi.dao.impl.ServerInMemoryDao
 import com.mariolopezjr.pandapi.data.server.Server
 import com.mariolopezjr.pandapi.data.server.ServerState
 import com.mariolopezjr.pandapi.data.server.ServerUtility
 import com.mariolopezjr.pandapi.exception.BadRequestException
 import com.mariolopezjr.pandapi.exception.ResourceNotFoundException
+import com.mariolopezjr.pandapi.metrics.MetricsRegistry
+import org.apache.commons.configuration.BaseConfiguration
 import spock.lang.IgnoreRest
 import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * Unit tests for the {@link ServerServiceImpl} class.
@@ -120,6 +130,79 @@ class ServerServiceImplTest extends Specification {
         1 * serverDao.getServerById(id)
     }
 
+    def "wait for a server that already meets the condition"() {
+        given: "a server that is already running"
+        UUID id = UUID.randomUUID()
+        Server server = new Server(id: id, state: ServerState.RUNNING)
+
+        when: "the service is called to wait for it to be running"
+        ListenableFuture<Server> future = codeUnderTest.waitForServer(id.toString(), { it.state == ServerState.RUNNING })
+
+        then: "the future is already complete"
+        1 * serverDao.getServerById(id) >> server
+        future.done
+        future.get() == server
+    }
+
+    def "wait for a server that does not meet the condition yet"() {
+        given: "a server that is still building"
+        UUID id = UUID.randomUUID()
+        Server server = new Server(id: id, state: ServerState.BUILDING)
+
+        when: "the service is called to wait for it to be running"
+        ListenableFuture<Server> future = codeUnderTest.waitForServer(id.toString(), { it.state == ServerState.RUNNING })
+
+        then: "the future is still waiting"
+        1 * serverDao.getServerById(id) >> server
+        !future.done
+    }
+
+    def "a wait is completed on a thread of its own, not on the one that changed the server"() {
+        given: "a service with a real data store, and a server that is still building"
+        ServerInMemoryDao dao = new ServerInMemoryDao(new BaseConfiguration(), new MetricsRegistry())
+        ServerServiceImpl service = new ServerServiceImpl(dao)
+        Server server = dao.createServer(
+                new Server(name: 'a', cpus: 1, ram: 1, diskSpace: 1, state: ServerState.BUILDING))
+
+        and: "a client waiting for it to be running, that does its work wherever the future is completed"
+        ListenableFuture<Server> future =
+                service.waitForServer(server.id.toString(), { it.state == ServerState.RUNNING })
+        Thread completedOn = null
+        CountDownLatch completed = new CountDownLatch(1)
+        future.addListener(
+                { completedOn = Thread.currentThread(); completed.countDown() }, MoreExecutors.directExecutor())
+
+        when: "the server is updated to running on this thread"
+        server.state = ServerState.RUNNING
+        dao.updateServer(server)
+
+        then: "the client's work is done on another thread"
+        completed.await(5, TimeUnit.SECONDS)
+        future.get().state == ServerState.RUNNING
+        !completedOn.is(Thread.currentThread())
+        completedOn.name.startsWith('server-waiters-')
+    }
+
+    def "wait for a non-existent server unsuccessfully"() {
+        given: "a non-existent valid id"
+        UUID id = UUID.randomUUID()
+
+        when: "the service is called to wait for the server"
+        codeUnderTest.waitForServer(id.toString(), { true })
+
+        then: "it fails"
+        thrown(ResourceNotFoundException)
+        1 * serverDao.getServerById(id)
+    }
+
+    def "wait for a server using a malformed id unsuccessfully"() {
+        when: "the service is called to wait for the server"
+        codeUnderTest.waitForServer("invalid_id", { true })
+
+        then: "it fails"
+        thrown(BadRequestException)
+    }
+
     /**
      * Test: Create a new server using the service.
      * There are other things going on in the createServer method, but they happen over time.  It would take way too
@@ -138,6 +221,26 @@ class ServerServiceImplTest extends Specification {
         response == request
     }
 
+    def "create and delete a server with a lifecycle that takes no time"() {
+        given: "a service with a real data store and lifecycles that take no time"
+        BaseConfiguration config = new BaseConfiguration()
+        ['buildTime', 'destroyTime', 'purgeDelay'].each { config.setProperty("application/lifecycle/${it}", 0) }
+        ServerInMemoryDao dao = new ServerInMemoryDao(config, new MetricsRegistry())
+        ServerServiceImpl service = new ServerServiceImpl(dao, config, new MetricsRegistry())
+
+        when: "a server is created"
+        UUID id = service.createServer(new Server(name: 'a', cpus: 1, ram: 1, diskSpace: 1)).id
+
+        then: "it's already running, without waiting for another thread"
+        dao.getServerById(id).state == ServerState.RUNNING
+
+        when: "it's deleted"
+        service.deleteServer(id.toString())
+
+        then: "it's already purged"
+        dao.getServerById(id) == null
+    }
+
     /**
      * Test: Delete an existing server using the service.
      * There are other things going on in the deleteServer method, but they happen over time.  It would take way too
@@ -160,6 +263,43 @@ class ServerServiceImplTest extends Specification {
         1 * serverDao.updateServer(updatedServer)
     }
 
+    def "delete a server from two threads at once"() {
+        given: "a data store that takes a while to store a change (not a mock, those handle one call at a time)"
+        ServerInMemoryDao slowDao = new ServerInMemoryDao(new BaseConfiguration(), new MetricsRegistry()) {
+            @Override
+            boolean updateServer(Server server) {
+                sleep(200)
+                return super.updateServer(server)
+            }
+        }
+        codeUnderTest = new ServerServiceImpl(slowDao)
+
+        and: "a running server in it"
+        Server server = ServerUtility.generateServerInstances(1).first()
+        server.state = ServerState.RUNNING
+        slowDao.putServers([server])
+
+        and: "a count of the deletes that were accepted"
+        AtomicInteger accepted = new AtomicInteger()
+
+        when: "the server is deleted from two threads at the same time"
+        List<Thread> threads = (1..2).collect {
+            Thread.start {
+                try {
+                    codeUnderTest.deleteServer(server.id.toString())
+                    accepted.incrementAndGet()
+                } catch (BadRequestException e) {
+                    // not running anymore
+                }
+            }
+        }
+        threads*.join()
+
+        then: "only one of them destroys it, the other one finds it terminating already"
+        accepted.get() == 1
+        slowDao.getServerById(server.id).state == ServerState.TERMINATING
+    }
+
     @Unroll
     def "delete a server in the '#state' state unsuccessfully"() {
         given: "a valid id"
@@ -204,4 +344,72 @@ class ServerServiceImplTest extends Specification {
         thrown(ResourceNotFoundException)
         1 * serverDao.getServerById(id)
     }
+
+    def "import servers in batches"() {
+        given: "more servers than fit in two batches"
+        List<Server> servers = ServerUtility.generateServerInstances(ServerServiceImpl.IMPORT_BATCH_SIZE * 2 + 5)
+
+        and: "the size of each batch as it is stored"
+        List<Integer> batchSizes = []
+
+        when: "the service is called to import them"
+        long imported = codeUnderTest.importServers(servers.iterator())
+
+        then: "every server is stored, in full batches except for the last one"
+        3 * serverDao.putServers({ batchSizes << it.size(); true }) >> 0
+        batchSizes == [ServerServiceImpl.IMPORT_BATCH_SIZE, ServerServiceImpl.IMPORT_BATCH_SIZE, 5]
+        imported == servers.size()
+    }
+
+    def "import an invalid server unsuccessfully"() {
+        given: "a full batch of servers and one more, followed by one that's invalid"
+        Iterator<Server> valid = ServerUtility.generateServerInstances(ServerServiceImpl.IMPORT_BATCH_SIZE + 1)
+                .iterator()
+        Iterator<Server> servers = [
+                hasNext: { true },
+                next: {
+                    if (!valid.hasNext()) {
+                        throw new BadRequestException('Line 1002: bad')
+                    }
+                    return valid.next()
+                }
+        ] as Iterator<Server>
+
+        when: "the service is called to import them"
+        codeUnderTest.importServers(servers)
+
+        then: "only the full batch is stored"
+        1 * serverDao.putServers(_) >> ServerServiceImpl.IMPORT_BATCH_SIZE
+
+        and: "it fails with a bad request that says how far it got"
+        BadRequestException e = thrown()
+        e.message == "Line 1002: bad (the first ${ServerServiceImpl.IMPORT_BATCH_SIZE} servers were imported)"
+    }
+
+    def "import servers that are building, terminating or destroyed, and their lifecycles carry on"() {
+        given: "a service with a real data store and lifecycles that take no time"
+        BaseConfiguration config = new BaseConfiguration()
+        ['buildTime', 'destroyTime', 'purgeDelay'].each { config.setProperty("application/lifecycle/${it}", 0) }
+        ServerInMemoryDao dao = new ServerInMemoryDao(config, new MetricsRegistry())
+        ServerServiceImpl service = new ServerServiceImpl(dao, config, new MetricsRegistry())
+
+        and: "an exported server in each state"
+        Map<ServerState, Server> servers = ServerState.values().collectEntries {
+            [(it): new Server(id: UUID.randomUUID(), name: it.name(), cpus: 1, ram: 1, diskSpace: 1, state: it)]
+        }
+
+        when: "they are imported"
+        service.importServers(servers.values().iterator())
+
+        then: "the building one ends up running, and the terminating and destroyed ones are purged"
+        new PollingConditions(timeout: 5).eventually {
+            assert dao.getServerById(servers[ServerState.BUILDING].id).state == ServerState.RUNNING
+            assert dao.getServerById(servers[ServerState.TERMINATING].id) == null
+            assert dao.getServerById(servers[ServerState.DESTROYED].id) == null
+        }
+
+        and: "the running one is left alone, i.e. it still has the version it was imported with (the second one)"
+        dao.getServerById(servers[ServerState.RUNNING].id).state == ServerState.RUNNING
+        dao.getServerById(servers[ServerState.RUNNING].id).version == 2
+    }
 }
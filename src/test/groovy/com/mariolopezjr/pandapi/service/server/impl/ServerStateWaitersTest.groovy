@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.service.server.impl
+
+import com.google.common.util.concurrent.SettableFuture
+import com.mariolopezjr.pandapi.data.server.Server
+import com.mariolopezjr.pandapi.data.server.ServerState
+import com.mariolopezjr.pandapi.exception.ResourceNotFoundException
+import spock.lang.Specification
+
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+
+/**
+ * Unit tests for the {@link ServerStateWaiters} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ServerStateWaitersTest extends Specification {
+
+    // complete the futures on the calling thread so the tests are deterministic
+    private ServerStateWaiters codeUnderTest = new ServerStateWaiters({ it.run() } as Executor)
+
+    def "waiter is completed when the server reaches the state"() {
+        given: "a waiter for a server to be running"
+        UUID id = UUID.randomUUID()
+        SettableFuture<Server> future = codeUnderTest.register(id, { it.state == ServerState.RUNNING })
+
+        when: "the server is updated to running"
+        Server running = new Server(id: id, name: 'web', cpus: 1, ram: 1, diskSpace: 1, state: ServerState.RUNNING)
+        codeUnderTest.serverUpdated(new Server(id: id, state: ServerState.BUILDING), running)
+
+        then: "the waiter gets a copy of the server and is no longer tracked"
+        future.done
+        future.get() == running
+        !future.get().is(running)
+        codeUnderTest.getWaiterCount(id) == 0
+    }
+
+    def "waiter is not completed by other states or other servers"() {
+        given: "a waiter for a server to be running"
+        UUID id = UUID.randomUUID()
+        SettableFuture<Server> future = codeUnderTest.register(id, { it.state == ServerState.RUNNING })
+
+        when: "the server changes to a different state and another server becomes running"
+        codeUnderTest.serverCreated(new Server(id: id, state: ServerState.BUILDING))
+        codeUnderTest.serverUpdated(null, new Server(id: UUID.randomUUID(), state: ServerState.RUNNING))
+
+        then: "the waiter is still waiting"
+        !future.done
+        codeUnderTest.getWaiterCount(id) == 1
+    }
+
+    def "waiter fails when the server is purged"() {
+        given: "a waiter for a server to be running"
+        UUID id = UUID.randomUUID()
+        SettableFuture<Server> future = codeUnderTest.register(id, { it.state == ServerState.RUNNING })
+
+        when: "the server is deleted"
+        codeUnderTest.serverDeleted(new Server(id: id, state: ServerState.DESTROYED))
+        future.get()
+
+        then: "the waiter fails with a not found"
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof ResourceNotFoundException
+        codeUnderTest.getWaiterCount(id) == 0
+    }
+
+    def "cancelled waiters are no longer tracked"() {
+        given: "two waiters for the same server"
+        UUID id = UUID.randomUUID()
+        SettableFuture<Server> first = codeUnderTest.register(id, { it.state == ServerState.RUNNING })
+        SettableFuture<Server> second = codeUnderTest.register(id, { it.state == ServerState.RUNNING })
+
+        when: "one gives up waiting"
+        first.cancel(false)
+
+        then: "only the other one is still tracked"
+        codeUnderTest.getWaiterCount(id) == 1
+
+        when: "the other one gives up too"
+        second.cancel(false)
+
+        then: "nothing is tracked"
+        codeUnderTest.getWaiterCount(id) == 0
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.util
+
+import com.mariolopezjr.pandapi.exception.InternalException
+import spock.lang.Specification
+
+/**
+ * Unit tests for the {@link ClusterMembers} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ClusterMembersTest extends Specification {
+
+    def "cluster members have to be listed as id=host:port"() {
+        expect: "a valid list is parsed in order"
+        ClusterMembers.parse(['2=hostA:9082', ' 1 = hostB:9081'] as String[]).collectEntries {
+            [(it.key): "$it.value.hostString:$it.value.port"]
+        } == [2: 'hostA:9082', 1: 'hostB:9081']
+
+        when: "the port is missing"
+        ClusterMembers.parse(['1=hostA'] as String[])
+
+        then: "it's rejected"
+        thrown(InternalException)
+    }
+}
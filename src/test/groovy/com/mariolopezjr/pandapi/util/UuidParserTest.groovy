@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.util
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit tests for the {@link UuidParser} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class UuidParserTest extends Specification {
+
+    def "parses the same UUIDs as the JDK"() {
+        expect:
+        100.times {
+            UUID uuid = UUID.randomUUID()
+            assert UuidParser.parse(uuid as String) == uuid
+            assert UuidParser.parse((uuid as String).toUpperCase()) == uuid
+        }
+    }
+
+    def "parses the extremes"() {
+        expect:
+        UuidParser.parse('00000000-0000-0000-0000-000000000000') == new UUID(0, 0)
+        UuidParser.parse('ffffffff-ffff-ffff-ffff-ffffffffffff') == new UUID(-1, -1)
+    }
+
+    @Unroll
+    def "malformed UUID '#value' is rejected without an exception"() {
+        expect:
+        UuidParser.parse(value) == null
+
+        where:
+        value << [
+                null,
+                '',
+                'not-a-uuid',
+                '4e0b19f0-ef4a-4de6-b3a7-4dd74d6a39b',      // too short
+                '4e0b19f0-ef4a-4de6-b3a7-4dd74d6a39bdd',    // too long
+                '4e0b19f0ef4a-4de6-b3a7-4dd74d6a39bd-',     // dashes in the wrong place
+                '4e0b19f0-ef4a-4de6-b3a7-4dd74d6a39bg',     // not hex
+                '4e0b19f0-ef4a-4de6-b3a7-4dd74d6a39bé' // not ASCII
+        ]
+    }
+}
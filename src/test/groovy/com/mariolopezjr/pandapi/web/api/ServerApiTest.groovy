@@ -16,22 +16,43 @@
 
 package com.mariolopezjr.pandapi.web.api
 
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.google.common.base.Predicate
+import com.google.common.util.concurrent.SettableFuture
+import com.mariolopezjr.pandapi.dao.ServerDao
 import com.mariolopezjr.pandapi.data.server.Server
 import com.mariolopezjr.pandapi.data.server.ServerState
 import com.mariolopezjr.pandapi.data.server.ServerUtility
+import com.mariolopezjr.pandapi.exception.BadRequestException
 import com.mariolopezjr.pandapi.exception.InternalException
 import com.mariolopezjr.pandapi.service.server.ServerService
+import com.mariolopezjr.pandapi.web.cache.EntityTags
+import com.mariolopezjr.pandapi.web.cache.ServerJsonCache
+import com.mariolopezjr.pandapi.web.codec.ServerField
+import com.mariolopezjr.pandapi.web.codec.ServerFormat
 import com.mariolopezjr.pandapi.web.document.server.ServerDoc
-import com.mariolopezjr.pandapi.web.document.server.ServerGetListResponse
 import com.mariolopezjr.pandapi.web.document.server.ServerGetResponse
+import com.mariolopezjr.pandapi.web.document.server.ServerImportResponse
 import com.mariolopezjr.pandapi.web.document.server.ServerPostRequest
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc
+import com.mariolopezjr.pandapi.web.idempotency.IdempotencyKeys
+import com.mariolopezjr.pandapi.web.limit.ConcurrencyLimitFilter
+import com.mariolopezjr.pandapi.web.validation.ServerValidator
+import com.mariolopezjr.pandapi.web.validation.ServerValidatorTest
 import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import javax.ws.rs.container.AsyncResponse
+import javax.ws.rs.container.ContainerRequestContext
+import javax.ws.rs.core.EntityTag
+import javax.ws.rs.core.Request
 import javax.ws.rs.core.Response
+import javax.ws.rs.core.StreamingOutput
 import javax.ws.rs.core.UriBuilder
 import javax.ws.rs.core.UriInfo
+import javax.ws.rs.core.Variant
+import java.util.concurrent.TimeUnit
 
 /**
  * Unit tests for the {@link ServerApi} class.
@@ -46,17 +67,32 @@ class ServerApiTest extends Specification {
     @Shared
     private ServerService serverService
 
+    @Shared
+    private ServerJsonCache serverJsonCache
+
+    @Shared
+    private ContainerRequestContext requestContext
+
+    @Shared
+    private ServerValidator serverValidator
+
     @Shared
     private UriInfo uriInfo
 
     @Shared
     private UriBuilder uriBuilder
 
+    // a request without any conditional headers
+    @Shared
+    private Request request
+
     /**
      * Set some of the shared fields up once before any of the test runs.
      * @return
      */
     def setupSpec() {
+        serverValidator = new ServerValidator(ServerValidatorTest.loadRules())
+
         // stubs
 
         uriBuilder = Mock(UriBuilder)
@@ -64,6 +100,11 @@ class ServerApiTest extends Specification {
         uriBuilder.path(_ as String) >> uriBuilder
 
         uriInfo = Mock(UriInfo) { getAbsolutePathBuilder() >> uriBuilder }
+
+        request = Stub(Request) {
+            evaluatePreconditions(_ as EntityTag) >> null
+            selectVariant(_) >> null
+        }
     }
 
     /**
@@ -72,19 +113,27 @@ class ServerApiTest extends Specification {
     def setup() {
         // mocks
         serverService = Mock(ServerService)
+        requestContext = Mock(ContainerRequestContext)
+
+        serverJsonCache = new ServerJsonCache(Mock(ServerDao))
 
-        codeUnderTest = new ServerApi(serverService)
+        codeUnderTest = new ServerApi(serverService, serverJsonCache, serverValidator, new IdempotencyKeys(100, 60_000))
     }
 
     @Unroll
     def "retrieve list of servers when we get back #instances instance(s) from the service"() {
         when: "the Api is called to get the list of all of the servers"
-        ServerGetListResponse response = codeUnderTest.servers
+        Response response = codeUnderTest.getServers(null, request)
+
+        and: "the list is streamed"
+        Map list = stream(response)
 
         then: "the service was called once, and we get the same number of instances back"
-        1 * serverService.allServers >> ServerUtility.generateServerInstances(instances)
-        response
-        response.servers.size() == instances
+        1 * serverService.inventoryVersion >> 7
+        1 * serverService.iterateServers() >> ServerUtility.generateServerInstances(instances).iterator()
+        response.status == Response.Status.OK.statusCode
+        response.entityTag == EntityTags.forServerList(7, ServerField.ALL, ServerFormat.JSON)
+        list.servers.size() == instances
 
         where:
         instances | _
@@ -95,16 +144,82 @@ class ServerApiTest extends Specification {
         100       | _
     }
 
+    def "retrieve list of servers the client already has"() {
+        given: "a request with the entity tag of the current list"
+        EntityTag current = EntityTags.forServerList(7, ServerField.ALL, ServerFormat.JSON)
+        Request conditionalRequest = Mock(Request)
+
+        when: "the Api is called to get the list of all of the servers"
+        Response response = codeUnderTest.getServers(null, conditionalRequest)
+
+        then: "a 304 is returned without getting the servers"
+        1 * serverService.inventoryVersion >> 7
+        1 * conditionalRequest.evaluatePreconditions(current) >> Response.notModified(current)
+        0 * serverService.iterateServers()
+        response.status == Response.Status.NOT_MODIFIED.statusCode
+        !response.entity
+    }
+
+    def "retrieve list of servers with only some of the fields"() {
+        when: "the Api is called with a sparse fieldset"
+        Response response = codeUnderTest.getServers('id,state', request)
+
+        and: "the list is streamed"
+        Map list = stream(response)
+
+        then: "only those fields are returned, with their own entity tag"
+        1 * serverService.inventoryVersion >> 7
+        1 * serverService.iterateServers() >> ServerUtility.generateServerInstances(2).iterator()
+        response.entityTag ==
+                EntityTags.forServerList(7, EnumSet.of(ServerField.ID, ServerField.STATE), ServerFormat.JSON)
+        response.entityTag != EntityTags.forServerList(7, ServerField.ALL, ServerFormat.JSON)
+        list.servers*.keySet() == [['id', 'state'] as Set] * 2
+    }
+
+    @Unroll
+    def "retrieve list of servers as #format"() {
+        given: "a request that accepts the format"
+        Request binaryRequest = Stub(Request) {
+            evaluatePreconditions(_ as EntityTag) >> null
+            selectVariant(_) >> new Variant(format.mediaType, (String) null, null)
+        }
+
+        when: "the Api is called to get the list of all of the servers"
+        Response response = codeUnderTest.getServers(null, binaryRequest)
+
+        and: "the list is streamed"
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        (response.entity as StreamingOutput).write(out)
+        Map list = new ObjectMapper(format.factory).readValue(out.toByteArray(), Map)
+
+        then: "the list is in that format, with its own entity tag"
+        1 * serverService.inventoryVersion >> 7
+        1 * serverService.iterateServers() >> ServerUtility.generateServerInstances(2).iterator()
+        response.mediaType == format.mediaType
+        response.entityTag == EntityTags.forServerList(7, ServerField.ALL, format)
+        response.entityTag != EntityTags.forServerList(7, ServerField.ALL, ServerFormat.JSON)
+        list.servers.size() == 2
+
+        where:
+        format << [ServerFormat.SMILE, ServerFormat.CBOR]
+    }
+
+    def "retrieve list of servers with an unknown field"() {
+        when: "the Api is called with a field servers don't have"
+        codeUnderTest.getServers('id,color', request)
+
+        then: "it's a bad request"
+        thrown(BadRequestException)
+        0 * serverService.iterateServers()
+    }
+
     @Unroll
     def "create a server that will be in the '#state' state"() {
         given: "a valid request"
         def request = new ServerPostRequest(server: new ServerDoc(name: 'a', cpus: 1, ram: 2, diskSpace: 4))
 
-        and: "the UriInfo has been set like it would have been by the context"
-        codeUnderTest.uriInfo = uriInfo
-
         when: "the Api is called with the request"
-        Response response = codeUnderTest.createServer(request)
+        Response response = codeUnderTest.createServer(request, null, uriInfo)
 
         then: "the server returns the correct HTTP status code"
         notThrown(InternalException)
@@ -125,17 +240,61 @@ class ServerApiTest extends Specification {
         and: "the created server's state is not valid for having just been created"
         ServerState state = ServerState.DESTROYED
 
-        and: "the UriInfo has been set like it would have been by the context"
-        codeUnderTest.uriInfo = uriInfo
-
         when: "the Api is called with the request"
-        codeUnderTest.createServer(request)
+        codeUnderTest.createServer(request, null, uriInfo)
 
         then: "the server returns the correct HTTP status code"
         thrown(InternalException)
         1 * serverService.createServer(_ as Server) >> new Server(id: UUID.randomUUID(), state: state)
     }
 
+    def "create a server twice with the same idempotency key"() {
+        given: "a valid request"
+        def request = new ServerPostRequest(server: new ServerDoc(name: 'a', cpus: 1, ram: 2, diskSpace: 4))
+
+        and: "the server the service creates"
+        Server created = new Server(id: UUID.randomUUID(), name: 'a', cpus: 1, ram: 2, diskSpace: 4,
+                state: ServerState.BUILDING)
+
+        when: "the Api is called with the request and then again with the same key"
+        Response first = codeUnderTest.createServer(request, 'key-1', uriInfo)
+        Response retry = codeUnderTest.createServer(request, 'key-1', uriInfo)
+
+        then: "the server is only created once, and both responses are for it"
+        1 * serverService.createServer(_ as Server) >> created
+        first.status == Response.Status.ACCEPTED.statusCode
+        retry.status == Response.Status.ACCEPTED.statusCode
+        (retry.entity as ServerGetResponse).server.id == created.id
+    }
+
+    def "create a different server with a key that was already used"() {
+        given: "two different requests"
+        def request = new ServerPostRequest(server: new ServerDoc(name: 'a', cpus: 1, ram: 2, diskSpace: 4))
+        def other = new ServerPostRequest(server: new ServerDoc(name: 'b', cpus: 1, ram: 2, diskSpace: 4))
+
+        when: "the Api is called with the first one and then with the other one and the same key"
+        codeUnderTest.createServer(request, 'key-1', uriInfo)
+        codeUnderTest.createServer(other, 'key-1', uriInfo)
+
+        then: "it's a bad request, and only the first server was created"
+        thrown(BadRequestException)
+        1 * serverService.createServer(_ as Server) >> new Server(id: UUID.randomUUID(), state: ServerState.BUILDING)
+    }
+
+    def "create an invalid server"() {
+        given: "a request without a name and with too many cpus"
+        def request = new ServerPostRequest(server: new ServerDoc(cpus: 5000, ram: 2, diskSpace: 4))
+
+        when: "the Api is called with the request"
+        Response response = codeUnderTest.createServer(request, null, uriInfo)
+
+        then: "it's a bad request with every violation, and the service is never called"
+        0 * serverService.createServer(_)
+        response.status == Response.Status.BAD_REQUEST.statusCode
+        new String(response.entity as byte[], 'UTF-8') ==
+                '{"error":"name must be specified,cpus must be at most 4096"}'
+    }
+
     def "retrieve server by id"() {
         given: "a valid ID"
         UUID id = UUID.randomUUID()
@@ -143,14 +302,169 @@ class ServerApiTest extends Specification {
         and: "a valid server state"
         ServerState state = ServerState.BUILDING
 
+        and: "the async response Jersey would have given us"
+        AsyncResponse asyncResponse = Mock(AsyncResponse)
+
         when: "the Api is called with the id"
-        ServerGetResponse response = codeUnderTest.getServerById(id as String)
+        codeUnderTest.getServerById(id as String, null, null, request, requestContext, asyncResponse)
 
         then: "it returns successfully"
         notThrown(Exception)
-        1 * serverService.getServerById(id.toString()) >> new Server(id: id, state: state)
-        response.server
-        response.server.id == id
+        1 * serverService.getServerById(id.toString()) >> new Server(id: id, state: state, version: 3)
+        1 * asyncResponse.resume({
+            it instanceof Response && it.entity.server.id == id &&
+                    it.entityTag == EntityTags.forServer(3)
+        })
+        0 * serverService.waitForServer(_, _)
+
+        and: "it isn't marked as parked, so its latency counts towards the concurrency limit"
+        0 * requestContext.setProperty(ConcurrencyLimitFilter.PARKED, _)
+    }
+
+    def "retrieve an already rendered server by id"() {
+        given: "a server the cache was told about"
+        Server server = new Server(
+                id: UUID.randomUUID(), name: 'a', cpus: 1, ram: 2, diskSpace: 4, state: ServerState.RUNNING, version: 5)
+        serverJsonCache.serverCreated(server)
+
+        and: "the async response Jersey would have given us"
+        AsyncResponse asyncResponse = Mock(AsyncResponse)
+
+        when: "the Api is called with the id"
+        codeUnderTest.getServerById(server.id as String, null, null, request, requestContext, asyncResponse)
+
+        then: "the rendered bytes are returned without going to the service"
+        0 * serverService._
+        1 * asyncResponse.resume({
+            it instanceof Response && it.entity.is(serverJsonCache.get(server.id, server.version).json) &&
+                    it.entityTag == EntityTags.forServer(5)
+        })
+    }
+
+    def "retrieve an already rendered server by id as CBOR"() {
+        given: "a server the cache was told about"
+        Server server = new Server(
+                id: UUID.randomUUID(), name: 'a', cpus: 1, ram: 2, diskSpace: 4, state: ServerState.RUNNING, version: 5)
+        serverJsonCache.serverCreated(server)
+
+        and: "a request that accepts CBOR"
+        Request cborRequest = Stub(Request) {
+            evaluatePreconditions(_ as EntityTag) >> null
+            selectVariant(_) >> new Variant(ServerFormat.CBOR.mediaType, (String) null, null)
+        }
+
+        and: "the async response Jersey would have given us"
+        AsyncResponse asyncResponse = Mock(AsyncResponse)
+
+        when: "the Api is called with the id"
+        codeUnderTest.getServerById(server.id as String, null, null, cborRequest, requestContext, asyncResponse)
+
+        then: "the cached JSON isn't used, the document is written as CBOR instead"
+        1 * serverService.getServerById(server.id.toString()) >> server
+        1 * asyncResponse.resume({
+            it instanceof Response && it.entity instanceof ServerGetResponse &&
+                    it.mediaType == ServerFormat.CBOR.mediaType &&
+                    it.entityTag == EntityTags.forServer(5, ServerFormat.CBOR)
+        })
+    }
+
+    def "retrieve server by id the client already has"() {
+        given: "a request with the entity tag of the current version of the server"
+        Server server = new Server(id: UUID.randomUUID(), state: ServerState.RUNNING, version: 3)
+        EntityTag current = EntityTags.forServer(server.version)
+        Request conditionalRequest = Mock(Request)
+
+        and: "the async response Jersey would have given us"
+        AsyncResponse asyncResponse = Mock(AsyncResponse)
+
+        when: "the Api is called with the id"
+        codeUnderTest.getServerById(server.id as String, null, null, conditionalRequest, requestContext, asyncResponse)
+
+        then: "a 304 is returned"
+        1 * serverService.getServerById(server.id.toString()) >> server
+        1 * conditionalRequest.evaluatePreconditions(current) >> Response.notModified(current)
+        1 * asyncResponse.resume({ it instanceof Response && it.status == 304 && !it.entity })
+    }
+
+    def "long-poll a server that reaches the requested state"() {
+        given: "a valid ID"
+        UUID id = UUID.randomUUID()
+
+        and: "a future that will be completed by the service"
+        SettableFuture<Server> future = SettableFuture.create()
+
+        and: "the async response Jersey would have given us"
+        AsyncResponse asyncResponse = Mock(AsyncResponse)
+
+        when: "the Api is called with a state to wait for"
+        codeUnderTest.getServerById(id as String, 'Running', '60s', request, requestContext, asyncResponse)
+
+        then: "the request is parked with the requested timeout, and marked as such for the concurrency limit"
+        1 * serverService.waitForServer(id.toString(), _) >> future
+        1 * requestContext.setProperty(ConcurrencyLimitFilter.PARKED, true)
+        1 * asyncResponse.setTimeout(60_000, TimeUnit.MILLISECONDS)
+        0 * asyncResponse.resume(_)
+
+        when: "the server reaches the state"
+        future.set(new Server(id: id, state: ServerState.RUNNING))
+
+        then: "the request is resumed with the server"
+        1 * asyncResponse.resume({ it instanceof Response && it.entity.server.state == ServerStateDoc.Running })
+    }
+
+    def "long-poll condition matches the displayed state"() {
+        given: "the async response Jersey would have given us"
+        AsyncResponse asyncResponse = Mock(AsyncResponse)
+
+        and: "somewhere to keep the condition passed to the service"
+        Predicate<Server> condition = null
+
+        when: "the Api is called with a state to wait for"
+        codeUnderTest.getServerById(
+                UUID.randomUUID() as String, 'destroyed', null, request, requestContext, asyncResponse)
+
+        then: "the condition matches every domain state shown to the client as that state"
+        1 * serverService.waitForServer(_, _) >> { args -> condition = args[1]; SettableFuture.create() }
+        1 * asyncResponse.setTimeout(ServerApi.DEFAULT_WAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+        condition.apply(new Server(state: ServerState.TERMINATING))
+        condition.apply(new Server(state: ServerState.DESTROYED))
+        !condition.apply(new Server(state: ServerState.RUNNING))
+    }
+
+    @Unroll
+    def "long-poll with invalid arguments(#waitFor, #timeout) is a bad request"() {
+        given: "the async response Jersey would have given us"
+        AsyncResponse asyncResponse = Mock(AsyncResponse)
+
+        when: "the Api is called with the invalid arguments"
+        codeUnderTest.getServerById(
+                UUID.randomUUID() as String, waitFor, timeout, request, requestContext, asyncResponse)
+
+        then: "the request is resumed with a bad request exception"
+        1 * asyncResponse.resume(_ as BadRequestException)
+        0 * serverService.waitForServer(_, _)
+
+        where:
+        waitFor   | timeout
+        'Sleepy'  | '10s'
+        'Running' | 'soon'
+        'Running' | '-5s'
+    }
+
+    @Unroll
+    def "parse long-poll timeout '#timeout' as #millis ms"() {
+        expect:
+        ServerApi.parseTimeout(timeout) == millis
+
+        where:
+        timeout  | millis
+        null     | ServerApi.DEFAULT_WAIT_TIMEOUT_MILLIS
+        '60s'    | 60_000
+        '60'     | 60_000
+        '500ms'  | 500
+        '2m'     | 120_000
+        '0'      | 0
+        '1000s'  | ServerApi.MAX_WAIT_TIMEOUT_MILLIS
     }
 
     def "delete a server by id"() {
@@ -164,4 +478,55 @@ class ServerApiTest extends Specification {
         1 * serverService.deleteServer(id)
         response.status == Response.Status.NO_CONTENT.statusCode
     }
+
+    def "export the servers and import them again"() {
+        given: "some servers"
+        List<Server> servers = ServerUtility.generateServerInstances(5)
+
+        and: "what the service gets to import"
+        List<Server> imported = []
+
+        when: "the Api is called to export them"
+        Response response = codeUnderTest.exportServers()
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        (response.entity as StreamingOutput).write(out)
+
+        then: "there is one line per server"
+        1 * serverService.iterateServers() >> servers.iterator()
+        response.status == Response.Status.OK.statusCode
+        response.mediaType.toString() == ServerApi.APPLICATION_NDJSON
+        out.toString('UTF-8').readLines().size() == servers.size()
+
+        when: "the Api is called to import the export"
+        response = codeUnderTest.importServers(new ByteArrayInputStream(out.toByteArray()))
+
+        then: "the service gets the same servers, and the response says how many"
+        1 * serverService.importServers(_) >> { Iterator<Server> it -> imported.addAll(it.collect()); imported.size() }
+        imported == servers
+        response.status == Response.Status.OK.statusCode
+        (response.entity as ServerImportResponse).imported == servers.size()
+    }
+
+    def "import an invalid server"() {
+        given: "a second line without an id"
+        String server = '"name":"a","cpus":1,"ram":2,"diskSpace":3,"state":"Running"}\n'
+        String lines = '{"id":"' + UUID.randomUUID() + '",' + server + '{' + server
+
+        when: "the Api is called to import them"
+        codeUnderTest.importServers(new ByteArrayInputStream(lines.bytes))
+
+        then: "the service reads them, and the second one is a bad request"
+        1 * serverService.importServers(_) >> { Iterator<Server> it -> it.collect().size() }
+        BadRequestException e = thrown()
+        e.message == 'Line 2: id must be specified'
+    }
+
+    /**
+     * Writes the streamed entity of the response and parses it.
+     */
+    private static Map stream(final Response response) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        (response.entity as StreamingOutput).write(out)
+        return new ObjectMapper().readValue(out.toByteArray(), Map)
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.application
+
+import org.apache.commons.configuration.CombinedConfiguration
+import org.apache.commons.configuration.DefaultConfigurationBuilder
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+/**
+ * Unit tests for the {@link ConfigurationWatcher} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ConfigurationWatcherTest extends Specification {
+
+    @Rule
+    TemporaryFolder folder = new TemporaryFolder()
+
+    def "listeners are called with the new values once a file changes, but not when it's broken"() {
+        given: "a configuration file that is reloaded"
+        File settings = folder.newFile('settings.xml')
+        settings.text = settingsXml(5000)
+        File definition = folder.newFile('config.xml')
+        definition.text = '''<configuration>
+            <header><result forceReloadCheck="true" /></header>
+            <xml fileName="settings.xml" config-reload="true">
+                <reloadingStrategy refreshDelay="0"
+                    config-class="org.apache.commons.configuration.reloading.FileChangedReloadingStrategy" />
+            </xml>
+        </configuration>'''
+
+        and: "a watcher with a listener"
+        CombinedConfiguration config = new DefaultConfigurationBuilder(definition).getConfiguration(true)
+        config.expressionEngine = new XPathExpressionEngine()
+        ConfigurationWatcher watcher = new ConfigurationWatcher(config)
+        List<Integer> applied = []
+        watcher.addListener { applied << it.getInt('webServer/clientTimeout') }
+
+        when: "nothing changed"
+        watcher.check()
+
+        then: "the listener isn't called"
+        applied.empty
+
+        when: "the file changes"
+        change(settings, settingsXml(7000))
+        watcher.check()
+
+        then: "the listener is called with the new value"
+        applied == [7000]
+
+        when: "the file is saved halfway through an edit"
+        change(settings, '<config><webServer>')
+        watcher.check()
+
+        then: "the previous value stays in effect"
+        applied == [7000]
+        config.getInt('webServer/clientTimeout') == 7000
+    }
+
+    private static String settingsXml(final int clientTimeout) {
+        return "<config><webServer><clientTimeout>$clientTimeout</clientTimeout></webServer></config>"
+    }
+
+    private static void change(final File file, final String text) {
+        long lastModified = file.lastModified()
+        file.text = text
+
+        // file systems only keep the time to the second (or worse)
+        file.setLastModified(lastModified + 2_000)
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.application
+
+import com.google.common.reflect.ClassPath
+import com.mariolopezjr.pandapi.exception.InternalException
+import com.mariolopezjr.pandapi.web.events.ServerEventBroadcaster
+import com.mariolopezjr.pandapi.web.health.Readiness
+import org.apache.commons.configuration.BaseConfiguration
+import org.apache.commons.configuration.Configuration
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.ws.rs.Path
+import javax.ws.rs.ext.Provider
+import java.util.concurrent.Executor
+
+/**
+ * Unit tests for the {@link PandapiRestServer} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class PandapiRestServerTest extends Specification {
+
+    def "every API and provider is registered with Jersey, since nothing is scanned for anymore"() {
+        given: "every class annotated as an API or a provider"
+        List<Class<?>> annotated = ClassPath.from(getClass().classLoader)
+                .getTopLevelClassesRecursive('com.mariolopezjr.pandapi.web')
+                .collect { it.load() }
+                .findAll { it.isAnnotationPresent(Path) || it.isAnnotationPresent(Provider) }
+
+        when: "the Jersey configuration is created"
+        Set<Class<?>> registered = PandapiRestServer.createResourceConfig(
+                [], Stub(ServerEventBroadcaster, constructorArgs: [1, 1, Stub(Executor)]), new Readiness()).classes
+
+        then: "all of them are in it"
+        !annotated.empty
+        registered.containsAll(annotated)
+    }
+
+    @Unroll
+    def "Jersey runs on the '#container' container"() {
+        given: "the container, with the servlet filters turned off"
+        Configuration config = webServerConfig(false, false)
+        if (container != null) {
+            config.setProperty('webServer/container', container)
+        }
+
+        expect: "the right one is used"
+        PandapiRestServer.isJettyContainer(config) == jetty
+
+        where:
+        container | jetty
+        null      | false
+        'servlet' | false
+        'jetty'   | true
+    }
+
+    @Unroll
+    def "Jersey can't skip the servlet layer with the limit #limit and compression #compression"() {
+        given: "the Jetty container, with a servlet filter turned on"
+        Configuration config = webServerConfig(limit, compression)
+        config.setProperty('webServer/container', 'jetty')
+
+        when: "the container is picked"
+        PandapiRestServer.isJettyContainer(config)
+
+        then: "it doesn't start"
+        thrown(InternalException)
+
+        where:
+        limit | compression
+        true  | false
+        false | true
+    }
+
+    def "Jersey can't skip the servlet layer on a read replica"() {
+        given: "the Jetty container on a replica"
+        Configuration config = webServerConfig(false, false)
+        config.setProperty('webServer/container', 'jetty')
+        config.setProperty('dataStore/replication/role', 'replica')
+
+        when: "the container is picked"
+        PandapiRestServer.isJettyContainer(config)
+
+        then: "it doesn't start"
+        thrown(InternalException)
+    }
+
+    def "an unknown container is rejected"() {
+        given: "a container that doesn't exist"
+        Configuration config = webServerConfig(false, false)
+        config.setProperty('webServer/container', 'tomcat')
+
+        when: "the container is picked"
+        PandapiRestServer.isJettyContainer(config)
+
+        then: "it doesn't start"
+        thrown(InternalException)
+    }
+
+    private static Configuration webServerConfig(final boolean limit, final boolean compression) {
+        Configuration config = new BaseConfiguration()
+        config.setProperty('webServer/concurrencyLimit/enabled', limit)
+        config.setProperty('webServer/compression/enabled', compression)
+        return config
+    }
+}
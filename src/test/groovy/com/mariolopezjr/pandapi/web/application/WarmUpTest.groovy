@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.application
+
+import org.apache.commons.configuration.BaseConfiguration
+import org.apache.commons.configuration.Configuration
+import spock.lang.Specification
+
+/**
+ * Unit tests for the {@link WarmUp} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class WarmUpTest extends Specification {
+
+    /**
+     * Creates the warm-up configuration, everything else uses its defaults.
+     * @param mix {@link List}<{@link Integer}> weights of the lists, gets, creates, and deletes
+     * @return {@link Configuration}
+     */
+    private static Configuration createConfig(List<Integer> mix) {
+        Configuration config = new BaseConfiguration()
+        config.setProperty('application/warmUp/enabled', true)
+        config.setProperty('application/warmUp/requests', 500)
+        config.setProperty('application/warmUp/servers', 5)
+        ['list', 'get', 'create', 'delete'].eachWithIndex { String name, int i ->
+            config.setProperty("application/warmUp/mix/$name", mix[i])
+        }
+
+        return config
+    }
+
+    def "every kind of request makes it all the way through Jersey without an error"() {
+        given: "a warm-up with some of every kind of request"
+        Configuration config = createConfig([20, 70, 5, 5])
+
+        expect: "none of them failed"
+        WarmUp.isEnabled(config)
+        new WarmUp(config).run() == 0
+    }
+
+    def "a warm-up that can't run doesn't keep the server from starting"() {
+        given: "a mix without any requests in it"
+        WarmUp warmUp = new WarmUp(createConfig([0, 0, 0, 0]))
+
+        when: "it runs"
+        warmUp.run()
+
+        then: "it gives up quietly"
+        notThrown(Exception)
+    }
+
+    def "the warm-up doesn't leave any lifecycle threads behind"() {
+        given: "a warm-up that creates and deletes servers, with the usual lifecycle times"
+        Configuration config = createConfig([20, 70, 5, 5])
+        config.setProperty('application/lifecycle/buildTime', 35_000)
+        config.setProperty('application/lifecycle/destroyTime', 30_000)
+
+        and: "the unnamed threads (which is what the lifecycle uses) before it runs"
+        Set<Thread> before = unnamedThreads()
+
+        when: "it runs"
+        new WarmUp(config).run()
+
+        then: "no more of them are left running"
+        (unnamedThreads() - before).isEmpty()
+    }
+
+    def "the throwaway application has a lifecycle that takes no time, and the same configuration otherwise"() {
+        given: "a configuration with the usual lifecycle times"
+        Configuration config = createConfig([20, 70, 5, 5])
+        config.setProperty('application/lifecycle/buildTime', 35_000)
+
+        when: "the warm-up configuration is created from it"
+        Configuration warmUpConfig = WarmUp.createWarmUpConfig(config)
+
+        then: "only the lifecycle times are different"
+        warmUpConfig.getLong('application/lifecycle/buildTime') == 0
+        warmUpConfig.getLong('application/lifecycle/destroyTime') == 0
+        warmUpConfig.getLong('application/lifecycle/purgeDelay') == 0
+        warmUpConfig.getInt('application/warmUp/requests') == 500
+    }
+
+    /**
+     * Returns the live threads with the default "Thread-N" name.
+     * @return {@link Set}<{@link Thread}>
+     */
+    private static Set<Thread> unnamedThreads() {
+        return Thread.getAllStackTraces().keySet().findAll { it.alive && it.name ==~ /Thread-\d+/ } as Set
+    }
+}
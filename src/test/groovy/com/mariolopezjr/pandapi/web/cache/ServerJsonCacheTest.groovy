@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.cache
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.mariolopezjr.pandapi.dao.ServerDao
+import com.mariolopezjr.pandapi.data.server.Server
+import com.mariolopezjr.pandapi.data.server.ServerState
+import com.mariolopezjr.pandapi.web.codec.ServerField
+import com.mariolopezjr.pandapi.web.codec.ServerFormat
+import com.mariolopezjr.pandapi.web.codec.ServerJsonWriter
+import com.mariolopezjr.pandapi.web.document.server.ServerGetResponse
+import spock.lang.Specification
+
+/**
+ * Unit tests for the {@link ServerJsonCache} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ServerJsonCacheTest extends Specification {
+
+    private ServerDao serverDao = Mock(ServerDao)
+
+    private ServerJsonCache codeUnderTest = new ServerJsonCache(serverDao)
+
+    def "the cache registers itself with the DAO"() {
+        given: "a DAO"
+        ServerDao dao = Mock(ServerDao)
+
+        when: "a cache is created for it"
+        new ServerJsonCache(dao)
+
+        then: "it listens for changes"
+        1 * dao.addChangeListener(_ as ServerJsonCache)
+    }
+
+    def "created servers are rendered exactly like the uncached responses"() {
+        given: "a new server"
+        Server server = server(ServerState.BUILDING, 1)
+
+        when: "the cache is told about it"
+        codeUnderTest.serverCreated(server)
+
+        then: "the rendered bytes are the same as what Jersey would have written"
+        CachedServer cached = codeUnderTest.get(server.id as String)
+        cached.json == new ObjectMapper().writeValueAsBytes(ServerGetResponse.fromDomainObject(server))
+        cached.json == uncached(server)
+        cached.entityTag == EntityTags.forServer(1)
+        codeUnderTest.get(server.id, server.version).is(cached)
+    }
+
+    def "the server document can be written without the wrapper"() {
+        given: "a rendered server"
+        Server server = server(ServerState.RUNNING, 1)
+        codeUnderTest.serverCreated(server)
+
+        when: "just the document is written"
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        codeUnderTest.get(server.id, server.version).writeServerDoc(out)
+
+        then: "it is the server document"
+        new ObjectMapper().readValue(out.toByteArray(), Map).id == server.id as String
+    }
+
+    def "updates replace older versions but not newer ones"() {
+        given: "a rendered server"
+        Server building = server(ServerState.BUILDING, 1)
+        codeUnderTest.serverCreated(building)
+
+        and: "two updates to it"
+        Server running = building.clone()
+        running.state = ServerState.RUNNING
+        running.version = 3
+        Server terminating = building.clone()
+        terminating.state = ServerState.TERMINATING
+        terminating.version = 2
+
+        when: "the notifications arrive out of order"
+        codeUnderTest.serverUpdated(building, running)
+        codeUnderTest.serverUpdated(building, terminating)
+
+        then: "the newest version is kept, without asking the DAO"
+        0 * serverDao._
+        codeUnderTest.get(building.id as String).version == 3
+        !codeUnderTest.get(terminating.id, terminating.version)
+    }
+
+    def "purged servers are removed, even if an update notification shows up late"() {
+        given: "a rendered server that was updated"
+        Server building = server(ServerState.BUILDING, 1)
+        codeUnderTest.serverCreated(building)
+        Server running = building.clone()
+        running.state = ServerState.RUNNING
+        running.version = 2
+
+        when: "it is purged (as of the update) before the update notification arrives"
+        codeUnderTest.serverDeleted(running)
+
+        then: "it's gone"
+        !codeUnderTest.get(building.id as String)
+
+        when: "the update notification is delivered afterwards"
+        codeUnderTest.serverUpdated(building, running)
+
+        then: "it's still gone, without asking the DAO (the notification may be on a thread its reads wait for)"
+        0 * serverDao._
+        !codeUnderTest.get(building.id as String)
+    }
+
+    def "a server that is stored again after it was purged is cached again"() {
+        given: "a purged server"
+        Server building = server(ServerState.BUILDING, 1)
+        codeUnderTest.serverCreated(building)
+        codeUnderTest.serverDeleted(building)
+
+        when: "a newer version of it is stored again, e.g. by an import"
+        Server imported = building.clone()
+        imported.state = ServerState.RUNNING
+        imported.version = 5
+        codeUnderTest.serverCreated(imported)
+
+        then: "it's back"
+        codeUnderTest.get(building.id as String).version == 5
+
+        when: "the notification of the purge is delivered again, late"
+        codeUnderTest.serverDeleted(building)
+
+        then: "the newer version is kept"
+        codeUnderTest.get(building.id as String).version == 5
+    }
+
+    def "malformed and unknown ids are not found"() {
+        expect:
+        !codeUnderTest.get(id)
+
+        where:
+        id << [null, '', 'not-a-uuid', UUID.randomUUID() as String]
+    }
+
+    def "entity tags are unique to the version"() {
+        expect:
+        EntityTags.forServerList(1, ServerField.ALL, ServerFormat.JSON) !=
+                EntityTags.forServerList(2, ServerField.ALL, ServerFormat.JSON)
+        EntityTags.forServer(1) != EntityTags.forServer(2)
+        EntityTags.forServer(1) != EntityTags.forServerList(1, ServerField.ALL, ServerFormat.JSON)
+        !EntityTags.forServer(1).weak
+    }
+
+    private static Server server(final ServerState state, final long version) {
+        return new Server(
+                id: UUID.randomUUID(), name: 'web', cpus: 1, ram: 2, diskSpace: 4, state: state, version: version)
+    }
+
+    // the response document the way a GET renders it without the cache
+    private static byte[] uncached(final Server server) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        JsonGenerator generator = ServerJsonWriter.createGenerator(out)
+        ServerJsonWriter.writeServerGetResponse(generator, ServerGetResponse.fromDomainObject(server))
+        generator.close()
+        return out.toByteArray()
+    }
+}
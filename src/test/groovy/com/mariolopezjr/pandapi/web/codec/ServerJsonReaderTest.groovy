@@ -0,0 +1,237 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.codec
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.mariolopezjr.pandapi.data.server.Server
+import com.mariolopezjr.pandapi.data.server.ServerState
+import com.mariolopezjr.pandapi.data.server.ServerUtility
+import com.mariolopezjr.pandapi.exception.BadRequestException
+import com.mariolopezjr.pandapi.web.document.server.ServerDoc
+import com.mariolopezjr.pandapi.web.document.server.ServerGetListResponse
+import com.mariolopezjr.pandapi.web.document.server.ServerGetResponse
+import com.mariolopezjr.pandapi.web.document.server.ServerPostRequest
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit tests for the {@link ServerJsonReader} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ServerJsonReaderTest extends Specification {
+
+    // a server without an id, on a line of its own
+    private static final String VALID_LINE = '{"name":"a","cpus":1,"ram":2,"diskSpace":3,"state":"Running"}'
+
+    @Unroll
+    def "a post request written as #format is read back"() {
+        given: "a request written by Jackson's data binding"
+        UUID id = UUID.randomUUID()
+        ServerPostRequest original = new ServerPostRequest(server: new ServerDoc(
+                id: id, name: 'web', cpus: 2, ram: 4096, diskSpace: 100, state: ServerStateDoc.Running))
+        byte[] bytes = new ObjectMapper(format.factory).writeValueAsBytes(original)
+
+        when: "it's read"
+        ServerPostRequest request = read(format, bytes)
+
+        then: "every property made it"
+        with(request.server) {
+            it.id == id
+            name == 'web'
+            cpus == 2
+            ram == 4096
+            diskSpace == 100
+            state == ServerStateDoc.Running
+        }
+
+        where:
+        format << ServerFormat.values()
+    }
+
+    @Unroll
+    def "read '#json' like Jackson does"() {
+        when:
+        ServerPostRequest request = read(ServerFormat.JSON, json.bytes)
+
+        then:
+        request.server?.name == name
+        request.server?.cpus == cpus
+
+        where:
+        json                                  | name | cpus
+        '{"server":{"name":"a","cpus":2}}'    | 'a'  | 2
+        '{"server":{"name":null,"cpus":"3"}}' | null | 3
+        '{"server":{}}'                       | null | null
+        '{"server":null}'                     | null | null
+        '{}'                                  | null | null
+    }
+
+    @Unroll
+    def "reading '#json' is a bad request"() {
+        when:
+        read(ServerFormat.JSON, json.bytes)
+
+        then:
+        thrown(BadRequestException)
+
+        where:
+        json << [
+                '',
+                '[]',
+                '{"servers":{}}',
+                '{"server":{"color":"red"}}',
+                '{"server":{"cpus":"two"}}',
+                '{"server":{"cpus":1.5}}',
+                '{"server":{"cpus":3000000000}}',
+                '{"server":{"name":7}}',
+                '{"server":{"id":"nope"}}',
+                '{"server":{"state":"Sleepy"}}',
+                '{"server":[]}',
+        ]
+    }
+
+    def "servers are read one line at a time"() {
+        given: "two lines of servers, with a blank line in between"
+        UUID id = UUID.randomUUID()
+        String lines = '{"id":"' + id + '","name":"a","cpus":1,"ram":2,"diskSpace":3,"state":"Running"}\n\n' +
+                '{"name":"b","cpus":"4","ram":5,"diskSpace":6,"state":"Building"}\n'
+        Iterator<Server> servers = readLines(lines)
+
+        expect: "each server in turn, and then the end"
+        servers.hasNext()
+        with(servers.next()) {
+            it.id == id
+            name == 'a'
+            diskSpace == 3
+            state == ServerState.RUNNING
+        }
+        with(servers.next()) {
+            it.id == null
+            cpus == 4
+            state == ServerState.BUILDING
+        }
+        !servers.hasNext()
+    }
+
+    @Unroll
+    def "reading '#lines' is a bad request on line #line"() {
+        given: "the lines"
+        Iterator<Server> servers = readLines(lines)
+
+        when: "every server is read"
+        while (servers.hasNext()) {
+            servers.next()
+        }
+
+        then: "it fails on the right line"
+        BadRequestException e = thrown()
+        e.message.startsWith("Line $line:")
+
+        where:
+        lines                                       | line
+        VALID_LINE + '\n{"name":"b","cpus":1'       | 2
+        VALID_LINE + '\n\n[]'                      | 3
+        '{"name":"a","cpus":null}'                  | 1
+        VALID_LINE + '\n' + VALID_LINE + '\n{"a":1}' | 3
+        'nope'                                      | 1
+    }
+
+    def "the violations the validator finds are a bad request on their line"() {
+        given: "a validator that only takes servers named 'a'"
+        String lines = VALID_LINE + '\n' + VALID_LINE.replace('"a"', '"b"')
+        Iterator<Server> servers = readLines(lines, { ServerDoc doc -> doc.name == 'a' ? [] : ['name', 'not a'] })
+
+        when: "every server is read"
+        servers.next()
+        servers.next()
+
+        then: "the second one fails with all of its violations"
+        BadRequestException e = thrown()
+        e.message == 'Line 2: name,not a'
+    }
+
+    @Unroll
+    def "a get response written as #format is read back"() {
+        given: "a server written the way the API writes it"
+        Server server = ServerUtility.generateServerInstances(1).first()
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        JsonGenerator generator = format.createGenerator(out)
+        ServerJsonWriter.writeServerGetResponse(generator, ServerGetResponse.fromDomainObject(server))
+        generator.close()
+
+        when: "it's read"
+        ServerGetResponse response =
+                ServerJsonReader.readServerGetResponse(format.createParser(new ByteArrayInputStream(out.toByteArray())))
+
+        then: "it's the same server"
+        response.server.toDomainObject() == server
+
+        where:
+        format << ServerFormat.values()
+    }
+
+    @Unroll
+    def "a list response of #instances server(s) written as #format is read back"() {
+        given: "servers written the way the API writes them"
+        List<Server> servers = ServerUtility.generateServerInstances(instances)
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        JsonGenerator generator = format.createGenerator(out)
+        ServerJsonWriter.writeServerList(generator, servers.iterator(), ServerField.ALL)
+        generator.close()
+
+        when: "it's read"
+        ServerGetListResponse response = ServerJsonReader.readServerGetListResponse(
+                format.createParser(new ByteArrayInputStream(out.toByteArray())))
+
+        then: "it's the same servers, in the same order"
+        response.servers*.toDomainObject() == servers
+
+        where:
+        format             | instances
+        ServerFormat.JSON  | 0
+        ServerFormat.JSON  | 10
+        ServerFormat.SMILE | 10
+        ServerFormat.CBOR  | 10
+    }
+
+    @Unroll
+    def "reading the list response '#json' is a bad request"() {
+        when:
+        ServerJsonReader.readServerGetListResponse(ServerFormat.JSON.createParser(new ByteArrayInputStream(json.bytes)))
+
+        then:
+        thrown(BadRequestException)
+
+        where:
+        json << ['[]', '{"servers":{}}', '{"server":[]}', '{"servers":[1]}']
+    }
+
+    private static Iterator<Server> readLines(final String lines) {
+        return readLines(lines, { ServerDoc doc -> [] })
+    }
+
+    private static Iterator<Server> readLines(final String lines, final Closure<List<String>> validator) {
+        return ServerJsonReader.readServerLines(ServerFormat.JSON.createParser(new ByteArrayInputStream(lines.bytes)),
+                validator)
+    }
+
+    private static ServerPostRequest read(final ServerFormat format, final byte[] bytes) {
+        return ServerJsonReader.readServerPostRequest(format.createParser(new ByteArrayInputStream(bytes)))
+    }
+}
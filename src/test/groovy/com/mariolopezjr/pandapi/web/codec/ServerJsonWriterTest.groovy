@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.codec
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.mariolopezjr.pandapi.data.server.Server
+import com.mariolopezjr.pandapi.data.server.ServerUtility
+import com.mariolopezjr.pandapi.exception.BadRequestException
+import com.mariolopezjr.pandapi.web.document.server.ServerDoc
+import com.mariolopezjr.pandapi.web.document.server.ServerGetListResponse
+import com.mariolopezjr.pandapi.web.document.server.ServerGetResponse
+import com.mariolopezjr.pandapi.web.document.server.ServerPostRequest
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit tests for the {@link ServerJsonWriter}, {@link ServerField}, and {@link ServerFormat} classes.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ServerJsonWriterTest extends Specification {
+
+    @Unroll
+    def "a list of #instances server(s) is written exactly like Jackson writes the list document"() {
+        given: "some servers"
+        List<Server> servers = ServerUtility.generateServerInstances(instances)
+
+        when: "the list is written"
+        byte[] json = writeList(servers, ServerField.ALL)
+
+        then: "it's the same as the data binding output"
+        json == new ObjectMapper().writeValueAsBytes(ServerGetListResponse.fromDomainObject(servers))
+
+        where:
+        instances << [0, 1, 10]
+    }
+
+    @Unroll
+    def "a #description is written exactly like Jackson writes it"() {
+        when: "the document is written"
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        JsonGenerator generator = ServerJsonWriter.createGenerator(out)
+        write(generator, document)
+        generator.close()
+
+        then: "it's the same as the data binding output"
+        out.toByteArray() == new ObjectMapper().writeValueAsBytes(document)
+
+        where:
+        description           | document                                                                 | write
+        'get response'        | ServerGetResponse.fromDomainObject(ServerUtility.generateServerInstances(1).first()) |
+                { g, d -> ServerJsonWriter.writeServerGetResponse(g, d) }
+        'partial get response'| new ServerGetResponse(server: new ServerDoc(name: 'a', cpus: 2))         |
+                { g, d -> ServerJsonWriter.writeServerGetResponse(g, d) }
+        'empty get response'  | new ServerGetResponse()                                                  |
+                { g, d -> ServerJsonWriter.writeServerGetResponse(g, d) }
+        'list response'       | ServerGetListResponse.fromDomainObject(ServerUtility.generateServerInstances(3)) |
+                { g, d -> ServerJsonWriter.writeServerGetListResponse(g, d) }
+        'empty list response' | new ServerGetListResponse()                                              |
+                { g, d -> ServerJsonWriter.writeServerGetListResponse(g, d) }
+    }
+
+    def "only the requested fields are written, in document order"() {
+        given: "a server"
+        Server server = ServerUtility.generateServerInstances(1).first()
+
+        when: "the list is written with a sparse fieldset"
+        String json = new String(writeList([server], ServerField.parse('state, id')), 'UTF-8')
+
+        then: "only those fields are written"
+        json == '{"servers":[{"id":"' + server.id + '","state":"Running"}]}'
+    }
+
+    def "the stream isn't closed by the writer"() {
+        given: "a stream that remembers whether it was closed"
+        boolean closed = false
+        OutputStream out = new ByteArrayOutputStream() {
+            @Override
+            void close() {
+                closed = true
+            }
+        }
+
+        when: "a list is written and the generator closed"
+        JsonGenerator generator = ServerJsonWriter.createGenerator(out)
+        ServerJsonWriter.writeServerList(generator, [].iterator(), ServerField.ALL)
+        generator.close()
+
+        then: "the stream is still open, and has the list"
+        !closed
+        out.toString('UTF-8') == '{"servers":[]}'
+    }
+
+    def "a post request is written exactly like Jackson writes it"() {
+        given: "a request for a new server"
+        ServerPostRequest request =
+                new ServerPostRequest(server: new ServerDoc(name: 'web', cpus: 2, ram: 4, diskSpace: 8))
+
+        when: "it's written"
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        JsonGenerator generator = ServerJsonWriter.createGenerator(out)
+        ServerJsonWriter.writeServerPostRequest(generator, request)
+        generator.close()
+
+        then: "it's the same as the data binding's"
+        out.toString('UTF-8') == new ObjectMapper().writeValueAsString(request)
+    }
+
+    def "servers are written one per line and read back the same"() {
+        given: "some servers"
+        List<Server> servers = ServerUtility.generateServerInstances(3)
+
+        when: "they are written as lines"
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        JsonGenerator generator = ServerJsonWriter.createGenerator(out)
+        ServerJsonWriter.writeServerLines(generator, servers.iterator())
+        generator.close()
+        String lines = out.toString('UTF-8')
+
+        then: "each one is a complete document on its own line"
+        lines.readLines() == servers.collect {
+            new ObjectMapper().writeValueAsString(ServerGetResponse.fromDomainObject(it).server)
+        }
+        lines.endsWith('\n')
+
+        and: "they read back the same"
+        ServerJsonReader.readServerLines(ServerFormat.JSON.createParser(new ByteArrayInputStream(out.toByteArray())),
+                { [] }).collect() == servers
+    }
+
+    @Unroll
+    def "a list written as #format reads back the same as the JSON"() {
+        given: "some servers"
+        List<Server> servers = ServerUtility.generateServerInstances(10)
+
+        when: "the list is written in the format"
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        JsonGenerator generator = format.createGenerator(out)
+        ServerJsonWriter.writeServerList(generator, servers.iterator(), ServerField.ALL)
+        generator.close()
+
+        then: "decoding it gives the same document"
+        new ObjectMapper(format.factory).readValue(out.toByteArray(), Map) ==
+                new ObjectMapper().readValue(writeList(servers, ServerField.ALL), Map)
+
+        where:
+        format << ServerFormat.values()
+    }
+
+    @Unroll
+    def "a list written as #format is smaller than the JSON"() {
+        given: "a list of servers as JSON"
+        List<Server> servers = ServerUtility.generateServerInstances(100)
+        byte[] json = writeList(servers, ServerField.ALL)
+
+        when: "the list is written in the binary format"
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        JsonGenerator generator = format.createGenerator(out)
+        ServerJsonWriter.writeServerList(generator, servers.iterator(), ServerField.ALL)
+        generator.close()
+
+        then: "fewer bytes go over the wire"
+        out.size() < json.length
+
+        where:
+        format << [ServerFormat.SMILE, ServerFormat.CBOR]
+    }
+
+    @Unroll
+    def "parse fields '#fields'"() {
+        expect:
+        ServerField.parse(fields) == expected as Set
+
+        where:
+        fields           | expected
+        null             | ServerField.values()
+        ''               | ServerField.values()
+        'id'             | [ServerField.ID]
+        'diskSpace,name' | [ServerField.NAME, ServerField.DISK_SPACE]
+        'id,id'          | [ServerField.ID]
+    }
+
+    @Unroll
+    def "unknown field in '#fields' is a bad request"() {
+        when:
+        ServerField.parse(fields)
+
+        then:
+        thrown(BadRequestException)
+
+        where:
+        fields << ['color', 'id,,state', 'ID', 'disk_space']
+    }
+
+    private static byte[] writeList(final List<Server> servers, final Set<ServerField> fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        JsonGenerator generator = ServerJsonWriter.createGenerator(out)
+        ServerJsonWriter.writeServerList(generator, servers.iterator(), fields)
+        generator.close()
+        return out.toByteArray()
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.events
+
+import com.mariolopezjr.pandapi.data.server.Server
+import com.mariolopezjr.pandapi.data.server.ServerState
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc
+import org.apache.commons.configuration.BaseConfiguration
+import spock.lang.Specification
+
+import javax.servlet.AsyncContext
+import javax.servlet.ServletOutputStream
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.Executor
+
+/**
+ * Unit tests for the {@link ServerEventBroadcaster} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ServerEventBroadcasterTest extends Specification {
+
+    // run everything on the calling thread so the tests are deterministic
+    private ServerEventBroadcaster codeUnderTest = new ServerEventBroadcaster(4, 8, { it.run() } as Executor)
+
+    // everything written to the clients
+    private List<String> written = []
+
+    // the last version handed out to a server by server()
+    private long versions
+
+    def "events are written to subscribed clients"() {
+        given: "a connected client"
+        subscribe(null, null)
+
+        when: "a server is created and then becomes running"
+        Server building = server(ServerState.BUILDING)
+        codeUnderTest.serverCreated(building)
+        codeUnderTest.serverUpdated(building, server(building.id, ServerState.RUNNING))
+
+        then: "the client receives both events with increasing ids"
+        written.size() == 3
+        written[1].startsWith("id: 1\nevent: created\ndata: {\"server\":{")
+        written[1].contains("\"state\":\"Building\"")
+        written[1].endsWith("}}\n\n")
+        written[2].startsWith("id: 2\nevent: stateChanged\n")
+        written[2].contains("\"state\":\"Running\"")
+    }
+
+    def "state changes that clients can't see are not published"() {
+        given: "a connected client"
+        subscribe(null, null)
+
+        when: "a server goes from terminating to destroyed, which are both Destroyed to the client"
+        UUID id = UUID.randomUUID()
+        codeUnderTest.serverUpdated(server(id, ServerState.TERMINATING), server(id, ServerState.DESTROYED))
+
+        then: "nothing but the retry frame was written"
+        written == ["retry: 2000\n\n"]
+    }
+
+    def "an update that comes in after a newer one of the same server is dropped"() {
+        given: "a connected client"
+        subscribe(null, null)
+
+        and: "a server that was built and then deleted right away"
+        UUID id = UUID.randomUUID()
+        Server building = server(id, ServerState.BUILDING)
+        Server running = server(id, ServerState.RUNNING)
+        Server terminating = server(id, ServerState.TERMINATING)
+
+        when: "the notifications of the two updates come in the wrong way around"
+        codeUnderTest.serverUpdated(running, terminating)
+        codeUnderTest.serverUpdated(building, running)
+
+        then: "only the newest state was sent"
+        written.size() == 2
+        written[1].startsWith("id: 1\nevent: stateChanged\n")
+        written[1].contains("\"state\":\"Destroyed\"")
+
+        when: "a client reconnects having missed everything"
+        written.clear()
+        subscribe(null, 0L)
+
+        then: "its replay doesn't have the stale state either"
+        written.size() == 2
+        written[1].contains("\"state\":\"Destroyed\"")
+    }
+
+    def "an update that comes in after the server was purged is dropped"() {
+        given: "a connected client"
+        subscribe(null, null)
+
+        and: "a server that is updated and purged"
+        UUID id = UUID.randomUUID()
+        Server building = server(id, ServerState.BUILDING)
+        Server running = server(id, ServerState.RUNNING)
+
+        when: "the purge of the last version is told before its update"
+        codeUnderTest.serverDeleted(running)
+        codeUnderTest.serverUpdated(building, running)
+
+        then: "only the purge was sent"
+        written.size() == 2
+        written[1].startsWith("id: 1\nevent: purged\n")
+
+        when: "the server is stored again with a newer version, e.g. by an import"
+        codeUnderTest.serverCreated(server(id, ServerState.RUNNING))
+
+        then: "that one is sent"
+        written.size() == 3
+        written[2].startsWith("id: 2\nevent: created\n")
+    }
+
+    def "clients only receive events for the state they filter on"() {
+        given: "a client only interested in running servers"
+        subscribe(ServerStateDoc.Running, null)
+
+        when: "a server is created and then becomes running"
+        Server building = server(ServerState.BUILDING)
+        codeUnderTest.serverCreated(building)
+        codeUnderTest.serverUpdated(building, server(building.id, ServerState.RUNNING))
+
+        then: "only the running event was sent"
+        written.size() == 2
+        written[1].startsWith("id: 2\nevent: stateChanged\n")
+    }
+
+    def "reconnecting clients receive the events they missed"() {
+        given: "three events that already happened"
+        3.times { codeUnderTest.serverCreated(server(ServerState.BUILDING)) }
+
+        when: "a client reconnects having seen the first event"
+        subscribe(null, 1L)
+
+        then: "it receives the second and third events"
+        written.size() == 3
+        written[1].startsWith("id: 2\n")
+        written[2].startsWith("id: 3\n")
+    }
+
+    def "reconnecting clients are told to resync when events are no longer in the history"() {
+        given: "more events than the history can hold"
+        6.times { codeUnderTest.serverCreated(server(ServerState.BUILDING)) }
+
+        when: "a client reconnects having seen the first event"
+        subscribe(null, lastEventId)
+
+        then: "it is told to resync and receives whatever is still in the history"
+        written[1] == "event: resync\ndata: {}\n\n"
+        written.size() == expectedFrames
+
+        where:
+        lastEventId | expectedFrames
+        1L          | 6               // events 3 through 6 are still around
+        99L         | 2               // from before a restart
+    }
+
+    def "the history keeps the most recent events when it's made smaller"() {
+        given: "a full history"
+        4.times { codeUnderTest.serverCreated(server(ServerState.BUILDING)) }
+
+        when: "it's made smaller"
+        BaseConfiguration config = new BaseConfiguration()
+        config.setProperty('webServer/events/historySize', 2)
+        codeUnderTest.reconfigure(config)
+
+        and: "a client reconnects having seen the first event"
+        subscribe(null, 1L)
+
+        then: "it is told to resync and receives the last two events"
+        written[1] == "event: resync\ndata: {}\n\n"
+        written.size() == 4
+        written[2].startsWith("id: 3\n")
+        written[3].startsWith("id: 4\n")
+    }
+
+    def "clients that fall too far behind are dropped"() {
+        given: "a client whose connection can't take any more data"
+        AsyncContext asyncContext = Mock()
+        ServletOutputStream out = Mock() {
+            isReady() >> false
+        }
+        codeUnderTest.subscribe(asyncContext, out, null, null)
+
+        when: "more events happen than the client can buffer"
+        9.times { codeUnderTest.serverCreated(server(ServerState.BUILDING)) }
+
+        then: "the client is disconnected"
+        1 * asyncContext.complete()
+        codeUnderTest.subscriberCount == 0
+    }
+
+    def "heartbeats are sent to every client"() {
+        given: "a connected client"
+        subscribe(null, null)
+
+        when: "the heartbeat runs"
+        codeUnderTest.heartbeat()
+
+        then: "the client receives a comment"
+        written[1] == ": keep-alive\n\n"
+    }
+
+    def "clients that go away are unsubscribed"() {
+        given: "a connected client"
+        ServerEventSubscriber subscriber = subscribe(null, null)
+
+        when: "the container tells us the request is done"
+        subscriber.onComplete(null)
+
+        then: "the client no longer receives events"
+        codeUnderTest.subscriberCount == 0
+    }
+
+    def "event ids from the client are parsed leniently"() {
+        expect:
+        ServerEventsServlet.parseEventId(eventId) == expected
+
+        where:
+        eventId                   | expected
+        null                      | null
+        ""                        | null
+        "42"                      | 42L
+        "abc"                     | null
+        "-1"                      | null
+        "99999999999999999999999" | null
+    }
+
+    /**
+     * Subscribes a client whose connection can always take more data and records what is written to it.
+     */
+    private ServerEventSubscriber subscribe(final ServerStateDoc stateFilter, final Long lastEventId) {
+        ServerEventSubscriber subscriber = null
+
+        AsyncContext asyncContext = Mock() {
+            addListener(_) >> { args -> subscriber = args[0] }
+        }
+        ServletOutputStream out = Mock() {
+            isReady() >> true
+            write(_ as byte[]) >> { args -> written << new String(args[0] as byte[], StandardCharsets.UTF_8) }
+        }
+
+        codeUnderTest.subscribe(asyncContext, out, stateFilter, lastEventId)
+
+        return subscriber
+    }
+
+    private Server server(final ServerState state) {
+        return server(UUID.randomUUID(), state)
+    }
+
+    /**
+     * Creates the next version of a server, the way the DAO stamps them.
+     */
+    private Server server(final UUID id, final ServerState state) {
+        return new Server(id: id, name: 'web', cpus: 1, ram: 1, diskSpace: 1, state: state, version: ++versions)
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.health
+
+import spock.lang.Specification
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+
+/**
+ * Unit tests for the {@link Readiness} and {@link ReadinessServlet} classes.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ReadinessTest extends Specification {
+
+    private Readiness readiness = new Readiness()
+
+    def "the application is only ready once every component is"() {
+        expect: "nothing is up at first"
+        !readiness.ready
+        readiness.notReady == EnumSet.allOf(Readiness.Component)
+
+        when: "all but one component is up"
+        readiness.setReady(Readiness.Component.WEB_SERVER)
+        readiness.setReady(Readiness.Component.INJECTION)
+        readiness.setReady(Readiness.Component.CLUSTER)
+
+        then: "it's still waiting for the last one"
+        !readiness.ready
+        readiness.notReady == EnumSet.of(Readiness.Component.DATA_STORE)
+
+        when: "the last one is up"
+        readiness.setReady(Readiness.Component.DATA_STORE)
+
+        then: "it's ready"
+        readiness.ready
+        readiness.notReady.empty
+
+        when: "one of them goes down again"
+        readiness.setNotReady(Readiness.Component.WEB_SERVER)
+
+        then: "it isn't"
+        !readiness.ready
+        readiness.notReady == EnumSet.of(Readiness.Component.WEB_SERVER)
+    }
+
+    def "the servlet returns a 503 listing what it's waiting for until the application is ready"() {
+        given: "the web server is up"
+        readiness.setReady(Readiness.Component.WEB_SERVER)
+        HttpServletResponse response = Mock(HttpServletResponse)
+        StringWriter body = new StringWriter()
+
+        when: "the servlet is called"
+        new ReadinessServlet(readiness).doGet(Stub(HttpServletRequest), response)
+
+        then: "it's a 503 with the components that aren't up"
+        1 * response.setStatus(503)
+        1 * response.setContentType('application/json')
+        1 * response.setHeader('Cache-Control', 'no-cache')
+        _ * response.getWriter() >> new PrintWriter(body)
+        body.toString() == '{"ready":false,"waitingFor":["injection","dataStore","cluster"]}'
+    }
+
+    def "the servlet returns a 200 once the application is ready"() {
+        given: "everything is up"
+        Readiness.Component.values().each { readiness.setReady(it) }
+        HttpServletResponse response = Mock(HttpServletResponse)
+        StringWriter body = new StringWriter()
+
+        when: "the servlet is called"
+        new ReadinessServlet(readiness).doGet(Stub(HttpServletRequest), response)
+
+        then: "it's a 200"
+        1 * response.setStatus(200)
+        _ * response.getWriter() >> new PrintWriter(body)
+        body.toString() == '{"ready":true}'
+    }
+}
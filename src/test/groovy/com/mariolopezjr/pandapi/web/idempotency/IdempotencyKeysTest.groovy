@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.idempotency
+
+import com.mariolopezjr.pandapi.data.server.Server
+import com.mariolopezjr.pandapi.data.server.ServerState
+import com.mariolopezjr.pandapi.exception.BadRequestException
+import com.mariolopezjr.pandapi.exception.DataStoreUnavailableException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Unit tests for the {@link IdempotencyKeys} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class IdempotencyKeysTest extends Specification {
+
+    private IdempotencyKeys codeUnderTest = new IdempotencyKeys(100, 60_000)
+
+    private Server request = new Server(name: 'a', cpus: 1, ram: 2, diskSpace: 4)
+
+    def "the same key creates the server only once"() {
+        given: "a creator that counts its calls"
+        AtomicInteger creates = new AtomicInteger()
+        def creator = { created(creates.incrementAndGet()) }
+
+        when: "the same key is used twice"
+        Server first = codeUnderTest.createServer('key', request, creator)
+        Server second = codeUnderTest.createServer('key', request, creator)
+
+        then: "both get the first server"
+        creates.get() == 1
+        first == second
+        first.name == '1'
+    }
+
+    def "different keys create different servers"() {
+        given: "a creator that counts its calls"
+        AtomicInteger creates = new AtomicInteger()
+        def creator = { created(creates.incrementAndGet()) }
+
+        when: "two keys are used"
+        Server first = codeUnderTest.createServer('key-1', request, creator)
+        Server second = codeUnderTest.createServer('key-2', request, creator)
+
+        then: "each gets its own server"
+        creates.get() == 2
+        first != second
+    }
+
+    def "a key used for a different server is rejected"() {
+        given: "a key that was used"
+        codeUnderTest.createServer('key', request, { created(1) })
+
+        when: "it's used for a server with more cpus"
+        codeUnderTest.createServer('key', new Server(name: 'a', cpus: 2, ram: 2, diskSpace: 4), { created(2) })
+
+        then: "it's a bad request"
+        BadRequestException e = thrown()
+        e.message == 'Idempotency-Key key was already used for a different server'
+    }
+
+    @Unroll
+    def "a key that is #description is rejected"() {
+        when: "the key is used"
+        codeUnderTest.createServer(key, request, { created(1) })
+
+        then: "it's a bad request"
+        thrown(BadRequestException)
+
+        where:
+        description | key
+        'empty'     | ''
+        'too long'  | 'k' * (IdempotencyKeys.MAX_KEY_LENGTH + 1)
+    }
+
+    def "a failed create isn't remembered"() {
+        given: "the data store is unavailable for the first create"
+        AtomicInteger creates = new AtomicInteger()
+        def creator = {
+            if (creates.incrementAndGet() == 1) {
+                throw new DataStoreUnavailableException('no leader')
+            }
+            created(creates.get())
+        }
+
+        when: "the key is used"
+        codeUnderTest.createServer('key', request, creator)
+
+        then: "the create's exception comes through as is"
+        thrown(DataStoreUnavailableException)
+
+        when: "the key is used again"
+        Server server = codeUnderTest.createServer('key', request, creator)
+
+        then: "the server is created this time"
+        server.name == '2'
+    }
+
+    def "a retry waits for the create that's still in progress"() {
+        given: "a create that blocks until it's released"
+        CountDownLatch started = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        AtomicInteger creates = new AtomicInteger()
+        def creator = {
+            started.countDown()
+            release.await(5, TimeUnit.SECONDS)
+            created(creates.incrementAndGet())
+        }
+        def executor = Executors.newFixedThreadPool(2)
+
+        when: "the same key is used from two threads while the first create is in progress"
+        def first = executor.submit({ codeUnderTest.createServer('key', request, creator) } as Callable)
+        started.await(5, TimeUnit.SECONDS)
+        def second = executor.submit({ codeUnderTest.createServer('key', request, creator) } as Callable)
+        release.countDown()
+
+        then: "both get the one server"
+        first.get(5, TimeUnit.SECONDS) == second.get(5, TimeUnit.SECONDS)
+        creates.get() == 1
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    /**
+     * Returns a server the way the service would have created it, with the number in its name.
+     * @param number int
+     * @return {@link Server}
+     */
+    private static Server created(final int number) {
+        new Server(id: UUID.randomUUID(), name: Integer.toString(number), cpus: 1, ram: 2, diskSpace: 4,
+                state: ServerState.BUILDING)
+    }
+}
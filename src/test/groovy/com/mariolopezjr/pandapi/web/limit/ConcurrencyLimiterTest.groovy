@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.limit
+
+import spock.lang.Specification
+
+import javax.servlet.FilterChain
+import javax.servlet.ServletOutputStream
+import javax.servlet.WriteListener
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+import java.util.function.LongSupplier
+
+/**
+ * Unit tests for the {@link ConcurrencyLimiter} and {@link ConcurrencyLimitFilter} classes.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ConcurrencyLimiterTest extends Specification {
+
+    // GradientLimit is a class, so its mocks need something to call the constructor with
+    private static final List<Object> LIMIT_ARGS = [1, 1, 1, 1.0d, 1.0d, 1L, 1, 1, { -> 0L } as LongSupplier]
+
+    // a limit of 10 that never changes
+    private GradientLimit limit = Stub(GradientLimit, constructorArgs: LIMIT_ARGS) { getLimit() >> 10 }
+
+    private ConcurrencyLimiter limiter = new ConcurrencyLimiter(limit, 1.0, 0.5, 3)
+
+    def "writes are turned away once their share of the limit is in use, reads aren't"() {
+        when: "five writes are in progress"
+        List<Boolean> writes = (1..6).collect { limiter.tryAcquire(RequestPriority.WRITE) }
+
+        then: "the sixth one is turned away"
+        writes == [true] * 5 + [false]
+        limiter.rejected == 1
+
+        when: "reads come in"
+        List<Boolean> reads = (1..6).collect { limiter.tryAcquire(RequestPriority.READ) }
+
+        then: "they get the rest of the limit"
+        reads == [true] * 5 + [false]
+        limiter.inflight == 10
+    }
+
+    def "released requests make room and report their latency"() {
+        given: "a limiter that's full"
+        GradientLimit limit = Mock(GradientLimit, constructorArgs: LIMIT_ARGS) { getLimit() >> 1 }
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(limit, 1.0, 1.0, 3)
+        limiter.tryAcquire(RequestPriority.READ)
+
+        when: "the request finishes"
+        limiter.release(42)
+
+        then: "its latency is recorded, and there's room for another"
+        1 * limit.onSample(42, 1)
+        limiter.tryAcquire(RequestPriority.READ)
+
+        when: "that one goes async"
+        limiter.release()
+
+        then: "nothing is recorded"
+        0 * limit.onSample(_, _)
+        limiter.inflight == 0
+    }
+
+    def "the filter turns requests over the limit away with a 503"() {
+        given: "a full limiter"
+        10.times { limiter.tryAcquire(RequestPriority.READ) }
+
+        and: "a request"
+        HttpServletRequest request = Stub(HttpServletRequest) { getMethod() >> 'GET' }
+        HttpServletResponse response = Mock(HttpServletResponse)
+        ByteArrayOutputStream body = new ByteArrayOutputStream()
+        FilterChain chain = Mock(FilterChain)
+
+        when: "it goes through the filter"
+        new ConcurrencyLimitFilter(limiter).doFilter(request, response, chain)
+
+        then: "it never gets to the API"
+        0 * chain.doFilter(_, _)
+        1 * response.setStatus(503)
+        1 * response.setHeader('Retry-After', '3')
+        1 * response.getOutputStream() >> new ServletOutputStream() {
+            @Override
+            boolean isReady() {
+                return true
+            }
+
+            @Override
+            void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            void write(int b) {
+                body.write(b)
+            }
+        }
+        body.toByteArray() == ConcurrencyLimitFilter.OVERLOADED
+    }
+
+    def "the filter gives the slot back when the request is done"() {
+        given: "a request"
+        HttpServletRequest request = Stub(HttpServletRequest) {
+            getMethod() >> 'POST'
+            getAttribute(ConcurrencyLimitFilter.PARKED) >> parked
+        }
+        FilterChain chain = Mock(FilterChain)
+
+        when: "it goes through the filter"
+        new ConcurrencyLimitFilter(limiter).doFilter(request, Mock(HttpServletResponse), chain)
+
+        then: "it gets to the API, and nothing is left in progress afterwards"
+        1 * chain.doFilter(_, _) >> { assert limiter.inflight == 1 }
+        limiter.inflight == 0
+
+        where:
+        parked << [null, true]
+    }
+
+    def "the filter only leaves the latency of parked requests out of the limit"() {
+        given: "a limiter with a limit that keeps track of its samples"
+        GradientLimit limit = Mock(GradientLimit, constructorArgs: LIMIT_ARGS) { getLimit() >> 10 }
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(new ConcurrencyLimiter(limit, 1.0, 1.0, 3))
+
+        and: "a plain GET, which Jersey suspends and resumes before the thread comes back (so async has started)"
+        HttpServletRequest get = Stub(HttpServletRequest) {
+            getMethod() >> 'GET'
+            isAsyncStarted() >> true
+            getAttribute(ConcurrencyLimitFilter.PARKED) >> null
+        }
+
+        when: "it goes through the filter"
+        filter.doFilter(get, Mock(HttpServletResponse), Mock(FilterChain))
+
+        then: "its latency is fed to the limit"
+        1 * limit.onSample({ it >= 0 }, 1)
+
+        when: "a long-poll that was parked goes through the filter"
+        HttpServletRequest longPoll = Stub(HttpServletRequest) {
+            getMethod() >> 'GET'
+            isAsyncStarted() >> true
+            getAttribute(ConcurrencyLimitFilter.PARKED) >> true
+        }
+        filter.doFilter(longPoll, Mock(HttpServletResponse), Mock(FilterChain))
+
+        then: "its latency isn't"
+        0 * limit.onSample(_, _)
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mariolopezjr.pandapi.web.limit
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+import java.util.function.LongSupplier
+
+/**
+ * Unit tests for the {@link GradientLimit} class.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class GradientLimitTest extends Specification {
+
+    // the fake clock
+    private long now = 0
+
+    def "the limit grows while latency stays flat and the limit is in use"() {
+        given: "a limit that updates after every request"
+        GradientLimit limit = createLimit(100, 1)
+
+        when: "requests keep taking the same time with the limit in use"
+        limit.onSample(millis(10), 100)
+        limit.onSample(millis(10), 100)
+
+        then: "the limit goes up a little each window"
+        limit.limit == 120
+    }
+
+    def "the limit comes down when latency goes up"() {
+        given: "a limit that updates after every request"
+        GradientLimit limit = createLimit(100, 1)
+
+        and: "a baseline latency"
+        limit.onSample(millis(10), 100)
+
+        when: "requests get four times slower, twice the tolerance"
+        limit.onSample(millis(40), 110)
+
+        then: "the limit is halved (plus the headroom)"
+        limit.limit == 65
+    }
+
+    def "latency within the tolerance doesn't bring the limit down"() {
+        given: "a limit that updates after every request"
+        GradientLimit limit = createLimit(100, 1)
+
+        when: "requests get twice as slow"
+        limit.onSample(millis(10), 100)
+        limit.onSample(millis(20), 110)
+
+        then: "the limit still grows"
+        limit.limit > 110
+    }
+
+    def "the limit doesn't grow when it isn't being used"() {
+        given: "a limit that updates after every request"
+        GradientLimit limit = createLimit(100, 1)
+
+        when: "only a few requests are ever in progress"
+        10.times { limit.onSample(millis(10), 5) }
+
+        then: "the limit stays the same"
+        limit.limit == 100
+    }
+
+    def "the limit stays within its bounds"() {
+        given: "a limit that updates after every request"
+        GradientLimit limit = createLimit(100, 1)
+
+        when: "latency keeps getting worse"
+        limit.onSample(millis(1), 100)
+        20.times { limit.onSample(millis(1_000 * (it + 1)), 100) }
+
+        then: "the limit bottoms out"
+        limit.limit == 4
+
+        when: "latency recovers and the limit is used"
+        200.times { limit.onSample(millis(1), 1_000) }
+
+        then: "the limit tops out"
+        limit.limit == 200
+    }
+
+    def "nothing changes until the window is over"() {
+        given: "a limit with windows of at least 3 requests and 100ms"
+        GradientLimit limit = new GradientLimit(100, 4, 200, 2.0, 1.0, 100, 3, 1_000, { -> now } as LongSupplier)
+
+        when: "three requests finish right away"
+        3.times { limit.onSample(millis(10), 100) }
+
+        then: "the window isn't over yet"
+        limit.limit == 100
+
+        when: "another one finishes after the window"
+        now += millis(100)
+        limit.onSample(millis(10), 100)
+
+        then: "the limit is updated"
+        limit.limit == 110
+    }
+
+    def "changed bounds apply to the limit right away"() {
+        given: "a limit of 100"
+        GradientLimit limit = createLimit(100, 1)
+
+        when: "the maximum comes down below it"
+        limit.reconfigure(4, 50, 2.0, 1.0, 0, 1, 1_000)
+
+        then: "so does the limit"
+        limit.limit == 50
+
+        when: "the minimum goes up above it"
+        limit.reconfigure(150, 300, 2.0, 1.0, 0, 1, 1_000)
+
+        then: "so does the limit"
+        limit.limit == 150
+    }
+
+    private GradientLimit createLimit(final int initialLimit, final int minWindowSamples) {
+        // no smoothing, so the math is easy to follow
+        return new GradientLimit(
+                initialLimit, 4, 200, 2.0, 1.0, 0, minWindowSamples, 1_000, { -> now } as LongSupplier)
+    }
+
+    private static long millis(final long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis)
+    }
+}
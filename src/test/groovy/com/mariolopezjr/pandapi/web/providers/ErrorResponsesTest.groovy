@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.providers
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.mariolopezjr.pandapi.exception.BadRequestException
+import com.mariolopezjr.pandapi.exception.DataStoreUnavailableException
+import com.mariolopezjr.pandapi.exception.ResourceNotFoundException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.ws.rs.core.HttpHeaders
+import javax.ws.rs.core.MediaType
+import javax.ws.rs.core.Response
+
+/**
+ * Unit tests for the {@link ErrorResponses} class, through the exception mappers.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ErrorResponsesTest extends Specification {
+
+    @Unroll
+    def "'#message' is rendered as an error document"() {
+        when: "the message is rendered"
+        Map doc = new ObjectMapper().readValue(ErrorResponses.render(message), Map)
+
+        then: "it reads back the same"
+        doc == [error: message]
+
+        where:
+        message << ['Server not found', 'quotes " and \\ and\nnew lines', 'ünïcödé', '', null]
+    }
+
+    def "a bad request is answered with the rendered message"() {
+        when: "the exception is mapped"
+        Response response = new BadRequestExceptionMapper().toResponse(new BadRequestException('bad "id"'))
+
+        then: "the body is the JSON error document"
+        response.status == Response.Status.BAD_REQUEST.statusCode
+        response.mediaType == MediaType.APPLICATION_JSON_TYPE
+        new String(response.entity as byte[], 'UTF-8') == '{"error":"bad \\"id\\""}'
+    }
+
+    def "a pre-rendered bad request message is only rendered once"() {
+        given: "a message that never changes"
+        ErrorResponses.preRender('ram must be at least 1')
+
+        when: "the message is answered twice"
+        Response first = ErrorResponses.badRequest('ram must be at least 1')
+        Response second = ErrorResponses.badRequest('ram must be at least 1')
+
+        then: "both responses share the body"
+        first.entity.is(second.entity)
+        new String(first.entity as byte[], 'UTF-8') == '{"error":"ram must be at least 1"}'
+    }
+
+    def "a bad request message that wasn't pre-rendered is rendered for every response"() {
+        when: "a message echoing the request is answered twice"
+        Response first = ErrorResponses.badRequest('Invalid server identifier: abc')
+        Response second = ErrorResponses.badRequest('Invalid server identifier: abc')
+
+        then: "each response has a body of its own, nothing is kept"
+        !first.entity.is(second.entity)
+        first.entity == second.entity
+    }
+
+    def "a missing resource is answered with the rendered message"() {
+        when: "the exception is mapped"
+        Response response = new ResourceNotFoundExceptionMapper()
+                .toResponse(new ResourceNotFoundException('Server not found with identifier: abc'))
+
+        then: "the body is the JSON error document"
+        response.status == Response.Status.NOT_FOUND.statusCode
+        new String(response.entity as byte[], 'UTF-8') == '{"error":"Server not found with identifier: abc"}'
+    }
+
+    def "an unavailable data store is answered with the rendered message and a retry"() {
+        when: "the exception is mapped"
+        Response response = new DataStoreUnavailableExceptionMapper()
+                .toResponse(new DataStoreUnavailableException('no leader'))
+
+        then: "the details stay on the server"
+        response.status == Response.Status.SERVICE_UNAVAILABLE.statusCode
+        response.getHeaderString(HttpHeaders.RETRY_AFTER) == '1'
+        new String(response.entity as byte[], 'UTF-8') == '{"error":"Service Unavailable"}'
+    }
+
+    def "the expected client errors don't capture a stack trace"() {
+        expect: "no frames, even with a cause"
+        new BadRequestException('bad').stackTrace.length == 0
+        new BadRequestException('bad', new IOException()).stackTrace.length == 0
+        new ResourceNotFoundException('missing').stackTrace.length == 0
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Mario Lopez Jr
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mariolopezjr.pandapi.web.validation
+
+import com.mariolopezjr.pandapi.exception.InternalException
+import com.mariolopezjr.pandapi.web.document.server.ServerDoc
+import com.mariolopezjr.pandapi.web.document.server.ServerPostRequest
+import com.mariolopezjr.pandapi.web.document.server.ServerStateDoc
+import com.mariolopezjr.pandapi.web.providers.ErrorResponses
+import org.apache.commons.configuration.BaseConfiguration
+import org.apache.commons.configuration.Configuration
+import org.apache.commons.configuration.XMLConfiguration
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static com.mariolopezjr.pandapi.web.document.server.ServerStateDoc.Building
+
+/**
+ * Unit tests for the {@link ServerValidator} class, with the rules from the real validation.xml.
+ * @author Mario Lopez Jr
+ * @since 0.3.0
+ */
+class ServerValidatorTest extends Specification {
+
+    @Shared
+    private ServerValidator codeUnderTest = new ServerValidator(loadRules())
+
+    def "validate a valid create request"() {
+        given: "a valid request"
+        ServerPostRequest request = new ServerPostRequest(
+                server: new ServerDoc(name: 'valid name', cpus: 2, ram: 4, diskSpace: 20))
+
+        expect: "no violations"
+        codeUnderTest.validateCreateRequest(request).isEmpty()
+    }
+
+    @Unroll
+    def "validate an invalid create request(#uuid, #name, #cpus, #ram, #diskSpace, #state)"() {
+        given: "an invalid request"
+        ServerPostRequest request = new ServerPostRequest(server: new ServerDoc(
+                id: uuid, name: name, cpus: cpus, ram: ram, diskSpace: diskSpace, state: state))
+
+        expect: "the violation"
+        codeUnderTest.validateCreateRequest(request) == [violation]
+
+        where:
+        name  | cpus | ram  | diskSpace | state    | uuid              | violation
+        ''    | 1    | 2    | 6         | null     | null              | 'name must be specified'
+        null  | 2    | 4    | 8         | null     | null              | 'name must be specified'
+        'db'  | 0    | 8    | 10        | null     | null              | 'cpus must be at least 1'
+        'dat' | -1   | 16   | 20        | null     | null              | 'cpus must be at least 1'
+        'db'  | 4097 | 16   | 20        | null     | null              | 'cpus must be at most 4096'
+        'db'  | null | 16   | 20        | null     | null              | 'cpus must be specified'
+        'web' | 1    | 0    | 6         | null     | null              | 'ram must be at least 1'
+        'mid' | 2    | null | 8         | null     | null              | 'ram must be specified'
+        'db'  | 4    | 8    | 0         | null     | null              | 'diskSpace must be at least 1'
+        'dat' | 8    | 16   | 1048577   | null     | null              | 'diskSpace must be at most 1048576'
+        'web' | 1    | 2    | 6         | Building | null              | 'state must not be specified'
+        'dat' | 8    | 16   | 40        | null     | UUID.randomUUID() | 'id must not be specified'
+    }
+
+    def "every violation of a create request is found"() {
+        given: "a request that gets everything wrong"
+        ServerPostRequest request = new ServerPostRequest(server: new ServerDoc(
+                id: UUID.randomUUID(), cpus: 0, diskSpace: 2000000, state: ServerStateDoc.Running))
+
+        expect: "all of the violations, in the order of the fields"
+        codeUnderTest.validateCreateRequest(request) == [
+                'id must not be specified',
+                'name must be specified',
+                'cpus must be at least 1',
+                'ram must be specified',
+                'diskSpace must be at most 1048576',
+                'state must not be specified']
+    }
+
+    def "validate a create request without a server"() {
+        expect: "the server is missing"
+        codeUnderTest.validateCreateRequest(new ServerPostRequest()) == ['server must be specified']
+    }
+
+    def "validate a valid import"() {
+        given: "a server from an export"
+        ServerDoc doc = new ServerDoc(
+                id: UUID.randomUUID(), name: 'web', cpus: 2, ram: 4, diskSpace: 20, state: ServerStateDoc.Building)
+
+        expect: "no violations"
+        codeUnderTest.validateImport(doc).isEmpty()
+    }
+
+    @Unroll
+    def "validate an invalid import(#uuid, #name, #cpus, #ram, #diskSpace, #state)"() {
+        given: "an invalid server"
+        ServerDoc doc = new ServerDoc(id: uuid, name: name, cpus: cpus, ram: ram, diskSpace: diskSpace, state: state)
+
+        expect: "the violation"
+        codeUnderTest.validateImport(doc) == [violation]
+
+        where:
+        name  | cpus | ram | diskSpace | state                  | uuid              | violation
+        'web' | 1    | 2   | 6         | ServerStateDoc.Running | null              | 'id must be specified'
+        ''    | 1    | 2   | 6         | ServerStateDoc.Running | UUID.randomUUID() | 'name must be specified'
+        'db'  | 0    | 8   | 10        | ServerStateDoc.Running | UUID.randomUUID() | 'cpus must be at least 1'
+        'web' | 1    | 0   | 6         | ServerStateDoc.Running | UUID.randomUUID() | 'ram must be at least 1'
+        'db'  | 4    | 8   | 0         | ServerStateDoc.Running | UUID.randomUUID() | 'diskSpace must be at least 1'
+        'mid' | 2    | 4   | 8         | null                   | UUID.randomUUID() | 'state must be specified'
+    }
+
+    def "a min on a field that isn't a number is rejected when the rules are compiled"() {
+        given: "a rule with a min for the name"
+        Configuration config = new BaseConfiguration()
+        config.setProperty('validation/server/create/fields/name/@min', 1)
+
+        when: "the rules are compiled"
+        new ServerValidator(config)
+
+        then: "they don't make sense"
+        thrown(InternalException)
+    }
+
+    def "the bad request bodies of the violations are rendered when the rules are compiled"() {
+        given: "a rule with a message no other test uses"
+        Configuration config = new BaseConfiguration()
+        config.setProperty('validation/server/create/fields/cpus/@min', 7)
+        new ServerValidator(config)
+
+        expect: "every response with the violation shares the body"
+        ErrorResponses.badRequest('cpus must be at least 7').entity
+                .is(ErrorResponses.badRequest('cpus must be at least 7').entity)
+        ErrorResponses.badRequest('server must be specified').entity
+                .is(ErrorResponses.badRequest('server must be specified').entity)
+    }
+
+    def "without any rules everything is valid"() {
+        given: "a validator without rules"
+        ServerValidator validator = new ServerValidator(new BaseConfiguration())
+
+        expect: "even an empty server is valid"
+        validator.validateCreateRequest(new ServerPostRequest(server: new ServerDoc())).isEmpty()
+        validator.validateImport(new ServerDoc()).isEmpty()
+    }
+
+    /**
+     * Loads the rules the way the application does.
+     */
+    static Configuration loadRules() {
+        XMLConfiguration config = new XMLConfiguration(ServerValidatorTest.getResource('/config/validation.xml'))
+        config.expressionEngine = new XPathExpressionEngine()
+        return config
+    }
+}